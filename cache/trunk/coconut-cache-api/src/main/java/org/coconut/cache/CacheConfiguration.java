@@ -21,7 +21,9 @@ import net.jcip.annotations.NotThreadSafe;
 import org.coconut.cache.service.event.CacheEventConfiguration;
 import org.coconut.cache.service.exceptionhandling.CacheExceptionHandlingConfiguration;
 import org.coconut.cache.service.expiration.CacheExpirationConfiguration;
+import org.coconut.cache.service.index.CacheIndexConfiguration;
 import org.coconut.cache.service.loading.CacheLoadingConfiguration;
+import org.coconut.cache.service.locking.CacheLockingConfiguration;
 import org.coconut.cache.service.management.CacheManagementConfiguration;
 import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
 import org.coconut.cache.service.servicemanager.CacheServiceManagerConfiguration;
@@ -296,6 +298,16 @@ public class CacheConfiguration<K, V> {
         return result == null ? defaultValue : result;
     }
 
+    /**
+     * Returns a configuration object that can be used to declare secondary indexes on the
+     * entries in the cache.
+     * 
+     * @return a CacheIndexConfiguration
+     */
+    public CacheIndexConfiguration<K, V> index() {
+        return getConfiguration(CacheIndexConfiguration.class);
+    }
+
     /**
      * Returns a configuration object that can be used to control how loading is done in
      * the cache.
@@ -306,6 +318,16 @@ public class CacheConfiguration<K, V> {
         return getConfiguration(CacheLoadingConfiguration.class);
     }
 
+    /**
+     * Returns a configuration object that can be used to control how entries are locked
+     * by the locking service.
+     * 
+     * @return a CacheLockingConfiguration
+     */
+    public CacheLockingConfiguration<K, V> locking() {
+        return getConfiguration(CacheLockingConfiguration.class);
+    }
+
     /**
      * Returns a configuration object that can be used to control how services are
      * remotely managed.
@@ -409,6 +431,12 @@ public class CacheConfiguration<K, V> {
      * then the built-in {@link java.lang.System#currentTimeMillis()} and
      * {@link java.lang.System#nanoTime()}. For example, a custom NTP protocol.
      * <p>
+     * Caches that are accessed very frequently but do not need sub-millisecond precision
+     * for expiration, refreshing and statistics can use a
+     * {@link org.coconut.core.Clock.CachedClock}, which is much cheaper to read than the
+     * system timers. For example,
+     * <tt>setClock(new Clock.CachedClock(1, TimeUnit.MILLISECONDS))</tt>.
+     * <p>
      * This method is also useful for tests that rely on exact timing of events.
      * 
      * @param clock
@@ -2,7 +2,9 @@ package org.coconut.cache;
 
 import org.coconut.cache.service.event.CacheEventService;
 import org.coconut.cache.service.expiration.CacheExpirationService;
+import org.coconut.cache.service.index.CacheIndexService;
 import org.coconut.cache.service.loading.CacheLoadingService;
+import org.coconut.cache.service.locking.CacheLockingService;
 import org.coconut.cache.service.management.CacheManagementService;
 import org.coconut.cache.service.memorystore.MemoryStoreService;
 import org.coconut.cache.service.servicemanager.CacheServiceManagerService;
@@ -71,6 +73,17 @@ public class CacheServices<K, V> {
         return getService(CacheExpirationService.class);
     }
 
+    /**
+     * Returns the index service for the specified
+     *
+     * @return the index service for the cache
+     * @throws IllegalArgumentException
+     *             if no index service is available for the specified cache
+     */
+    public CacheIndexService<K, V> index() {
+        return getService(CacheIndexService.class);
+    }
+
     /**
      * Returns the loading service for the specified
      *
@@ -82,6 +95,17 @@ public class CacheServices<K, V> {
         return getService(CacheLoadingService.class);
     }
 
+    /**
+     * Returns the locking service for the specified
+     *
+     * @return the locking service for the cache
+     * @throws IllegalArgumentException
+     *             if no locking service is available for the specified cache
+     */
+    public CacheLockingService<K, V> locking() {
+        return getService(CacheLockingService.class);
+    }
+
     /**
      * Returns the management service for the specified
      *
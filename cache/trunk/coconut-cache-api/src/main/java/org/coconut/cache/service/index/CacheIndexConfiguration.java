@@ -0,0 +1,219 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.index;
+
+import static org.coconut.internal.util.XmlUtil.addTypedElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.coconut.attribute.Attributes;
+import org.coconut.attribute.spi.AbstractAttribute;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.spi.AbstractCacheServiceConfiguration;
+import org.coconut.cache.spi.CacheSPI;
+import org.coconut.internal.util.XmlUtil;
+import org.coconut.operations.Mappers;
+import org.coconut.operations.Ops.Mapper;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * This class is used to declare the secondary indexes of a cache prior to usage. An index
+ * is declared with a {@link Mapper} that extracts the indexed value from each entry in
+ * the cache, for example:
+ *
+ * <pre>
+ * CacheConfiguration&lt;String, Order&gt; conf = CacheConfiguration.create();
+ * conf.index().addHashIndex(Mappers.compoundMapper(Mappers.MAP_ENTRY_TO_KEY_MAPPER, TENANT));
+ * conf.index().addSortedIndex(CostAttribute.INSTANCE);
+ * </pre>
+ *
+ * Hash indexes are used for queries testing the mapped value for equality. Sorted indexes
+ * are used for queries testing that the mapped value is greater or less then some value,
+ * and for equality. Entries for which the mapper returns <code>null</code> are not
+ * indexed.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ * @see CacheIndexService
+ */
+public class CacheIndexConfiguration<K, V> extends AbstractCacheServiceConfiguration<K, V> {
+
+    /** The short name of this service. */
+    public static final String SERVICE_NAME = "index";
+
+    /** The XML tag for a hash index. */
+    private final static String HASH_INDEX_TAG = "hash-index";
+
+    /** The XML tag for a sorted index. */
+    private final static String SORTED_INDEX_TAG = "sorted-index";
+
+    /** The mappers of the declared hash indexes. */
+    private final List<Mapper<? super CacheEntry<K, V>, ?>> hashIndexes = new ArrayList<Mapper<? super CacheEntry<K, V>, ?>>();
+
+    /** The mappers of the declared sorted indexes. */
+    private final List<Mapper<? super CacheEntry<K, V>, ? extends Comparable>> sortedIndexes = new ArrayList<Mapper<? super CacheEntry<K, V>, ? extends Comparable>>();
+
+    /** Creates a new CacheIndexConfiguration. */
+    public CacheIndexConfiguration() {
+        super(SERVICE_NAME);
+    }
+
+    /**
+     * Declares a hash index on the value of the specified attribute.
+     *
+     * @param attribute
+     *            the attribute to index
+     * @return this configuration
+     * @throws NullPointerException
+     *             if the specified attribute is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if an index has already been declared for the attribute
+     */
+    public CacheIndexConfiguration<K, V> addHashIndex(AbstractAttribute<?> attribute) {
+        return addHashIndex(mapAttribute(attribute));
+    }
+
+    /**
+     * Declares a hash index on the values returned by the specified mapper. The index is
+     * used by queries created with
+     * {@link org.coconut.operations.Predicates#mapAndEvaluate(Mapper, org.coconut.operations.Ops.Predicate)}
+     * using an equal mapper.
+     *
+     * @param mapper
+     *            the mapper extracting the indexed value from an entry
+     * @return this configuration
+     * @throws NullPointerException
+     *             if the specified mapper is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if an index has already been declared for the mapper
+     */
+    public CacheIndexConfiguration<K, V> addHashIndex(Mapper<? super CacheEntry<K, V>, ?> mapper) {
+        checkNotIndexed(mapper);
+        hashIndexes.add(mapper);
+        return this;
+    }
+
+    /**
+     * Declares a sorted index on the value of the specified attribute.
+     *
+     * @param attribute
+     *            the attribute to index
+     * @return this configuration
+     * @throws NullPointerException
+     *             if the specified attribute is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if an index has already been declared for the attribute
+     */
+    public CacheIndexConfiguration<K, V> addSortedIndex(
+            AbstractAttribute<? extends Comparable> attribute) {
+        return addSortedIndex(mapAttribute(attribute));
+    }
+
+    /**
+     * Declares a sorted index on the values returned by the specified mapper. The values
+     * are sorted according to their natural ordering.
+     *
+     * @param mapper
+     *            the mapper extracting the indexed value from an entry
+     * @return this configuration
+     * @throws NullPointerException
+     *             if the specified mapper is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if an index has already been declared for the mapper
+     */
+    public CacheIndexConfiguration<K, V> addSortedIndex(
+            Mapper<? super CacheEntry<K, V>, ? extends Comparable> mapper) {
+        checkNotIndexed(mapper);
+        sortedIndexes.add(mapper);
+        return this;
+    }
+
+    /**
+     * Returns the mappers of all declared hash indexes.
+     *
+     * @return the mappers of all declared hash indexes
+     */
+    public List<Mapper<? super CacheEntry<K, V>, ?>> getHashIndexes() {
+        return new ArrayList<Mapper<? super CacheEntry<K, V>, ?>>(hashIndexes);
+    }
+
+    /**
+     * Returns the mappers of all declared sorted indexes.
+     *
+     * @return the mappers of all declared sorted indexes
+     */
+    public List<Mapper<? super CacheEntry<K, V>, ? extends Comparable>> getSortedIndexes() {
+        return new ArrayList<Mapper<? super CacheEntry<K, V>, ? extends Comparable>>(
+                sortedIndexes);
+    }
+
+    /**
+     * Returns whether or not any indexes has been declared.
+     *
+     * @return whether or not any indexes has been declared
+     */
+    public boolean hasIndexes() {
+        return !hashIndexes.isEmpty() || !sortedIndexes.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void fromXML(Element element) throws Exception {
+        for (Element e : XmlUtil.getChildren(HASH_INDEX_TAG, element)) {
+            addHashIndex(XmlUtil.loadObject(e, Mapper.class));
+        }
+        for (Element e : XmlUtil.getChildren(SORTED_INDEX_TAG, element)) {
+            addSortedIndex(XmlUtil.loadObject(e, Mapper.class));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void toXML(Document doc, Element parent) throws Exception {
+        for (Mapper<?, ?> m : hashIndexes) {
+            addTypedElement(doc, parent, HASH_INDEX_TAG, CacheSPI.DEFAULT_CACHE_BUNDLE,
+                    getClass(), "saveOfIndexFailed", m);
+        }
+        for (Mapper<?, ?> m : sortedIndexes) {
+            addTypedElement(doc, parent, SORTED_INDEX_TAG, CacheSPI.DEFAULT_CACHE_BUNDLE,
+                    getClass(), "saveOfIndexFailed", m);
+        }
+    }
+
+    /**
+     * Checks that no index has been declared for the specified mapper.
+     *
+     * @param mapper
+     *            the mapper to check
+     */
+    private void checkNotIndexed(Mapper<?, ?> mapper) {
+        if (mapper == null) {
+            throw new NullPointerException("mapper is null");
+        } else if (hashIndexes.contains(mapper) || sortedIndexes.contains(mapper)) {
+            throw new IllegalArgumentException("An index has already been declared for "
+                    + mapper);
+        }
+    }
+
+    /**
+     * Returns a mapper from a cache entry to the value of the specified attribute.
+     *
+     * @param attribute
+     *            the attribute to map to
+     * @return a mapper from a cache entry to the value of the specified attribute
+     */
+    private static Mapper mapAttribute(AbstractAttribute<?> attribute) {
+        if (attribute == null) {
+            throw new NullPointerException("attribute is null");
+        }
+        return Mappers.compoundMapper(Attributes.WITHATTRIBUTES_TO_ATTRIBUTES_MAPPER, attribute
+                .map());
+    }
+}
@@ -0,0 +1,63 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.index;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.CacheServices;
+import org.coconut.operations.Ops.Predicate;
+
+/**
+ * The index service is used for querying the entries of a cache using the secondary
+ * indexes declared in {@link CacheIndexConfiguration}. The service is only available if
+ * at least one index has been declared.
+ * <p>
+ * An instance of this interface can be retrieved by using {@link Cache#getService(Class)}
+ * to look it up.
+ *
+ * <pre>
+ * Cache&lt;?, ?&gt; c = someCache;
+ * CacheIndexService&lt;?, ?&gt; cis = c.getService(CacheIndexService.class);
+ * cis.query(somePredicate);
+ * </pre>
+ *
+ * Or by using {@link CacheServices}
+ *
+ * <pre>
+ * Cache&lt;?, ?&gt; c = someCache;
+ * CacheIndexService&lt;?, ?&gt; cis = c.services().index();
+ * cis.query(somePredicate);
+ * </pre>
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache containing this service
+ * @param <V>
+ *            the type of mapped values
+ */
+public interface CacheIndexService<K, V> {
+
+    /**
+     * Returns a query for the cache entries that are accepted by the specified predicate.
+     * <p>
+     * An index is used if the predicate, or one of the predicates combined with
+     * {@link org.coconut.operations.Predicates#and} or
+     * {@link org.coconut.operations.Predicates#all}, is created by
+     * {@link org.coconut.operations.Predicates#mapAndEvaluate} with the mapper of an
+     * index. For a hash index the mapped value must be tested with
+     * {@link org.coconut.operations.Predicates#isEquals}. For a sorted index it can also
+     * be tested with one of the natural order comparison predicates such as
+     * {@link org.coconut.operations.Predicates#greaterThen(Comparable)} or
+     * {@link org.coconut.operations.Predicates#between(Comparable, Comparable)}.
+     * Otherwise every entry in the cache is tested when the first result is requested.
+     *
+     * @param predicate
+     *            the predicate identifying the entries to return
+     * @return a query returning the matching entries
+     * @throws NullPointerException
+     *             if the specified predicate is <code>null</code>
+     */
+    CacheQuery<K, V> query(Predicate<? super CacheEntry<K, V>> predicate);
+}
@@ -0,0 +1,63 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.index;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.coconut.cache.CacheEntry;
+
+/**
+ * The result of a query created by {@link CacheIndexService#query}. The matching entries
+ * are located lazily, either one at a time using the {@link Iterator} methods or a page
+ * at a time using {@link #getNext(int)}. A query is not thread-safe, but the cache can be
+ * modified while the query is in progress. Entries that are removed from the cache
+ * before they are reached by the query are not returned.
+ * <p>
+ * The {@link Iterator#remove()} method is not supported.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public interface CacheQuery<K, V> extends Iterator<CacheEntry<K, V>>, Iterable<CacheEntry<K, V>> {
+
+    /**
+     * Returns all the remaining matching entries. The current index will be updated to
+     * the end of the result.
+     *
+     * @return a list containing all the remaining matching entries
+     */
+    List<CacheEntry<K, V>> getAll();
+
+    /**
+     * Returns the number of entries that have been returned so far.
+     *
+     * @return the number of entries that have been returned so far
+     */
+    int getCurrentIndex();
+
+    /**
+     * Returns a list with at most the specified number of matching entries. If fewer
+     * entries remain, the returned list will only contain the remaining entries.
+     *
+     * @param maxResults
+     *            the maximum number of entries to return
+     * @return a list of matching entries
+     * @throws IllegalArgumentException
+     *             if the specified number of results is 0 or less
+     */
+    List<CacheEntry<K, V>> getNext(int maxResults);
+
+    /**
+     * Returns whether or not the query uses an index to locate the matching entries. If
+     * <code>false</code> every entry in the cache is tested.
+     *
+     * @return whether or not the query uses an index
+     */
+    boolean isIndexed();
+}
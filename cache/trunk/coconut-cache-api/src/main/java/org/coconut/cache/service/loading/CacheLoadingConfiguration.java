@@ -4,6 +4,8 @@
 package org.coconut.cache.service.loading;
 
 import static org.coconut.internal.util.XmlUtil.addTypedElement;
+import static org.coconut.internal.util.XmlUtil.contentIntGet;
+import static org.coconut.internal.util.XmlUtil.contentIntSet;
 import static org.coconut.internal.util.XmlUtil.getChild;
 import static org.coconut.internal.util.XmlUtil.loadChildObject;
 
@@ -14,6 +16,8 @@ import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.spi.AbstractCacheServiceConfiguration;
 import org.coconut.cache.spi.CacheSPI;
+import org.coconut.cache.spi.CacheStore;
+import org.coconut.core.RateLimiter;
 import org.coconut.internal.util.XmlUtil;
 import org.coconut.operations.Ops.Predicate;
 import org.w3c.dom.Document;
@@ -43,15 +47,66 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
     /** The XML tag for the refresh interval. */
     private final static String REFRESH_INTERVAL_TAG = "default-time-to-refresh";
 
+    /** The XML tag for the load rate limit. */
+    private final static String RATE_LIMIT_TAG = "rate-limit";
+
+    /** The XML attribute for the number of loads per second. */
+    private final static String RATE_LIMIT_RATE_ATTR = "loads-per-second";
+
+    /** The XML attribute for the maximum burst of loads. */
+    private final static String RATE_LIMIT_BURST_ATTR = "burst";
+
+    /** The XML tag for the cache store. */
+    private final static String STORE_TAG = "store";
+
+    /** The XML tag for the write-behind batch size. */
+    private final static String WRITE_BEHIND_BATCH_SIZE_TAG = "write-behind-batch-size";
+
+    /** The XML tag for the write-behind delay. */
+    private final static String WRITE_BEHIND_DELAY_TAG = "write-behind-delay";
+
+    /** The XML tag for the write-behind queue threshold. */
+    private final static String WRITE_BEHIND_QUEUE_THRESHOLD_TAG = "write-behind-queue-threshold";
+
+    /** The XML tag for the write-behind retry delay. */
+    private final static String WRITE_BEHIND_RETRY_DELAY_TAG = "write-behind-retry-delay";
+
+    /** The default number of modifications written to the store at a time. */
+    public final static int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 100;
+
+    /** The default maximum time in nanoseconds a modification is queued. */
+    public final static long DEFAULT_WRITE_BEHIND_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+    /** The default time in nanoseconds to wait before retrying a failed write. */
+    public final static long DEFAULT_WRITE_BEHIND_RETRY_DELAY = TimeUnit.SECONDS.toNanos(1);
+
     /** The default time to refresh. */
     private long defaultTimeToRefresh;
 
     /** The cache loader. */
     private CacheLoader<? super K, ? extends V> loader;
 
+    /** The rate limiter used for limiting the number of loads. */
+    private RateLimiter rateLimiter;
+
     /** The refresh predicate. */
     private Predicate<CacheEntry<K, V>> refreshSelector;
 
+    /** The cache store that modifications are written to. */
+    private CacheStore<K, V> store;
+
+    /** The number of modifications written to the store at a time. */
+    private int writeBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+
+    /** The maximum time in nanoseconds a modification is queued. */
+    private long writeBehindDelay = DEFAULT_WRITE_BEHIND_DELAY;
+
+    /** The number of queued modifications at which writers are blocked. */
+    private int writeBehindQueueThreshold = Integer.MAX_VALUE;
+
+    /** The time in nanoseconds to wait before retrying a failed write. */
+    private long writeBehindRetryDelay = DEFAULT_WRITE_BEHIND_RETRY_DELAY;
+
     /**
      * Creates a new CacheLoadingConfiguration.
      */
@@ -85,6 +140,18 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
         return loader;
     }
 
+    /**
+     * Returns the rate limiter that is used for limiting the rate at which values are
+     * loaded.
+     *
+     * @return the configured rate limiter, or <code>null</code> if loading is not rate
+     *         limited
+     * @see #setRateLimiter(RateLimiter)
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     /**
      * Returns the configured refresh predicate.
      *
@@ -95,6 +162,64 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
         return refreshSelector;
     }
 
+    /**
+     * Returns the CacheStore that modifications of the cache are written to.
+     *
+     * @return the configured cache store, or <code>null</code> if modifications are not
+     *         written to a store
+     * @see #setStore(CacheStore)
+     */
+    public CacheStore<K, V> getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the maximum number of modifications that are written to the store at a
+     * time.
+     *
+     * @return the maximum number of modifications written to the store at a time
+     * @see #setWriteBehindBatchSize(int)
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * Returns the maximum time a modification is queued before it is written to the
+     * store.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the maximum time a modification is queued
+     * @see #setWriteBehindDelay(long, TimeUnit)
+     */
+    public long getWriteBehindDelay(TimeUnit unit) {
+        return unit.convert(writeBehindDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of queued modifications at which threads modifying the cache
+     * are blocked until some of the modifications have been written.
+     *
+     * @return the number of queued modifications at which writers are blocked
+     * @see #setWriteBehindQueueThreshold(int)
+     */
+    public int getWriteBehindQueueThreshold() {
+        return writeBehindQueueThreshold;
+    }
+
+    /**
+     * Returns the time to wait before retrying a write that failed.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the time to wait before retrying a write that failed
+     * @see #setWriteBehindRetryDelay(long, TimeUnit)
+     */
+    public long getWriteBehindRetryDelay(TimeUnit unit) {
+        return unit.convert(writeBehindRetryDelay, TimeUnit.NANOSECONDS);
+    }
+
     /**
      * Sets the default refresh interval relative to the last update of the element. For
      * example, if all elements should be refreshed 1 hour after they have been added to
@@ -146,6 +271,153 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
         return this;
     }
 
+    /**
+     * Sets a rate limiter that is used for limiting the rate at which the configured
+     * {@link CacheLoader} is invoked. This can be used to protect a slow backend from
+     * being overloaded, for example, when a large number of entries are refreshed at the
+     * same time. Threads that load a value will wait until a permit is available.
+     * <p>
+     * The same rate limiter can be shared between multiple caches that load values from
+     * the same backend.
+     *
+     * @param rateLimiter
+     *            the rate limiter to use, or <code>null</code> if loading should not be
+     *            rate limited
+     * @return this configuration
+     * @see #getRateLimiter()
+     */
+    public CacheLoadingConfiguration<K, V> setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Sets a cache store that modifications of the cache are written to. Modifications
+     * are written asynchronously (write-behind): a put or remove adds the key to a queue
+     * and returns immediately. Multiple modifications of the same key are coalesced so
+     * only the latest is written. Queued modifications are written using
+     * {@link CacheStore#storeAll(java.util.Map)} and
+     * {@link CacheStore#deleteAll(Collection)} once the batch size is reached or the
+     * oldest modification has been queued for longer than the write-behind delay. Any
+     * queued modifications are written when the cache is shutdown.
+     * <p>
+     * Values loaded by the cache, entries that are evicted or expire, and calls to
+     * {@link Cache#clear()} are not written to the store. The store is not used for
+     * loading values unless it is also set using {@link #setLoader(CacheLoader)}.
+     * <p>
+     * Writing to a store requires a cache that supports
+     * {@link org.coconut.cache.service.worker.CacheWorkerService}.
+     *
+     * @param store
+     *            the cache store to write modifications to, or <code>null</code> if
+     *            modifications should not be written to a store
+     * @return this configuration
+     * @see #getStore()
+     */
+    public CacheLoadingConfiguration<K, V> setStore(CacheStore<K, V> store) {
+        this.store = store;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of modifications that are written to the store at a time.
+     * Modifications are written as soon as this number of modifications are queued. The
+     * default value is {@value #DEFAULT_WRITE_BEHIND_BATCH_SIZE}.
+     *
+     * @param batchSize
+     *            the maximum number of modifications written to the store at a time
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified batch size is not positive
+     * @see #getWriteBehindBatchSize()
+     */
+    public CacheLoadingConfiguration<K, V> setWriteBehindBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be a positive number, was "
+                    + batchSize);
+        }
+        this.writeBehindBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a modification is queued before it is written to the store.
+     * The queue is checked at intervals of half the delay, so a modification can be
+     * queued for up to one and a half times the delay. The default value is 1 second.
+     *
+     * @param delay
+     *            the maximum time a modification is queued
+     * @param unit
+     *            the time unit of the specified delay
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified delay is not positive
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     * @see #getWriteBehindDelay(TimeUnit)
+     */
+    public CacheLoadingConfiguration<K, V> setWriteBehindDelay(long delay, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be a positive number, was " + delay);
+        }
+        writeBehindDelay = TimeUnit.NANOSECONDS.convert(delay, unit);
+        return this;
+    }
+
+    /**
+     * Sets the number of queued modifications at which threads modifying the cache are
+     * blocked until some of the modifications have been written. This prevents the
+     * queue from growing without bounds if the store cannot keep up with the rate of
+     * modifications. The default value is {@link Integer#MAX_VALUE}, which means that
+     * writers are never blocked.
+     *
+     * @param threshold
+     *            the number of queued modifications at which writers are blocked
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified threshold is not positive
+     * @see #getWriteBehindQueueThreshold()
+     */
+    public CacheLoadingConfiguration<K, V> setWriteBehindQueueThreshold(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be a positive number, was "
+                    + threshold);
+        }
+        this.writeBehindQueueThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Sets the time to wait before retrying a write that failed. The delay is doubled
+     * for each consecutive failure, up to 64 times the specified delay, and is reset
+     * once a write succeeds. Modifications that failed to be written are kept in the
+     * queue unless the key has been modified again in the mean time. The default value
+     * is 1 second.
+     *
+     * @param delay
+     *            the time to wait before retrying a failed write
+     * @param unit
+     *            the time unit of the specified delay
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified delay is negative
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     * @see #getWriteBehindRetryDelay(TimeUnit)
+     */
+    public CacheLoadingConfiguration<K, V> setWriteBehindRetryDelay(long delay, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (delay < 0) {
+            throw new IllegalArgumentException("delay must be a non negative number, was "
+                    + delay);
+        }
+        writeBehindRetryDelay = TimeUnit.NANOSECONDS.convert(delay, unit);
+        return this;
+    }
+
     /**
      * Sets a function ({@link Predicate}) that is used for determining if an element
      * should be refreshed. The predicate is checked on calls to the various load methods
@@ -178,6 +450,28 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
 
         /* Refresh Filter */
         setRefreshFilter(loadChildObject(parent, REFRESH_PREDICATE_TAG, Predicate.class));
+
+        /* Rate limit */
+        Element eRate = getChild(RATE_LIMIT_TAG, parent);
+        if (eRate != null) {
+            double rate = Double.parseDouble(eRate.getAttribute(RATE_LIMIT_RATE_ATTR));
+            int burst = Integer.parseInt(eRate.getAttribute(RATE_LIMIT_BURST_ATTR));
+            setRateLimiter(new RateLimiter(rate, TimeUnit.SECONDS, burst));
+        }
+
+        /* Store */
+        setStore(loadChildObject(parent, STORE_TAG, CacheStore.class));
+
+        /* Write-behind */
+        setWriteBehindBatchSize(contentIntGet(getChild(WRITE_BEHIND_BATCH_SIZE_TAG, parent),
+                DEFAULT_WRITE_BEHIND_BATCH_SIZE));
+        setWriteBehindDelay(XmlUtil.elementTimeUnitRead(getChild(WRITE_BEHIND_DELAY_TAG,
+                parent), TimeUnit.NANOSECONDS, DEFAULT_WRITE_BEHIND_DELAY), TimeUnit.NANOSECONDS);
+        setWriteBehindQueueThreshold(contentIntGet(getChild(WRITE_BEHIND_QUEUE_THRESHOLD_TAG,
+                parent), Integer.MAX_VALUE));
+        setWriteBehindRetryDelay(XmlUtil.elementTimeUnitRead(getChild(
+                WRITE_BEHIND_RETRY_DELAY_TAG, parent), TimeUnit.NANOSECONDS,
+                DEFAULT_WRITE_BEHIND_RETRY_DELAY), TimeUnit.NANOSECONDS);
     }
 
     /** {@inheritDoc} */
@@ -194,5 +488,27 @@ public class CacheLoadingConfiguration<K, V> extends AbstractCacheServiceConfigu
         /* Refresh Predicate */
         addTypedElement(doc, parent, REFRESH_PREDICATE_TAG, CacheSPI.DEFAULT_CACHE_BUNDLE, getClass(),
                 "saveOfFilterFailed", refreshSelector);
+
+        /* Rate limit */
+        if (rateLimiter != null) {
+            Element e = XmlUtil.addElement(doc, RATE_LIMIT_TAG, parent);
+            e.setAttribute(RATE_LIMIT_RATE_ATTR, Double.toString(rateLimiter
+                    .getRate(TimeUnit.SECONDS)));
+            e.setAttribute(RATE_LIMIT_BURST_ATTR, Integer.toString(rateLimiter.getBurst()));
+        }
+
+        /* Store */
+        addTypedElement(doc, parent, STORE_TAG, CacheSPI.DEFAULT_CACHE_BUNDLE, getClass(),
+                "saveOfStoreFailed", store);
+
+        /* Write-behind */
+        contentIntSet(doc, parent, WRITE_BEHIND_BATCH_SIZE_TAG, writeBehindBatchSize,
+                DEFAULT_WRITE_BEHIND_BATCH_SIZE);
+        XmlUtil.elementTimeUnitAdd(doc, parent, WRITE_BEHIND_DELAY_TAG, writeBehindDelay,
+                TimeUnit.NANOSECONDS, DEFAULT_WRITE_BEHIND_DELAY);
+        contentIntSet(doc, parent, WRITE_BEHIND_QUEUE_THRESHOLD_TAG, writeBehindQueueThreshold,
+                Integer.MAX_VALUE);
+        XmlUtil.elementTimeUnitAdd(doc, parent, WRITE_BEHIND_RETRY_DELAY_TAG,
+                writeBehindRetryDelay, TimeUnit.NANOSECONDS, DEFAULT_WRITE_BEHIND_RETRY_DELAY);
     }
 }
@@ -0,0 +1,149 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.locking;
+
+import static org.coconut.internal.util.XmlUtil.contentIntGet;
+import static org.coconut.internal.util.XmlUtil.contentIntSet;
+import static org.coconut.internal.util.XmlUtil.getChild;
+
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.spi.AbstractCacheServiceConfiguration;
+import org.coconut.internal.util.XmlUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * This class is used to configure the locking service prior to usage.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ * @see CacheLockingService
+ */
+public class CacheLockingConfiguration<K, V> extends AbstractCacheServiceConfiguration<K, V> {
+
+    /** The short name of this service. */
+    public static final String SERVICE_NAME = "locking";
+
+    /** The default number of locks shared among the keys. */
+    public final static int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** The XML tag for the concurrency level. */
+    private final static String CONCURRENCY_LEVEL_TAG = "concurrency-level";
+
+    /** The XML tag for the lock timeout. */
+    private final static String LOCK_TIMEOUT_TAG = "lock-timeout";
+
+    /** The number of locks shared among the keys. */
+    private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+    /** The maximum time in nanoseconds to wait for a lock. */
+    private long lockTimeout = Long.MAX_VALUE;
+
+    /** Creates a new CacheLockingConfiguration. */
+    public CacheLockingConfiguration() {
+        super(SERVICE_NAME);
+    }
+
+    /**
+     * Returns the number of locks shared among the keys in the cache.
+     *
+     * @return the number of locks shared among the keys in the cache
+     * @see #setConcurrencyLevel(int)
+     */
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    /**
+     * Returns the maximum time to wait for a lock in the specified time unit.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the maximum time to wait for a lock, or {@link Long#MAX_VALUE} if threads
+     *         will wait indefinitely
+     * @see #setLockTimeout(long, TimeUnit)
+     */
+    public long getLockTimeout(TimeUnit unit) {
+        if (lockTimeout == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        } else {
+            return unit.convert(lockTimeout, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sets the number of locks shared among the keys in the cache. The number is rounded
+     * up to the nearest power of two. A higher number reduces the probability that two
+     * threads locking different keys block each other, at the cost of a higher memory
+     * footprint and more expensive locking of the whole cache. The default value is
+     * {@value #DEFAULT_CONCURRENCY_LEVEL}.
+     *
+     * @param concurrencyLevel
+     *            the number of locks shared among the keys in the cache
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified concurrency level is not positive
+     */
+    public CacheLockingConfiguration<K, V> setConcurrencyLevel(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be a positive number, was "
+                    + concurrencyLevel);
+        }
+        this.concurrencyLevel = concurrencyLevel;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time the {@link java.util.concurrent.locks.Lock#lock()} method of
+     * the locks returned by the locking service will wait for a lock. If the lock cannot
+     * be acquired within this time a {@link org.coconut.cache.CacheException} is thrown.
+     * This guards against threads waiting indefinitely for locks that are never released.
+     * The default value is {@link Long#MAX_VALUE}, which means that threads will wait
+     * indefinitely.
+     *
+     * @param timeout
+     *            the maximum time to wait for a lock
+     * @param unit
+     *            the time unit of the specified timeout
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified timeout is not positive
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     */
+    public CacheLockingConfiguration<K, V> setLockTimeout(long timeout, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be a positive number, was "
+                    + timeout);
+        }
+        lockTimeout = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS
+                .convert(timeout, unit);
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void fromXML(Element parent) throws Exception {
+        setConcurrencyLevel(contentIntGet(getChild(CONCURRENCY_LEVEL_TAG, parent),
+                DEFAULT_CONCURRENCY_LEVEL));
+        setLockTimeout(XmlUtil.elementTimeUnitRead(getChild(LOCK_TIMEOUT_TAG, parent),
+                TimeUnit.NANOSECONDS, Long.MAX_VALUE), TimeUnit.NANOSECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void toXML(Document doc, Element parent) {
+        contentIntSet(doc, parent, CONCURRENCY_LEVEL_TAG, concurrencyLevel,
+                DEFAULT_CONCURRENCY_LEVEL);
+        XmlUtil.elementTimeUnitAdd(doc, parent, LOCK_TIMEOUT_TAG, lockTimeout,
+                TimeUnit.NANOSECONDS, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.locking;
+
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheServices;
+
+/**
+ * The locking service is used for making compound operations on a cache, such as
+ * read-modify-write sequences, atomic without synchronizing on the cache instance. The
+ * locks are advisory, the cache does not acquire them itself. So all code that modifies
+ * the entries in question must acquire the relevant lock.
+ * <p>
+ * The locks are striped, a fixed number of read-write locks are shared among all keys.
+ * Two different keys might map to the same lock, so holding the lock for one key might
+ * block a thread trying to acquire the lock for another key. The number of locks is
+ * controlled by {@link CacheLockingConfiguration#setConcurrencyLevel(int)}.
+ * <p>
+ * An instance of this interface can be retrieved by using {@link Cache#getService(Class)}
+ * to look it up.
+ *
+ * <pre>
+ * Cache&lt;?, ?&gt; c = someCache;
+ * CacheLockingService&lt;?, ?&gt; cls = c.getService(CacheLockingService.class);
+ * cls.getEntryLock(someKey);
+ * </pre>
+ *
+ * Or by using {@link CacheServices}
+ *
+ * <pre>
+ * Cache&lt;?, ?&gt; c = someCache;
+ * CacheLockingService&lt;?, ?&gt; cls = c.services().locking();
+ * cls.getEntryLock(someKey);
+ * </pre>
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache containing this service
+ * @param <V>
+ *            the type of mapped values
+ */
+public interface CacheLockingService<K, V> {
+
+    /**
+     * Returns a lock that can be used to lock the whole cache. Acquiring the lock is
+     * equivalent to acquiring the lock of every key in the cache.
+     * <p>
+     * The {@link java.util.concurrent.locks.Lock#newCondition()} method is not supported
+     * by the read or write lock, and any invocation of it will throw an
+     * {@link UnsupportedOperationException}.
+     *
+     * @return a lock that can be used to lock the whole cache
+     */
+    ReadWriteLock getCacheLock();
+
+    /**
+     * Returns a lock that can be used to lock the entry with the specified key. The key
+     * does not need to be mapped to a value in the cache.
+     *
+     * @param key
+     *            the key of the entry to lock
+     * @return a lock that can be used to lock the entry with the specified key
+     * @throws NullPointerException
+     *             if the specified key is <code>null</code>
+     */
+    ReadWriteLock getEntryLock(K key);
+
+    /**
+     * Returns a lock that can be used to lock all the entries with the specified keys at
+     * once. The underlying locks are always acquired in the same order, so using this
+     * method for locking multiple entries avoids the deadlocks that might occur if
+     * threads lock one entry at a time.
+     * <p>
+     * The {@link java.util.concurrent.locks.Lock#newCondition()} method is not supported
+     * by the read or write lock if the keys map to more then one underlying lock, and any
+     * invocation of it will throw an {@link UnsupportedOperationException}.
+     *
+     * @param keys
+     *            the keys of the entries to lock
+     * @return a lock that can be used to lock all the entries with the specified keys
+     * @throws NullPointerException
+     *             if the specified list or any of the keys in the list are
+     *             <code>null</code>
+     */
+    ReadWriteLock getEntryLock(List<? extends K> keys);
+}
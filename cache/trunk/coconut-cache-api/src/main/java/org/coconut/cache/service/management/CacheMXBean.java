@@ -67,4 +67,12 @@ public interface CacheMXBean {
      * {@link org.coconut.cache.Cache#clear()}.
      */
     void clear();
+
+    /**
+     * Writes a snapshot of the entries in the cache to the configured snapshot file.
+     * <p>
+     * Calling this method is equivalent to calling
+     * {@link org.coconut.cache.service.memorystore.MemoryStoreService#saveSnapshot()}.
+     */
+    void saveSnapshot();
 }
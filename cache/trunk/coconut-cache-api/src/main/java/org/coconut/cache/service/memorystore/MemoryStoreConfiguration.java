@@ -10,9 +10,13 @@ import static org.coconut.internal.util.XmlUtil.contentIntGet;
 import static org.coconut.internal.util.XmlUtil.contentIntSet;
 import static org.coconut.internal.util.XmlUtil.contentLongGet;
 import static org.coconut.internal.util.XmlUtil.contentLongSet;
+import static org.coconut.internal.util.XmlUtil.contentStringGet;
 import static org.coconut.internal.util.XmlUtil.getChild;
 import static org.coconut.internal.util.XmlUtil.loadChildObject;
 
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.policy.ReplacementPolicy;
 import org.coconut.cache.policy.paging.ClockPolicy;
@@ -53,6 +57,9 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
     /** The default settings, used when xml-serializing this configuration. */
     private final static MemoryStoreConfiguration<?, ?> DEFAULT = new MemoryStoreConfiguration<Object, Object>();
 
+    /** XML tag for the idle time of entries. */
+    private final static String IDLE_TIME = "idle-time";
+
     /** XML tag for maximum volume. */
     private final static String IS_CACHEABLE_TAG = "isCacheable";
 
@@ -65,9 +72,30 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
     /** XML tag for maximum volume. */
     private final static String MAXIMUM_VOLUME = "max-volume";
 
+    /** XML tag for the size of the near cache. */
+    private final static String NEAR_CACHE_SIZE = "near-cache-size";
+
+    /** XML tag for the maximum staleness of the near cache. */
+    private final static String NEAR_CACHE_STALENESS = "near-cache-staleness";
+
     /** XML tag for policy. */
     private final static String POLICY = "policy";
 
+    /** XML tag for the snapshot file. */
+    private final static String SNAPSHOT_FILE = "snapshot-file";
+
+    /** XML tag for the type of references used for holding values. */
+    private final static String VALUE_REFERENCES = "value-references";
+
+    /** XML tag for whether or not keys are weakly referenced. */
+    private final static String WEAK_KEYS = "weak-keys";
+
+    /** The TimeUnit the idle time and the maximum staleness are stored in. */
+    private final static TimeUnit DEFAULT_TIME_UNIT = TimeUnit.NANOSECONDS;
+
+    /** The time entries can stay in the cache without being accessed in nanoseconds. */
+    private long idleTime = Long.MAX_VALUE;
+
     /** A filter used for filtering what items should be cached. */
     private Predicate<CacheEntry<K, V>> isCacheableFilter;
 
@@ -80,9 +108,24 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
     /** The maximum volume of the cache. */
     private long maximumVolume;
 
+    /** The number of entries each thread can hold in its near cache. */
+    private int nearCacheSize;
+
+    /** The maximum staleness of entries in the near cache in nanoseconds. */
+    private long nearCacheStaleness = Long.MAX_VALUE;
+
     /** The replacement policy used for evicting elements. */
     private ReplacementPolicy<?> replacementPolicy;
 
+    /** The file snapshots of the cache are written to and read from. */
+    private File snapshotFile;
+
+    /** The type of references used for holding values. */
+    private ReferenceType valueReferenceType = ReferenceType.STRONG;
+
+    /** Whether or not keys are weakly referenced. */
+    private boolean weakKeys;
+
     /**
      * Creates a new CacheEvictionConfiguration with default settings.
      */
@@ -90,6 +133,23 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         super(SERVICE_NAME);
     }
 
+    /**
+     * Returns the time an entry can stay in the cache without being accessed before it is
+     * evicted or {@link Long#MAX_VALUE} if entries are never evicted because they are
+     * idle.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the idle time of entries
+     * @see #setIdleTime(long, TimeUnit)
+     */
+    public long getIdleTime(TimeUnit unit) {
+        if (idleTime == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(idleTime, DEFAULT_TIME_UNIT);
+    }
+
     /**
      * Returns the Predicate that determinds if a given key and value should be cached.
      *
@@ -125,6 +185,33 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return maximumVolume;
     }
 
+    /**
+     * Returns the number of entries each thread can hold in its near cache or 0 if the
+     * near cache is disabled.
+     *
+     * @return the number of entries each thread can hold in its near cache
+     * @see #setNearCacheSize(int)
+     */
+    public int getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    /**
+     * Returns the maximum time an entry can be read from the near cache after it was
+     * read from the cache or {@link Long#MAX_VALUE} if there is no limit.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the maximum staleness of entries in the near cache
+     * @see #setNearCacheMaximumStaleness(long, TimeUnit)
+     */
+    public long getNearCacheMaximumStaleness(TimeUnit unit) {
+        if (nearCacheStaleness == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(nearCacheStaleness, DEFAULT_TIME_UNIT);
+    }
+
     /**
      * Returns the configured replacement policy or <tt>null</tt> if none has been
      * configured.
@@ -137,6 +224,28 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return replacementPolicy;
     }
 
+    /**
+     * Returns the file that snapshots of the cache are written to and read from or
+     * <code>null</code> if no snapshot file has been configured.
+     *
+     * @return the configured snapshot file or <code>null</code> if no snapshot file has
+     *         been configured
+     * @see #setSnapshotFile(File)
+     */
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Returns the type of references used for holding the values of the cache.
+     *
+     * @return the type of references used for holding the values of the cache
+     * @see #setValueReferenceType(ReferenceType)
+     */
+    public ReferenceType getValueReferenceType() {
+        return valueReferenceType;
+    }
+
     /**
      * Returns whether or not caching is disabled.
      *
@@ -146,6 +255,17 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return isDisabled;
     }
 
+    /**
+     * Returns whether or not the keys of the cache are weakly referenced.
+     *
+     * @return <code>true</code> if the keys of the cache are weakly referenced,
+     *         otherwise <code>false</code>
+     * @see #setWeakKeys(boolean)
+     */
+    public boolean isWeakKeys() {
+        return weakKeys;
+    }
+
     /**
      * Sets whether or not caching is disabled. If caching is disabled, the cache will not
      * cache any items added. This can sometimes be useful while testing.
@@ -159,6 +279,47 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return this;
     }
 
+    /**
+     * Sets the time an entry can stay in the cache without being accessed. Entries that
+     * have neither been retrieved using one of the <code>get</code> methods of the
+     * cache nor been updated for longer than the idle time are evicted. This is useful
+     * for caches of, for example, user sessions that should be discarded once they are no
+     * longer used. Retrievals answered by the near cache do not count as accesses.
+     * <p>
+     * Idle entries are evicted in small batches by a background task or when
+     * {@link MemoryStoreService#evictIdleElements()} is called. As such an entry might
+     * stay in the cache for a short while after it has become idle.
+     * <p>
+     * The default value is {@link Long#MAX_VALUE}, which means that entries are never
+     * evicted because they are idle.
+     *
+     * @param idleTime
+     *            the idle time or Long.MAX_VALUE if entries should never be evicted
+     *            because they are idle
+     * @param unit
+     *            the time unit of the specified idle time
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified idle time is not positive
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     */
+    public MemoryStoreConfiguration<K, V> setIdleTime(long idleTime, TimeUnit unit) {
+        if (idleTime <= 0) {
+            throw new IllegalArgumentException("idleTime must be greater then 0, was "
+                    + idleTime);
+        } else if (unit == null) {
+            throw new NullPointerException("unit is null");
+        }
+        if (idleTime == Long.MAX_VALUE) {
+            this.idleTime = Long.MAX_VALUE;
+            // don't convert relative to time unit
+        } else {
+            this.idleTime = DEFAULT_TIME_UNIT.convert(idleTime, unit);
+        }
+        return this;
+    }
+
     /**
      * Sets a Predicate that the cache will use to determind if a cache entry can be
      * cached. For example,
@@ -229,6 +390,70 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return this;
     }
 
+    /**
+     * Sets the number of entries each thread can hold in its near cache. The near cache
+     * is a small per-thread cache of recently read entries that is consulted before the
+     * cache itself, avoiding the cost of synchronizing on the cache for keys that are
+     * read repeatedly by the same thread. It is only used by synchronized caches.
+     * <p>
+     * Entries in the near cache are invalidated when an ItemUpdated or ItemDeleted event
+     * is raised for the key. If the event service is not enabled, entries are only
+     * invalidated once they have been in the near cache for longer than the
+     * {@link #setNearCacheMaximumStaleness(long, TimeUnit) maximum staleness}, and the
+     * near cache is not used unless a maximum staleness has been set.
+     * <p>
+     * The default value is 0, which disables the near cache.
+     *
+     * @param size
+     *            the number of entries each thread can hold in its near cache
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified size is negative
+     */
+    public MemoryStoreConfiguration<K, V> setNearCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must be 0 or greater, was " + size);
+        }
+        this.nearCacheSize = size;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time an entry can be read from the near cache after it was read
+     * from the cache. Setting a maximum staleness bounds how long a thread can read an
+     * old value if the event that invalidates the entry has not yet been raised, or if
+     * the event service is not enabled.
+     * <p>
+     * The default value is {@link Long#MAX_VALUE}, which means that entries are only
+     * invalidated by events.
+     *
+     * @param staleness
+     *            the maximum staleness or Long.MAX_VALUE if there is no limit
+     * @param unit
+     *            the time unit of the specified staleness
+     * @return this configuration
+     * @throws IllegalArgumentException
+     *             if the specified staleness is negative
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     */
+    public MemoryStoreConfiguration<K, V> setNearCacheMaximumStaleness(long staleness,
+            TimeUnit unit) {
+        if (staleness < 0) {
+            throw new IllegalArgumentException("staleness must be 0 or greater, was "
+                    + staleness);
+        } else if (unit == null) {
+            throw new NullPointerException("unit is null");
+        }
+        if (staleness == Long.MAX_VALUE) {
+            nearCacheStaleness = Long.MAX_VALUE;
+            // don't convert relative to time unit
+        } else {
+            nearCacheStaleness = DEFAULT_TIME_UNIT.convert(staleness, unit);
+        }
+        return this;
+    }
+
     /**
      * Sets the replacement policy that decides which of the currently held elements are
      * evicted in order to make room for new elements. If no replacement policy is
@@ -260,6 +485,72 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         return this;
     }
 
+    /**
+     * Sets the file that snapshots of the cache are written to and read from. If the file
+     * exists when the cache is started, the entries in it, that have not yet expired, are
+     * loaded into the cache before it is made available to users. A new snapshot can be
+     * written at any time using {@link MemoryStoreService#saveSnapshot()} or the
+     * <code>saveSnapshot</code> operation on
+     * {@link org.coconut.cache.service.management.CacheMXBean}.
+     * <p>
+     * The default value is <code>null</code>, which means that no snapshot is read at
+     * startup.
+     *
+     * @param file
+     *            the snapshot file or <code>null</code> to disable snapshots
+     * @return this configuration
+     */
+    public MemoryStoreConfiguration<K, V> setSnapshotFile(File file) {
+        this.snapshotFile = file;
+        return this;
+    }
+
+    /**
+     * Sets the type of references used for holding the values of the cache. If values are
+     * softly or weakly referenced, the garbage collector can reclaim them when they are
+     * no longer referenced from outside of the cache. Entries whose values have been
+     * reclaimed are no longer returned by the cache, and are removed and counted as
+     * evicted the next time the cache is modified or periodically cleaned.
+     * <p>
+     * Soft references are normally only cleared when the virtual machine is running low on
+     * memory, which makes them useful for caches that should yield to the garbage
+     * collector instead of having a fixed maximum size. Weak references are cleared as
+     * soon as the value is no longer strongly referenced elsewhere.
+     * <p>
+     * The default value is {@link ReferenceType#STRONG}.
+     *
+     * @param type
+     *            the type of references used for holding values
+     * @return this configuration
+     * @throws NullPointerException
+     *             if the specified type is <code>null</code>
+     */
+    public MemoryStoreConfiguration<K, V> setValueReferenceType(ReferenceType type) {
+        if (type == null) {
+            throw new NullPointerException("type is null");
+        }
+        this.valueReferenceType = type;
+        return this;
+    }
+
+    /**
+     * Sets whether or not the keys of the cache are weakly referenced. If keys are weakly
+     * referenced, an entry is removed from the cache once its key is no longer strongly
+     * referenced from outside of the cache. As keys are still compared using
+     * {@link Object#equals(Object)}, this is mostly useful for keys that use identity
+     * equality.
+     * <p>
+     * The default value is <code>false</code>.
+     *
+     * @param weakKeys
+     *            whether or not keys are weakly referenced
+     * @return this configuration
+     */
+    public MemoryStoreConfiguration<K, V> setWeakKeys(boolean weakKeys) {
+        this.weakKeys = weakKeys;
+        return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void fromXML(Element e) throws Exception {
@@ -268,6 +559,20 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         setMaximumSize(contentIntGet(getChild(MAXIMUM_SIZE, e), maximumSize));
         setMaximumVolume(contentLongGet(getChild(MAXIMUM_VOLUME, e), maximumVolume));
         setIsCacheableFilter(loadChildObject(e, IS_CACHEABLE_TAG, Predicate.class));
+        setNearCacheSize(contentIntGet(getChild(NEAR_CACHE_SIZE, e), nearCacheSize));
+        Element staleness = getChild(NEAR_CACHE_STALENESS, e);
+        setNearCacheMaximumStaleness(XmlUtil.elementTimeUnitRead(staleness, DEFAULT_TIME_UNIT,
+                Long.MAX_VALUE), DEFAULT_TIME_UNIT);
+        String file = contentStringGet(getChild(SNAPSHOT_FILE, e), null);
+        setSnapshotFile(file == null ? null : new File(file));
+        String references = contentStringGet(getChild(VALUE_REFERENCES, e), null);
+        if (references != null) {
+            setValueReferenceType(ReferenceType.valueOf(references.toUpperCase()));
+        }
+        setWeakKeys(attributeBooleanGet(e, WEAK_KEYS, false));
+        Element idle = getChild(IDLE_TIME, e);
+        setIdleTime(XmlUtil.elementTimeUnitRead(idle, DEFAULT_TIME_UNIT, Long.MAX_VALUE),
+                DEFAULT_TIME_UNIT);
     }
 
     /** {@inheritDoc} */
@@ -279,6 +584,19 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         contentIntSet(doc, e, MAXIMUM_SIZE, maximumSize, DEFAULT.getMaximumSize());
         addTypedElement(doc, e, IS_CACHEABLE_TAG, CacheSPI.DEFAULT_CACHE_BUNDLE, getClass(),
                 "saveOfIsCacheableFilterFailed", isCacheableFilter);
+        contentIntSet(doc, e, NEAR_CACHE_SIZE, nearCacheSize, DEFAULT.getNearCacheSize());
+        XmlUtil.elementTimeUnitAdd(doc, e, NEAR_CACHE_STALENESS, nearCacheStaleness,
+                DEFAULT_TIME_UNIT, DEFAULT.nearCacheStaleness);
+        if (snapshotFile != null) {
+            XmlUtil.addElementAndSetContent(doc, SNAPSHOT_FILE, e, snapshotFile.getPath());
+        }
+        if (valueReferenceType != DEFAULT.getValueReferenceType()) {
+            XmlUtil.addElementAndSetContent(doc, VALUE_REFERENCES, e, valueReferenceType
+                    .name().toLowerCase());
+        }
+        attributeBooleanSet(e, WEAK_KEYS, weakKeys, false);
+        XmlUtil.elementTimeUnitAdd(doc, e, IDLE_TIME, idleTime, DEFAULT_TIME_UNIT,
+                DEFAULT.idleTime);
     }
 
     ReplacementPolicy getPolicy(Element e) throws Exception {
@@ -337,6 +655,20 @@ public class MemoryStoreConfiguration<K, V> extends AbstractCacheServiceConfigur
         }
     }
 
+    /**
+     * The type of references used for holding the keys or values of a cache.
+     */
+    public enum ReferenceType {
+        /** Entries are held using ordinary strong references. */
+        STRONG,
+
+        /** Entries are held using {@link java.lang.ref.SoftReference}s. */
+        SOFT,
+
+        /** Entries are held using {@link java.lang.ref.WeakReference}s. */
+        WEAK;
+    }
+
 //    static class PredicateReducer<K, V> implements Reducer<CacheEntry<K, V>> {
 //
 //        private final Predicate<CacheEntry<K, V>> predicate = null;
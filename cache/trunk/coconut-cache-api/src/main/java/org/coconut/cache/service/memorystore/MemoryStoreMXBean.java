@@ -95,4 +95,10 @@ public interface MemoryStoreMXBean {
      *             if the specified volume is negative
      */
     void trimToVolume(long volume);
+
+    /**
+     * Evicts all entries that have not been accessed for longer than the configured idle
+     * time.
+     */
+    void evictIdleElements();
 }
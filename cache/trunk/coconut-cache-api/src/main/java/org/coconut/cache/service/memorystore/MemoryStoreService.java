@@ -3,6 +3,8 @@
  */
 package org.coconut.cache.service.memorystore;
 
+import java.io.File;
+
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.CacheServices;
@@ -125,6 +127,16 @@ public interface MemoryStoreService<K, V> {
      */
     void trimToVolume(long volume);
 
+    /**
+     * Evicts all entries that have not been accessed for longer than the configured idle
+     * time. If no idle time has been configured no action is taken.
+     * <p>
+     * If the cache has been shutdown calls to this method is ignored.
+     *
+     * @see MemoryStoreConfiguration#setIdleTime(long, java.util.concurrent.TimeUnit)
+     */
+    void evictIdleElements();
+
     /**
      * Returns whether or not caching is disabled.
      *
@@ -144,6 +156,56 @@ public interface MemoryStoreService<K, V> {
      *            whether or not caching is disabled
      */
      void setDisabled(boolean isDisabled);
+
+    /**
+     * Writes a snapshot of the entries currently held in the cache to the
+     * {@link MemoryStoreConfiguration#setSnapshotFile(File) configured snapshot file}.
+     *
+     * @throws IllegalStateException
+     *             if no snapshot file has been configured
+     * @throws org.coconut.cache.CacheException
+     *             if the snapshot could not be written
+     * @see #saveSnapshot(File)
+     */
+    void saveSnapshot();
+
+    /**
+     * Writes a snapshot of the entries currently held in the cache to the specified file.
+     * The snapshot contains the key, value, expiration time, number of hits, cost, size,
+     * creation time and last update time of each entry. Entries that have expired are not
+     * included.
+     * <p>
+     * The snapshot is written a few entries at a time, so other threads can continue to
+     * use the cache while it is being written. As a consequence, the snapshot is not an
+     * atomic view of the cache. Entries that are added or removed while the snapshot is
+     * written may or may not be included in it.
+     * <p>
+     * The snapshot is first written to a temporary file which, once it has been
+     * completely written, replaces the specified file.
+     *
+     * @param file
+     *            the file to write the snapshot to
+     * @throws NullPointerException
+     *             if the specified file is <code>null</code>
+     * @throws org.coconut.cache.CacheException
+     *             if the snapshot could not be written
+     */
+    void saveSnapshot(File file);
+
+    /**
+     * Loads all the entries in a snapshot previously written with
+     * {@link #saveSnapshot(File)} into the cache. Entries that have expired since the
+     * snapshot was written are skipped.
+     *
+     * @param file
+     *            the file to read the snapshot from
+     * @return the number of entries loaded into the cache
+     * @throws NullPointerException
+     *             if the specified file is <code>null</code>
+     * @throws org.coconut.cache.CacheException
+     *             if the snapshot could not be read or it has been corrupted
+     */
+    int loadSnapshot(File file);
     
     ParallelCache<K, V> getParallelCache();
 }
@@ -35,6 +35,16 @@ public interface CacheStatisticsMXBean {
      */
     long getNumberOfMisses();
 
+    /**
+     * Returns the number of entries that has been evicted from the cache.
+     * <p>
+     * This number is equivalent to that returned by
+     * {@link CacheStatisticsService#getNumberOfEvictions()}.
+     *
+     * @return the number of evicted entries
+     */
+    long getNumberOfEvictions();
+
     /**
      * Return the ratio between hits and misses. This method will return
      * <tt> {@value java.lang.Double#NaN}</tt> if both the number of misses and hits are
@@ -44,9 +54,61 @@ public interface CacheStatisticsMXBean {
      */
     double getHitRatio();
 
+    /**
+     * Return the ratio between hits and misses of the near cache. This method will return
+     * <tt> {@value java.lang.Double#NaN}</tt> if both the number of misses and hits are
+     * equal to zero.
+     * <p>
+     * This number is equivalent to that returned by
+     * {@link CacheStatisticsService#getNearCacheHitStat()}.
+     *
+     * @return the ratio between hits and misses of the near cache.
+     */
+    double getNearCacheHitRatio();
+
+    /**
+     * Returns the time it took to retrieve an element that was already contained in the
+     * cache. The returned array contains the 50th, 90th, 99th and 99.9th percentile of
+     * the time in nanoseconds.
+     *
+     * @return the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds
+     *         spent on cache hits
+     */
+    long[] getHitLatencyPercentiles();
+
+    /**
+     * Returns the time it took to retrieve an element that was <tt>not</tt> already
+     * contained in the cache, including any time spent loading it. The returned array
+     * contains the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds.
+     *
+     * @return the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds
+     *         spent on cache misses
+     */
+    long[] getMissLatencyPercentiles();
+
+    /**
+     * Returns the time it took the cache loader to load an element. The returned array
+     * contains the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds.
+     *
+     * @return the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds
+     *         spent loading elements
+     */
+    long[] getLoadLatencyPercentiles();
+
+    /**
+     * Returns the time it took to evict elements from the cache when it was trimmed,
+     * either explicitly or because the maximum size or volume was reached. The returned
+     * array contains the 50th, 90th, 99th and 99.9th percentile of the time in
+     * nanoseconds.
+     *
+     * @return the 50th, 90th, 99th and 99.9th percentile of the time in nanoseconds
+     *         spent on evictions
+     */
+    long[] getEvictionLatencyPercentiles();
+
     /**
      * Resets the hit ratio. This sets the number of cache hits and cache misses to zero
-     * for the cache.
+     * for the cache, and clears all recorded latencies.
      * <p>
      * This method is equivalent to calling
      * {@link CacheStatisticsService#resetStatistics()}.
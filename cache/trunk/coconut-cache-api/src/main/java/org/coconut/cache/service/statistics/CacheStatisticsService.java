@@ -54,4 +54,30 @@ public interface CacheStatisticsService {
      *             if gathering of statistics is not supported by this cache.
      */
     CacheHitStat getHitStat();
+
+    /**
+     * Returns the current <tt>hit statistics</tt> for the near cache that is consulted
+     * before the cache itself (optional operation). A lookup that misses the near cache
+     * is afterwards counted as a hit or a miss in {@link #getHitStat()}. If no near cache
+     * has been configured the returned statistics will contain zero hits and misses.
+     *
+     * @return the current hit statistics of the near cache
+     * @throws UnsupportedOperationException
+     *             if gathering of statistics is not supported by this cache.
+     * @see org.coconut.cache.service.memorystore.MemoryStoreConfiguration#setNearCacheSize(int)
+     */
+    CacheHitStat getNearCacheHitStat();
+
+    /**
+     * Returns the number of entries that has been evicted from the cache. This includes
+     * entries evicted because the maximum size or volume of the cache was reached, and
+     * entries whose soft or weakly referenced key or value was reclaimed by the garbage
+     * collector.
+     *
+     * @return the number of entries that has been evicted from the cache
+     * @throws UnsupportedOperationException
+     *             if gathering of statistics is not supported by this cache.
+     * @see org.coconut.cache.service.memorystore.MemoryStoreConfiguration#setValueReferenceType(org.coconut.cache.service.memorystore.MemoryStoreConfiguration.ReferenceType)
+     */
+    long getNumberOfEvictions();
 }
@@ -8,6 +8,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
+import org.coconut.core.KeyAffinityExecutor;
 
 /**
  * This class is reponsible for creating {@link ExecutorService}'s that are used to
@@ -47,4 +48,27 @@ public abstract class CacheWorkerManager extends AbstractCacheLifecycle {
     public abstract ScheduledExecutorService getScheduledExecutorService(Object service,
             AttributeMap attributes);
 
+    /**
+     * Returns a KeyAffinityExecutor that can be used to asynchronously execute tasks for
+     * the specified service. Tasks submitted with the same key are executed in order,
+     * one at a time, while tasks with different keys are executed in parallel. This can
+     * be used, for example, to order the loading of values or the delivery of events for
+     * the same key without any global locks.
+     * <p>
+     * The default implementation throws an {@link UnsupportedOperationException}.
+     *
+     * @param service
+     *            the service for which an KeyAffinityExecutor should be returned
+     * @param attributes
+     *            a map of attributes that is passed to the concrete implementation of the
+     *            cache worker manager
+     * @return a KeyAffinityExecutor that can be used to asynchronously execute tasks for
+     *         the specified service
+     * @throws UnsupportedOperationException
+     *             if this worker manager does not support key affinity executors
+     */
+    public KeyAffinityExecutor getKeyAffinityExecutor(Object service, AttributeMap attributes) {
+        throw new UnsupportedOperationException(
+                "This worker manager does not support key affinity executors");
+    }
 }
@@ -9,6 +9,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheServices;
+import org.coconut.core.KeyAffinityExecutor;
 
 /**
  * This is the main interface for scheduling and executing task in a cache at runtime.
@@ -76,4 +77,33 @@ public interface CacheWorkerService {
      * @return a ScheduledExecutorService for the specified service
      */
     ScheduledExecutorService getScheduledExecutorService(Object service, AttributeMap attributes);
+
+    /**
+     * Returns a KeyAffinityExecutor for the specified service. Tasks submitted to the
+     * executor with the same key are executed in order, one at a time.
+     *
+     * @param service
+     *            the service that needs a KeyAffinityExecutor
+     * @return a KeyAffinityExecutor for the specified service
+     * @throws UnsupportedOperationException
+     *             if the configured worker manager does not support key affinity
+     *             executors
+     */
+    KeyAffinityExecutor getKeyAffinityExecutor(Object service);
+
+    /**
+     * Returns a KeyAffinityExecutor for the specified service. Tasks submitted to the
+     * executor with the same key are executed in order, one at a time.
+     *
+     * @param service
+     *            the service that needs a KeyAffinityExecutor
+     * @param attributes
+     *            a map of attributes that can be used by the work service to determind
+     *            what types of executors that should be created
+     * @return a KeyAffinityExecutor for the specified service
+     * @throws UnsupportedOperationException
+     *             if the configured worker manager does not support key affinity
+     *             executors
+     */
+    KeyAffinityExecutor getKeyAffinityExecutor(Object service, AttributeMap attributes);
 }
@@ -12,7 +12,9 @@ import org.coconut.cache.CacheConfiguration;
 import org.coconut.cache.service.event.CacheEventConfiguration;
 import org.coconut.cache.service.exceptionhandling.CacheExceptionHandlingConfiguration;
 import org.coconut.cache.service.expiration.CacheExpirationConfiguration;
+import org.coconut.cache.service.index.CacheIndexConfiguration;
 import org.coconut.cache.service.loading.CacheLoadingConfiguration;
+import org.coconut.cache.service.locking.CacheLockingConfiguration;
 import org.coconut.cache.service.management.CacheManagementConfiguration;
 import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
 import org.coconut.cache.service.servicemanager.CacheServiceManagerConfiguration;
@@ -38,7 +40,8 @@ public final class CacheSPI {
     public final static List<Class<? extends AbstractCacheServiceConfiguration>> DEFAULT_CONFIGURATIONS = Collections
             .unmodifiableList(Arrays.asList(CacheEventConfiguration.class,
                     MemoryStoreConfiguration.class, CacheExceptionHandlingConfiguration.class,
-                    CacheExpirationConfiguration.class, CacheLoadingConfiguration.class,
+                    CacheExpirationConfiguration.class, CacheIndexConfiguration.class,
+                    CacheLoadingConfiguration.class, CacheLockingConfiguration.class,
                     CacheManagementConfiguration.class, CacheServiceManagerConfiguration.class,
                     CacheStatisticsConfiguration.class, CacheWorkerConfiguration.class));
 
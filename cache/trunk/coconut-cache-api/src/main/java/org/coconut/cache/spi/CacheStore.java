@@ -0,0 +1,69 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under 
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.spi;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.coconut.cache.service.loading.CacheLoader;
+
+/**
+ * A CacheStore is a {@link CacheLoader} that can also write modifications of the cache
+ * back to the underlying store. A store is configured using
+ * {@link org.coconut.cache.service.loading.CacheLoadingConfiguration#setStore(CacheStore)},
+ * and is written to asynchronously (write-behind). Modifications are queued and written
+ * in batches using {@link #storeAll(Map)} and {@link #deleteAll(Collection)}, so
+ * implementations should make these methods efficient.
+ * 
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public interface CacheStore<K, V> extends CacheLoader<K, V> {
+
+    /**
+     * Deletes the key for the underlying store.
+     * 
+     * @param key
+     *            the key to delete
+     * @throws Exception
+     *             if the key could not be deleted
+     */
+    void delete(K key) throws Exception;
+
+    /**
+     * Deletes the specified keys from the underlying store.
+     * 
+     * @param keys
+     *            the keys to delete
+     * @throws Exception
+     *             if the keys could not be deleted
+     */
+    void deleteAll(Collection<? extends K> keys) throws Exception;
+
+    /**
+     * Stores the specified key-value pair in the underlying store.
+     * 
+     * @param key
+     *            the key to store
+     * @param value
+     *            the value to store
+     * @throws Exception
+     *             if the key-value pair could not be stored
+     */
+    void store(K key, V value) throws Exception;
+
+    /**
+     * Stores the specified key-value pairs in the underlying store.
+     * 
+     * @param entries
+     *            the key-value pairs to store
+     * @throws Exception
+     *             if the key-value pairs could not be stored
+     */
+    void storeAll(Map<K, V> entries) throws Exception;
+}
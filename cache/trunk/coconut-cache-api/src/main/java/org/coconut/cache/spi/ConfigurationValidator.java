@@ -10,6 +10,7 @@ import java.util.Set;
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheConfiguration;
 import org.coconut.cache.service.management.CacheManagementService;
+import org.coconut.cache.service.worker.CacheWorkerService;
 
 /**
  * This class is used to validate instances of CacheConfiguration at runtime and the given
@@ -67,6 +68,11 @@ public class ConfigurationValidator {
                             + cacheType
                             + "' does not support management (enable via CacheManagementConfiguration.setEnabled())");
         }
+        if (!supportedServices.contains(CacheWorkerService.class)
+                && conf.loading().getStore() != null) {
+            throw new IllegalCacheConfigurationException("class '" + cacheType
+                    + "' does not support writing to a CacheStore (requires a CacheWorkerService)");
+        }
     }
 
     /**
@@ -0,0 +1,827 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.coconut.attribute.Attributes;
+import org.coconut.cache.CacheException;
+import org.coconut.cache.service.loading.CacheLoader;
+import org.coconut.core.Clock;
+import org.coconut.internal.util.CollectionUtils;
+import org.coconut.internal.util.StripedLongCounter;
+import org.coconut.management.annotation.ManagedAttribute;
+
+/**
+ * A bounded concurrent map that transparently loads missing values using a
+ * {@link CacheLoader}. It is intended for small and very frequently accessed lookups
+ * where the services of a full {@link org.coconut.cache.Cache} are not needed.
+ * <p>
+ * Retrievals never block, except while waiting for a value to be loaded. If several
+ * threads request the same missing key at the same time only one of them invokes the
+ * loader, the other threads wait for the result. Only {@link #get(Object)} will trigger
+ * the loader, all other methods behave as those of an ordinary {@link ConcurrentMap}.
+ * <p>
+ * The map is divided into a number of segments by the hash code of the keys, each
+ * segment holding a fixed share of the maximum size. When a segment is full, it evicts
+ * one of its entries using the CLOCK algorithm, which approximates evicting the least
+ * recently used entry without requiring any locks on retrievals. As each segment evicts
+ * on its own, the map might hold slightly less entries than the maximum size if keys are
+ * not distributed evenly between the segments.
+ * <p>
+ * Entries can optionally expire a fixed amount of time after they were added or
+ * updated. Expired entries are not returned, and are removed when they are next
+ * accessed or evicted.
+ * <p>
+ * The number of hits, misses, loads and evictions are always recorded, and can be
+ * monitored by adding the map to a {@link org.coconut.management.ManagedGroup}.
+ * <p>
+ * This map does not allow <tt>null</tt> to be used as a key or value.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by this map
+ * @param <V>
+ *            the type of mapped values
+ */
+@ThreadSafe
+public class ConcurrentLoadingMap<K, V> extends AbstractMap<K, V> implements
+        ConcurrentMap<K, V> {
+
+    /** The maximum number of segments. */
+    static final int MAXIMUM_SEGMENTS = 16;
+
+    /** The entries of the map. */
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /** The values currently being loaded. */
+    private final ConcurrentHashMap<K, FutureTask<V>> loading =
+            new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /** The loader used for loading missing values, or <code>null</code>. */
+    private final CacheLoader<? super K, ? extends V> loader;
+
+    /** The clock used for determining if entries has expired. */
+    private final Clock clock;
+
+    /** The time to live in milliseconds, or Long.MAX_VALUE if entries never expire. */
+    private final long timeToLive;
+
+    /** The segments of the map. */
+    private final Segment<K, V>[] segments;
+
+    /** The shift used for selecting a segment. */
+    private final int segmentShift;
+
+    /** The mask used for selecting a segment. */
+    private final int segmentMask;
+
+    /** The number of hits. */
+    private final StripedLongCounter hits = new StripedLongCounter();
+
+    /** The number of misses. */
+    private final StripedLongCounter misses = new StripedLongCounter();
+
+    /** The number of loads. */
+    private final StripedLongCounter loads = new StripedLongCounter();
+
+    /** The number of evictions. */
+    private final StripedLongCounter evictions = new StripedLongCounter();
+
+    /** The lazily created entry set. */
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Creates a new ConcurrentLoadingMap whose entries never expire.
+     *
+     * @param loader
+     *            the loader used for loading missing values, or <code>null</code> if
+     *            values should never be loaded
+     * @param maximumSize
+     *            the maximum number of entries in the map
+     * @throws IllegalArgumentException
+     *             if the maximum size is not positive
+     */
+    public ConcurrentLoadingMap(CacheLoader<? super K, ? extends V> loader, int maximumSize) {
+        this(loader, maximumSize, Long.MAX_VALUE, TimeUnit.MILLISECONDS, Clock.DEFAULT_CLOCK);
+    }
+
+    /**
+     * Creates a new ConcurrentLoadingMap whose entries expire the specified amount of
+     * time after they have been added or updated.
+     *
+     * @param loader
+     *            the loader used for loading missing values, or <code>null</code> if
+     *            values should never be loaded
+     * @param maximumSize
+     *            the maximum number of entries in the map
+     * @param timeToLive
+     *            the time entries are kept in the map, or {@link Long#MAX_VALUE} if
+     *            entries should never expire
+     * @param unit
+     *            the time unit of the time to live
+     * @throws IllegalArgumentException
+     *             if the maximum size or the time to live is not positive
+     * @throws NullPointerException
+     *             if the specified time unit is <code>null</code>
+     */
+    public ConcurrentLoadingMap(CacheLoader<? super K, ? extends V> loader, int maximumSize,
+            long timeToLive, TimeUnit unit) {
+        this(loader, maximumSize, timeToLive, unit, Clock.DEFAULT_CLOCK);
+    }
+
+    /**
+     * Creates a new ConcurrentLoadingMap whose entries expire the specified amount of
+     * time after they have been added or updated.
+     *
+     * @param loader
+     *            the loader used for loading missing values, or <code>null</code> if
+     *            values should never be loaded
+     * @param maximumSize
+     *            the maximum number of entries in the map
+     * @param timeToLive
+     *            the time entries are kept in the map, or {@link Long#MAX_VALUE} if
+     *            entries should never expire
+     * @param unit
+     *            the time unit of the time to live
+     * @param clock
+     *            the clock used for determining if entries has expired
+     * @throws IllegalArgumentException
+     *             if the maximum size or the time to live is not positive
+     * @throws NullPointerException
+     *             if the specified time unit or clock is <code>null</code>
+     */
+    public ConcurrentLoadingMap(CacheLoader<? super K, ? extends V> loader, int maximumSize,
+            long timeToLive, TimeUnit unit, Clock clock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, was "
+                    + maximumSize);
+        } else if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive, was "
+                    + timeToLive);
+        } else if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (clock == null) {
+            throw new NullPointerException("clock is null");
+        }
+        this.loader = loader;
+        this.clock = clock;
+        this.timeToLive = timeToLive == Long.MAX_VALUE ? Long.MAX_VALUE : unit
+                .toMillis(timeToLive);
+        int shift = 0;
+        int count = 1;
+        while (count < MAXIMUM_SEGMENTS && count << 1 <= maximumSize) {
+            count <<= 1;
+            shift++;
+        }
+        segmentShift = 32 - shift;
+        segmentMask = count - 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<K, V>(this, maximumSize / count
+                    + (i < maximumSize % count ? 1 : 0));
+        }
+        map = new ConcurrentHashMap<K, Node<K, V>>(Math.min(maximumSize, 1 << 16), 0.75f,
+                count);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped. If no value is mapped,
+     * the value is loaded by the loader and added to the map before it is returned.
+     * Threads requesting a key that is currently being loaded will wait for the load to
+     * complete.
+     *
+     * @param key
+     *            the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or <code>null</code> if
+     *         no value was mapped and the loader could not load one
+     * @throws NullPointerException
+     *             if the specified key is <code>null</code>
+     * @throws CacheException
+     *             if the loader failed with a checked exception, or if the thread was
+     *             interrupted while waiting for the value to be loaded
+     */
+    @Override
+    public V get(Object key) {
+        Segment<K, V> s = segmentFor(key);
+        Node<K, V> n = map.get(key);
+        if (n != null) {
+            if (!isExpired(n)) {
+                n.touch();
+                hits.increment();
+                return n.value;
+            }
+            s.expired(n);
+        }
+        misses.increment();
+        return loader == null ? null : load((K) key);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped without loading it, if it
+     * is not mapped. Calling this method does not affect the statistics of the map or
+     * the order in which entries are evicted.
+     *
+     * @param key
+     *            the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or <code>null</code> if
+     *         no value is mapped
+     * @throws NullPointerException
+     *             if the specified key is <code>null</code>
+     */
+    public V peek(Object key) {
+        Node<K, V> n = map.get(key);
+        return n == null || isExpired(n) ? null : n.value;
+    }
+
+    /**
+     * Returns whether or not a value is currently being loaded for the specified key.
+     *
+     * @param key
+     *            the key to check
+     * @return <code>true</code> if a value is being loaded for the specified key,
+     *         otherwise <code>false</code>
+     */
+    public boolean isLoading(Object key) {
+        return loading.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return peek(key) != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value is null");
+        }
+        return segmentFor(key).put(key, value, false);
+    }
+
+    /** {@inheritDoc} */
+    public V putIfAbsent(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value is null");
+        }
+        return segmentFor(key).put(key, value, true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V remove(Object key) {
+        return segmentFor(key).remove(key, null);
+    }
+
+    /** {@inheritDoc} */
+    public boolean remove(Object key, Object value) {
+        return value != null && segmentFor(key).remove(key, value) != null;
+    }
+
+    /** {@inheritDoc} */
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value is null");
+        }
+        return segmentFor(key).replace(key, null, value);
+    }
+
+    /** {@inheritDoc} */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException("oldValue or newValue is null");
+        }
+        return segmentFor(key).replace(key, oldValue, newValue) != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Returns the number of entries in this map. As expired entries are only removed
+     * when they are accessed or evicted, the returned number might include entries that
+     * has expired.
+     *
+     * @return the number of entries in this map
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    /**
+     * Returns the maximum number of entries in this map.
+     *
+     * @return the maximum number of entries in this map
+     */
+    @ManagedAttribute(description = "The maximum number of entries in the map")
+    public int getMaximumSize() {
+        int size = 0;
+        for (Segment<K, V> s : segments) {
+            size += s.maximumSize;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of retrievals where the value was already mapped.
+     *
+     * @return the number of hits
+     */
+    @ManagedAttribute(description = "The number of hits")
+    public long getNumberOfHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of retrievals where the value was not mapped.
+     *
+     * @return the number of misses
+     */
+    @ManagedAttribute(description = "The number of misses")
+    public long getNumberOfMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of values that has been loaded by the loader and added to the
+     * map.
+     *
+     * @return the number of loaded values
+     */
+    @ManagedAttribute(description = "The number of loaded values")
+    public long getNumberOfLoads() {
+        return loads.get();
+    }
+
+    /**
+     * Returns the number of entries that has been evicted because the map was full or
+     * because they had expired.
+     *
+     * @return the number of evicted entries
+     */
+    @ManagedAttribute(description = "The number of evicted or expired entries")
+    public long getNumberOfEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the ratio between hits and all retrievals. Returns {@link Double#NaN} if
+     * no retrievals has been made.
+     *
+     * @return the ratio between hits and all retrievals
+     */
+    @ManagedAttribute(description = "The hit ratio")
+    public double getHitRatio() {
+        long hits = getNumberOfHits();
+        long total = hits + getNumberOfMisses();
+        return total == 0 ? Double.NaN : (double) hits / total;
+    }
+
+    /**
+     * Loads the value for the specified key, or waits for another thread that is already
+     * loading it.
+     *
+     * @param key
+     *            the key to load the value for
+     * @return the loaded value, or <code>null</code> if no value could be loaded
+     */
+    private V load(final K key) {
+        FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+            public V call() throws Exception {
+                // another thread might have finished loading it since we checked
+                V value = peek(key);
+                if (value == null) {
+                    value = loader.load(key, Attributes.EMPTY_ATTRIBUTE_MAP);
+                    if (value != null) {
+                        value = segmentFor(key).loaded(key, value);
+                    }
+                }
+                return value;
+            }
+        });
+        FutureTask<V> existing = loading.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                // the value is added to the map before the task is removed
+                loading.remove(key, task);
+            }
+            existing = task;
+        }
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheException("Interrupted while waiting for value of " + key
+                    + " to be loaded", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheException("Could not load value for " + key, cause);
+        }
+    }
+
+    /**
+     * Returns whether or not the specified node has expired.
+     *
+     * @param n
+     *            the node to check
+     * @return <code>true</code> if the node has expired, otherwise <code>false</code>
+     */
+    boolean isExpired(Node<K, V> n) {
+        long expirationTime = n.expirationTime;
+        return expirationTime != Long.MAX_VALUE
+                && Clock.isPassed(clock.timestamp(), expirationTime);
+    }
+
+    /**
+     * Returns the time at which an entry that is added or updated now expires.
+     *
+     * @return the time at which an entry that is added or updated now expires
+     */
+    long newExpirationTime() {
+        if (timeToLive == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        long time = clock.timestamp() + timeToLive;
+        return time < 0 ? Long.MAX_VALUE : time;
+    }
+
+    /**
+     * Returns the segment that the specified key belongs to.
+     *
+     * @param key
+     *            the key to find the segment for
+     * @return the segment that the specified key belongs to
+     * @throws NullPointerException
+     *             if the specified key is <code>null</code>
+     */
+    Segment<K, V> segmentFor(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        int h = key.hashCode();
+        // same supplemental hash function as ConcurrentHashMap
+        h += h << 15 ^ 0xffffcd7d;
+        h ^= h >>> 10;
+        h += h << 3;
+        h ^= h >>> 6;
+        h += (h << 2) + (h << 14);
+        h ^= h >>> 16;
+        return segments[h >>> segmentShift & segmentMask];
+    }
+
+    /**
+     * An entry in the map. The value and expiration time can be read without locking,
+     * the list pointers are guarded by the lock of the segment.
+     */
+    static final class Node<K, V> {
+        /** The key of the entry. */
+        final K key;
+
+        /** The value of the entry. */
+        volatile V value;
+
+        /** The time the entry expires, or Long.MAX_VALUE if it never expires. */
+        volatile long expirationTime;
+
+        /** Whether or not the entry has been accessed since the clock hand passed. */
+        volatile boolean isReferenced;
+
+        /** The previous node in the list of the segment. */
+        Node<K, V> prev;
+
+        /** The next node in the list of the segment. */
+        Node<K, V> next;
+
+        Node(K key, V value, long expirationTime) {
+            this.key = key;
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+
+        /** Marks the node as recently used. */
+        void touch() {
+            // avoid writing to the shared field if it is already set
+            if (!isReferenced) {
+                isReferenced = true;
+            }
+        }
+    }
+
+    /**
+     * A segment of the map. All modifications of the keys of a segment are made while
+     * holding its lock.
+     */
+    static final class Segment<K, V> extends ReentrantLock {
+        /** serialVersionUID. */
+        private static final long serialVersionUID = 6263011564307614958L;
+
+        /** The map this segment belongs to. */
+        private final ConcurrentLoadingMap<K, V> owner;
+
+        /** The maximum number of entries in this segment. */
+        final int maximumSize;
+
+        /** The sentinel of the list of entries, the eldest entry is first. */
+        private final Node<K, V> head = new Node<K, V>(null, null, 0);
+
+        /** The number of entries in this segment. */
+        private int count;
+
+        Segment(ConcurrentLoadingMap<K, V> owner, int maximumSize) {
+            this.owner = owner;
+            this.maximumSize = maximumSize;
+            head.prev = head;
+            head.next = head;
+        }
+
+        V put(K key, V value, boolean onlyIfAbsent) {
+            lock();
+            try {
+                Node<K, V> n = owner.map.get(key);
+                if (n != null && owner.isExpired(n)) {
+                    removeExpired(n);
+                    n = null;
+                }
+                if (n == null) {
+                    add(new Node<K, V>(key, value, owner.newExpirationTime()));
+                    return null;
+                }
+                V old = n.value;
+                if (!onlyIfAbsent) {
+                    n.value = value;
+                    n.expirationTime = owner.newExpirationTime();
+                    n.touch();
+                }
+                return old;
+            } finally {
+                unlock();
+            }
+        }
+
+        V loaded(K key, V value) {
+            lock();
+            try {
+                Node<K, V> n = owner.map.get(key);
+                if (n != null && owner.isExpired(n)) {
+                    removeExpired(n);
+                    n = null;
+                }
+                if (n != null) {
+                    return n.value; // added by the user while loading
+                }
+                owner.loads.increment();
+                add(new Node<K, V>(key, value, owner.newExpirationTime()));
+                return value;
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove(Object key, Object value) {
+            lock();
+            try {
+                Node<K, V> n = owner.map.get(key);
+                if (n == null || value != null && !value.equals(n.value)) {
+                    return null;
+                } else if (owner.isExpired(n)) {
+                    removeExpired(n);
+                    return null;
+                }
+                owner.map.remove(key);
+                unlink(n);
+                return n.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        V replace(K key, V oldValue, V newValue) {
+            lock();
+            try {
+                Node<K, V> n = owner.map.get(key);
+                if (n == null || oldValue != null && !oldValue.equals(n.value)) {
+                    return null;
+                } else if (owner.isExpired(n)) {
+                    removeExpired(n);
+                    return null;
+                }
+                V old = n.value;
+                n.value = newValue;
+                n.expirationTime = owner.newExpirationTime();
+                n.touch();
+                return old;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                for (Node<K, V> n = head.next; n != head; n = n.next) {
+                    owner.map.remove(n.key);
+                }
+                head.prev = head;
+                head.next = head;
+                count = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Removes the specified node if it is still mapped, after it was found to be
+         * expired without holding the lock.
+         */
+        void expired(Node<K, V> n) {
+            lock();
+            try {
+                if (owner.map.get(n.key) == n && owner.isExpired(n)) {
+                    removeExpired(n);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        private void add(Node<K, V> n) {
+            owner.map.put(n.key, n);
+            n.prev = head.prev;
+            n.next = head;
+            head.prev.next = n;
+            head.prev = n;
+            if (++count > maximumSize) {
+                evict();
+            }
+        }
+
+        /** Evicts a single entry using the CLOCK algorithm. */
+        private void evict() {
+            // bounded, as readers might mark entries again while we are sweeping
+            for (int chances = count; ; chances--) {
+                Node<K, V> n = head.next;
+                if (chances > 0 && n.isReferenced && !owner.isExpired(n)) {
+                    // give it a second chance
+                    n.isReferenced = false;
+                    unlink(n);
+                    count++;
+                    n.prev = head.prev;
+                    n.next = head;
+                    head.prev.next = n;
+                    head.prev = n;
+                } else {
+                    owner.map.remove(n.key);
+                    unlink(n);
+                    owner.evictions.increment();
+                    return;
+                }
+            }
+        }
+
+        private void removeExpired(Node<K, V> n) {
+            owner.map.remove(n.key);
+            unlink(n);
+            owner.evictions.increment();
+        }
+
+        private void unlink(Node<K, V> n) {
+            n.prev.next = n.next;
+            n.next.prev = n.prev;
+            n.prev = null;
+            n.next = null;
+            count--;
+        }
+    }
+
+    /** The entry set of the map. */
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object v = e.getKey() == null ? null : peek(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return e.getKey() != null
+                    && ConcurrentLoadingMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return ConcurrentLoadingMap.this.size();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void clear() {
+            ConcurrentLoadingMap.this.clear();
+        }
+    }
+
+    /** An iterator over the entries of the map, skipping expired entries. */
+    class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        /** The iterator over the nodes of the map. */
+        private final Iterator<Node<K, V>> iterator = map.values().iterator();
+
+        /** The next entry to return. */
+        private Map.Entry<K, V> next;
+
+        /** The last entry returned. */
+        private Map.Entry<K, V> last;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && iterator.hasNext()) {
+                Node<K, V> n = iterator.next();
+                V value = n.value;
+                if (!isExpired(n)) {
+                    next = new CollectionUtils.SimpleImmutableEntry<K, V>(n.key, value);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /** {@inheritDoc} */
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            advance();
+            return last;
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentLoadingMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A unix-like cron expression, such as <tt>0 3 * * *</tt> for every night at 3:00am or
+ * <tt>*&#47;15 9-17 * * MON-FRI</tt> for every quarter of an hour during office hours.
+ * <p>
+ * An expression consists of five fields separated by white space: minute (0-59), hour
+ * (0-23), day of month (1-31), month (1-12 or JAN-DEC) and day of week (0-7 or SUN-SAT,
+ * where both 0 and 7 is Sunday). Each field is either <tt>*</tt>, a single value, a
+ * range such as <tt>1-5</tt> or a comma separated list of these. A value, range or
+ * <tt>*</tt> can be followed by a step, for example <tt>*&#47;10</tt> for every tenth
+ * value or <tt>10&#47;20</tt> for every twentieth value starting from 10. As with cron,
+ * if both the day of month and the day of week are restricted, that is they do not
+ * start with <tt>*</tt>, a day matches if either of the fields matches.
+ * <p>
+ * The expressions <tt>@yearly</tt>, <tt>@annually</tt>, <tt>@monthly</tt>,
+ * <tt>@weekly</tt>, <tt>@daily</tt>, <tt>@midnight</tt> and <tt>@hourly</tt> are also
+ * supported.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+@Immutable
+public final class CronExpression implements Serializable {
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = -4096127372562468717L;
+
+    /** The number of years to search for a matching time, before giving up. */
+    static final int MAXIMUM_YEARS = 8;
+
+    /** The names of the months, indexed by the value of the month. */
+    private static final String[] MONTHS = { null, "JAN", "FEB", "MAR", "APR", "MAY", "JUN",
+            "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+    /** The names of the days of the week, indexed by the value of the day. */
+    private static final String[] DAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+    /** The expression as specified by the user. */
+    private final String expression;
+
+    /** The time zone the expression is evaluated in. */
+    private final TimeZone timeZone;
+
+    /** The minutes that match, bit n is set if minute n matches. */
+    private final long minutes;
+
+    /** The hours that match. */
+    private final int hours;
+
+    /** The days of the month that match. */
+    private final long daysOfMonth;
+
+    /** The months that match. */
+    private final int months;
+
+    /** The days of the week that match, Sunday is 0. */
+    private final int daysOfWeek;
+
+    /** Whether or not the day of month field does not start with <tt>*</tt>. */
+    private final boolean isDayOfMonthRestricted;
+
+    /** Whether or not the day of week field does not start with <tt>*</tt>. */
+    private final boolean isDayOfWeekRestricted;
+
+    /**
+     * Creates a new CronExpression that is evaluated in the default time zone.
+     *
+     * @param expression
+     *            the cron expression
+     * @throws IllegalArgumentException
+     *             if the specified expression is not a valid cron expression
+     * @throws NullPointerException
+     *             if the specified expression is <code>null</code>
+     */
+    public CronExpression(String expression) {
+        this(expression, TimeZone.getDefault());
+    }
+
+    /**
+     * Creates a new CronExpression.
+     *
+     * @param expression
+     *            the cron expression
+     * @param timeZone
+     *            the time zone the expression is evaluated in
+     * @throws IllegalArgumentException
+     *             if the specified expression is not a valid cron expression
+     * @throws NullPointerException
+     *             if the specified expression or time zone is <code>null</code>
+     */
+    public CronExpression(String expression, TimeZone timeZone) {
+        if (expression == null) {
+            throw new NullPointerException("expression is null");
+        } else if (timeZone == null) {
+            throw new NullPointerException("timeZone is null");
+        }
+        this.expression = expression;
+        this.timeZone = (TimeZone) timeZone.clone();
+        String[] fields = expand(expression.trim()).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Exactly five fields are needed, was "
+                    + fields.length + " in '" + expression + "'");
+        }
+        minutes = parse(fields[0], 0, 59, null);
+        hours = (int) parse(fields[1], 0, 23, null);
+        daysOfMonth = parse(fields[2], 1, 31, null);
+        months = (int) parse(fields[3], 1, 12, MONTHS);
+        long days = parse(fields[4], 0, 7, DAYS);
+        daysOfWeek = (int) (days | days >>> 7) & 0x7f; // 7 is also Sunday
+        isDayOfMonthRestricted = !fields[2].startsWith("*");
+        isDayOfWeekRestricted = !fields[4].startsWith("*");
+    }
+
+    /**
+     * Returns a CronExpression matching midnight every first of January.
+     *
+     * @return a CronExpression matching midnight every first of January
+     */
+    public static CronExpression yearly() {
+        return new CronExpression("@yearly");
+    }
+
+    /**
+     * Returns a CronExpression matching midnight every first day of the month.
+     *
+     * @return a CronExpression matching midnight every first day of the month
+     */
+    public static CronExpression monthly() {
+        return new CronExpression("@monthly");
+    }
+
+    /**
+     * Returns a CronExpression matching midnight every Sunday.
+     *
+     * @return a CronExpression matching midnight every Sunday
+     */
+    public static CronExpression weekly() {
+        return new CronExpression("@weekly");
+    }
+
+    /**
+     * Returns a CronExpression matching midnight every day.
+     *
+     * @return a CronExpression matching midnight every day
+     */
+    public static CronExpression daily() {
+        return new CronExpression("@daily");
+    }
+
+    /**
+     * Returns a CronExpression matching the start of every hour.
+     *
+     * @return a CronExpression matching the start of every hour
+     */
+    public static CronExpression hourly() {
+        return new CronExpression("@hourly");
+    }
+
+    /**
+     * Returns the time zone this expression is evaluated in.
+     *
+     * @return the time zone this expression is evaluated in
+     */
+    public TimeZone getTimeZone() {
+        return (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * Returns the first time after the specified time that matches this expression.
+     *
+     * @param time
+     *            the time in milliseconds since the epoch
+     * @return the first time after the specified time that matches this expression, or
+     *         {@link Long#MAX_VALUE} if no time within the next years matches, for
+     *         example, for <tt>0 0 30 2 *</tt>
+     */
+    public long next(long time) {
+        Calendar c = Calendar.getInstance(timeZone);
+        c.setTimeInMillis(time);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        c.add(Calendar.MINUTE, 1);
+        int lastYear = c.get(Calendar.YEAR) + MAXIMUM_YEARS;
+        while (c.get(Calendar.YEAR) <= lastYear) {
+            if ((months & 1 << c.get(Calendar.MONTH) + 1) == 0) {
+                c.set(Calendar.DAY_OF_MONTH, 1);
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.set(Calendar.MINUTE, 0);
+                c.add(Calendar.MONTH, 1);
+            } else if (!isDayMatching(c)) {
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.set(Calendar.MINUTE, 0);
+                c.add(Calendar.DAY_OF_MONTH, 1);
+            } else if ((hours & 1 << c.get(Calendar.HOUR_OF_DAY)) == 0) {
+                c.set(Calendar.MINUTE, 0);
+                c.add(Calendar.HOUR_OF_DAY, 1);
+            } else if ((minutes & 1L << c.get(Calendar.MINUTE)) == 0) {
+                c.add(Calendar.MINUTE, 1);
+            } else {
+                return c.getTimeInMillis();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Returns whether or not the day of the specified calendar matches this expression.
+     */
+    private boolean isDayMatching(Calendar c) {
+        boolean dayOfMonth = (daysOfMonth & 1L << c.get(Calendar.DAY_OF_MONTH)) != 0;
+        boolean dayOfWeek = (daysOfWeek & 1 << c.get(Calendar.DAY_OF_WEEK) - 1) != 0;
+        if (isDayOfMonthRestricted && isDayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+        return dayOfMonth && dayOfWeek;
+    }
+
+    /**
+     * Indicates whether the specified expression is a valid cron expression.
+     *
+     * @param expression
+     *            the expression to evaluate
+     * @return <tt>true</tt> if the expression is a valid cron expression, otherwise
+     *         false
+     * @throws NullPointerException
+     *             if the specified expression is <tt>null</tt>
+     */
+    public static boolean isValidExpression(String expression) {
+        try {
+            new CronExpression(expression);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the predefined expressions with the fields they stand for.
+     */
+    private static String expand(String expression) {
+        if (expression.equals("@yearly") || expression.equals("@annually")) {
+            return "0 0 1 1 *";
+        } else if (expression.equals("@monthly")) {
+            return "0 0 1 * *";
+        } else if (expression.equals("@weekly")) {
+            return "0 0 * * 0";
+        } else if (expression.equals("@daily") || expression.equals("@midnight")) {
+            return "0 0 * * *";
+        } else if (expression.equals("@hourly")) {
+            return "0 * * * *";
+        }
+        return expression;
+    }
+
+    /**
+     * Parses a single field of an expression.
+     *
+     * @param field
+     *            the field to parse
+     * @param min
+     *            the minimum value of the field
+     * @param max
+     *            the maximum value of the field
+     * @param names
+     *            the names that can be used instead of values, or <code>null</code>
+     * @return the matching values, bit n is set if value n matches
+     */
+    private static long parse(String field, int min, int max, String[] names) {
+        long bits = 0;
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = value(part.substring(slash + 1), 1, max, null);
+                part = part.substring(0, slash);
+            }
+            int from = min;
+            int to = max;
+            if (!part.equals("*")) {
+                int dash = part.indexOf('-');
+                if (dash >= 0) {
+                    from = value(part.substring(0, dash), min, max, names);
+                    to = value(part.substring(dash + 1), min, max, names);
+                    if (to < from) {
+                        throw new IllegalArgumentException("Illegal range '" + part + "'");
+                    }
+                } else {
+                    from = value(part, min, max, names);
+                    to = slash >= 0 ? max : from;
+                }
+            }
+            for (int i = from; i <= to; i += step) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Parses a single value or name of a field.
+     */
+    private static int value(String value, int min, int max, String[] names) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (value.equalsIgnoreCase(names[i])) {
+                    return i;
+                }
+            }
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal value '" + value + "'");
+        }
+        if (result < min || result > max) {
+            throw new IllegalArgumentException("Value must be between " + min + " and " + max
+                    + ", was " + result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,551 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheServices;
+import org.coconut.cache.service.expiration.CacheExpirationService;
+import org.coconut.cache.service.loading.CacheLoadingService;
+import org.coconut.cache.service.memorystore.MemoryStoreService;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.coconut.core.Clock;
+import org.coconut.management.annotation.ManagedAttribute;
+
+/**
+ * Runs maintenance tasks, such as trimming, purging expired entries, refreshing or taking
+ * snapshots of caches, according to {@link CronExpression cron expressions}.
+ * <p>
+ * A single scheduler is normally shared by all the caches in an application. To avoid
+ * that the maintenance of many caches is started at the same time, for example at the
+ * top of every hour, each run of a task is delayed by a random amount of time up to the
+ * configured maximum jitter. And no more than the configured maximum number of tasks are
+ * run concurrently, tasks that become due while this limit has been reached are queued
+ * until another task has finished. If a task is still queued or running when it becomes
+ * due again, that run is skipped.
+ * <p>
+ * The tasks are run by the specified {@link ScheduledExecutorService}, for example, the
+ * one returned by {@link org.coconut.cache.service.worker.CacheWorkerService}. The
+ * attributes of a scheduler can be monitored by adding it to a
+ * {@link org.coconut.management.ManagedGroup}.
+ *
+ * <pre>
+ * MaintenanceScheduler ms = new MaintenanceScheduler(ses, 2, 5, TimeUnit.MINUTES);
+ * ms.scheduleTrim(cache, 1000, new CronExpression(&quot;0 * * * *&quot;));
+ * ms.scheduleSnapshot(cache, CronExpression.daily());
+ * </pre>
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+@ThreadSafe
+public class MaintenanceScheduler {
+
+    /** The executor used for scheduling and running tasks. */
+    private final ScheduledExecutorService executor;
+
+    /** The clock used for determining when tasks are due. */
+    private final Clock clock;
+
+    /** The maximum number of tasks that can run concurrently. */
+    private final int maximumConcurrentTasks;
+
+    /** The maximum jitter in milliseconds. */
+    private final long maximumJitter;
+
+    /** Limits the number of tasks that are running concurrently. */
+    private final Semaphore permits;
+
+    /** Tasks that are due, but waiting for another task to finish. */
+    private final Queue<ScheduledTask> queue = new ConcurrentLinkedQueue<ScheduledTask>();
+
+    /** All tasks that have been scheduled and not cancelled. */
+    private final List<ScheduledTask> tasks = new CopyOnWriteArrayList<ScheduledTask>();
+
+    /** Used for calculating the jitter. */
+    private final Random random = new Random();
+
+    /** The number of runs that have completed. */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** The number of runs that failed with an exception. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** The number of runs that have been skipped, because the previous run was pending. */
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Creates a new MaintenanceScheduler.
+     *
+     * @param executor
+     *            the executor used for scheduling and running tasks
+     * @param maximumConcurrentTasks
+     *            the maximum number of tasks that can run concurrently
+     * @param maximumJitter
+     *            the maximum time each run of a task is delayed by
+     * @param unit
+     *            the time unit of the maximum jitter
+     * @throws IllegalArgumentException
+     *             if the maximum number of concurrent tasks is not positive or the
+     *             maximum jitter is negative
+     * @throws NullPointerException
+     *             if the specified executor or time unit is <code>null</code>
+     */
+    public MaintenanceScheduler(ScheduledExecutorService executor, int maximumConcurrentTasks,
+            long maximumJitter, TimeUnit unit) {
+        this(executor, maximumConcurrentTasks, maximumJitter, unit, Clock.DEFAULT_CLOCK);
+    }
+
+    /**
+     * Creates a new MaintenanceScheduler that uses the specified clock.
+     *
+     * @param executor
+     *            the executor used for scheduling and running tasks
+     * @param maximumConcurrentTasks
+     *            the maximum number of tasks that can run concurrently
+     * @param maximumJitter
+     *            the maximum time each run of a task is delayed by
+     * @param unit
+     *            the time unit of the maximum jitter
+     * @param clock
+     *            the clock used for determining when tasks are due
+     * @throws IllegalArgumentException
+     *             if the maximum number of concurrent tasks is not positive or the
+     *             maximum jitter is negative
+     * @throws NullPointerException
+     *             if the specified executor, time unit or clock is <code>null</code>
+     */
+    public MaintenanceScheduler(ScheduledExecutorService executor, int maximumConcurrentTasks,
+            long maximumJitter, TimeUnit unit, Clock clock) {
+        if (executor == null) {
+            throw new NullPointerException("executor is null");
+        } else if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (clock == null) {
+            throw new NullPointerException("clock is null");
+        } else if (maximumConcurrentTasks <= 0) {
+            throw new IllegalArgumentException("maximumConcurrentTasks must be positive, was "
+                    + maximumConcurrentTasks);
+        } else if (maximumJitter < 0) {
+            throw new IllegalArgumentException("maximumJitter must be 0 or greater, was "
+                    + maximumJitter);
+        }
+        this.executor = executor;
+        this.clock = clock;
+        this.maximumConcurrentTasks = maximumConcurrentTasks;
+        this.maximumJitter = unit.toMillis(maximumJitter);
+        this.permits = new Semaphore(maximumConcurrentTasks);
+    }
+
+    /**
+     * Returns the maximum number of tasks that can run concurrently.
+     *
+     * @return the maximum number of tasks that can run concurrently
+     */
+    @ManagedAttribute(description = "The maximum number of tasks that can run concurrently")
+    public int getMaximumConcurrentTasks() {
+        return maximumConcurrentTasks;
+    }
+
+    /**
+     * Returns the maximum time each run of a task is delayed by.
+     *
+     * @param unit
+     *            the time unit of the returned value
+     * @return the maximum time each run of a task is delayed by
+     */
+    public long getMaximumJitter(TimeUnit unit) {
+        return unit.convert(maximumJitter, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of runs of tasks that have completed, including those that
+     * failed.
+     *
+     * @return the number of runs of tasks that have completed
+     */
+    @ManagedAttribute(description = "The number of runs of tasks that have completed")
+    public long getNumberOfCompletedRuns() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of runs of tasks that failed with an exception.
+     *
+     * @return the number of runs of tasks that failed with an exception
+     */
+    @ManagedAttribute(description = "The number of runs of tasks that failed")
+    public long getNumberOfFailedRuns() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of runs of tasks that have been skipped, because the previous
+     * run of the task was still queued or running.
+     *
+     * @return the number of runs of tasks that have been skipped
+     */
+    @ManagedAttribute(description = "The number of runs of tasks that have been skipped")
+    public long getNumberOfSkippedRuns() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the number of tasks that are due, but waiting for other tasks to finish.
+     *
+     * @return the number of tasks that are waiting for other tasks to finish
+     */
+    @ManagedAttribute(description = "The number of tasks waiting for other tasks to finish")
+    public int getNumberOfQueuedTasks() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of tasks that are currently running.
+     *
+     * @return the number of tasks that are currently running
+     */
+    @ManagedAttribute(description = "The number of tasks that are currently running")
+    public int getNumberOfRunningTasks() {
+        return maximumConcurrentTasks - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of tasks that have been scheduled and not cancelled.
+     *
+     * @return the number of tasks that have been scheduled and not cancelled
+     */
+    @ManagedAttribute(description = "The number of tasks that have been scheduled")
+    public int getNumberOfTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * Schedules the specified task to run at the times matching the specified expression.
+     *
+     * @param task
+     *            the task to run
+     * @param cron
+     *            the expression determining when the task runs
+     * @return a handle that can be used for cancelling the task
+     * @throws NullPointerException
+     *             if the specified task or expression is <code>null</code>
+     */
+    public ScheduledTask schedule(Runnable task, CronExpression cron) {
+        if (task == null) {
+            throw new NullPointerException("task is null");
+        } else if (cron == null) {
+            throw new NullPointerException("cron is null");
+        }
+        ScheduledTask st = new ScheduledTask(task, cron);
+        tasks.add(st);
+        st.scheduleNext();
+        return st;
+    }
+
+    /**
+     * Schedules trimming the specified cache to the specified size.
+     *
+     * @param cache
+     *            the cache to trim
+     * @param size
+     *            the number of elements to trim the cache down to
+     * @param cron
+     *            the expression determining when the cache is trimmed
+     * @return a handle that can be used for cancelling the task
+     * @throws IllegalArgumentException
+     *             if the specified size is negative or the cache does not support
+     *             {@link MemoryStoreService}
+     * @throws NullPointerException
+     *             if the specified cache or expression is <code>null</code>
+     * @see MemoryStoreService#trimToSize(int)
+     */
+    public ScheduledTask scheduleTrim(Cache<?, ?> cache, final int size, CronExpression cron) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size cannot be a negative number, was " + size);
+        }
+        final MemoryStoreService<?, ?> service = services(cache).memoryStore();
+        return schedule(new Runnable() {
+            public void run() {
+                service.trimToSize(size);
+            }
+        }, cron);
+    }
+
+    /**
+     * Schedules purging all expired entries from the specified cache.
+     *
+     * @param cache
+     *            the cache to purge
+     * @param cron
+     *            the expression determining when the cache is purged
+     * @return a handle that can be used for cancelling the task
+     * @throws IllegalArgumentException
+     *             if the cache does not support {@link CacheExpirationService}
+     * @throws NullPointerException
+     *             if the specified cache or expression is <code>null</code>
+     * @see CacheExpirationService#purgeExpired()
+     */
+    public ScheduledTask schedulePurge(Cache<?, ?> cache, CronExpression cron) {
+        final CacheExpirationService<?, ?> service = services(cache).expiration();
+        return schedule(new Runnable() {
+            public void run() {
+                service.purgeExpired();
+            }
+        }, cron);
+    }
+
+    /**
+     * Schedules reloading all the entries of the specified cache.
+     *
+     * @param cache
+     *            the cache to refresh
+     * @param cron
+     *            the expression determining when the cache is refreshed
+     * @return a handle that can be used for cancelling the task
+     * @throws IllegalArgumentException
+     *             if the cache does not support {@link CacheLoadingService}
+     * @throws NullPointerException
+     *             if the specified cache or expression is <code>null</code>
+     * @see CacheLoadingService#forceLoadAll()
+     */
+    public ScheduledTask scheduleRefreshAll(Cache<?, ?> cache, CronExpression cron) {
+        final CacheLoadingService<?, ?> service = services(cache).loading();
+        return schedule(new Runnable() {
+            public void run() {
+                service.forceLoadAll();
+            }
+        }, cron);
+    }
+
+    /**
+     * Schedules writing a snapshot of the specified cache to its configured snapshot
+     * file.
+     *
+     * @param cache
+     *            the cache to take snapshots of
+     * @param cron
+     *            the expression determining when snapshots are taken
+     * @return a handle that can be used for cancelling the task
+     * @throws IllegalArgumentException
+     *             if the cache does not support {@link MemoryStoreService}
+     * @throws NullPointerException
+     *             if the specified cache or expression is <code>null</code>
+     * @see MemoryStoreService#saveSnapshot()
+     */
+    public ScheduledTask scheduleSnapshot(Cache<?, ?> cache, CronExpression cron) {
+        final MemoryStoreService<?, ?> service = services(cache).memoryStore();
+        return schedule(new Runnable() {
+            public void run() {
+                service.saveSnapshot();
+            }
+        }, cron);
+    }
+
+    /**
+     * Schedules resetting the statistics of the specified cache.
+     *
+     * @param cache
+     *            the cache whose statistics should be reset
+     * @param cron
+     *            the expression determining when the statistics are reset
+     * @return a handle that can be used for cancelling the task
+     * @throws IllegalArgumentException
+     *             if the cache does not support {@link CacheStatisticsService}
+     * @throws NullPointerException
+     *             if the specified cache or expression is <code>null</code>
+     * @see CacheStatisticsService#resetStatistics()
+     */
+    public ScheduledTask scheduleStatisticsReset(Cache<?, ?> cache, CronExpression cron) {
+        final CacheStatisticsService service = services(cache).statistics();
+        return schedule(new Runnable() {
+            public void run() {
+                service.resetStatistics();
+            }
+        }, cron);
+    }
+
+    /**
+     * Cancels all tasks. Tasks that are currently running are allowed to finish.
+     */
+    public void cancelAll() {
+        for (ScheduledTask task : tasks) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Starts running queued tasks while the maximum number of concurrent tasks has not
+     * been reached.
+     */
+    void drain() {
+        while (!queue.isEmpty() && permits.tryAcquire()) {
+            final ScheduledTask task = queue.poll();
+            if (task == null) {
+                permits.release();
+            } else {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        task.runNow();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns a random jitter between 0 and the maximum jitter.
+     */
+    long jitter() {
+        if (maximumJitter == 0) {
+            return 0;
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (maximumJitter + 1));
+        }
+    }
+
+    /**
+     * Returns the services of the specified cache.
+     */
+    private static CacheServices<?, ?> services(Cache<?, ?> cache) {
+        if (cache == null) {
+            throw new NullPointerException("cache is null");
+        }
+        return cache.services();
+    }
+
+    /**
+     * A task that has been scheduled with a MaintenanceScheduler.
+     */
+    public final class ScheduledTask {
+
+        /** The task to run. */
+        private final Runnable task;
+
+        /** The expression determining when the task runs. */
+        private final CronExpression cron;
+
+        /** Whether or not the task is queued or running. */
+        private final AtomicBoolean isPending = new AtomicBoolean();
+
+        /** Whether or not the task has been cancelled. */
+        private volatile boolean isCancelled;
+
+        /** The time the task is next due, or the time it was last due. */
+        private long nextTime;
+
+        /** The scheduled next run of the task. */
+        private ScheduledFuture<?> future;
+
+        ScheduledTask(Runnable task, CronExpression cron) {
+            this.task = task;
+            this.cron = cron;
+        }
+
+        /**
+         * Cancels this task. If the task is currently running it is allowed to finish.
+         */
+        public synchronized void cancel() {
+            isCancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+            tasks.remove(this);
+        }
+
+        /**
+         * Returns the expression determining when this task runs.
+         *
+         * @return the expression determining when this task runs
+         */
+        public CronExpression getCronExpression() {
+            return cron;
+        }
+
+        /**
+         * Returns the next time this task is due, not including any jitter.
+         *
+         * @return the next time this task is due in milliseconds since the epoch, or
+         *         {@link Long#MAX_VALUE} if the task will not run again
+         */
+        public synchronized long getNextTime() {
+            return isCancelled ? Long.MAX_VALUE : nextTime;
+        }
+
+        /**
+         * Returns whether or not this task has been cancelled.
+         *
+         * @return whether or not this task has been cancelled
+         */
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        /**
+         * Schedules the next run of this task.
+         */
+        synchronized void scheduleNext() {
+            if (!isCancelled) {
+                long now = clock.timestamp();
+                // never run twice for the same time, even if the clock is behind
+                nextTime = cron.next(Math.max(now, nextTime));
+                if (nextTime != Long.MAX_VALUE) {
+                    future = executor.schedule(new Runnable() {
+                        public void run() {
+                            due();
+                        }
+                    }, nextTime - now + jitter(), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        /**
+         * Invoked when this task is due.
+         */
+        void due() {
+            scheduleNext();
+            if (isCancelled) {
+                return;
+            } else if (!isPending.compareAndSet(false, true)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            queue.add(this);
+            drain();
+        }
+
+        /**
+         * Runs this task, after a permit has been acquired.
+         */
+        void runNow() {
+            try {
+                if (!isCancelled) {
+                    task.run();
+                }
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                throw e;
+            } finally {
+                completed.incrementAndGet();
+                isPending.set(false);
+                permits.release();
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,620 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.service.memorystore.MemoryStoreService;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.coconut.management.annotation.ManagedAttribute;
+import org.coconut.management.annotation.ManagedOperation;
+
+/**
+ * Adjusts the maximum size and volume of a number of caches according to the heap usage
+ * of the virtual machine.
+ * <p>
+ * When the heap usage reaches the high threshold the limits of all registered caches are
+ * shrunk, so that in total roughly the fraction of the cached data needed to bring the
+ * heap usage back between the low and the high threshold is evicted. The reduction is
+ * distributed according to the value of each cache, which is its hit ratio multiplied by
+ * the cost it was registered with: caches with a low value are shrunk more than caches
+ * with a high value, and no cache is shrunk by more than half at a time. When the heap
+ * usage falls below the low threshold the limits are relaxed step by step until they are
+ * back at the limits the caches had when they were registered.
+ * <p>
+ * The heap usage is sampled every time {@link #run()} is invoked, normally at a fixed
+ * rate by a {@link java.util.concurrent.ScheduledExecutorService}. The usage is read
+ * from the tenured heap memory pool as it was after the last garbage collection, so
+ * garbage that has not yet been collected is not mistaken for memory pressure. After
+ * {@link #start()} has been called the heap is also sampled as soon as the virtual
+ * machine reports that the usage of a heap memory pool has exceeded the high threshold
+ * after a garbage collection.
+ * <p>
+ * All attributes and decisions of a controller can be monitored by adding it to a
+ * {@link org.coconut.management.ManagedGroup}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+@ThreadSafe
+public class MemoryPressureController implements NotificationListener, Runnable {
+
+    /** The default heap usage below which the limits of the caches are relaxed. */
+    public static final double DEFAULT_LOW_THRESHOLD = 0.7;
+
+    /** The default heap usage at which the limits of the caches are shrunk. */
+    public static final double DEFAULT_HIGH_THRESHOLD = 0.85;
+
+    /** The default fraction the limits are relaxed by at a time. */
+    public static final double DEFAULT_RELAX_FACTOR = 0.1;
+
+    /** The maximum fraction a single cache is shrunk by at a time. */
+    static final double MAXIMUM_SHRINK = 0.5;
+
+    /** Used for reading the heap usage and receiving threshold notifications. */
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    /** The heap memory pool holding long lived objects, or <code>null</code>. */
+    private final MemoryPoolMXBean tenuredPool = findTenuredPool();
+
+    /** The registered caches, caches are compared by identity since they are maps. */
+    private final List<Registration> caches = new ArrayList<Registration>();
+
+    /** The heap usage below which limits are relaxed. */
+    private double lowThreshold;
+
+    /** The heap usage at which limits are shrunk. */
+    private double highThreshold;
+
+    /** The fraction the limits are relaxed by at a time. */
+    private double relaxFactor = DEFAULT_RELAX_FACTOR;
+
+    /** The heap usage the last time the heap was sampled. */
+    private double lastHeapUsage = Double.NaN;
+
+    /** A description of the last decision made. */
+    private String lastDecision = "None";
+
+    /** The number of times the caches have been shrunk. */
+    private long numberOfShrinks;
+
+    /** The number of times the caches have been relaxed. */
+    private long numberOfRelaxations;
+
+    /** Whether or not this controller listens for threshold notifications. */
+    private boolean isStarted;
+
+    /**
+     * Creates a new MemoryPressureController with the default thresholds.
+     */
+    public MemoryPressureController() {
+        this(DEFAULT_LOW_THRESHOLD, DEFAULT_HIGH_THRESHOLD);
+    }
+
+    /**
+     * Creates a new MemoryPressureController.
+     *
+     * @param lowThreshold
+     *            the fraction of the maximum heap size below which the limits of the
+     *            caches are relaxed
+     * @param highThreshold
+     *            the fraction of the maximum heap size at which the limits of the caches
+     *            are shrunk
+     * @throws IllegalArgumentException
+     *             if the low threshold is not positive, or if the high threshold is not
+     *             greater than the low threshold, or if the high threshold is greater
+     *             than 1
+     */
+    public MemoryPressureController(double lowThreshold, double highThreshold) {
+        setThresholds(lowThreshold, highThreshold);
+    }
+
+    /**
+     * Registers a cache with a cost of 1.
+     *
+     * @param cache
+     *            the cache to register
+     * @see #register(Cache, double)
+     */
+    public void register(Cache<?, ?> cache) {
+        register(cache, 1);
+    }
+
+    /**
+     * Registers a cache whose limits should be adjusted by this controller. The current
+     * maximum size and volume of the cache are the limits the cache is relaxed to when
+     * there is no memory pressure. The cache must support {@link MemoryStoreService}. If
+     * it does not support {@link CacheStatisticsService} its hit ratio is considered to
+     * be 0.
+     *
+     * @param cache
+     *            the cache to register
+     * @param cost
+     *            the relative cost of recreating the elements of the cache, caches with a
+     *            high cost are shrunk less than caches with a low cost
+     * @throws IllegalArgumentException
+     *             if the cache has already been registered or if the cost is negative
+     * @throws NullPointerException
+     *             if the specified cache is <code>null</code>
+     */
+    public synchronized void register(Cache<?, ?> cache, double cost) {
+        if (cache == null) {
+            throw new NullPointerException("cache is null");
+        } else if (cost < 0 || Double.isNaN(cost)) {
+            throw new IllegalArgumentException("cost must be 0 or greater, was " + cost);
+        } else if (indexOf(cache) >= 0) {
+            throw new IllegalArgumentException("cache has already been registered");
+        }
+        CacheStatisticsService statistics = null;
+        try {
+            statistics = cache.getService(CacheStatisticsService.class);
+        } catch (IllegalArgumentException ignore) {/* statistics is not supported */}
+        caches.add(new Registration(cache, cache.getService(MemoryStoreService.class),
+                statistics, cost));
+    }
+
+    /**
+     * Unregisters a cache and restores the limits it had when it was registered.
+     *
+     * @param cache
+     *            the cache to unregister
+     * @return whether or not the cache was registered
+     */
+    public synchronized boolean unregister(Cache<?, ?> cache) {
+        int index = indexOf(cache);
+        if (index < 0) {
+            return false;
+        }
+        Registration r = caches.remove(index);
+        r.memory.setMaximumSize(r.baseSize);
+        r.memory.setMaximumVolume(r.baseVolume);
+        return true;
+    }
+
+    /**
+     * Starts listening for memory threshold notifications. The collection usage
+     * threshold of all heap memory pools that support it is set to the high threshold of
+     * this controller. Since the thresholds are shared by the whole virtual machine only
+     * one controller should be started at a time.
+     */
+    public synchronized void start() {
+        if (!isStarted) {
+            updatePoolThresholds();
+            ((NotificationEmitter) memory).addNotificationListener(this, null, null);
+            isStarted = true;
+        }
+    }
+
+    /**
+     * Stops listening for memory threshold notifications.
+     */
+    public synchronized void stop() {
+        if (isStarted) {
+            try {
+                ((NotificationEmitter) memory).removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignore) {/* ignore */}
+            isStarted = false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)
+                || MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)) {
+            run();
+        }
+    }
+
+    /**
+     * Samples the heap usage and adjusts the limits of the registered caches.
+     */
+    @ManagedOperation(description = "Samples the heap usage and adjusts the limits of the caches")
+    public void run() {
+        adjust(getCurrentHeapUsage());
+    }
+
+    /**
+     * Adjusts the limits of the registered caches according to the specified heap
+     * usage.
+     *
+     * @param heapUsage
+     *            the used fraction of the maximum heap size
+     */
+    public synchronized void adjust(double heapUsage) {
+        lastHeapUsage = heapUsage;
+        if (heapUsage >= highThreshold) {
+            shrink(heapUsage);
+        } else if (heapUsage <= lowThreshold) {
+            relax();
+        }
+    }
+
+    /**
+     * Shrinks the limits of the registered caches.
+     *
+     * @param heapUsage
+     *            the used fraction of the maximum heap size
+     */
+    private void shrink(double heapUsage) {
+        if (caches.isEmpty()) {
+            return;
+        }
+        // the fraction of the cached data to release to get back between the thresholds
+        double reduction = (heapUsage - (lowThreshold + highThreshold) / 2) / heapUsage;
+        double[] values = new double[caches.size()];
+        double sumValues = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = caches.get(i).value();
+            sumValues += values[i];
+        }
+        double meanValue = sumValues / values.length;
+        double[] weights = new double[values.length];
+        double sumWeights = 0;
+        for (int i = 0; i < values.length; i++) {
+            weights[i] = meanValue == 0 ? 1 : 1 / (1 + values[i] / meanValue);
+            sumWeights += weights[i];
+        }
+        int shrunk = 0;
+        for (int i = 0; i < values.length; i++) {
+            double fraction = Math.min(MAXIMUM_SHRINK, reduction * weights[i] * values.length
+                    / sumWeights);
+            if (caches.get(i).shrink(fraction)) {
+                shrunk++;
+            }
+        }
+        numberOfShrinks++;
+        lastDecision = "Shrunk " + shrunk + " of " + values.length + " caches by an average of "
+                + Math.round(reduction * 100) + "% at a heap usage of "
+                + Math.round(heapUsage * 100) + "%";
+    }
+
+    /**
+     * Relaxes the limits of the registered caches.
+     */
+    private void relax() {
+        int relaxed = 0;
+        for (Registration r : caches) {
+            if (r.relax(relaxFactor)) {
+                relaxed++;
+            }
+        }
+        if (relaxed > 0) {
+            numberOfRelaxations++;
+            lastDecision = "Relaxed " + relaxed + " of " + caches.size() + " caches";
+        }
+    }
+
+    /**
+     * Returns the index of the registration of the specified cache.
+     *
+     * @param cache
+     *            the cache to look for
+     * @return the index of the registration of the specified cache, or -1 if the cache
+     *         has not been registered
+     */
+    private int indexOf(Cache<?, ?> cache) {
+        for (int i = 0; i < caches.size(); i++) {
+            if (caches.get(i).cache == cache) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the used fraction of the maximum heap size. If the tenured memory pool is
+     * known, this is the fraction of the pool that was used after the last garbage
+     * collection. Otherwise it is the current usage of the whole heap.
+     *
+     * @return the used fraction of the maximum heap size
+     */
+    double getCurrentHeapUsage() {
+        MemoryUsage usage = tenuredPool == null ? null : tenuredPool.getCollectionUsage();
+        if (usage == null) {
+            usage = memory.getHeapMemoryUsage();
+        } else if (usage.getMax() < 0) {
+            // the collection usage does not always include the maximum size of the pool
+            usage = new MemoryUsage(usage.getInit(), usage.getUsed(), usage.getCommitted(),
+                    tenuredPool.getUsage().getMax());
+        }
+        long max = usage.getMax() < 0 ? usage.getCommitted() : usage.getMax();
+        return (double) usage.getUsed() / max;
+    }
+
+    /**
+     * Returns the heap memory pool holding long lived objects. This is the only heap pool
+     * that supports both a usage threshold and a collection usage threshold.
+     *
+     * @return the tenured heap memory pool, or <code>null</code> if it could not be found
+     */
+    static MemoryPoolMXBean findTenuredPool() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported()) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the collection usage threshold of all heap memory pools that supports it to
+     * the high threshold of this controller.
+     */
+    private void updatePoolThresholds() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * highThreshold));
+            }
+        }
+    }
+
+    /**
+     * Returns the heap usage the last time the heap was sampled.
+     *
+     * @return the heap usage the last time the heap was sampled, or NaN if it has not been
+     *         sampled yet
+     */
+    @ManagedAttribute(description = "The used fraction of the heap the last time it was sampled")
+    public synchronized double getHeapUsage() {
+        return lastHeapUsage;
+    }
+
+    /**
+     * Returns the heap usage at which the limits of the caches are shrunk.
+     *
+     * @return the heap usage at which the limits of the caches are shrunk
+     */
+    @ManagedAttribute(description = "The used fraction of the heap at which caches are shrunk")
+    public synchronized double getHighThreshold() {
+        return highThreshold;
+    }
+
+    /**
+     * Returns a description of the last decision made by this controller.
+     *
+     * @return a description of the last decision made by this controller
+     */
+    @ManagedAttribute(description = "A description of the last adjustment of the caches")
+    public synchronized String getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Returns the heap usage below which the limits of the caches are relaxed.
+     *
+     * @return the heap usage below which the limits of the caches are relaxed
+     */
+    @ManagedAttribute(description = "The used fraction of the heap below which caches are relaxed")
+    public synchronized double getLowThreshold() {
+        return lowThreshold;
+    }
+
+    /**
+     * Returns the number of registered caches.
+     *
+     * @return the number of registered caches
+     */
+    @ManagedAttribute(description = "The number of caches adjusted by this controller")
+    public synchronized int getNumberOfCaches() {
+        return caches.size();
+    }
+
+    /**
+     * Returns the number of times the limits of the caches have been relaxed.
+     *
+     * @return the number of times the limits of the caches have been relaxed
+     */
+    @ManagedAttribute(description = "The number of times the caches have been relaxed")
+    public synchronized long getNumberOfRelaxations() {
+        return numberOfRelaxations;
+    }
+
+    /**
+     * Returns the number of times the limits of the caches have been shrunk.
+     *
+     * @return the number of times the limits of the caches have been shrunk
+     */
+    @ManagedAttribute(description = "The number of times the caches have been shrunk")
+    public synchronized long getNumberOfShrinks() {
+        return numberOfShrinks;
+    }
+
+    /**
+     * Returns the fraction the limits of the caches are relaxed by at a time.
+     *
+     * @return the fraction the limits of the caches are relaxed by at a time
+     */
+    @ManagedAttribute(description = "The fraction the limits of the caches are relaxed by at a time")
+    public synchronized double getRelaxFactor() {
+        return relaxFactor;
+    }
+
+    /**
+     * Sets the fraction the limits of the caches are relaxed by at a time. The default
+     * value is {@value #DEFAULT_RELAX_FACTOR}.
+     *
+     * @param relaxFactor
+     *            the fraction the limits of the caches are relaxed by at a time
+     * @throws IllegalArgumentException
+     *             if the specified factor is not positive
+     */
+    @ManagedAttribute(description = "The fraction the limits of the caches are relaxed by at a time")
+    public synchronized void setRelaxFactor(double relaxFactor) {
+        if (!(relaxFactor > 0)) {
+            throw new IllegalArgumentException("relaxFactor must be greater than 0, was "
+                    + relaxFactor);
+        }
+        this.relaxFactor = relaxFactor;
+    }
+
+    /**
+     * Sets the thresholds of this controller.
+     *
+     * @param lowThreshold
+     *            the fraction of the maximum heap size below which the limits of the
+     *            caches are relaxed
+     * @param highThreshold
+     *            the fraction of the maximum heap size at which the limits of the caches
+     *            are shrunk
+     * @throws IllegalArgumentException
+     *             if the low threshold is not positive, or if the high threshold is not
+     *             greater than the low threshold, or if the high threshold is greater
+     *             than 1
+     */
+    public synchronized void setThresholds(double lowThreshold, double highThreshold) {
+        if (!(lowThreshold > 0)) {
+            throw new IllegalArgumentException("lowThreshold must be greater than 0, was "
+                    + lowThreshold);
+        } else if (!(highThreshold > lowThreshold)) {
+            throw new IllegalArgumentException(
+                    "highThreshold must be greater than lowThreshold, was " + highThreshold);
+        } else if (highThreshold > 1) {
+            throw new IllegalArgumentException("highThreshold must be 1 or less, was "
+                    + highThreshold);
+        }
+        this.lowThreshold = lowThreshold;
+        this.highThreshold = highThreshold;
+        if (isStarted) {
+            updatePoolThresholds();
+        }
+    }
+
+    /**
+     * A registered cache.
+     */
+    static final class Registration {
+        /** The registered cache. */
+        final Cache<?, ?> cache;
+
+        /** The memory store service of the cache. */
+        final MemoryStoreService<?, ?> memory;
+
+        /** The statistics service of the cache, or <code>null</code>. */
+        final CacheStatisticsService statistics;
+
+        /** The relative cost of the cache. */
+        final double cost;
+
+        /** The maximum size of the cache when it was registered. */
+        final int baseSize;
+
+        /** The maximum volume of the cache when it was registered. */
+        final long baseVolume;
+
+        /**
+         * Creates a new Registration.
+         *
+         * @param cache
+         *            the registered cache
+         * @param memory
+         *            the memory store service of the cache
+         * @param statistics
+         *            the statistics service of the cache, or <code>null</code>
+         * @param cost
+         *            the relative cost of the cache
+         */
+        Registration(Cache<?, ?> cache, MemoryStoreService<?, ?> memory,
+                CacheStatisticsService statistics, double cost) {
+            this.cache = cache;
+            this.memory = memory;
+            this.statistics = statistics;
+            this.cost = cost;
+            this.baseSize = memory.getMaximumSize();
+            this.baseVolume = memory.getMaximumVolume();
+        }
+
+        /**
+         * Returns the value of the cache, its hit ratio multiplied by its cost.
+         *
+         * @return the value of the cache
+         */
+        double value() {
+            if (statistics == null) {
+                return 0;
+            }
+            float ratio = statistics.getHitStat().getHitRatio();
+            return Float.isNaN(ratio) ? 0 : ratio * cost;
+        }
+
+        /**
+         * Shrinks the limits of the cache and evicts the elements exceeding the new
+         * limits. If the cache has no limit the current size or volume of the cache is
+         * shrunk. A limit is never shrunk below 1.
+         *
+         * @param fraction
+         *            the fraction to shrink the limits by
+         * @return whether or not any limit was changed
+         */
+        boolean shrink(double fraction) {
+            boolean changed = false;
+            int size = memory.getMaximumSize();
+            if (size == Integer.MAX_VALUE) {
+                size = cache.size();
+            }
+            // read before trimming the size, which also lowers the volume of the cache
+            long volume = memory.getMaximumVolume();
+            if (volume == Long.MAX_VALUE) {
+                volume = cache.volume();
+            }
+            int newSize = Math.max(1, (int) (size * (1 - fraction)));
+            if (newSize < size) {
+                memory.setMaximumSize(newSize);
+                // the cache would otherwise not evict anything until the next put
+                memory.trimToSize(newSize);
+                changed = true;
+            }
+            long newVolume = Math.max(1, (long) (volume * (1 - fraction)));
+            if (newVolume < volume) {
+                memory.setMaximumVolume(newVolume);
+                memory.trimToVolume(newVolume);
+                changed = true;
+            }
+            return changed;
+        }
+
+        /**
+         * Relaxes the limits of the cache towards the limits it had when it was
+         * registered.
+         *
+         * @param factor
+         *            the fraction to relax the limits by
+         * @return whether or not any limit was changed
+         */
+        boolean relax(double factor) {
+            boolean changed = false;
+            int size = memory.getMaximumSize();
+            if (size < baseSize) {
+                double newSize = Math.max(size + 1, Math.ceil(size * (1 + factor)));
+                memory.setMaximumSize(newSize >= baseSize ? baseSize : (int) newSize);
+                changed = true;
+            }
+            long volume = memory.getMaximumVolume();
+            if (volume < baseVolume) {
+                double newVolume = Math.max(volume + 1, Math.ceil(volume * (1 + factor)));
+                memory.setMaximumVolume(newVolume >= baseVolume ? baseVolume : (long) newVolume);
+                changed = true;
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.index;
+
+import static org.coconut.cache.spi.XmlConfiguratorTest.reloadService;
+import static org.coconut.operations.Mappers.MAP_ENTRY_TO_KEY_MAPPER;
+import static org.coconut.operations.Mappers.MAP_ENTRY_TO_VALUE_MAPPER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.coconut.attribute.Attributes;
+import org.coconut.attribute.common.CostAttribute;
+import org.coconut.cache.CacheEntry;
+import org.coconut.operations.Mappers;
+import org.coconut.operations.Ops.Mapper;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CacheIndexConfiguration}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class CacheIndexConfigurationTest {
+
+    private CacheIndexConfiguration<Integer, String> conf;
+
+    @Before
+    public void setUp() {
+        conf = new CacheIndexConfiguration<Integer, String>();
+    }
+
+    @Test
+    public void testInitial() {
+        assertEquals(CacheIndexConfiguration.SERVICE_NAME, conf.getServiceName());
+        assertFalse(conf.hasIndexes());
+        assertTrue(conf.getHashIndexes().isEmpty());
+        assertTrue(conf.getSortedIndexes().isEmpty());
+    }
+
+    @Test
+    public void indexes() {
+        assertEquals(conf, conf.addHashIndex(MAP_ENTRY_TO_VALUE_MAPPER));
+        assertEquals(conf, conf.addSortedIndex(MAP_ENTRY_TO_KEY_MAPPER));
+        assertTrue(conf.hasIndexes());
+        assertEquals(Collections.singletonList(MAP_ENTRY_TO_VALUE_MAPPER), conf
+                .getHashIndexes());
+        assertEquals(Collections.singletonList(MAP_ENTRY_TO_KEY_MAPPER), conf
+                .getSortedIndexes());
+    }
+
+    @Test
+    public void attributeIndex() {
+        conf.addSortedIndex(CostAttribute.INSTANCE);
+        Mapper<CacheEntry<Integer, String>, Double> m = Mappers.compoundMapper(
+                Attributes.WITHATTRIBUTES_TO_ATTRIBUTES_MAPPER, CostAttribute.INSTANCE.map());
+        assertEquals(Arrays.asList(m), conf.getSortedIndexes());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void addHashIndexNPE() {
+        conf.addHashIndex((Mapper) null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addIndexTwiceIAE() {
+        conf.addHashIndex(MAP_ENTRY_TO_KEY_MAPPER);
+        conf.addSortedIndex(MAP_ENTRY_TO_KEY_MAPPER);
+    }
+
+    @Test
+    public void indexesXML() throws Exception {
+        conf = reloadService(conf);
+        assertFalse(conf.hasIndexes());
+        conf.addHashIndex(new ValueLength());
+        conf.addSortedIndex(new ValueLength2());
+        conf.addSortedIndex(CostAttribute.INSTANCE);
+        conf = reloadService(conf);
+        assertEquals(1, conf.getHashIndexes().size());
+        assertTrue(conf.getHashIndexes().get(0) instanceof ValueLength);
+        assertEquals(1, conf.getSortedIndexes().size());
+        assertTrue(conf.getSortedIndexes().get(0) instanceof ValueLength2);
+    }
+
+    public static class ValueLength implements Mapper<CacheEntry<Integer, String>, Integer> {
+        public Integer map(CacheEntry<Integer, String> t) {
+            return t.getValue().length();
+        }
+    }
+
+    public static class ValueLength2 extends ValueLength {}
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.CacheEntry;
+import org.coconut.core.RateLimiter;
 import org.coconut.operations.Predicates;
 import org.coconut.operations.Ops.Predicate;
 import org.junit.Before;
@@ -118,6 +119,25 @@ public class CacheLoadingConfigurationTest {
         assertNull(conf.getLoader());
     }
 
+    @Test
+    public void testRateLimiter() {
+        RateLimiter rl = new RateLimiter(10, TimeUnit.SECONDS, 5);
+        assertNull(conf.getRateLimiter());
+        assertEquals(conf, conf.setRateLimiter(rl));
+        assertEquals(rl, conf.getRateLimiter());
+    }
+
+    @Test
+    public void testRateLimiterXML() throws Exception {
+        conf = reloadService(conf);
+        assertNull(conf.getRateLimiter());
+
+        conf.setRateLimiter(new RateLimiter(10, TimeUnit.SECONDS, 5));
+        conf = reloadService(conf);
+        assertEquals(10, conf.getRateLimiter().getRate(TimeUnit.SECONDS), 0.0001);
+        assertEquals(5, conf.getRateLimiter().getBurst());
+    }
+
     public static class LoadableFilter implements Predicate<CacheEntry<Integer, String>> {
         public boolean evaluate(CacheEntry<Integer, String> element) {
             return false;
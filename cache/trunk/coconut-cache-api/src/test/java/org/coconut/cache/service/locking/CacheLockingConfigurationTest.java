@@ -0,0 +1,77 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.service.locking;
+
+import static org.coconut.cache.spi.XmlConfiguratorTest.reloadService;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CacheLockingConfiguration}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class CacheLockingConfigurationTest {
+
+    private CacheLockingConfiguration<Integer, String> conf;
+
+    @Before
+    public void setUp() {
+        conf = new CacheLockingConfiguration<Integer, String>();
+    }
+
+    @Test
+    public void testInitial() {
+        assertEquals(CacheLockingConfiguration.DEFAULT_CONCURRENCY_LEVEL, conf
+                .getConcurrencyLevel());
+        assertEquals(Long.MAX_VALUE, conf.getLockTimeout(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void concurrencyLevel() {
+        assertEquals(conf, conf.setConcurrencyLevel(5));
+        assertEquals(5, conf.getConcurrencyLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyLevelIAE() {
+        conf.setConcurrencyLevel(0);
+    }
+
+    @Test
+    public void lockTimeout() {
+        assertEquals(conf, conf.setLockTimeout(2, TimeUnit.SECONDS));
+        assertEquals(2000, conf.getLockTimeout(TimeUnit.MILLISECONDS));
+        conf.setLockTimeout(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        assertEquals(Long.MAX_VALUE, conf.getLockTimeout(TimeUnit.NANOSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lockTimeoutIAE() {
+        conf.setLockTimeout(0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void lockTimeoutNPE() {
+        conf.setLockTimeout(1, null);
+    }
+
+    @Test
+    public void xml() throws Exception {
+        conf = reloadService(conf);
+        assertEquals(CacheLockingConfiguration.DEFAULT_CONCURRENCY_LEVEL, conf
+                .getConcurrencyLevel());
+        assertEquals(Long.MAX_VALUE, conf.getLockTimeout(TimeUnit.SECONDS));
+
+        conf.setConcurrencyLevel(64).setLockTimeout(30, TimeUnit.SECONDS);
+        conf = reloadService(conf);
+        assertEquals(64, conf.getConcurrencyLevel());
+        assertEquals(30, conf.getLockTimeout(TimeUnit.SECONDS));
+    }
+}
@@ -10,6 +10,9 @@ import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static org.coconut.cache.spi.XmlConfiguratorTest.reloadService;
 
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
 import org.coconut.cache.policy.ReplacementPolicy;
 import org.coconut.cache.policy.paging.ClockPolicy;
 import org.coconut.cache.policy.paging.FIFOPolicy;
@@ -18,6 +21,7 @@ import org.coconut.cache.policy.paging.LIFOPolicy;
 import org.coconut.cache.policy.paging.LRUPolicy;
 import org.coconut.cache.policy.paging.MRUPolicy;
 import org.coconut.cache.policy.paging.RandomPolicy;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration.ReferenceType;
 import org.coconut.operations.Predicates;
 import org.coconut.operations.Ops.Predicate;
 import org.coconut.test.TestUtil;
@@ -173,6 +177,83 @@ public class CacheEvictionConfigurationTest {
         assertNull(conf.getPolicy());
     }
 
+    @Test
+    public void snapshotFile() {
+        File f = new File("cache.snapshot");
+        assertNull(conf.getSnapshotFile());
+        assertSame(conf, conf.setSnapshotFile(f));
+        assertEquals(f, conf.getSnapshotFile());
+        assertSame(conf, conf.setSnapshotFile(null));
+        assertNull(conf.getSnapshotFile());
+    }
+
+    @Test
+    public void snapshotFileXML() throws Exception {
+        conf = reloadService(conf);
+        assertNull(conf.getSnapshotFile());
+        assertSame(conf, conf.setSnapshotFile(new File("cache.snapshot")));
+
+        conf = reloadService(conf);
+        assertEquals(new File("cache.snapshot"), conf.getSnapshotFile());
+    }
+
+    @Test
+    public void references() {
+        assertEquals(ReferenceType.STRONG, conf.getValueReferenceType());
+        assertFalse(conf.isWeakKeys());
+        assertSame(conf, conf.setValueReferenceType(ReferenceType.SOFT));
+        assertEquals(ReferenceType.SOFT, conf.getValueReferenceType());
+        assertSame(conf, conf.setWeakKeys(true));
+        assertTrue(conf.isWeakKeys());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void referencesNPE() {
+        conf.setValueReferenceType(null);
+    }
+
+    @Test
+    public void referencesXML() throws Exception {
+        conf = reloadService(conf);
+        assertEquals(ReferenceType.STRONG, conf.getValueReferenceType());
+        assertFalse(conf.isWeakKeys());
+        conf.setValueReferenceType(ReferenceType.WEAK).setWeakKeys(true);
+
+        conf = reloadService(conf);
+        assertEquals(ReferenceType.WEAK, conf.getValueReferenceType());
+        assertTrue(conf.isWeakKeys());
+    }
+
+    @Test
+    public void idleTime() {
+        assertEquals(Long.MAX_VALUE, conf.getIdleTime(TimeUnit.SECONDS));
+        assertSame(conf, conf.setIdleTime(2, TimeUnit.MINUTES));
+        assertEquals(120, conf.getIdleTime(TimeUnit.SECONDS));
+        assertEquals(120000, conf.getIdleTime(TimeUnit.MILLISECONDS));
+        conf.setIdleTime(Long.MAX_VALUE, TimeUnit.SECONDS);
+        assertEquals(Long.MAX_VALUE, conf.getIdleTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idleTimeIAE() {
+        conf.setIdleTime(0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void idleTimeNPE() {
+        conf.setIdleTime(1, null);
+    }
+
+    @Test
+    public void idleTimeXML() throws Exception {
+        conf = reloadService(conf);
+        assertEquals(Long.MAX_VALUE, conf.getIdleTime(TimeUnit.SECONDS));
+        conf.setIdleTime(30, TimeUnit.MINUTES);
+
+        conf = reloadService(conf);
+        assertEquals(30, conf.getIdleTime(TimeUnit.MINUTES));
+    }
+
     public static class MyPredicate implements Predicate {
         public boolean evaluate(Object t) {
             return false;
@@ -7,10 +7,16 @@ import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheConfiguration;
 import org.coconut.cache.DummyCache;
+import org.coconut.attribute.AttributeMap;
+import org.coconut.cache.service.loading.AbstractCacheLoader;
 import org.coconut.cache.service.management.CacheManagementService;
+import org.coconut.cache.service.worker.CacheWorkerService;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -69,6 +75,14 @@ public class ConfigurationValidatorTest {
         verifyOK(ManagementServiceSupport.class);
     }
 
+    @Test
+    public void noWorkerServiceSupport() {
+        verifyOK(NoManagementServiceSupport.class);
+        conf.loading().setStore(new DummyCacheStore());
+        verifyFail(NoManagementServiceSupport.class);
+        verifyOK(WorkerServiceSupport.class);
+    }
+
     static class NoCacheServiceSupport extends DummyCache {}
 
     @CacheServiceSupport( {})
@@ -79,4 +93,21 @@ public class ConfigurationValidatorTest {
 
     @CacheServiceSupport( { CacheManagementService.class })
     static class OK extends DummyCache {}
+
+    @CacheServiceSupport( { CacheWorkerService.class })
+    static class WorkerServiceSupport extends DummyCache {}
+
+    static class DummyCacheStore extends AbstractCacheLoader implements CacheStore {
+        public void delete(Object key) {}
+
+        public void deleteAll(Collection keys) {}
+
+        public void store(Object key, Object value) {}
+
+        public void storeAll(Map entries) {}
+
+        public Object load(Object key, AttributeMap attributes) {
+            return null;
+        }
+    }
 }
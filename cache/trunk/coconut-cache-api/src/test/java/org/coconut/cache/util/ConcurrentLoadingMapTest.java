@@ -0,0 +1,264 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.coconut.attribute.AttributeMap;
+import org.coconut.cache.CacheException;
+import org.coconut.cache.service.loading.AbstractCacheLoader;
+import org.coconut.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ConcurrentLoadingMap}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class ConcurrentLoadingMapTest {
+
+    private Clock.DeterministicClock clock;
+
+    private CountingLoader loader;
+
+    private ConcurrentLoadingMap<Integer, String> map;
+
+    @Before
+    public void setup() {
+        clock = new Clock.DeterministicClock();
+        loader = new CountingLoader();
+        map = new ConcurrentLoadingMap<Integer, String>(loader, 100);
+    }
+
+    @Test
+    public void load() {
+        assertEquals("1", map.get(1));
+        assertEquals("1", map.get(1));
+        assertEquals(1, loader.loads.get());
+        assertEquals(1, map.size());
+        assertEquals(1, map.getNumberOfHits());
+        assertEquals(1, map.getNumberOfMisses());
+        assertEquals(1, map.getNumberOfLoads());
+        assertEquals(0.5, map.getHitRatio(), 0);
+
+        assertNull(map.peek(2));
+        assertFalse(map.containsKey(2));
+        assertNull(map.get(-1)); // loader returns null
+        assertFalse(map.containsKey(-1));
+        assertEquals(1, map.getNumberOfLoads());
+    }
+
+    @Test
+    public void noLoader() {
+        map = new ConcurrentLoadingMap<Integer, String>(null, 10);
+        assertNull(map.get(1));
+        assertEquals(1, map.getNumberOfMisses());
+        assertTrue(Double.isNaN(new ConcurrentLoadingMap<Integer, String>(null, 10)
+                .getHitRatio()));
+    }
+
+    @Test
+    public void concurrentMap() {
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertNull(map.putIfAbsent(2, "c"));
+        assertEquals("b", map.replace(1, "d"));
+        assertNull(map.replace(3, "d"));
+        assertFalse(map.replace(1, "x", "e"));
+        assertTrue(map.replace(1, "d", "e"));
+        assertFalse(map.remove(1, "x"));
+        assertTrue(map.remove(1, "e"));
+        assertEquals("c", map.remove(2));
+        assertNull(map.remove(2));
+        assertTrue(map.isEmpty());
+        assertEquals(0, loader.loads.get());
+    }
+
+    @Test
+    public void views() {
+        for (int i = 0; i < 10; i++) {
+            map.put(i, "" + i);
+        }
+        Map<Integer, String> copy = new HashMap<Integer, String>(map);
+        assertEquals(10, copy.size());
+        assertEquals(copy, map);
+        assertTrue(map.entrySet().contains(copy.entrySet().iterator().next()));
+        assertTrue(map.containsValue("5"));
+        assertTrue(map.keySet().remove(5));
+        for (Iterator<Integer> i = map.keySet().iterator(); i.hasNext();) {
+            if (i.next() % 2 == 0) {
+                i.remove();
+            }
+        }
+        assertEquals(4, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        map.put(1, "1");
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        map = new ConcurrentLoadingMap<Integer, String>(loader, 1);
+        map.put(1, "1");
+        map.put(2, "2");
+        assertEquals(1, map.size());
+        assertEquals(1, map.getNumberOfEvictions());
+        assertTrue(map.containsKey(2));
+
+        map = new ConcurrentLoadingMap<Integer, String>(loader, 2);
+        // both keys must end up in the same segment
+        map.put(0, "0");
+        map.put(2, "2");
+        map.get(0);
+        for (int i = 4; i < 40; i += 2) {
+            map.put(i, "" + i);
+            map.get(0);
+        }
+        assertTrue(map.size() <= 2);
+        assertTrue(map.containsKey(0));
+    }
+
+    @Test
+    public void bounded() {
+        for (int i = 0; i < 1000; i++) {
+            map.get(i);
+        }
+        assertTrue(map.size() <= 100);
+        assertEquals(100, map.getMaximumSize());
+        assertEquals(1000 - map.size(), map.getNumberOfEvictions());
+
+        assertEquals(7, new ConcurrentLoadingMap<Integer, String>(loader, 7).getMaximumSize());
+    }
+
+    @Test
+    public void expiration() {
+        map = new ConcurrentLoadingMap<Integer, String>(loader, 10, 10, TimeUnit.SECONDS, clock);
+        clock.setTimestamp(1000);
+        map.put(1, "a");
+        assertEquals("2", map.get(2));
+        clock.setTimestamp(10999);
+        assertEquals("a", map.get(1));
+        clock.setTimestamp(11000);
+        assertNull(map.peek(1));
+        assertFalse(map.entrySet().iterator().hasNext());
+        assertEquals("1", map.get(1));
+        assertEquals(1, map.getNumberOfEvictions());
+        assertEquals(2, map.getNumberOfLoads());
+
+        // updating an entry resets its time to live
+        map.put(1, "b");
+        clock.setTimestamp(20999);
+        assertEquals("b", map.peek(1));
+        assertNull(map.putIfAbsent(2, "c"));
+    }
+
+    @Test
+    public void singleLoad() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        loader = new CountingLoader() {
+            @Override
+            public String load(Integer key, AttributeMap attributes) throws Exception {
+                started.countDown();
+                release.await();
+                return super.load(key, attributes);
+            }
+        };
+        map = new ConcurrentLoadingMap<Integer, String>(loader, 100);
+        final AtomicInteger results = new AtomicInteger();
+        Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    if ("1".equals(map.get(1))) {
+                        results.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        started.await();
+        assertTrue(map.isLoading(1));
+        release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(5, results.get());
+        assertEquals(1, loader.loads.get());
+        assertFalse(map.isLoading(1));
+    }
+
+    @Test
+    public void loaderFailure() {
+        map = new ConcurrentLoadingMap<Integer, String>(new CountingLoader() {
+            @Override
+            public String load(Integer key, AttributeMap attributes) throws Exception {
+                throw new IOException();
+            }
+        }, 10);
+        try {
+            map.get(1);
+            throw new AssertionError("should fail");
+        } catch (CacheException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertFalse(map.isLoading(1));
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loaderRuntimeException() {
+        new ConcurrentLoadingMap<Integer, String>(new CountingLoader() {
+            @Override
+            public String load(Integer key, AttributeMap attributes) throws Exception {
+                throw new IllegalStateException();
+            }
+        }, 10).get(1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getNPE() {
+        map.get(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putNPE() {
+        map.put(1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumSizeIAE() {
+        new ConcurrentLoadingMap<Integer, String>(loader, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeToLiveIAE() {
+        new ConcurrentLoadingMap<Integer, String>(loader, 10, 0, TimeUnit.SECONDS);
+    }
+
+    static class CountingLoader extends AbstractCacheLoader<Integer, String> {
+        final AtomicInteger loads = new AtomicInteger();
+
+        public String load(Integer key, AttributeMap attributes) throws Exception {
+            loads.incrementAndGet();
+            return key < 0 ? null : key.toString();
+        }
+    }
+}
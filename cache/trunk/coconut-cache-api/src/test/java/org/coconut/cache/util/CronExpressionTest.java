@@ -0,0 +1,131 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link CronExpression}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class CronExpressionTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void minutes() {
+        assertNext("* * * * *", time(2008, 1, 10, 10, 7), time(2008, 1, 10, 10, 8));
+        assertNext("*/15 * * * *", time(2008, 1, 10, 10, 7), time(2008, 1, 10, 10, 15));
+        assertNext("*/15 * * * *", time(2008, 1, 10, 10, 45), time(2008, 1, 10, 11, 0));
+        assertNext("5,10-12 * * * *", time(2008, 1, 10, 10, 10), time(2008, 1, 10, 10, 11));
+        assertNext("10/20 * * * *", time(2008, 1, 10, 10, 30), time(2008, 1, 10, 10, 50));
+        // seconds are ignored
+        assertNext("* * * * *", time(2008, 1, 10, 10, 7) + 59999, time(2008, 1, 10, 10, 8));
+    }
+
+    @Test
+    public void hoursAndDays() {
+        assertNext("0 3 * * *", time(2008, 1, 10, 4, 0), time(2008, 1, 11, 3, 0));
+        assertNext("30 2 1 * *", time(2008, 1, 31, 0, 0), time(2008, 2, 1, 2, 30));
+        assertNext("0 0 1 1 *", time(2008, 6, 1, 0, 0), time(2009, 1, 1, 0, 0));
+        assertNext("0 0 29 2 *", time(2009, 3, 1, 0, 0), time(2012, 2, 29, 0, 0));
+    }
+
+    @Test
+    public void daysOfWeek() {
+        // January 12th 2008 is a Saturday
+        assertNext("0 9 * * MON-FRI", time(2008, 1, 12, 0, 0), time(2008, 1, 14, 9, 0));
+        assertNext("0 0 * * 0", time(2008, 1, 12, 0, 0), time(2008, 1, 13, 0, 0));
+        assertNext("0 0 * * 7", time(2008, 1, 12, 0, 0), time(2008, 1, 13, 0, 0));
+        assertNext("0 0 * JAN,feb sun", time(2008, 1, 12, 0, 0), time(2008, 1, 13, 0, 0));
+        // either the day of month or the day of week must match
+        assertNext("0 0 20 * FRI", time(2008, 1, 12, 0, 0), time(2008, 1, 18, 0, 0));
+        assertNext("0 0 13 * FRI", time(2008, 1, 12, 0, 0), time(2008, 1, 13, 0, 0));
+        // the day of month is not restricted, so both must match
+        assertNext("0 0 */2 * FRI", time(2008, 1, 12, 0, 0), time(2008, 1, 25, 0, 0));
+    }
+
+    @Test
+    public void predefined() {
+        long now = time(2008, 1, 12, 10, 7);
+        assertEquals(time(2008, 1, 12, 11, 0), new CronExpression("@hourly", UTC).next(now));
+        assertEquals(time(2008, 1, 13, 0, 0), new CronExpression("@daily", UTC).next(now));
+        assertEquals(time(2008, 1, 13, 0, 0), new CronExpression("@midnight", UTC).next(now));
+        assertEquals(time(2008, 1, 13, 0, 0), new CronExpression("@weekly", UTC).next(now));
+        assertEquals(time(2008, 2, 1, 0, 0), new CronExpression("@monthly", UTC).next(now));
+        assertEquals(time(2009, 1, 1, 0, 0), new CronExpression("@yearly", UTC).next(now));
+        assertEquals(time(2009, 1, 1, 0, 0), new CronExpression("@annually", UTC).next(now));
+        assertEquals("@hourly", CronExpression.hourly().toString());
+        assertEquals("0 3 * * *", new CronExpression("0 3 * * *").toString());
+    }
+
+    @Test
+    public void never() {
+        assertEquals(Long.MAX_VALUE, new CronExpression("0 0 30 2 *", UTC).next(0));
+    }
+
+    @Test
+    public void timeZone() {
+        TimeZone cet = TimeZone.getTimeZone("CET");
+        CronExpression e = new CronExpression("0 3 * * *", cet);
+        assertEquals(cet, e.getTimeZone());
+        assertEquals(time(2008, 1, 11, 2, 0), e.next(time(2008, 1, 10, 4, 0)));
+    }
+
+    @Test
+    public void isValidExpression() {
+        assertTrue(CronExpression.isValidExpression("* * * * *"));
+        assertTrue(CronExpression.isValidExpression(" 0  3 *\t* * "));
+        assertFalse(CronExpression.isValidExpression("* * * *"));
+        assertFalse(CronExpression.isValidExpression("* * * * * *"));
+        assertFalse(CronExpression.isValidExpression("60 * * * *"));
+        assertFalse(CronExpression.isValidExpression("* 24 * * *"));
+        assertFalse(CronExpression.isValidExpression("* * 0 * *"));
+        assertFalse(CronExpression.isValidExpression("* * * 13 *"));
+        assertFalse(CronExpression.isValidExpression("* * * * 8"));
+        assertFalse(CronExpression.isValidExpression("a * * * *"));
+        assertFalse(CronExpression.isValidExpression("*/0 * * * *"));
+        assertFalse(CronExpression.isValidExpression("10-5 * * * *"));
+        assertFalse(CronExpression.isValidExpression("@never"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expressionIAE() {
+        new CronExpression("* * *");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void expressionNPE() {
+        new CronExpression(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void timeZoneNPE() {
+        new CronExpression("* * * * *", null);
+    }
+
+    private static void assertNext(String expression, long from, long expected) {
+        assertEquals(expected, new CronExpression(expression, UTC).next(from));
+    }
+
+    /**
+     * Returns the specified time in UTC, months start from 1.
+     */
+    static long time(int year, int month, int day, int hour, int minute) {
+        Calendar c = new GregorianCalendar(UTC);
+        c.clear();
+        c.set(year, month - 1, day, hour, minute);
+        return c.getTimeInMillis();
+    }
+}
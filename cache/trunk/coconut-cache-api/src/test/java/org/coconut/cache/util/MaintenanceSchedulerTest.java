@@ -0,0 +1,269 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import static org.coconut.cache.util.CronExpressionTest.time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.coconut.cache.DummyCache;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.coconut.core.Clock;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests {@link MaintenanceScheduler}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+@RunWith(JMock.class)
+public class MaintenanceSchedulerTest {
+
+    private final Mockery context = new JUnit4Mockery();
+
+    private final CronExpression everyHour = new CronExpression("0 * * * *", TimeZone
+            .getTimeZone("UTC"));
+
+    private Clock.DeterministicClock clock;
+
+    private RecordingExecutor executor;
+
+    private MaintenanceScheduler ms;
+
+    @Before
+    public void setup() {
+        clock = new Clock.DeterministicClock();
+        clock.setTimestamp(time(2008, 1, 10, 10, 15));
+        executor = new RecordingExecutor();
+        ms = new MaintenanceScheduler(executor, 1, 0, TimeUnit.MILLISECONDS, clock);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void schedule() {
+        Counter c = new Counter();
+        MaintenanceScheduler.ScheduledTask task = ms.schedule(c, everyHour);
+        assertEquals(1, ms.getNumberOfTasks());
+        assertEquals(time(2008, 1, 10, 11, 0), task.getNextTime());
+        assertEquals(TimeUnit.MINUTES.toMillis(45), executor.delays.get(0).longValue());
+
+        clock.setTimestamp(time(2008, 1, 10, 11, 0));
+        executor.runScheduled(0);
+        assertEquals(time(2008, 1, 10, 12, 0), task.getNextTime());
+        assertEquals(TimeUnit.HOURS.toMillis(1), executor.delays.get(1).longValue());
+        assertEquals(0, c.count.get());
+        executor.runExecuted();
+        assertEquals(1, c.count.get());
+        assertEquals(1, ms.getNumberOfCompletedRuns());
+        assertEquals(0, ms.getNumberOfRunningTasks());
+    }
+
+    @Test
+    public void concurrentTasks() {
+        Counter c1 = new Counter();
+        Counter c2 = new Counter();
+        ms.schedule(c1, everyHour);
+        ms.schedule(c2, everyHour);
+        clock.setTimestamp(time(2008, 1, 10, 11, 0));
+        executor.runScheduled(0);
+        executor.runScheduled(1);
+        assertEquals(1, ms.getNumberOfRunningTasks());
+        assertEquals(1, ms.getNumberOfQueuedTasks());
+        assertEquals(1, executor.executed.size());
+
+        executor.runExecuted();
+        assertEquals(1, c1.count.get());
+        assertEquals(1, c2.count.get());
+        assertEquals(0, ms.getNumberOfQueuedTasks());
+        assertEquals(2, ms.getNumberOfCompletedRuns());
+    }
+
+    @Test
+    public void skipPending() {
+        Counter c = new Counter();
+        ms.schedule(c, everyHour);
+        clock.setTimestamp(time(2008, 1, 10, 11, 0));
+        executor.runScheduled(0);
+        clock.setTimestamp(time(2008, 1, 10, 12, 0));
+        executor.runScheduled(1);
+        assertEquals(1, ms.getNumberOfSkippedRuns());
+        executor.runExecuted();
+        assertEquals(1, c.count.get());
+    }
+
+    @Test
+    public void failed() {
+        ms.schedule(new Runnable() {
+            public void run() {
+                throw new IllegalStateException();
+            }
+        }, everyHour);
+        clock.setTimestamp(time(2008, 1, 10, 11, 0));
+        executor.runScheduled(0);
+        try {
+            executor.runExecuted();
+            fail("should throw IllegalStateException");
+        } catch (IllegalStateException ok) {/* ok */}
+        assertEquals(1, ms.getNumberOfFailedRuns());
+        assertEquals(1, ms.getNumberOfCompletedRuns());
+        assertEquals(0, ms.getNumberOfRunningTasks());
+    }
+
+    @Test
+    public void cancel() {
+        Counter c = new Counter();
+        MaintenanceScheduler.ScheduledTask task = ms.schedule(c, everyHour);
+        assertFalse(task.isCancelled());
+        task.cancel();
+        assertTrue(task.isCancelled());
+        assertTrue(executor.futures.get(0).isCancelled());
+        assertEquals(Long.MAX_VALUE, task.getNextTime());
+        assertEquals(0, ms.getNumberOfTasks());
+
+        ms.schedule(c, everyHour);
+        ms.schedule(c, everyHour);
+        ms.cancelAll();
+        assertEquals(0, ms.getNumberOfTasks());
+    }
+
+    @Test
+    public void jitter() {
+        ms = new MaintenanceScheduler(executor, 1, 10, TimeUnit.SECONDS, clock);
+        assertEquals(10, ms.getMaximumJitter(TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            long jitter = ms.jitter();
+            assertTrue(jitter >= 0 && jitter <= 10000);
+        }
+        ms.schedule(new Counter(), everyHour);
+        long delay = executor.delays.get(0) - TimeUnit.MINUTES.toMillis(45);
+        assertTrue(delay >= 0 && delay <= 10000);
+    }
+
+    @Test
+    public void scheduleStatisticsReset() {
+        final CacheStatisticsService service = context.mock(CacheStatisticsService.class);
+        DummyCache<Integer, String> cache = new DummyCache<Integer, String>();
+        cache.addService(CacheStatisticsService.class, service);
+        context.checking(new Expectations() {
+            {
+                one(service).resetStatistics();
+            }
+        });
+        ms.scheduleStatisticsReset(cache, everyHour);
+        clock.setTimestamp(time(2008, 1, 10, 11, 0));
+        executor.runScheduled(0);
+        executor.runExecuted();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumConcurrentTasksIAE() {
+        new MaintenanceScheduler(executor, 0, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maximumJitterIAE() {
+        new MaintenanceScheduler(executor, 1, -1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void executorNPE() {
+        new MaintenanceScheduler(null, 1, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void unitNPE() {
+        new MaintenanceScheduler(executor, 1, 0, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void clockNPE() {
+        new MaintenanceScheduler(executor, 1, 0, TimeUnit.SECONDS, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void scheduleNPE() {
+        ms.schedule(null, everyHour);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void scheduleCronNPE() {
+        ms.schedule(new Counter(), null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void scheduleTrimNPE() {
+        ms.scheduleTrim(null, 10, everyHour);
+    }
+
+    static class Counter implements Runnable {
+        final AtomicInteger count = new AtomicInteger();
+
+        public void run() {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * An executor that records what is scheduled and executed instead of running it.
+     */
+    static class RecordingExecutor extends ScheduledThreadPoolExecutor {
+        final List<Runnable> scheduled = new ArrayList<Runnable>();
+
+        final List<Long> delays = new ArrayList<Long>();
+
+        final List<ScheduledFuture<?>> futures = new ArrayList<ScheduledFuture<?>>();
+
+        final List<Runnable> executed = new ArrayList<Runnable>();
+
+        RecordingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            scheduled.add(command);
+            delays.add(unit.toMillis(delay));
+            ScheduledFuture<?> f = super.schedule(new Counter(), 1, TimeUnit.DAYS);
+            futures.add(f);
+            return f;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executed.add(command);
+        }
+
+        void runScheduled(int index) {
+            scheduled.get(index).run();
+        }
+
+        void runExecuted() {
+            while (!executed.isEmpty()) {
+                executed.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.coconut.cache.DummyCache;
+import org.coconut.cache.ParallelCache;
+import org.coconut.cache.service.memorystore.MemoryStoreService;
+import org.coconut.cache.service.statistics.CacheHitStat;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link MemoryPressureController}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MemoryPressureControllerTest {
+
+    private MemoryPressureController controller;
+
+    private StubMemoryStore hot;
+
+    private StubMemoryStore cold;
+
+    private DummyCache hotCache;
+
+    @Before
+    public void setup() {
+        controller = new MemoryPressureController(0.6, 0.8);
+        hot = new StubMemoryStore(1000, 100000);
+        cold = new StubMemoryStore(1000, Long.MAX_VALUE);
+        hotCache = cache(hot, new CacheHitStat(9, 1));
+        controller.register(hotCache);
+        controller.register(cache(cold, new CacheHitStat(1, 9)));
+    }
+
+    @Test
+    public void shrinkWeighted() {
+        controller.adjust(0.75);
+        assertEquals(1000, hot.maximumSize);
+        assertEquals(1000, cold.maximumSize);
+        assertEquals(0, controller.getNumberOfShrinks());
+
+        controller.adjust(0.9);
+        assertEquals(0.9, controller.getHeapUsage(), 0);
+        assertEquals(1, controller.getNumberOfShrinks());
+        assertTrue(hot.maximumSize < 1000);
+        assertTrue(cold.maximumSize < hot.maximumSize);
+        assertTrue(hot.maximumVolume < 100000);
+        assertEquals(Long.MAX_VALUE, cold.maximumVolume);
+        // the caches are trimmed to the new limits immediately
+        assertEquals(hot.maximumSize, hot.trimmedSize);
+        assertEquals(cold.maximumSize, cold.trimmedSize);
+        assertEquals(hot.maximumVolume, hot.trimmedVolume);
+        assertEquals(-1, cold.trimmedVolume);
+        // in total shrunk by (0.9 - 0.7) / 0.9
+        assertEquals(2000 * 7 / 9, hot.maximumSize + cold.maximumSize, 2);
+    }
+
+    @Test
+    public void shrinkLimited() {
+        controller.setThresholds(0.2, 0.3);
+        controller.adjust(1);
+        assertEquals(500, cold.maximumSize);
+        assertTrue(hot.maximumSize > 500);
+    }
+
+    @Test
+    public void relax() {
+        controller.adjust(0.9);
+        controller.adjust(0.5);
+        assertEquals(1, controller.getNumberOfRelaxations());
+        for (int i = 0; i < 100; i++) {
+            controller.adjust(0.5);
+        }
+        assertEquals(1000, hot.maximumSize);
+        assertEquals(1000, cold.maximumSize);
+        assertEquals(100000, hot.maximumVolume);
+        long relaxations = controller.getNumberOfRelaxations();
+        controller.adjust(0.5);
+        assertEquals(relaxations, controller.getNumberOfRelaxations());
+    }
+
+    @Test
+    public void unregister() {
+        DummyCache c = cache(new StubMemoryStore(10, 10), null);
+        assertFalse(controller.unregister(c));
+        controller.adjust(0.9);
+        assertTrue(controller.unregister(hotCache));
+        assertEquals(1000, hot.maximumSize);
+        assertEquals(1, controller.getNumberOfCaches());
+    }
+
+    @Test
+    public void sample() {
+        System.gc();
+        double usage = new MemoryPressureController().getCurrentHeapUsage();
+        assertTrue(usage >= 0 && usage <= 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerTwice() {
+        DummyCache c = cache(hot, null);
+        controller.register(c);
+        controller.register(c);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdsIAE() {
+        new MemoryPressureController(0.9, 0.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholdsIAE1() {
+        new MemoryPressureController(0.5, 1.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void relaxFactorIAE() {
+        controller.setRelaxFactor(0);
+    }
+
+    private DummyCache cache(StubMemoryStore memory, CacheHitStat stat) {
+        DummyCache c = new DummyCache();
+        c.addService(MemoryStoreService.class, memory);
+        if (stat != null) {
+            c.addService(CacheStatisticsService.class, new StubStatistics(stat));
+        }
+        return c;
+    }
+
+    static class StubMemoryStore implements MemoryStoreService {
+        int maximumSize;
+
+        long maximumVolume;
+
+        int trimmedSize = -1;
+
+        long trimmedVolume = -1;
+
+        StubMemoryStore(int maximumSize, long maximumVolume) {
+            this.maximumSize = maximumSize;
+            this.maximumVolume = maximumVolume;
+        }
+
+        public int getMaximumSize() {
+            return maximumSize;
+        }
+
+        public long getMaximumVolume() {
+            return maximumVolume;
+        }
+
+        public ParallelCache getParallelCache() {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean isDisabled() {
+            return false;
+        }
+
+        public int loadSnapshot(File file) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void saveSnapshot() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void saveSnapshot(File file) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setDisabled(boolean isDisabled) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setMaximumSize(int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public void setMaximumVolume(long maximumVolume) {
+            this.maximumVolume = maximumVolume;
+        }
+
+        public void trimToSize(int size) {
+            trimmedSize = size;
+        }
+
+        public void trimToVolume(long volume) {
+            trimmedVolume = volume;
+        }
+
+        public void evictIdleElements() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class StubStatistics implements CacheStatisticsService {
+        private final CacheHitStat stat;
+
+        StubStatistics(CacheHitStat stat) {
+            this.stat = stat;
+        }
+
+        public CacheHitStat getHitStat() {
+            return stat;
+        }
+
+        public CacheHitStat getNearCacheHitStat() {
+            return CacheHitStat.STAT00;
+        }
+
+        public long getNumberOfEvictions() {
+            return 0;
+        }
+
+        public void resetStatistics() {}
+    }
+}
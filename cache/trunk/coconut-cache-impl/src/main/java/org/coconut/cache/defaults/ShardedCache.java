@@ -0,0 +1,638 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.defaults;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.CacheServices;
+import org.coconut.cache.internal.service.management.ManagementUtils;
+import org.coconut.cache.service.management.CacheMXBean;
+import org.coconut.cache.service.statistics.CacheHitStat;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.coconut.forkjoin.ForkJoinExecutor;
+import org.coconut.forkjoin.ParallelArray;
+import org.coconut.forkjoin.RecursiveAction;
+
+/**
+ * A cache that partitions its keys across a number of independent caches, called shards.
+ * Each key is mapped by its hash code to exactly one shard, and all operations on a
+ * single key is routed to that shard. Because each shard has its own memory store,
+ * replacement policy and eviction, threads modifying keys in different shards do not
+ * contend with each other.
+ * <p>
+ * {@link #size()}, {@link #volume()} and the hit statistics are aggregated over all
+ * shards. {@link #getAll(Collection)}, {@link #putAll(Map)},
+ * {@link #removeAll(Collection)} and {@link #clear()} are split by shard and executed in
+ * parallel. Because of this, operations spanning multiple shards are not atomic. The
+ * only service available from {@link #getService(Class)} is the
+ * {@link CacheStatisticsService}, the other services must be retrieved from the
+ * individual shards.
+ * <p>
+ * This class is thread-safe if all the shards are thread-safe, for example if they are
+ * instances of {@link SynchronizedCache}. If the shards are not thread-safe, the sharded
+ * cache must not be accessed concurrently, however bulk operations are still executed in
+ * parallel.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by this cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class ShardedCache<K, V> extends AbstractMap<K, V> implements Cache<K, V> {
+
+    /** The view returned by {@link #entrySet()}, lazily created. */
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /** The executor used for executing bulk operations in parallel. */
+    private final ForkJoinExecutor executor;
+
+    /** The name of this cache. */
+    private final String name;
+
+    /** The shards. */
+    private final Cache<K, V>[] shards;
+
+    /** The statistics service aggregating the statistics of all shards. */
+    private final CacheStatisticsService statistics = new ShardedStatisticsService();
+
+    /**
+     * Creates a new ShardedCache that executes bulk operations using the default
+     * fork-join executor.
+     *
+     * @param name
+     *            the name of the cache
+     * @param shards
+     *            the caches to partition the keys across
+     * @throws NullPointerException
+     *             if the specified name, list or any of the shards are <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the specified list of shards is empty
+     */
+    public ShardedCache(String name, List<? extends Cache<K, V>> shards) {
+        this(name, shards, ParallelArray.defaultExecutor());
+    }
+
+    /**
+     * Creates a new ShardedCache.
+     *
+     * @param name
+     *            the name of the cache
+     * @param shards
+     *            the caches to partition the keys across
+     * @param executor
+     *            the executor used for executing bulk operations in parallel
+     * @throws NullPointerException
+     *             if the specified name, list, executor or any of the shards are
+     *             <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the specified list of shards is empty
+     */
+    public ShardedCache(String name, List<? extends Cache<K, V>> shards,
+            ForkJoinExecutor executor) {
+        if (name == null) {
+            throw new NullPointerException("name is null");
+        } else if (shards == null) {
+            throw new NullPointerException("shards is null");
+        } else if (executor == null) {
+            throw new NullPointerException("executor is null");
+        } else if (shards.isEmpty()) {
+            throw new IllegalArgumentException("shards must contain at least one cache");
+        }
+        this.shards = shards.toArray(new Cache[shards.size()]);
+        for (Cache<K, V> c : this.shards) {
+            if (c == null) {
+                throw new NullPointerException("shards contains a null cache");
+            }
+        }
+        this.name = name;
+        this.executor = executor;
+    }
+
+    /** {@inheritDoc} */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        for (Cache<K, V> c : shards) {
+            long now = System.nanoTime();
+            if (!c.awaitTermination(nanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            nanos -= System.nanoTime() - now;
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        boolean[] all = new boolean[shards.length];
+        Arrays.fill(all, true);
+        fanOut(all, new ShardOperation() {
+            public void run(int shard) {
+                shards[shard].clear();
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return shardFor(key).containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsValue(Object value) {
+        for (Cache<K, V> c : shards) {
+            if (c.containsValue(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V get(Object key) {
+        return shardFor(key).get(key);
+    }
+
+    /** {@inheritDoc} */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        final List<K>[] groups = group(keys);
+        final Map<K, V>[] results = new Map[shards.length];
+        fanOut(isNotNull(groups), new ShardOperation() {
+            public void run(int shard) {
+                results[shard] = shards[shard].getAll(groups[shard]);
+            }
+        });
+        HashMap<K, V> result = new HashMap<K, V>(keys.size() * 4 / 3 + 1);
+        for (Map<K, V> m : results) {
+            if (m != null) {
+                result.putAll(m);
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public CacheEntry<K, V> getEntry(K key) {
+        return shardFor(key).getEntry(key);
+    }
+
+    /** {@inheritDoc} */
+    public String getName() {
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    public <T> T getService(Class<T> serviceType) {
+        if (serviceType == null) {
+            throw new NullPointerException("serviceType is null");
+        } else if (serviceType == CacheStatisticsService.class) {
+            return (T) statistics;
+        }
+        throw new IllegalArgumentException("Unknown service " + serviceType);
+    }
+
+    /**
+     * Returns the shard that the specified key is mapped to.
+     *
+     * @param key
+     *            the key to return the shard for
+     * @return the shard that the specified key is mapped to
+     * @throws NullPointerException
+     *             if the specified key is <code>null</code>
+     */
+    public Cache<K, V> getShard(K key) {
+        return shardFor(key);
+    }
+
+    /**
+     * Returns a {@link CacheMXBean} for each of the shards, in the same order as
+     * {@link #getShards()}. The returned beans can be registered with an MBeanServer to
+     * monitor the size and volume of each shard.
+     *
+     * @return a CacheMXBean for each of the shards
+     */
+    public List<CacheMXBean> getShardMXBeans() {
+        List<CacheMXBean> result = new ArrayList<CacheMXBean>(shards.length);
+        for (Cache<K, V> c : shards) {
+            result.add(ManagementUtils.wrapMXBean(c));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shards of this cache.
+     *
+     * @return the shards of this cache
+     */
+    public List<Cache<K, V>> getShards() {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        for (Cache<K, V> c : shards) {
+            if (!c.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isShutdown() {
+        for (Cache<K, V> c : shards) {
+            if (!c.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isStarted() {
+        for (Cache<K, V> c : shards) {
+            if (!c.isStarted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isTerminated() {
+        for (Cache<K, V> c : shards) {
+            if (!c.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public V peek(K key) {
+        return shardFor(key).peek(key);
+    }
+
+    /** {@inheritDoc} */
+    public CacheEntry<K, V> peekEntry(K key) {
+        return shardFor(key).peekEntry(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V put(K key, V value) {
+        return shardFor(key).put(key, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        final Map<K, V>[] groups = new Map[shards.length];
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            int shard = indexFor(e.getKey());
+            if (groups[shard] == null) {
+                groups[shard] = new HashMap<K, V>();
+            }
+            groups[shard].put(e.getKey(), e.getValue());
+        }
+        fanOut(isNotNull(groups), new ShardOperation() {
+            public void run(int shard) {
+                shards[shard].putAll(groups[shard]);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    public V putIfAbsent(K key, V value) {
+        return shardFor(key).putIfAbsent(key, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V remove(Object key) {
+        return shardFor(key).remove(key);
+    }
+
+    /** {@inheritDoc} */
+    public boolean remove(Object key, Object value) {
+        return shardFor(key).remove(key, value);
+    }
+
+    /** {@inheritDoc} */
+    public void removeAll(Collection<? extends K> keys) {
+        final List<K>[] groups = group(keys);
+        fanOut(isNotNull(groups), new ShardOperation() {
+            public void run(int shard) {
+                shards[shard].removeAll(groups[shard]);
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    public V replace(K key, V value) {
+        return shardFor(key).replace(key, value);
+    }
+
+    /** {@inheritDoc} */
+    public boolean replace(K key, V oldValue, V newValue) {
+        return shardFor(key).replace(key, oldValue, newValue);
+    }
+
+    /** {@inheritDoc} */
+    public CacheServices<K, V> services() {
+        return new CacheServices<K, V>(this);
+    }
+
+    /** {@inheritDoc} */
+    public void shutdown() {
+        for (Cache<K, V> c : shards) {
+            c.shutdown();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void shutdownNow() {
+        for (Cache<K, V> c : shards) {
+            c.shutdownNow();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        long size = 0;
+        for (Cache<K, V> c : shards) {
+            size += c.size();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /** {@inheritDoc} */
+    public long volume() {
+        long volume = 0;
+        for (Cache<K, V> c : shards) {
+            volume += c.volume();
+        }
+        return volume;
+    }
+
+    /**
+     * Runs the specified operation for each of the specified shards. If more then one
+     * shard is specified, the operation is executed in parallel using the fork-join
+     * executor of this cache.
+     *
+     * @param active
+     *            whether or not the operation should be run for each of the shards
+     * @param operation
+     *            the operation to run
+     */
+    void fanOut(boolean[] active, final ShardOperation operation) {
+        final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        int last = -1;
+        for (int i = 0; i < active.length; i++) {
+            if (active[i]) {
+                final int shard = i;
+                last = i;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        operation.run(shard);
+                    }
+                });
+            }
+        }
+        if (tasks.size() == 1) {
+            operation.run(last);
+        } else if (tasks.size() > 1) {
+            executor.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    forkJoin(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * Splits the specified keys by the shard they are mapped to.
+     *
+     * @param keys
+     *            the keys to split
+     * @return an array with the keys of each shard, or <code>null</code> for shards with
+     *         no keys
+     */
+    private List<K>[] group(Collection<? extends K> keys) {
+        List<K>[] groups = new List[shards.length];
+        for (K key : keys) {
+            int shard = indexFor(key);
+            if (groups[shard] == null) {
+                groups[shard] = new ArrayList<K>();
+            }
+            groups[shard].add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the index of the shard that the specified key is mapped to.
+     * <p>
+     * The memory store of each shard picks a bucket from the low bits of the
+     * HashMap-spread hash code. If the shard were picked from the same bits, every key in
+     * a shard would have the same low bits and only a fraction of the buckets of each
+     * shard would be used. Instead the hash code is mixed by an independent function,
+     * the finalizer of MurmurHash3, and the shard is picked from the high bits of the
+     * result.
+     *
+     * @param key
+     *            the key to return the index for
+     * @return the index of the shard that the specified key is mapped to
+     */
+    int indexFor(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        // maps the hash to [0, shards.length) using the high bits
+        return (int) ((h & 0xffffffffL) * shards.length >>> 32);
+    }
+
+    /**
+     * Returns the shard that the specified key is mapped to.
+     *
+     * @param key
+     *            the key to return the shard for
+     * @return the shard that the specified key is mapped to
+     */
+    private Cache<K, V> shardFor(Object key) {
+        return shards[indexFor(key)];
+    }
+
+    /**
+     * Returns which of the elements in the specified array are not <code>null</code>.
+     *
+     * @param array
+     *            the array to check
+     * @return an array indicating which of the elements are not <code>null</code>
+     */
+    private static boolean[] isNotNull(Object[] array) {
+        boolean[] result = new boolean[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = array[i] != null;
+        }
+        return result;
+    }
+
+    /** An operation run for a single shard. */
+    interface ShardOperation {
+
+        /**
+         * Runs the operation for the specified shard.
+         *
+         * @param shard
+         *            the index of the shard
+         */
+        void run(int shard);
+    }
+
+    /** The entry set of the cache, a view of the entry sets of all the shards. */
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        /** {@inheritDoc} */
+        @Override
+        public void clear() {
+            ShardedCache.this.clear();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return e.getKey() != null && shardFor(e.getKey()).entrySet().contains(e);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iterator<Map.Entry<K, V>>() {
+                private Iterator<Map.Entry<K, V>> current = shards[0].entrySet().iterator();
+
+                private int next = 1;
+
+                public boolean hasNext() {
+                    while (!current.hasNext() && next < shards.length) {
+                        current = shards[next++].entrySet().iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                public Map.Entry<K, V> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+
+                public void remove() {
+                    current.remove();
+                }
+            };
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return e.getKey() != null && shardFor(e.getKey()).entrySet().remove(e);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return ShardedCache.this.size();
+        }
+    }
+
+    /** A statistics service aggregating the statistics of all the shards. */
+    class ShardedStatisticsService implements CacheStatisticsService {
+
+        /** {@inheritDoc} */
+        public CacheHitStat getHitStat() {
+            long hits = 0;
+            long misses = 0;
+            for (Cache<K, V> c : shards) {
+                CacheHitStat s = c.getService(CacheStatisticsService.class).getHitStat();
+                hits += s.getNumberOfHits();
+                misses += s.getNumberOfMisses();
+            }
+            return new CacheHitStat(hits, misses);
+        }
+
+        /** {@inheritDoc} */
+        public CacheHitStat getNearCacheHitStat() {
+            long hits = 0;
+            long misses = 0;
+            for (Cache<K, V> c : shards) {
+                CacheHitStat s = c.getService(CacheStatisticsService.class)
+                        .getNearCacheHitStat();
+                hits += s.getNumberOfHits();
+                misses += s.getNumberOfMisses();
+            }
+            return new CacheHitStat(hits, misses);
+        }
+
+        /** {@inheritDoc} */
+        public long getNumberOfEvictions() {
+            long evictions = 0;
+            for (Cache<K, V> c : shards) {
+                evictions += c.getService(CacheStatisticsService.class).getNumberOfEvictions();
+            }
+            return evictions;
+        }
+
+        /** {@inheritDoc} */
+        public void resetStatistics() {
+            for (Cache<K, V> c : shards) {
+                c.getService(CacheStatisticsService.class).resetStatistics();
+            }
+        }
+    }
+}
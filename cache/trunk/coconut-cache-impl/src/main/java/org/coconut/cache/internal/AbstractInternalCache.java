@@ -24,11 +24,15 @@ import org.coconut.cache.CacheServices;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
 import org.coconut.cache.internal.service.event.DefaultCacheEventService;
 import org.coconut.cache.internal.service.exceptionhandling.DefaultCacheExceptionService;
+import org.coconut.cache.internal.service.index.DefaultCacheIndexService;
+import org.coconut.cache.internal.service.index.EntryIndexes;
 import org.coconut.cache.internal.service.listener.DefaultCacheListener;
 import org.coconut.cache.internal.service.listener.InternalCacheListener;
+import org.coconut.cache.internal.service.locking.DefaultCacheLockingService;
 import org.coconut.cache.internal.service.memorystore.DefaultEvictableMemoryStore;
 import org.coconut.cache.internal.service.memorystore.MemoryStore;
 import org.coconut.cache.internal.service.memorystore.MemoryStoreWithMapping;
+import org.coconut.cache.internal.service.memorystore.NearCache;
 import org.coconut.cache.internal.service.servicemanager.AbstractCacheServiceManager;
 import org.coconut.cache.internal.service.servicemanager.ServiceComposer;
 import org.coconut.cache.internal.service.statistics.DefaultCacheStatisticsService;
@@ -53,6 +57,8 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
 
     final MemoryStore<K, V> memoryCache;
 
+    final NearCache<K, V> nearCache;
+
     Collection<V> values;
 
     AbstractInternalCache(Cache cache, CacheConfiguration conf, Collection<Class<?>> classes) {
@@ -67,6 +73,7 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
         serviceManager = composer.getInternalService(AbstractCacheServiceManager.class);
         memoryCache = composer.getInternalService(MemoryStore.class);
         listener = composer.getInternalService(InternalCacheListener.class);
+        nearCache = composer.getInternalService(NearCache.class);
     }
 
     public final boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
@@ -142,7 +149,19 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
     }
 
     public final CacheEntry<K, V> put(K key, V value, AttributeMap attributes) {
-        return put(key, value, attributes, false);
+        return put(key, value, attributes, false, false);
+    }
+
+    public final CacheEntry<K, V> putFromLoader(K key, V value, AttributeMap attributes) {
+        return put(key, value, attributes, false, true);
+    }
+
+    public final void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data) {
+        putAllWithAttributes(data, false);
+    }
+
+    public final void putAllFromLoader(Map<K, Map.Entry<V, AttributeMap>> data) {
+        putAllWithAttributes(data, true);
     }
 
     public final void putAll(Map<? extends K, ? extends V> t) {
@@ -155,7 +174,7 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
     }
 
     public final V putIfAbsent(K key, V value) {
-        CacheEntry<K, V> prev = put(key, value, Attributes.EMPTY_ATTRIBUTE_MAP, true);
+        CacheEntry<K, V> prev = put(key, value, Attributes.EMPTY_ATTRIBUTE_MAP, true, false);
         return prev == null ? null : prev.getValue();
     }
 
@@ -207,7 +226,11 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
 
     abstract CacheEntry<K, V> doRemove(Object key, Object value);
 
-    abstract CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent);
+    abstract CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent,
+            boolean fromLoader);
+
+    abstract void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data,
+            boolean fromLoader);
 
     abstract boolean removeKeys(Collection<?> keys);
 
@@ -217,6 +240,31 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
 
     abstract boolean retainAll(Mapper pre, Collection<?> c);
 
+    /**
+     * Creates the map returned from {@link #getAll(Collection)}, and records which of the
+     * keys had a mapping in the specified array.
+     *
+     * @param keys
+     *            the requested keys
+     * @param entries
+     *            the entries found for each of the keys, or <code>null</code> for keys
+     *            with no mapping
+     * @param isHit
+     *            an array of the same length as keys, that is updated with whether or not
+     *            a mapping was found for each of the keys
+     * @return a map from each of the keys to its value or <code>null</code>
+     */
+    static <K, V> Map<K, V> getAllResult(Object[] keys, CacheEntry<K, V>[] entries,
+            boolean[] isHit) {
+        HashMap<K, V> result = new HashMap<K, V>(keys.length * 4 / 3 + 1);
+        for (int i = 0; i < keys.length; i++) {
+            CacheEntry<K, V> e = entries[i];
+            isHit[i] = e != null;
+            result.put((K) keys[i], e == null ? null : e.getValue());
+        }
+        return result;
+    }
+
     static Collection<Class<?>> defaultComponents(CacheConfiguration<?, ?> configuration) {
         Collection<Class<?>> c = new ArrayList<Class<?>>();
         c.add(DefaultCacheExceptionService.class);
@@ -225,6 +273,11 @@ public abstract class AbstractInternalCache<K, V> implements InternalCache<K, V>
         if (configuration.event().isEnabled()) {
             c.add(DefaultCacheEventService.class);
         }
+        if (configuration.index().hasIndexes()) {
+            c.add(EntryIndexes.class);
+            c.add(DefaultCacheIndexService.class);
+        }
+        c.add(DefaultCacheLockingService.class);
         c.add(DefaultEvictableMemoryStore.class);
         return c;
     }
@@ -13,6 +13,10 @@ public interface InternalCache<K, V> extends Cache<K,V> {
 
     void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data);
 
+    CacheEntry<K, V> putFromLoader(K key, V value, AttributeMap attributes);
+
+    void putAllFromLoader(Map<K, Map.Entry<V, AttributeMap>> data);
+
     boolean removeEntries(Collection<?> entries);
 
     boolean lazyStart();
@@ -12,10 +12,14 @@ import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.service.entry.SynchronizedEntryFactoryService;
 import org.coconut.cache.internal.service.entry.SynchronizedEntryMap;
 import org.coconut.cache.internal.service.expiration.SynchronizedCacheExpirationService;
+import org.coconut.cache.internal.service.loading.WriteBehindService;
 import org.coconut.cache.internal.service.management.DefaultCacheManagementService;
+import org.coconut.cache.internal.service.memorystore.NearCache;
 import org.coconut.cache.internal.service.memorystore.SynchronizedMemoryStoreService;
 import org.coconut.cache.internal.service.servicemanager.SynchronizedCacheServiceManager;
 import org.coconut.cache.internal.service.worker.SynchronizedCacheWorkerService;
+import org.coconut.forkjoin.ParallelArray;
+import org.coconut.internal.util.CollectionUtils;
 import org.coconut.operations.Ops.Mapper;
 import org.coconut.operations.Ops.Predicate;
 
@@ -65,15 +69,59 @@ public class SynchronizedInternalCache<K, V> extends AbstractInternalCache<K, V>
     }
 
     public V get(Object key) {
-        return null;
+        CacheEntry<K, V> e = getEntry((K) key);
+        return e == null ? null : e.getValue();
     }
 
     public Map<K, V> getAll(Collection<? extends K> keys) {
-        return null;
+        if (keys == null) {
+            throw new NullPointerException("collection is null");
+        }
+        CollectionUtils.checkCollectionForNulls(keys);
+        long started = listener.beforeGetAll(keys);
+        Object[] k = keys.toArray();
+        CacheEntry<K, V>[] entries;
+
+        synchronized (mutex) {
+            lazyStartFailIfShutdown();
+            entries = memoryCache.getAll(k);
+        }
+
+        boolean[] isHit = new boolean[k.length];
+        Map<K, V> result = getAllResult(k, entries, isHit);
+        listener.afterGetAll(started, k, entries, isHit, new boolean[k.length], null);
+        return result;
     }
 
     public CacheEntry<K, V> getEntry(K key) {
-        return null;
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        CacheEntry<K, V> e;
+        long version = 0;
+        if (nearCache != null) {
+            e = nearCache.get(key);
+            if (e != null) {
+                return e;
+            }
+            // read the version before the entry, so concurrent invalidations are not lost
+            version = nearCache.version(key);
+        }
+        // lookups that miss the near cache are counted in the hit statistics of the cache
+        long started = listener.beforeGet(key);
+        synchronized (mutex) {
+            lazyStart();
+            e = memoryCache.access(key);
+        }
+        if (e == null) {
+            listener.afterMiss(started, key, null, null, false);
+        } else {
+            listener.afterHit(started, key, e);
+            if (nearCache != null) {
+                nearCache.put(key, e, version);
+            }
+        }
+        return e;
     }
 
     public Set<K> keySet() {
@@ -95,14 +143,42 @@ public class SynchronizedInternalCache<K, V> extends AbstractInternalCache<K, V>
         }
     }
 
-    public void putAllWithAttributes(Map<K, java.util.Map.Entry<V, AttributeMap>> data) {}
+    @Override
+    void putAllWithAttributes(Map<K, java.util.Map.Entry<V, AttributeMap>> data,
+            boolean fromLoader) {
+        long started = listener.beforePutAll(null, null, fromLoader);
+        CacheEntry<K, V>[] prev = new CacheEntry[data.size()];
+        CacheEntry<K, V>[] entries = new CacheEntry[data.size()];
+        ParallelArray<CacheEntry<K, V>> trimmed;
+
+        synchronized (mutex) {
+            lazyStartFailIfShutdown();
+            memoryCache.putAllWithAttributes(data, prev, entries);
+            trimmed = memoryCache.trim();
+        }
+
+        listener.afterPutAll(started, trimmed.asList(), prev, entries, fromLoader);
+    }
 
     public boolean removeEntries(Collection<?> entries) {
         return false;
     }
 
     public boolean removeKeys(Collection<?> keys) {
-        return false;
+        if (keys == null) {
+            throw new NullPointerException("collection is null");
+        }
+        CollectionUtils.checkCollectionForNulls(keys);
+        long started = listener.beforeRemoveAll((Collection) keys);
+        ParallelArray<CacheEntry<K, V>> list;
+
+        synchronized (mutex) {
+            lazyStart();
+            list = memoryCache.removeAll(keys);
+        }
+
+        listener.afterRemoveAll(started, (Collection) keys, list.asList());
+        return list.size() > 0;
     }
 
     public boolean removeValue(Object value) {
@@ -169,8 +245,21 @@ public class SynchronizedInternalCache<K, V> extends AbstractInternalCache<K, V>
     }
 
     @Override
-    CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent) {
-        return null;
+    CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent,
+            boolean fromLoader) {
+        long started = listener.beforePut(key, value, fromLoader);
+        Map.Entry<CacheEntry<K, V>, CacheEntry<K, V>> prev;
+        ParallelArray<CacheEntry<K, V>> trimmed;
+
+        synchronized (mutex) {
+            lazyStartFailIfShutdown();
+            prev = memoryCache.put(key, value, attributes, OnlyIfAbsent);
+            trimmed = memoryCache.trim();
+        }
+
+        listener.afterPut(started, trimmed.asList(), (InternalCacheEntry) prev.getKey(),
+                (InternalCacheEntry) prev.getValue(), fromLoader);
+        return prev.getKey();
     }
 
     final class SynchronizedEntrySet extends EntrySet {
@@ -236,6 +325,12 @@ public class SynchronizedInternalCache<K, V> extends AbstractInternalCache<K, V>
             components.add(SynchronizedCacheWorkerService.class);
             components.add(SynchronizedCacheServiceManager.class);
             components.add(SynchronizedEntryFactoryService.class);
+            if (NearCache.isEnabled(configuration)) {
+                components.add(NearCache.class);
+            }
+            if (configuration.loading().getStore() != null) {
+                components.add(WriteBehindService.class);
+            }
             return new SynchronizedInternalCache(cache, configuration, components);
         }
     }
@@ -153,8 +153,9 @@ public class UnsynchronizedInternalCache<K, V> extends AbstractInternalCache<K,
     }
 
     @Override
-    public CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent) {
-        long started = listener.beforePut(key, value, false);
+    CacheEntry<K, V> put(K key, V value, AttributeMap attributes, boolean OnlyIfAbsent,
+            boolean fromLoader) {
+        long started = listener.beforePut(key, value, fromLoader);
 
         lazyStartFailIfShutdown();
         Map.Entry<CacheEntry<K, V>, CacheEntry<K, V>> prev = memoryCache.put(key, value,
@@ -162,7 +163,7 @@ public class UnsynchronizedInternalCache<K, V> extends AbstractInternalCache<K,
         ParallelArray<CacheEntry<K, V>> trimmed = memoryCache.trim();
 
         listener.afterPut(started, trimmed.asList(), (InternalCacheEntry) prev.getKey(),
-                (InternalCacheEntry) prev.getValue(), false);
+                (InternalCacheEntry) prev.getValue(), fromLoader);
         return prev.getKey();
     }
 
@@ -170,28 +171,43 @@ public class UnsynchronizedInternalCache<K, V> extends AbstractInternalCache<K,
         throw new UnsupportedOperationException();
     }
 
-    public void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data) {
-        long started = listener.beforePutAll(null, null, false);
+    @Override
+    void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data, boolean fromLoader) {
+        long started = listener.beforePutAll(null, null, fromLoader);
 
         lazyStartFailIfShutdown();
-
-        Map<CacheEntry<K, V>, CacheEntry<K, V>> result = memoryCache.putAllWithAttributes(data);
+        CacheEntry<K, V>[] prev = new CacheEntry[data.size()];
+        CacheEntry<K, V>[] entries = new CacheEntry[data.size()];
+        memoryCache.putAllWithAttributes(data, prev, entries);
         ParallelArray<CacheEntry<K, V>> trimmed = memoryCache.trim();
 
-        listener.afterPutAll(started, trimmed.asList(), (Map) result, false);
+        listener.afterPutAll(started, trimmed.asList(), prev, entries, fromLoader);
     }
 
     public V get(Object key) {
-        CacheEntry<K, V> ce = memoryCache.get(key);
+        CacheEntry<K, V> ce = memoryCache.access(key);
         return ce == null ? null : ce.getValue();
     }
 
     public Map<K, V> getAll(Collection<? extends K> keys) {
-        throw new UnsupportedOperationException();
+        if (keys == null) {
+            throw new NullPointerException("collection is null");
+        }
+        CollectionUtils.checkCollectionForNulls(keys);
+        long started = listener.beforeGetAll(keys);
+
+        lazyStartFailIfShutdown();
+        Object[] k = keys.toArray();
+        CacheEntry<K, V>[] entries = memoryCache.getAll(k);
+
+        boolean[] isHit = new boolean[k.length];
+        Map<K, V> result = getAllResult(k, entries, isHit);
+        listener.afterGetAll(started, k, entries, isHit, new boolean[k.length], null);
+        return result;
     }
 
     public CacheEntry<K, V> getEntry(K key) {
-        return memoryCache.get(key);
+        return memoryCache.access(key);
     }
 
     public V replace(K key, V value) {
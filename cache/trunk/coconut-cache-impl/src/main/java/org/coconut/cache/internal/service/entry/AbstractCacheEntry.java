@@ -42,8 +42,8 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
     /** The hash of the key. */
     private final int hash;
 
-    /** The key of this cache entry. */
-    private final K key;
+    /** The key of this cache entry, or a reference to it. */
+    private final Object key;
 
     /** The time this entry was last updated. */
     private final long lastUpdateTime;
@@ -54,12 +54,21 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
     /** The size of the cache entry. */
     private final long size;
 
-    /** The value of the cache entry. */
-    private final V value;
+    /** The value of the cache entry, or a reference to it. */
+    private final Object value;
 
     /** The next cache entry in the hash map. */
     public AbstractCacheEntry<K, V> next;
 
+    /** The previous cache entry in access order, only used if idle entries are evicted. */
+    private AbstractCacheEntry<K, V> before;
+
+    /** The next cache entry in access order, only used if idle entries are evicted. */
+    private AbstractCacheEntry<K, V> after;
+
+    /** The last time this entry was read through a near cache. */
+    private volatile long nearAccessTime;
+
     boolean isExpired;
 
     public AbstractCacheEntry<K, V> next() {
@@ -69,6 +78,22 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
         this.next = (AbstractCacheEntry<K, V>) entry;
     }
 
+    public AbstractCacheEntry<K, V> before() {
+        return before;
+    }
+
+    public void setBefore(ChainingEntry entry) {
+        this.before = (AbstractCacheEntry<K, V>) entry;
+    }
+
+    public AbstractCacheEntry<K, V> after() {
+        return after;
+    }
+
+    public void setAfter(ChainingEntry entry) {
+        this.after = (AbstractCacheEntry<K, V>) entry;
+    }
+
     /**
      * Creates a new AbstractCacheEntry.
      *
@@ -84,15 +109,23 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
      *            the last update time of this cache entry
      * @param size
      *            the size of the cache entry
+     * @param references
+     *            used for wrapping the key and value in references, or <code>null</code>
+     *            if they should be strongly referenced
      */
     AbstractCacheEntry(K key, V value, double cost, long creationTime, long lastUpdateTime,
-            long size, AttributeMap attributes) {
+            long size, AttributeMap attributes, EntryReferences references) {
         if (value == null) {
             throw new NullPointerException("value is null");
         }
         this.hash = hash(key.hashCode());
-        this.key = key;
-        this.value = value;
+        if (references == null) {
+            this.key = key;
+            this.value = value;
+        } else {
+            this.key = references.key(key, hash);
+            this.value = references.value(value, hash);
+        }
         this.cost = cost;
         this.creationTime = creationTime;
         this.lastUpdateTime = lastUpdateTime;
@@ -118,9 +151,9 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
         // Entry to compare with
         if (k1 == k2 || k1 != null && k1.equals(k2)) {
             // new Exception().printStackTrace();
-            Object v1 = value;
+            Object v1 = getValue();
             Object v2 = e.getValue();
-            if (v1 == v2 || v1.equals(v2)) {
+            if (v1 == v2 || v1 != null && v1.equals(v2)) {
                 return true;
             }
         }
@@ -147,7 +180,7 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
 
     /** {@inheritDoc} */
     public K getKey() {
-        return key;
+        return (K) EntryReferences.get(key);
     }
 
     public boolean isExpired() {
@@ -161,10 +194,16 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
         return lastUpdateTime;
     }
 
+    /** {@inheritDoc} */
     public int getPolicyIndex() {
         return policyIndex;
     }
 
+    /** {@inheritDoc} */
+    public long getNearAccessTime() {
+        return nearAccessTime;
+    }
+
     /** {@inheritDoc} */
     public long getSize() {
         return size;
@@ -172,13 +211,26 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
 
     /** {@inheritDoc} */
     public V getValue() {
-        return value;
+        return (V) EntryReferences.get(value);
     }
 
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
-        return key.hashCode() ^ value.hashCode();
+        Object k = getKey();
+        Object v = getValue();
+        return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+    }
+
+    /**
+     * Returns whether or not the key or value of this entry has been reclaimed by the
+     * garbage collector.
+     *
+     * @return <code>true</code> if the key or value of this entry has been reclaimed,
+     *         otherwise <code>false</code>
+     */
+    public boolean isCleared() {
+        return getKey() == null || getValue() == null;
     }
 
     public boolean isDead() {
@@ -204,7 +256,13 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
 
     abstract void setHits(long hits);
 
-    abstract void setLastAccessTime(long lastAccessTime);
+    /** {@inheritDoc} */
+    public abstract void setLastAccessTime(long lastAccessTime);
+
+    /** {@inheritDoc} */
+    public void setNearAccessTime(long nearAccessTime) {
+        this.nearAccessTime = nearAccessTime;
+    }
 
     public V setValue(V v) {
         throw new UnsupportedOperationException();
@@ -222,7 +280,8 @@ public abstract class AbstractCacheEntry<K, V> implements ChainingEntry<K, V> {
 
     abstract long getRefreshTime();
 
-    void setPolicyIndex(int index) {
+    /** {@inheritDoc} */
+    public void setPolicyIndex(int index) {
         this.policyIndex = index;
     }
 }
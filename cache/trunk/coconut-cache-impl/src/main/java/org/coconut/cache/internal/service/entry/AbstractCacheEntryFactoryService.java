@@ -47,6 +47,12 @@ public abstract class AbstractCacheEntryFactoryService<K, V> implements
 
     private final Predicate<CacheEntry<K, V>> isCacheable;
 
+    /** Used for wrapping keys and values in references, or null if strongly referenced. */
+    private final EntryReferences references;
+
+    /** Whether or not the time entries are accessed is recorded. */
+    private final boolean isRecordingAccess;
+
     /**
      * Creates a new AbstractCacheEntryFactoryService.
      * 
@@ -59,6 +65,9 @@ public abstract class AbstractCacheEntryFactoryService<K, V> implements
             InternalCacheExceptionService<K, V> exceptionHandler) {
         this.clock = clock;
         this.isCacheable = evictionConfiguration.getIsCacheableFilter();
+        this.references = EntryReferences.from(evictionConfiguration);
+        this.isRecordingAccess = evictionConfiguration
+                .getIdleTime(TimeUnit.NANOSECONDS) != Long.MAX_VALUE;
         this.exceptionService = exceptionHandler;
     }
 
@@ -74,6 +83,16 @@ public abstract class AbstractCacheEntryFactoryService<K, V> implements
         return result;
     }
 
+    /**
+     * Returns the references used for wrapping the keys and values of new entries.
+     *
+     * @return the references used for wrapping the keys and values of new entries, or
+     *         <code>null</code> if keys and values are strongly referenced
+     */
+    public EntryReferences getReferences() {
+        return references;
+    }
+
     public abstract AbstractCacheEntry<K, V> createEntry(K key, V value, AttributeMap attributes,
             InternalCacheEntry<K, V> existing);
 
@@ -103,6 +122,26 @@ public abstract class AbstractCacheEntryFactoryService<K, V> implements
         return clock.timestamp();
     }
 
+    /**
+     * Returns whether or not the time entries are accessed is recorded. This is only
+     * needed if entries are evicted when they have not been accessed for some time.
+     *
+     * @return whether or not the time entries are accessed is recorded
+     */
+    public boolean isRecordingAccess() {
+        return isRecordingAccess;
+    }
+
+    /**
+     * Records that the specified entry was accessed by updating its last access time.
+     *
+     * @param entry
+     *            the entry that was accessed
+     */
+    public void accessed(InternalCacheEntry<K, V> entry) {
+        ((AbstractCacheEntry<K, V>) entry).setLastAccessTime(getAccessTimeStamp(entry));
+    }
+
     private void illegalAttribute(Attribute a, K key, Object illegal, Object defaultValue) {
         String warning = CacheInternals.lookup(AbstractCacheEntryFactoryService.class, "ia", a,
                 key, illegal.toString(), defaultValue.toString());
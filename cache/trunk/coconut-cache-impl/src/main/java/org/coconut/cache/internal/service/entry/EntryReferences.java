@@ -0,0 +1,174 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.entry;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration.ReferenceType;
+
+/**
+ * Wraps the keys and values of cache entries in soft or weak references. All references
+ * are registered with a single reference queue, and carry the hash of the entry they
+ * belong to so that the memory store can locate the entry once the reference has been
+ * cleared by the garbage collector.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public final class EntryReferences {
+
+    /** The queue that cleared references are enqueued on. */
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    /** The type of references used for values. */
+    private final ReferenceType valueType;
+
+    /** Whether or not keys are weakly referenced. */
+    private final boolean weakKeys;
+
+    /**
+     * Creates a new EntryReferences.
+     *
+     * @param valueType
+     *            the type of references used for values
+     * @param weakKeys
+     *            whether or not keys are weakly referenced
+     */
+    EntryReferences(ReferenceType valueType, boolean weakKeys) {
+        this.valueType = valueType;
+        this.weakKeys = weakKeys;
+    }
+
+    /**
+     * Wraps the specified key, if keys are weakly referenced.
+     *
+     * @param key
+     *            the key to wrap
+     * @param hash
+     *            the hash of the entry
+     * @return the key or a reference to it
+     */
+    Object key(Object key, int hash) {
+        return weakKeys ? new Weak(key, hash, queue) : key;
+    }
+
+    /**
+     * Wraps the specified value in a reference of the configured type.
+     *
+     * @param value
+     *            the value to wrap
+     * @param hash
+     *            the hash of the entry
+     * @return the value or a reference to it
+     */
+    Object value(Object value, int hash) {
+        switch (valueType) {
+        case SOFT:
+            return new Soft(value, hash, queue);
+        case WEAK:
+            return new Weak(value, hash, queue);
+        default:
+            return value;
+        }
+    }
+
+    /**
+     * Removes the next cleared reference from the queue, if one is available.
+     *
+     * @return the next cleared reference, or <code>null</code> if no references has been
+     *         cleared
+     */
+    public Reference<?> poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Returns the hash of the entry that the specified reference was created for.
+     *
+     * @param reference
+     *            a reference returned by {@link #poll()}
+     * @return the hash of the entry that the specified reference was created for
+     */
+    public static int getHash(Reference<?> reference) {
+        return ((HashedReference) reference).getHash();
+    }
+
+    /**
+     * Returns an EntryReferences for the specified configuration, or <code>null</code>
+     * if both keys and values are strongly referenced.
+     *
+     * @param conf
+     *            the configuration of the memory store
+     * @return an EntryReferences for the specified configuration, or <code>null</code>
+     *         if both keys and values are strongly referenced
+     */
+    public static EntryReferences from(MemoryStoreConfiguration<?, ?> conf) {
+        if (conf.getValueReferenceType() == ReferenceType.STRONG && !conf.isWeakKeys()) {
+            return null;
+        }
+        return new EntryReferences(conf.getValueReferenceType(), conf.isWeakKeys());
+    }
+
+    /**
+     * Returns the referent of the specified object if it is a reference created by this
+     * class, otherwise the object itself.
+     *
+     * @param o
+     *            the object to unwrap
+     * @return the referent of the specified object, or <code>null</code> if it has been
+     *         cleared
+     */
+    static Object get(Object o) {
+        return o instanceof HashedReference ? ((Reference<?>) o).get() : o;
+    }
+
+    /** A reference that knows the hash of the entry it belongs to. */
+    interface HashedReference {
+        /**
+         * Returns the hash of the entry.
+         *
+         * @return the hash of the entry
+         */
+        int getHash();
+    }
+
+    /** A soft reference to a key or value. */
+    static final class Soft extends SoftReference<Object> implements HashedReference {
+        /** The hash of the entry. */
+        private final int hash;
+
+        Soft(Object referent, int hash, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = hash;
+        }
+
+        /** {@inheritDoc} */
+        public int getHash() {
+            return hash;
+        }
+    }
+
+    /** A weak reference to a key or value. */
+    static final class Weak extends WeakReference<Object> implements HashedReference {
+        /** The hash of the entry. */
+        private final int hash;
+
+        Weak(Object referent, int hash, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = hash;
+        }
+
+        /** {@inheritDoc} */
+        public int getHash() {
+            return hash;
+        }
+    }
+}
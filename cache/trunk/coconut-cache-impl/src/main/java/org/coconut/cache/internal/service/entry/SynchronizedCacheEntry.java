@@ -27,11 +27,12 @@ public class SynchronizedCacheEntry<K, V> extends AbstractCacheEntry<K, V> {
      * @param creationTime
      * @param lastUpdateTime
      * @param size
+     * @param references
      */
     public SynchronizedCacheEntry(K key, V value, double cost, long creationTime,
             long lastUpdateTime, long size, long refreshTime, long expirationTime, long hits,
-            AttributeMap attributes) {
-        super(key, value, cost, creationTime, lastUpdateTime, size, attributes);
+            AttributeMap attributes, EntryReferences references) {
+        super(key, value, cost, creationTime, lastUpdateTime, size, attributes, references);
         this.refreshTime = refreshTime;
         this.expirationTime = expirationTime;
         this.hits = hits;
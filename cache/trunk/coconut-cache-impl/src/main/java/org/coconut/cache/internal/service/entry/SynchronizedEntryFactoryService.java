@@ -57,7 +57,8 @@ public class SynchronizedEntryFactoryService<K, V> extends AbstractCacheEntryFac
             }
         }
         SynchronizedCacheEntry<K, V> newEntry = new SynchronizedCacheEntry<K, V>(key, value, cost,
-                creationTime, lastUpdate, size, refreshTime, expirationTime, hits, am);
+                creationTime, lastUpdate, size, refreshTime, expirationTime, hits, am,
+                getReferences());
         if (!isCacheable(newEntry)) {
             newEntry.setPolicyIndex(Integer.MIN_VALUE);
             return newEntry;
@@ -27,10 +27,12 @@ public class UnsynchronizedCacheEntry<K, V> extends AbstractCacheEntry<K, V> {
      * @param creationTime
      * @param lastUpdateTime
      * @param size
+     * @param references
      */
     public UnsynchronizedCacheEntry(K key, V value, double cost, long creationTime,
-            long lastUpdateTime, long size, long refreshTime, AttributeMap attributes) {
-        super(key, value, cost, creationTime, lastUpdateTime, size, attributes);
+            long lastUpdateTime, long size, long refreshTime, AttributeMap attributes,
+            EntryReferences references) {
+        super(key, value, cost, creationTime, lastUpdateTime, size, attributes, references);
         this.refreshTime = refreshTime;
 // this.expirationTime = expirationTime;
 // this.hits = hits;
@@ -76,7 +76,7 @@ public class UnsynchronizedEntryFactoryService<K, V> extends AbstractCacheEntryF
             }
         }
         UnsynchronizedCacheEntry<K, V> newEntry = new UnsynchronizedCacheEntry<K, V>(key, value,
-                cost, creationTime, lastUpdate, size, refreshTime, am);
+                cost, creationTime, lastUpdate, size, refreshTime, am, getReferences());
         newEntry.setHits(hits);
         newEntry.setExpirationTime(expirationTime);
         if (!isCacheable(newEntry)) {
@@ -11,7 +11,6 @@ import static org.coconut.cache.internal.service.event.InternalEntryEvent.update
 import static org.coconut.cache.internal.service.event.InternalEvent.cleared;
 
 import java.util.Collection;
-import java.util.Map;
 
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
@@ -104,12 +103,12 @@ public class DefaultCacheEventService<K, V> extends AbstractCacheLifecycle imple
 
     /** {@inheritDoc} */
     public void afterPutAll(Cache<K, V> cache, long ignoreStarted,
-            Collection<? extends CacheEntry<K, V>> evictedEntries,
-            Map<InternalCacheEntry<K, V>, InternalCacheEntry<K, V>> entries) {
+            Collection<? extends CacheEntry<K, V>> evictedEntries, CacheEntry<K, V>[] prevEntries,
+            CacheEntry<K, V>[] newEntries) {
         doEvictAll(cache, evictedEntries);
-        for (Map.Entry<InternalCacheEntry<K, V>, InternalCacheEntry<K, V>> entry : entries
-                .entrySet()) {
-            put(cache, entry.getValue(), entry.getKey());
+        for (int i = 0; i < newEntries.length; i++) {
+            put(cache, (InternalCacheEntry<K, V>) prevEntries[i],
+                    (InternalCacheEntry<K, V>) newEntries[i]);
         }
     }
 
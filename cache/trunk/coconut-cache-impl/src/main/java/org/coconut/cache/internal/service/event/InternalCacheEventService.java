@@ -4,7 +4,6 @@
 package org.coconut.cache.internal.service.event;
 
 import java.util.Collection;
-import java.util.Map;
 
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
@@ -40,8 +39,8 @@ public interface InternalCacheEventService<K, V> extends CacheEventService<K, V>
             InternalCacheEntry<K, V> oldEntry, InternalCacheEntry<K, V> newEntry);
 
     void afterPutAll(Cache<K, V> cache, long started,
-            Collection<? extends CacheEntry<K, V>> evictedEntries,
-            Map<InternalCacheEntry<K, V>, InternalCacheEntry<K, V>> newPrevEntries);
+            Collection<? extends CacheEntry<K, V>> evictedEntries, CacheEntry<K, V>[] prevEntries,
+            CacheEntry<K, V>[] newEntries);
 
     void afterRemove(Cache<K, V> cache, long started, CacheEntry<K, V> entry);
 
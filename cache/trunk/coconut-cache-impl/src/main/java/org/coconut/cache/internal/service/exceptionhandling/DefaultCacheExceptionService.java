@@ -92,6 +92,11 @@ public class DefaultCacheExceptionService<K, V> implements InternalCacheExceptio
         debugLogger.debug(str);
     }
 
+    /** {@inheritDoc} */
+    public void error(String msg, Throwable cause) {
+        exceptionHandler.apply(createContext(cause, msg, Level.Error));
+    }
+
     /** {@inheritDoc} */
     public void fatal(String msg) {
         exceptionHandler.apply(createContext(null, msg, Level.Fatal));
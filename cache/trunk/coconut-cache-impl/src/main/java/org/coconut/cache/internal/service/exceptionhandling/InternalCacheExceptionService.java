@@ -26,6 +26,8 @@ import org.coconut.cache.service.servicemanager.CacheLifecycle;
  */
 public interface InternalCacheExceptionService<K, V> {
 
+    void error(String msg, Throwable cause);
+
     void fatal(String msg);
 
     void fatal(String msg, Throwable cause);
@@ -0,0 +1,490 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.internal.CacheMutex;
+import org.coconut.cache.internal.service.index.EntryIndexes.Index;
+import org.coconut.cache.internal.service.memorystore.MemoryStore;
+import org.coconut.cache.service.index.CacheIndexService;
+import org.coconut.cache.service.index.CacheQuery;
+import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
+import org.coconut.cache.service.servicemanager.CacheLifecycle;
+import org.coconut.operations.Comparators;
+import org.coconut.operations.Mappers;
+import org.coconut.operations.Predicates;
+import org.coconut.operations.Predicates.AllPredicate;
+import org.coconut.operations.Predicates.AndPredicate;
+import org.coconut.operations.Predicates.GreaterThenOrEqualPredicate;
+import org.coconut.operations.Predicates.GreaterThenPredicate;
+import org.coconut.operations.Predicates.IsEqualsPredicate;
+import org.coconut.operations.Predicates.LessThenOrEqualPredicate;
+import org.coconut.operations.Predicates.LessThenPredicate;
+import org.coconut.operations.Predicates.MapAndEvaluatePredicate;
+import org.coconut.operations.Ops.Mapper;
+import org.coconut.operations.Ops.Predicate;
+
+/**
+ * The default implementation of {@link CacheIndexService}. Queries are planned by
+ * looking for {@link Predicates#mapAndEvaluate(Mapper, Predicate)} predicates, possible
+ * combined with {@link Predicates#and(Predicate, Predicate)}, whose mapper is the mapper
+ * of an index. The complete predicate is always evaluated for every candidate entry, so
+ * the index is only used for limiting the number of entries that are tested.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class DefaultCacheIndexService<K, V> extends AbstractCacheLifecycle implements
+        CacheIndexService<K, V> {
+
+    /** The maximum number of candidate entries tested at a time. */
+    static final int CHUNK_SIZE = 128;
+
+    /** The indexes of the cache. */
+    private final EntryIndexes<K, V> indexes;
+
+    /** The memory store containing all entries. */
+    private final MemoryStore<K, V> memoryStore;
+
+    /** The lock guarding the memory store and the indexes. */
+    private final Object mutex;
+
+    /**
+     * Creates a new DefaultCacheIndexService for an unsynchronized cache.
+     *
+     * @param memoryStore
+     *            the memory store containing all entries
+     * @param indexes
+     *            the indexes of the cache
+     */
+    public DefaultCacheIndexService(MemoryStore<K, V> memoryStore, EntryIndexes<K, V> indexes) {
+        this.memoryStore = memoryStore;
+        this.indexes = indexes;
+        this.mutex = this;
+    }
+
+    /**
+     * Creates a new DefaultCacheIndexService for a synchronized cache.
+     *
+     * @param memoryStore
+     *            the memory store containing all entries
+     * @param indexes
+     *            the indexes of the cache
+     * @param mutex
+     *            the mutex of the cache
+     */
+    public DefaultCacheIndexService(MemoryStore<K, V> memoryStore, EntryIndexes<K, V> indexes,
+            CacheMutex mutex) {
+        this.memoryStore = memoryStore;
+        this.indexes = indexes;
+        this.mutex = mutex.getMutex();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(CacheLifecycle.Initializer cli) {
+        cli.registerService(CacheIndexService.class, this);
+    }
+
+    /** {@inheritDoc} */
+    public CacheQuery<K, V> query(Predicate<? super CacheEntry<K, V>> predicate) {
+        if (predicate == null) {
+            throw new NullPointerException("predicate is null");
+        }
+        Plan<K, V> plan = plan(predicate);
+        return new Query(predicate, plan == null ? new ScanCandidates() : plan.candidates());
+    }
+
+    @Override
+    public String toString() {
+        return "Index Service";
+    }
+
+    /**
+     * Returns the best plan for locating the entries accepted by the specified predicate,
+     * or <code>null</code> if no index can be used.
+     *
+     * @param p
+     *            the predicate to plan
+     * @return the best plan or <code>null</code> if no index can be used
+     */
+    Plan<K, V> plan(Predicate<?> p) {
+        Plan<K, V> best = null;
+        if (p instanceof AndPredicate) {
+            AndPredicate<?> and = (AndPredicate<?>) p;
+            best = best(plan(and.getLeftPredicate()), plan(and.getRightPredicate()));
+        } else if (p instanceof AllPredicate) {
+            for (Predicate<?> pp : ((AllPredicate<?>) p).getPredicates()) {
+                best = best(best, plan(pp));
+            }
+        } else if (p instanceof MapAndEvaluatePredicate) {
+            MapAndEvaluatePredicate<?, ?> mp = (MapAndEvaluatePredicate<?, ?>) p;
+            Mapper mapper = mp.getMapper();
+            Predicate<?> mapped = mp.getPredicate();
+            best = planMapped(mapper, mapped);
+            // also try indexes on compound mappers, for example a key mapped to a tenant
+            while (mapped instanceof MapAndEvaluatePredicate) {
+                mp = (MapAndEvaluatePredicate<?, ?>) mapped;
+                mapper = Mappers.compoundMapper(mapper, mp.getMapper());
+                mapped = mp.getPredicate();
+                best = best(best, planMapped(mapper, mapped));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns a plan for the specified predicate evaluated on values mapped by the
+     * specified mapper, or <code>null</code> if there is no usable index.
+     */
+    private Plan<K, V> planMapped(Mapper<?, ?> mapper, Predicate<?> p) {
+        if (p instanceof IsEqualsPredicate) {
+            Object value = ((IsEqualsPredicate<?>) p).getElement();
+            Index<K, V> index = indexes.getIndex(mapper, false);
+            return index == null ? null : new Plan<K, V>(index, value);
+        }
+        Index<K, V> index = indexes.getIndex(mapper, true);
+        if (index != null) {
+            Plan<K, V> range = new Plan<K, V>(index);
+            if (range.restrict(p)) {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the plan that is expected to test the fewest entries.
+     */
+    static <K, V> Plan<K, V> best(Plan<K, V> a, Plan<K, V> b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return b.rank() < a.rank() ? b : a;
+    }
+
+    /**
+     * A plan for locating candidate entries using a single index, either the entries with
+     * a single indexed value or the entries with indexed values within a range.
+     */
+    static final class Plan<K, V> {
+        /** The index to use. */
+        final Index<K, V> index;
+
+        /** The lowest indexed value, or <code>null</code> if there is no lower bound. */
+        Comparable lower;
+
+        /** Whether or not the lower bound is included in the range. */
+        boolean lowerInclusive;
+
+        /** The highest indexed value, or <code>null</code> if there is no upper bound. */
+        Comparable upper;
+
+        /** Whether or not the upper bound is included in the range. */
+        boolean upperInclusive;
+
+        /** The single indexed value to look up, or <code>null</code> for a range. */
+        final Object value;
+
+        Plan(Index<K, V> index) {
+            this.index = index;
+            this.value = null;
+        }
+
+        Plan(Index<K, V> index, Object value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        /**
+         * Creates the candidates of this plan.
+         */
+        Candidates<K, V> candidates() {
+            return value == null ? new RangeCandidates<K, V>(this)
+                    : new ListCandidates<K, V>() {
+                        @Override
+                        Collection<CacheEntry<K, V>> snapshot() {
+                            Map<CacheEntry<K, V>, CacheEntry<K, V>> entries = index.get(value);
+                            return entries == null ? null : entries.values();
+                        }
+                    };
+        }
+
+        /**
+         * Returns an estimate of how selective this plan is, lower is better.
+         */
+        int rank() {
+            if (value != null) {
+                return 0;
+            }
+            return lower == null || upper == null ? 2 : 1;
+        }
+
+        /**
+         * Restricts the range of this plan to the values accepted by the specified
+         * predicate. Returns <code>false</code> if the predicate is not a natural order
+         * comparison, or a conjunction of them.
+         */
+        boolean restrict(Predicate<?> p) {
+            if (p instanceof AndPredicate) {
+                AndPredicate<?> and = (AndPredicate<?>) p;
+                return restrict(and.getLeftPredicate()) & restrict(and.getRightPredicate());
+            } else if (p instanceof GreaterThenPredicate) {
+                GreaterThenPredicate<?> gt = (GreaterThenPredicate<?>) p;
+                return isNatural(gt.getComparator()) && restrictLower(gt.getObject(), false);
+            } else if (p instanceof GreaterThenOrEqualPredicate) {
+                GreaterThenOrEqualPredicate<?> gt = (GreaterThenOrEqualPredicate<?>) p;
+                return isNatural(gt.getComparator()) && restrictLower(gt.getObject(), true);
+            } else if (p instanceof LessThenPredicate) {
+                LessThenPredicate<?> lt = (LessThenPredicate<?>) p;
+                return isNatural(lt.getComparator()) && restrictUpper(lt.getObject(), false);
+            } else if (p instanceof LessThenOrEqualPredicate) {
+                LessThenOrEqualPredicate<?> lt = (LessThenOrEqualPredicate<?>) p;
+                return isNatural(lt.getComparator()) && restrictUpper(lt.getObject(), true);
+            }
+            return false;
+        }
+
+        private boolean isNatural(Object comparator) {
+            return comparator == Comparators.NATURAL_COMPARATOR;
+        }
+
+        private boolean restrictLower(Object o, boolean inclusive) {
+            Comparable c = (Comparable) o;
+            int cmp = lower == null ? 1 : c.compareTo(lower);
+            if (cmp > 0 || cmp == 0 && !inclusive) {
+                lower = c;
+                lowerInclusive = inclusive;
+            }
+            return true;
+        }
+
+        private boolean restrictUpper(Object o, boolean inclusive) {
+            Comparable c = (Comparable) o;
+            int cmp = upper == null ? -1 : c.compareTo(upper);
+            if (cmp < 0 || cmp == 0 && !inclusive) {
+                upper = c;
+                upperInclusive = inclusive;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A source of candidate entries for a query. All methods are called while holding the
+     * mutex.
+     */
+    abstract static class Candidates<K, V> {
+        /**
+         * Returns the next candidates, which can be empty, or <code>null</code> if there
+         * are no more candidates.
+         */
+        abstract Collection<CacheEntry<K, V>> next();
+
+        boolean isIndexed() {
+            return true;
+        }
+    }
+
+    /**
+     * Candidates taken from a snapshot of a collection of entries, returned a chunk at a
+     * time.
+     */
+    abstract static class ListCandidates<K, V> extends Candidates<K, V> {
+        private List<CacheEntry<K, V>> entries;
+
+        private int index;
+
+        @Override
+        Collection<CacheEntry<K, V>> next() {
+            if (entries == null) {
+                Collection<CacheEntry<K, V>> c = snapshot();
+                entries = c == null ? new ArrayList<CacheEntry<K, V>>(0)
+                        : new ArrayList<CacheEntry<K, V>>(c);
+            }
+            if (index == entries.size()) {
+                return null;
+            }
+            int to = Math.min(entries.size(), index + CHUNK_SIZE);
+            List<CacheEntry<K, V>> result = entries.subList(index, to);
+            index = to;
+            return result;
+        }
+
+        /**
+         * Returns the entries to take a snapshot of, or <code>null</code> if there are no
+         * entries.
+         */
+        abstract Collection<CacheEntry<K, V>> snapshot();
+    }
+
+    /**
+     * Candidates with indexed values within a range, returned one indexed value at a
+     * time. The position is remembered as the last indexed value returned, so the query
+     * continues correctly even if the index is changed between calls.
+     */
+    static class RangeCandidates<K, V> extends Candidates<K, V> {
+        private final Plan<K, V> plan;
+
+        private Comparable last;
+
+        RangeCandidates(Plan<K, V> plan) {
+            this.plan = plan;
+        }
+
+        @Override
+        Collection<CacheEntry<K, V>> next() {
+            boolean inclusive = last == null ? plan.lowerInclusive : false;
+            Comparable from = last == null ? plan.lower : last;
+            Iterator<Map.Entry<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>>> i = plan.index
+                    .tail(from).entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>> e = i.next();
+                Comparable value = (Comparable) e.getKey();
+                if (from != null && !inclusive && value.compareTo(from) == 0) {
+                    continue;
+                }
+                if (plan.upper != null) {
+                    int cmp = value.compareTo(plan.upper);
+                    if (cmp > 0 || cmp == 0 && !plan.upperInclusive) {
+                        return null;
+                    }
+                }
+                last = value;
+                return new ArrayList<CacheEntry<K, V>>(e.getValue().values());
+            }
+            return null;
+        }
+    }
+
+    /** Candidates taken from a snapshot of all entries in the memory store. */
+    class ScanCandidates extends ListCandidates<K, V> {
+        @Override
+        boolean isIndexed() {
+            return false;
+        }
+
+        @Override
+        Collection<CacheEntry<K, V>> snapshot() {
+            ArrayList<CacheEntry<K, V>> list = new ArrayList<CacheEntry<K, V>>(memoryStore
+                    .size());
+            for (Iterator<CacheEntry<K, V>> i = memoryStore.sequentially(); i.hasNext();) {
+                CacheEntry<K, V> e = i.next();
+                // skip entries whose key has been reclaimed, but not yet purged
+                if (e.getKey() != null) {
+                    list.add(e);
+                }
+            }
+            return list;
+        }
+    }
+
+    /** The CacheQuery returned by {@link DefaultCacheIndexService#query(Predicate)}. */
+    class Query implements CacheQuery<K, V> {
+        private final LinkedList<CacheEntry<K, V>> buffer = new LinkedList<CacheEntry<K, V>>();
+
+        private final Candidates<K, V> candidates;
+
+        private int currentIndex;
+
+        private boolean isExhausted;
+
+        private final Predicate<? super CacheEntry<K, V>> predicate;
+
+        Query(Predicate<? super CacheEntry<K, V>> predicate, Candidates<K, V> candidates) {
+            this.predicate = predicate;
+            this.candidates = candidates;
+        }
+
+        /** {@inheritDoc} */
+        public List<CacheEntry<K, V>> getAll() {
+            List<CacheEntry<K, V>> result = new ArrayList<CacheEntry<K, V>>();
+            while (hasNext()) {
+                result.add(next());
+            }
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public int getCurrentIndex() {
+            return currentIndex;
+        }
+
+        /** {@inheritDoc} */
+        public List<CacheEntry<K, V>> getNext(int maxResults) {
+            if (maxResults <= 0) {
+                throw new IllegalArgumentException("maxResults must be a positive number, was "
+                        + maxResults);
+            }
+            List<CacheEntry<K, V>> result = new ArrayList<CacheEntry<K, V>>();
+            while (result.size() < maxResults && hasNext()) {
+                result.add(next());
+            }
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            while (buffer.isEmpty() && !isExhausted) {
+                synchronized (mutex) {
+                    Collection<CacheEntry<K, V>> c = candidates.next();
+                    if (c == null) {
+                        isExhausted = true;
+                    } else {
+                        for (CacheEntry<K, V> e : c) {
+                            K key = e.getKey();
+                            // skip entries that have been removed, updated or reclaimed
+                            if (key != null && e.getValue() != null
+                                    && memoryStore.get(key) == e && predicate.evaluate(e)) {
+                                buffer.add(e);
+                            }
+                        }
+                    }
+                }
+            }
+            return !buffer.isEmpty();
+        }
+
+        /** {@inheritDoc} */
+        public boolean isIndexed() {
+            return candidates.isIndexed();
+        }
+
+        /** {@inheritDoc} */
+        public Iterator<CacheEntry<K, V>> iterator() {
+            return this;
+        }
+
+        /** {@inheritDoc} */
+        public CacheEntry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            currentIndex++;
+            return buffer.removeFirst();
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.service.index.CacheIndexConfiguration;
+import org.coconut.operations.Ops.Mapper;
+
+/**
+ * The secondary indexes of a cache. The memory store notifies this class whenever an
+ * entry is added, updated or removed, so the indexes always reflect the entries of the
+ * memory store. This class is not thread-safe, all access must be guarded by the same
+ * lock as the memory store.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class EntryIndexes<K, V> {
+
+    /** All the indexes. */
+    private final List<Index<K, V>> indexes = new ArrayList<Index<K, V>>();
+
+    /**
+     * Creates a new EntryIndexes with the indexes declared in the specified
+     * configuration.
+     *
+     * @param conf
+     *            the configuration declaring the indexes
+     */
+    public EntryIndexes(CacheIndexConfiguration<K, V> conf) {
+        for (Mapper<? super CacheEntry<K, V>, ?> m : conf.getHashIndexes()) {
+            indexes.add(new Index<K, V>(m,
+                    new HashMap<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>>()));
+        }
+        for (Mapper<? super CacheEntry<K, V>, ?> m : conf.getSortedIndexes()) {
+            indexes.add(new Index<K, V>(m,
+                    new TreeMap<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>>()));
+        }
+    }
+
+    /**
+     * Adds the specified entry to all indexes.
+     *
+     * @param entry
+     *            the entry that was added to the memory store
+     */
+    public void added(CacheEntry<K, V> entry) {
+        for (Index<K, V> i : indexes) {
+            i.add(entry);
+        }
+    }
+
+    /** Removes all entries from all indexes. */
+    public void clear() {
+        for (Index<K, V> i : indexes) {
+            i.values.clear();
+            i.indexed.clear();
+        }
+    }
+
+    /**
+     * Returns the index using the specified mapper, or <code>null</code> if no such
+     * index exist.
+     *
+     * @param mapper
+     *            the mapper of the index
+     * @param sorted
+     *            whether or not the index must be sorted
+     * @return the index using the specified mapper
+     */
+    Index<K, V> getIndex(Mapper<?, ?> mapper, boolean sorted) {
+        for (Index<K, V> i : indexes) {
+            if (i.mapper.equals(mapper) && (!sorted || i.isSorted())) {
+                return i;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the specified entry from all indexes.
+     *
+     * @param entry
+     *            the entry that was removed from the memory store
+     */
+    public void removed(CacheEntry<K, V> entry) {
+        for (Index<K, V> i : indexes) {
+            i.remove(entry);
+        }
+    }
+
+    /**
+     * Replaces the specified previous entry with the specified new entry in all
+     * indexes.
+     *
+     * @param previous
+     *            the entry that was replaced in the memory store
+     * @param entry
+     *            the new entry
+     */
+    public void updated(CacheEntry<K, V> previous, CacheEntry<K, V> entry) {
+        for (Index<K, V> i : indexes) {
+            i.remove(previous);
+            i.add(entry);
+        }
+    }
+
+    /**
+     * A single index, mapping each indexed value to the entries that maps to it. Entries
+     * are compared by identity, and the indexed value of each entry is remembered when
+     * it is added. So an entry can be removed even if the mapper can no longer map it,
+     * for example, because its key or value has been reclaimed by the garbage collector.
+     */
+    static class Index<K, V> {
+
+        /** The indexed value of each entry in the index. */
+        final Map<CacheEntry<K, V>, Object> indexed =
+                new IdentityHashMap<CacheEntry<K, V>, Object>();
+
+        /** The mapper extracting the indexed value from an entry. */
+        final Mapper<? super CacheEntry<K, V>, ?> mapper;
+
+        /** The entries of each indexed value, each entry is mapped to itself. */
+        final Map<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>> values;
+
+        /**
+         * Creates a new Index.
+         *
+         * @param mapper
+         *            the mapper extracting the indexed value from an entry
+         * @param values
+         *            the map to keep the indexed values in
+         */
+        Index(Mapper<? super CacheEntry<K, V>, ?> mapper,
+                Map<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>> values) {
+            this.mapper = mapper;
+            this.values = values;
+        }
+
+        /**
+         * Returns the entries with the specified indexed value, or <code>null</code> if
+         * there are no such entries.
+         *
+         * @param value
+         *            the indexed value
+         * @return the entries with the specified indexed value
+         */
+        Map<CacheEntry<K, V>, CacheEntry<K, V>> get(Object value) {
+            return values.get(value);
+        }
+
+        /**
+         * Returns whether or not the indexed values are sorted.
+         *
+         * @return whether or not the indexed values are sorted
+         */
+        boolean isSorted() {
+            return values instanceof SortedMap;
+        }
+
+        /**
+         * Returns a view of the indexed values greater then or equal to the specified
+         * value, or all indexed values if the value is <code>null</code>.
+         *
+         * @param from
+         *            the lowest indexed value to return
+         * @return a view of the indexed values greater then or equal to the specified
+         *         value
+         */
+        SortedMap<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>> tail(Object from) {
+            SortedMap<Object, Map<CacheEntry<K, V>, CacheEntry<K, V>>> sm = (SortedMap) values;
+            return from == null ? sm : sm.tailMap(from);
+        }
+
+        void add(CacheEntry<K, V> entry) {
+            Object value = mapper.map(entry);
+            if (value != null) {
+                Map<CacheEntry<K, V>, CacheEntry<K, V>> entries = values.get(value);
+                if (entries == null) {
+                    entries = new IdentityHashMap<CacheEntry<K, V>, CacheEntry<K, V>>(4);
+                    values.put(value, entries);
+                }
+                entries.put(entry, entry);
+                indexed.put(entry, value);
+            }
+        }
+
+        void remove(CacheEntry<K, V> entry) {
+            Object value = indexed.remove(entry);
+            if (value != null) {
+                Map<CacheEntry<K, V>, CacheEntry<K, V>> entries = values.get(value);
+                if (entries != null && entries.remove(entry) != null && entries.isEmpty()) {
+                    values.remove(value);
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.InternalCacheEntry;
 import org.coconut.cache.internal.service.event.InternalCacheEventService;
+import org.coconut.cache.internal.service.loading.WriteBehindService;
 import org.coconut.cache.internal.service.statistics.DefaultCacheStatisticsService;
 
 public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
@@ -19,18 +20,29 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
 
     private final InternalCacheEventService<K, V> event;
 
+    private final WriteBehindService<K, V> writeBehind;
+
     private final Cache cache;
 
     public DefaultCacheListener(Cache cache, DefaultCacheStatisticsService<K, V> statistics) {
-        this.statistics = statistics;
-        this.event = null;
-        this.cache = cache;
+        this(cache, statistics, null, null);
     }
 
     public DefaultCacheListener(Cache cache,
             DefaultCacheStatisticsService<K, V> statistics, InternalCacheEventService<K, V> event) {
+        this(cache, statistics, event, null);
+    }
+
+    public DefaultCacheListener(Cache cache, DefaultCacheStatisticsService<K, V> statistics,
+            WriteBehindService<K, V> writeBehind) {
+        this(cache, statistics, null, writeBehind);
+    }
+
+    public DefaultCacheListener(Cache cache, DefaultCacheStatisticsService<K, V> statistics,
+            InternalCacheEventService<K, V> event, WriteBehindService<K, V> writeBehind) {
         this.statistics = statistics;
         this.event = event;
+        this.writeBehind = writeBehind;
         this.cache = cache;
     }
 
@@ -52,6 +64,11 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
         if (event != null) {
             event.afterRemoveAll(cache, start, removed);
         }
+        if (writeBehind != null) {
+            for (CacheEntry<K, V> e : removed) {
+                writeBehind.deleted(e.getKey());
+            }
+        }
     }
 
     public long beforeRemoveAll(Collection<? extends K> keys) {
@@ -64,6 +81,9 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
         if (event != null) {
             event.afterPut(cache, started, evictedEntries, oldEntry, newEntry);
         }
+        if (writeBehind != null && !fromLoader && newEntry != null) {
+            writeBehind.written(newEntry.getKey(), newEntry.getValue());
+        }
     }
 
     public long beforePut(K key, V value, boolean fromLoader) {
@@ -76,11 +96,17 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
     }
 
     public void afterPutAll(long started, Collection<? extends CacheEntry<K, V>> evictedEntries,
-            Map<InternalCacheEntry<K, V>, InternalCacheEntry<K, V>> newPrevEntries,
-            boolean fromLoader) {
-        statistics.afterPutAll(cache, started, evictedEntries, (Map) newPrevEntries);
+            CacheEntry<K, V>[] prevEntries, CacheEntry<K, V>[] newEntries, boolean fromLoader) {
+        statistics.afterPutAll(cache, started, evictedEntries, prevEntries, newEntries);
         if (event != null) {
-            event.afterPutAll(cache, started, evictedEntries, newPrevEntries);
+            event.afterPutAll(cache, started, evictedEntries, prevEntries, newEntries);
+        }
+        if (writeBehind != null && !fromLoader) {
+            for (CacheEntry<K, V> e : newEntries) {
+                if (e != null) {
+                    writeBehind.written(e.getKey(), e.getValue());
+                }
+            }
         }
     }
 
@@ -118,6 +144,9 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
         if (event != null) {
             event.afterRemove(cache, started, entry);
         }
+        if (writeBehind != null && entry != null) {
+            writeBehind.deleted(entry.getKey());
+        }
     }
 
     public long beforeReplace(K key, V value) {
@@ -145,6 +174,14 @@ public class DefaultCacheListener<K, V> implements InternalCacheListener<K, V> {
         statistics.afterMiss(cache, started, key, previousEntry, newEntry, isExpired);
     }
 
+    public long beforeLoad(K key) {
+        return statistics.beforeLoad(cache, key);
+    }
+
+    public void afterLoad(long started, K key, V value) {
+        statistics.afterLoad(cache, started, key, value);
+    }
+
     public void dexpired(long started, CacheEntry<K, V> entry) {
         if (event != null) {
             event.dexpired(cache, started, entry);
@@ -41,6 +41,18 @@ public interface InternalCacheListener<K, V> {
 
     void afterHit(long started, K key, CacheEntry<K, V> entry);
 
+    /**
+     * Called after the cache loader has loaded a value.
+     *
+     * @param started
+     *            the timestamp that was returned by {@link #beforeLoad(Object)}
+     * @param key
+     *            the key that was loaded
+     * @param value
+     *            the value that was loaded, or null if no value could be loaded
+     */
+    void afterLoad(long started, K key, V value);
+
     void afterMiss(long started, K key, CacheEntry<K, V> previousEntry, CacheEntry<K, V> newEntry,
             boolean isExpired);
 
@@ -50,9 +62,24 @@ public interface InternalCacheListener<K, V> {
     void afterPut(long started, Collection<? extends CacheEntry<K, V>> evictedEntries,
             InternalCacheEntry<K, V> oldEntry, InternalCacheEntry<K, V> newEntry, boolean fromLoader);
 
+    /**
+     * Called after a number of entries was added to the cache in a single operation.
+     *
+     * @param started
+     *            the timestamp that was returned by
+     *            {@link #beforePutAll(Map, Map, boolean)}
+     * @param evictedEntries
+     *            the entries that was evicted to make room for the new entries
+     * @param prevEntries
+     *            the entries that was replaced, the element at any index is
+     *            <code>null</code> if the key at the same index was not previously mapped
+     * @param newEntries
+     *            the entries that was added
+     * @param fromLoader
+     *            whether or not the entries was loaded by a cache loader
+     */
     void afterPutAll(long started, Collection<? extends CacheEntry<K, V>> evictedEntries,
-            Map<InternalCacheEntry<K, V>, InternalCacheEntry<K, V>> newPrevEntries,
-            boolean fromLoader);
+            CacheEntry<K, V>[] prevEntries, CacheEntry<K, V>[] newEntries, boolean fromLoader);
 
     void afterRemove(long started, CacheEntry<K, V> entry);
 
@@ -81,6 +108,15 @@ public interface InternalCacheListener<K, V> {
 
     long beforeGetAll(Collection<? extends K> keys);
 
+    /**
+     * Called before the cache loader is asked to load a value.
+     *
+     * @param key
+     *            the key that is to be loaded
+     * @return a timestamp
+     */
+    long beforeLoad(K key);
+
     long beforePut(K key, V value, boolean fromLoader);
 
     long beforePutAll(Map<? extends K, ? extends V> map, Map<? extends K, AttributeMap> attributes,
@@ -15,12 +15,14 @@ import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.InternalCacheEntryService;
 import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
+import org.coconut.cache.internal.service.listener.InternalCacheListener;
 import org.coconut.cache.internal.service.servicemanager.CompositeService;
 import org.coconut.cache.service.loading.CacheLoader;
 import org.coconut.cache.service.loading.CacheLoadingConfiguration;
 import org.coconut.cache.service.loading.CacheLoadingService;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
 import org.coconut.cache.service.servicemanager.CacheLifecycle;
+import org.coconut.core.RateLimiter;
 import org.coconut.management.ManagedGroup;
 import org.coconut.management.ManagedLifecycle;
 import org.coconut.operations.Ops.Predicate;
@@ -44,16 +46,25 @@ public abstract class AbstractCacheLoadingService<K, V> extends AbstractCacheLif
 
     private final Predicate<CacheEntry<K, V>> reloadFilter;
 
+    /** Used for timing loads. */
+    private final InternalCacheListener<K, V> listener;
+
+    /** The rate limiter used for limiting loads, or null if loads are not limited. */
+    private final RateLimiter rateLimiter;
+
     public AbstractCacheLoadingService(CacheLoadingConfiguration<K, V> loadingConfiguration,
             InternalCacheEntryService attributeFactory,
-            InternalCacheExceptionService<K, V> exceptionHandler, InternalCache<K, V> internal) {
+            InternalCacheExceptionService<K, V> exceptionHandler, InternalCache<K, V> internal,
+            InternalCacheListener<K, V> listener) {
         attributeFactory.setTimeToRefreshNs(LoadingUtils
                 .getInitialTimeToRefresh(loadingConfiguration));
         this.loader = loadingConfiguration.getLoader();
         reloadFilter = loadingConfiguration.getRefreshFilter();
+        rateLimiter = loadingConfiguration.getRateLimiter();
         this.internal = internal;
         this.attributeFactory = attributeFactory;
         this.exceptionHandler = exceptionHandler;
+        this.listener = listener;
     }
 
 // public V loadAndGet(K key) {
@@ -235,6 +246,16 @@ public abstract class AbstractCacheLoadingService<K, V> extends AbstractCacheLif
         return loader;
     }
 
+    /**
+     * Returns the rate limiter used for limiting loads.
+     *
+     * @return the rate limiter used for limiting loads, or <code>null</code> if loads are
+     *         not limited
+     */
+    final RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     /**
      * @param key
      *            the key for which a value should be loaded
@@ -247,11 +268,19 @@ public abstract class AbstractCacheLoadingService<K, V> extends AbstractCacheLif
     public CacheEntry<K, V> loadAndAddToCache(K key, AttributeMap attributes, boolean isSynchronous) {
         V v = null;
         try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire(1);
+            }
+            long started = listener.beforeLoad(key);
             v = loader.load(key, attributes);
+            listener.afterLoad(started, key, v);
         } catch (Throwable e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             v = getExceptionHandler().loadFailed(e, loader, key, attributes);
         }
-        return internal.put(key, v, attributes);
+        return internal.putFromLoader(key, v, attributes);
     }
 
     @Override
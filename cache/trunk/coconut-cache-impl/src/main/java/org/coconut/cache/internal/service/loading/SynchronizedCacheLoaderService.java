@@ -16,6 +16,7 @@ import org.coconut.cache.internal.CacheMutex;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.InternalCacheEntryService;
 import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
+import org.coconut.cache.internal.service.listener.InternalCacheListener;
 import org.coconut.cache.internal.service.memorystore.MemoryStore;
 import org.coconut.cache.internal.service.servicemanager.AbstractCacheServiceManager;
 import org.coconut.cache.service.loading.CacheLoadingConfiguration;
@@ -56,8 +57,8 @@ public class SynchronizedCacheLoaderService<K, V> extends AbstractCacheLoadingSe
             CacheMutex mutex, InternalCacheEntryService attributeFactory,
             InternalCacheExceptionService<K, V> exceptionService,
             CacheLoadingConfiguration<K, V> loadConf, final CacheWorkerService threadManager,
-            final InternalCache<K, V> loadSupport) {
-        super(loadConf, attributeFactory, exceptionService, loadSupport);
+            final InternalCache<K, V> loadSupport, InternalCacheListener<K, V> listener) {
+        super(loadConf, attributeFactory, exceptionService, loadSupport, listener);
         this.attributeFactory = attributeFactory;
         this.loadExecutor = threadManager.getExecutorService(CacheLoadingService.class);
         this.map = map;
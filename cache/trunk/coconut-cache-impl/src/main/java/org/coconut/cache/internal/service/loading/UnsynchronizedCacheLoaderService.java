@@ -4,7 +4,6 @@
 package org.coconut.cache.internal.service.loading;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -14,9 +13,11 @@ import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.InternalCacheEntryService;
 import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
+import org.coconut.cache.internal.service.listener.InternalCacheListener;
 import org.coconut.cache.internal.service.servicemanager.AbstractCacheServiceManager;
 import org.coconut.cache.service.loading.CacheLoadingConfiguration;
 import org.coconut.cache.service.loading.CacheLoader.LoaderCallback;
+import org.coconut.core.RateLimiter;
 import org.coconut.internal.util.CollectionUtils.SimpleImmutableEntry;
 
 public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoadingService<K, V> {
@@ -27,8 +28,9 @@ public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoading
     public UnsynchronizedCacheLoaderService(
             InternalCache c, InternalCacheEntryService attributeFactory,
             InternalCacheExceptionService<K, V> exceptionService,
-            CacheLoadingConfiguration<K, V> loadConf, final InternalCache<K, V> cache) {
-        super(loadConf, attributeFactory, exceptionService, cache);
+            CacheLoadingConfiguration<K, V> loadConf, final InternalCache<K, V> cache,
+            InternalCacheListener<K, V> listener) {
+        super(loadConf, attributeFactory, exceptionService, cache, listener);
         this.attributeFactory = attributeFactory;
       //  this.map = map;
         this.c = c;
@@ -78,7 +80,7 @@ public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoading
 
     /** {@inheritDoc} */
     public Map<K, V> loadBlockingAll(Map<? extends K, ? extends AttributeMap> keys) {
-        Collection<UnsynchronizedCacheLoaderCallback<K, V>> col = new ArrayList<UnsynchronizedCacheLoaderCallback<K, V>>(
+        List<UnsynchronizedCacheLoaderCallback<K, V>> col = new ArrayList<UnsynchronizedCacheLoaderCallback<K, V>>(
                 keys.size());
         for (Map.Entry<? extends K, ? extends AttributeMap> e : keys.entrySet()) {
             AttributeMap map = attributeFactory.createMap(e.getValue());
@@ -87,7 +89,7 @@ public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoading
             col.add(callback);
         }
         try {
-            getLoader().loadAll(col);
+            loadAllRateLimited(col);
         } catch (RuntimeException re) {
             StringBuilder sb = new StringBuilder();
             sb.append("CacheLoader.loadAll() failed");
@@ -128,7 +130,7 @@ public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoading
                 result.put(callback.getKey(), v);
             }
         }
-        internal.putAllWithAttributes((Map) keyValues);
+        internal.putAllFromLoader((Map) keyValues);
         return result;
     }
 
@@ -142,4 +144,36 @@ public class UnsynchronizedCacheLoaderService<K, V> extends AbstractCacheLoading
         return loadAndAddToCache(key, attributeFactory.createMap(attributes), false);
     }
 
+    /**
+     * Passes the specified callbacks to the cache loader. If loads are rate limited a
+     * permit is acquired for each key, and the keys are passed to the loader in batches
+     * no larger than the burst of the rate limiter. If the thread is interrupted while
+     * waiting for permits, the remaining loads fail with the InterruptedException.
+     *
+     * @param callbacks
+     *            the callbacks for the keys to load
+     */
+    private void loadAllRateLimited(List<UnsynchronizedCacheLoaderCallback<K, V>> callbacks) {
+        RateLimiter limiter = getRateLimiter();
+        if (limiter == null) {
+            getLoader().loadAll(callbacks);
+            return;
+        }
+        int batchSize = Math.max(1, limiter.getBurst());
+        for (int i = 0; i < callbacks.size(); i += batchSize) {
+            List<UnsynchronizedCacheLoaderCallback<K, V>> batch = callbacks.subList(i, Math.min(
+                    callbacks.size(), i + batchSize));
+            try {
+                limiter.acquire(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (UnsynchronizedCacheLoaderCallback<K, V> c : callbacks.subList(i, callbacks
+                        .size())) {
+                    c.failed(e);
+                }
+                return;
+            }
+            getLoader().loadAll(batch);
+        }
+    }
 }
@@ -0,0 +1,522 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.loading;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
+import org.coconut.cache.internal.service.servicemanager.CompositeService;
+import org.coconut.cache.service.loading.CacheLoadingConfiguration;
+import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
+import org.coconut.cache.service.worker.CacheWorkerService;
+import org.coconut.cache.spi.CacheStore;
+import org.coconut.core.Clock;
+import org.coconut.management.ManagedGroup;
+import org.coconut.management.ManagedLifecycle;
+import org.coconut.management.annotation.ManagedAttribute;
+
+/**
+ * Writes modifications of the cache to a {@link CacheStore} asynchronously.
+ * <p>
+ * Modified keys are kept in a queue ordered by the time they were first modified. If a
+ * key that is already queued is modified again only the latest modification is kept, so
+ * every key is written at most once per batch. A batch consisting of the oldest
+ * modifications is written by a worker once the batch size is reached or the oldest
+ * modification has been queued for longer than the configured delay. Only one batch is
+ * written at a time. If writing a batch fails the modifications are put back in the queue
+ * and no batches are written until the retry delay has elapsed. The retry delay is
+ * doubled for each consecutive failure.
+ * <p>
+ * Threads that modify the cache are blocked while the size of the queue is at or above
+ * the configured threshold. When the cache is shutdown all queued modifications are
+ * written, failed batches are reported but not retried.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class WriteBehindService<K, V> extends AbstractCacheLifecycle implements
+        CompositeService, ManagedLifecycle {
+
+    /** The name of the managed group the attributes of this service are added to. */
+    static final String MANAGED_NAME = "writebehind";
+
+    /** The maximum number of times the retry delay is doubled. */
+    static final int MAXIMUM_BACKOFF_SHIFT = 6;
+
+    /** The store that modifications are written to. */
+    private final CacheStore<K, V> store;
+
+    /** Used for reporting failed writes. */
+    private final InternalCacheExceptionService<K, V> exceptionService;
+
+    /** The clock used for determining the age of modifications. */
+    private final Clock clock;
+
+    /** The executor that batches are written by. */
+    private final Executor executor;
+
+    /** The executor used for checking the age of the oldest modification. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The maximum number of modifications written at a time. */
+    private final int batchSize;
+
+    /** The size of the queue at which writers are blocked. */
+    private final int threshold;
+
+    /** The maximum time in nanoseconds a modification is queued. */
+    private final long delay;
+
+    /** The initial time in nanoseconds to wait after a failed write. */
+    private final long retryDelay;
+
+    /** Guards all mutable state. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when modifications are removed from the queue. */
+    private final Condition notFull = lock.newCondition();
+
+    /** Signaled when a worker is done writing. */
+    private final Condition idle = lock.newCondition();
+
+    /** The queued modifications in the order they were first made. */
+    private LinkedHashMap<K, Modification<V>> queue = new LinkedHashMap<K, Modification<V>>();
+
+    /** Whether or not a batch is currently being written. */
+    private boolean isWriting;
+
+    /** Whether or not the cache has been shutdown. */
+    private boolean isShutdown;
+
+    /** The number of consecutive failed writes. */
+    private int failures;
+
+    /** The time before which no batches are written, set after a failed write. */
+    private long retryAt;
+
+    /** The task checking the age of the oldest modification. */
+    private ScheduledFuture<?> ageChecker;
+
+    /** The number of entries written to the store. */
+    private long numberOfStores;
+
+    /** The number of deletes written to the store. */
+    private long numberOfDeletes;
+
+    /** The number of modifications that replaced a queued modification. */
+    private long numberOfCoalesced;
+
+    /** The number of batches that could not be written. */
+    private long numberOfFailures;
+
+    /**
+     * Creates a new WriteBehindService.
+     *
+     * @param conf
+     *            the configuration of the loading service
+     * @param clock
+     *            the clock used for determining the age of modifications
+     * @param worker
+     *            the worker service providing the executors used for writing
+     * @param exceptionService
+     *            the exception service used for reporting failed writes
+     */
+    public WriteBehindService(CacheLoadingConfiguration<K, V> conf, Clock clock,
+            CacheWorkerService worker, InternalCacheExceptionService<K, V> exceptionService) {
+        this.store = conf.getStore();
+        this.batchSize = conf.getWriteBehindBatchSize();
+        this.threshold = conf.getWriteBehindQueueThreshold();
+        this.delay = conf.getWriteBehindDelay(TimeUnit.NANOSECONDS);
+        this.retryDelay = conf.getWriteBehindRetryDelay(TimeUnit.NANOSECONDS);
+        this.clock = clock;
+        this.exceptionService = exceptionService;
+        this.executor = worker.getExecutorService(WriteBehindService.class);
+        this.scheduler = worker.getScheduledExecutorService(WriteBehindService.class);
+    }
+
+    /**
+     * Queues the specified key-value pair for being stored.
+     *
+     * @param key
+     *            the key that was updated
+     * @param value
+     *            the new value of the key
+     */
+    public void written(K key, V value) {
+        add(key, value);
+    }
+
+    /**
+     * Queues the specified key for being deleted.
+     *
+     * @param key
+     *            the key that was removed
+     */
+    public void deleted(K key) {
+        add(key, null);
+    }
+
+    /**
+     * Adds a modification to the queue, blocking while the queue is full.
+     *
+     * @param key
+     *            the key that was modified
+     * @param value
+     *            the new value of the key, or <code>null</code> if the key was removed
+     */
+    private void add(K key, V value) {
+        lock.lock();
+        try {
+            Modification<V> m = queue.get(key);
+            if (m != null) {
+                m.value = value;
+                numberOfCoalesced++;
+                return;
+            }
+            while (!isShutdown && queue.size() >= threshold) {
+                writeIfNeeded();
+                // the executor might have written a batch in this thread, in which case
+                // the signal has already been sent
+                if (!isShutdown && queue.size() >= threshold) {
+                    notFull.awaitUninterruptibly();
+                }
+            }
+            queue.put(key, new Modification<V>(value, clock.relativeTime()));
+            if (queue.size() >= batchSize) {
+                writeIfNeeded();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a worker if there is no worker running and a batch is due. Must be called
+     * while holding the lock.
+     */
+    private void writeIfNeeded() {
+        if (!isWriting && isDue(clock.relativeTime())) {
+            isWriting = true;
+            try {
+                executor.execute(new Writer());
+            } catch (RuntimeException e) {
+                // the worker was rejected, so nobody else is going to clear the flag
+                isWriting = false;
+                idle.signalAll();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns whether or not a batch should be written. Must be called while holding the
+     * lock.
+     *
+     * @param now
+     *            the current time
+     * @return whether or not a batch should be written
+     */
+    private boolean isDue(long now) {
+        if (queue.isEmpty() || now < retryAt) {
+            return false;
+        }
+        return queue.size() >= batchSize || queue.size() >= threshold
+                || now - queue.values().iterator().next().time >= delay;
+    }
+
+    /**
+     * Writes batches until no more batches are due.
+     *
+     * @param all
+     *            whether all queued modifications should be written, regardless of
+     *            whether they are due, in which case failed batches are not retried
+     */
+    void write(boolean all) {
+        boolean isIdle = false;
+        try {
+            for (;;) {
+                LinkedHashMap<K, Modification<V>> batch = new LinkedHashMap<K, Modification<V>>();
+                lock.lock();
+                try {
+                    if (queue.isEmpty() || !all && !isDue(clock.relativeTime())) {
+                        isWriting = false;
+                        idle.signalAll();
+                        isIdle = true;
+                        return;
+                    }
+                    for (Iterator<Map.Entry<K, Modification<V>>> i = queue.entrySet().iterator(); i
+                            .hasNext()
+                            && batch.size() < batchSize;) {
+                        Map.Entry<K, Modification<V>> e = i.next();
+                        batch.put(e.getKey(), e.getValue());
+                        i.remove();
+                    }
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                Map<K, V> stores = new HashMap<K, V>();
+                List<K> deletes = new ArrayList<K>();
+                for (Map.Entry<K, Modification<V>> e : batch.entrySet()) {
+                    V value = e.getValue().value;
+                    if (value == null) {
+                        deletes.add(e.getKey());
+                    } else {
+                        stores.put(e.getKey(), value);
+                    }
+                }
+                try {
+                    if (stores.size() > 0) {
+                        store.storeAll(stores);
+                    }
+                    if (deletes.size() > 0) {
+                        store.deleteAll(deletes);
+                    }
+                    lock.lock();
+                    try {
+                        numberOfStores += stores.size();
+                        numberOfDeletes += deletes.size();
+                        failures = 0;
+                        retryAt = 0;
+                    } finally {
+                        lock.unlock();
+                    }
+                } catch (Exception e) {
+                    writeFailed(batch, all);
+                    exceptionService.error("Could not write " + batch.size()
+                            + " modifications to the CacheStore"
+                            + (all ? ", the modifications are dropped" : ", retrying later"), e);
+                }
+            }
+        } finally {
+            if (!isIdle) {
+                // failed unexpectedly, so nobody else is going to clear the flag
+                lock.lock();
+                try {
+                    isWriting = false;
+                    idle.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts the modifications of a failed batch back in the queue, unless the key has
+     * been modified again, and delays the next write.
+     *
+     * @param batch
+     *            the modifications that could not be written
+     * @param isShutdown
+     *            whether or not the batch was written while shutting down, in which case
+     *            the modifications are dropped
+     */
+    private void writeFailed(LinkedHashMap<K, Modification<V>> batch, boolean isShutdown) {
+        lock.lock();
+        try {
+            numberOfFailures++;
+            if (!isShutdown) {
+                for (Map.Entry<K, Modification<V>> e : queue.entrySet()) {
+                    batch.put(e.getKey(), e.getValue());
+                }
+                queue = batch;
+                retryAt = clock.relativeTime()
+                        + (retryDelay << Math.min(failures, MAXIMUM_BACKOFF_SHIFT));
+                failures++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of modifications that are waiting to be written.
+     *
+     * @return the number of modifications that are waiting to be written
+     */
+    @ManagedAttribute(description = "The number of modifications waiting to be written to the store")
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries that have been written to the store.
+     *
+     * @return the number of entries that have been written to the store
+     */
+    @ManagedAttribute(description = "The number of entries written to the store")
+    public long getNumberOfStores() {
+        lock.lock();
+        try {
+            return numberOfStores;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of keys that have been deleted from the store.
+     *
+     * @return the number of keys that have been deleted from the store
+     */
+    @ManagedAttribute(description = "The number of keys deleted from the store")
+    public long getNumberOfDeletes() {
+        lock.lock();
+        try {
+            return numberOfDeletes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of modifications that replaced a modification of the same key
+     * that was waiting to be written.
+     *
+     * @return the number of coalesced modifications
+     */
+    @ManagedAttribute(description = "The number of modifications that replaced a queued modification of the same key")
+    public long getNumberOfCoalescedWrites() {
+        lock.lock();
+        try {
+            return numberOfCoalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of batches that could not be written to the store.
+     *
+     * @return the number of batches that could not be written to the store
+     */
+    @ManagedAttribute(description = "The number of batches that could not be written to the store")
+    public long getNumberOfFailedWrites() {
+        lock.lock();
+        try {
+            return numberOfFailures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Collection<?> getChildServices() {
+        return Arrays.asList(store);
+    }
+
+    /** {@inheritDoc} */
+    public void manage(ManagedGroup parent) {
+        parent.addChild(MANAGED_NAME, "Write-behind attributes").add(this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void started(Cache<?, ?> cache) {
+        long period = Math.max(1, delay / 2);
+        ageChecker = scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                lock.lock();
+                try {
+                    writeIfNeeded();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shutdown(Shutdown shutdown) {
+        if (ageChecker != null) {
+            ageChecker.cancel(false);
+        }
+        shutdown.shutdownAsynchronously(new Callable<Object>() {
+            public Object call() {
+                lock.lock();
+                try {
+                    isShutdown = true;
+                    notFull.signalAll();
+                    while (isWriting) {
+                        idle.awaitUninterruptibly();
+                    }
+                    isWriting = true;
+                } finally {
+                    lock.unlock();
+                }
+                write(true);
+                return null;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "Write-behind Service";
+    }
+
+    /**
+     * A queued modification.
+     */
+    static final class Modification<V> {
+        /** The new value or <code>null</code> if the key was removed. */
+        V value;
+
+        /** The time the key was first modified. */
+        final long time;
+
+        /**
+         * Creates a new Modification.
+         *
+         * @param value
+         *            the new value or <code>null</code> if the key was removed
+         * @param time
+         *            the time the key was modified
+         */
+        Modification(V value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Writes due batches.
+     */
+    final class Writer implements Runnable {
+        /** {@inheritDoc} */
+        public void run() {
+            write(false);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.locking;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.coconut.cache.CacheException;
+import org.coconut.cache.service.locking.CacheLockingConfiguration;
+import org.coconut.cache.service.locking.CacheLockingService;
+import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
+import org.coconut.cache.service.servicemanager.CacheLifecycle;
+
+/**
+ * The default implementation of {@link CacheLockingService}. Keys are mapped by their hash
+ * code to a fixed array of {@link ReentrantReadWriteLock}s. Locks spanning more then one
+ * of these acquire them in ascending order of their index in the array, and release them
+ * in the opposite order.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class DefaultCacheLockingService<K, V> extends AbstractCacheLifecycle implements
+        CacheLockingService<K, V> {
+
+    /** The lock spanning all the locks. */
+    private final ReadWriteLock cacheLock;
+
+    /** The locks shared among the keys. */
+    private final ReentrantReadWriteLock[] locks;
+
+    /** The maximum time in nanoseconds to wait for a lock, or Long.MAX_VALUE. */
+    private final long timeout;
+
+    /**
+     * Creates a new DefaultCacheLockingService.
+     *
+     * @param conf
+     *            the configuration of the locking service
+     */
+    public DefaultCacheLockingService(CacheLockingConfiguration<K, V> conf) {
+        int size = 1;
+        while (size < conf.getConcurrencyLevel()) {
+            size <<= 1;
+        }
+        locks = new ReentrantReadWriteLock[size];
+        int[] all = new int[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+            all[i] = i;
+        }
+        timeout = conf.getLockTimeout(TimeUnit.NANOSECONDS);
+        cacheLock = new StripedReadWriteLock(all);
+    }
+
+    /** {@inheritDoc} */
+    public ReadWriteLock getCacheLock() {
+        return cacheLock;
+    }
+
+    /** {@inheritDoc} */
+    public ReadWriteLock getEntryLock(K key) {
+        int index = indexFor(key);
+        return timeout == Long.MAX_VALUE ? locks[index] : new StripedReadWriteLock(
+                new int[] { index });
+    }
+
+    /** {@inheritDoc} */
+    public ReadWriteLock getEntryLock(List<? extends K> keys) {
+        if (keys == null) {
+            throw new NullPointerException("keys is null");
+        }
+        boolean[] used = new boolean[locks.length];
+        int count = 0;
+        for (K key : keys) {
+            int index = indexFor(key);
+            if (!used[index]) {
+                used[index] = true;
+                count++;
+            }
+        }
+        int[] indexes = new int[count];
+        for (int i = 0, j = 0; j < count; i++) {
+            if (used[i]) {
+                indexes[j++] = i;
+            }
+        }
+        if (count == 1 && timeout == Long.MAX_VALUE) {
+            return locks[indexes[0]];
+        }
+        return new StripedReadWriteLock(indexes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(CacheLifecycle.Initializer cli) {
+        cli.registerService(CacheLockingService.class, this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "Locking Service";
+    }
+
+    /**
+     * Returns the index of the lock that the specified key maps to.
+     *
+     * @param key
+     *            the key to return the index for
+     * @return the index of the lock that the specified key maps to
+     */
+    int indexFor(Object key) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        }
+        int h = key.hashCode();
+        // spread the bits, see HashMap.hash(int)
+        h ^= h >>> 20 ^ h >>> 12;
+        h ^= h >>> 7 ^ h >>> 4;
+        return h & locks.length - 1;
+    }
+
+    /** A ReadWriteLock spanning one or more of the striped locks. */
+    class StripedReadWriteLock implements ReadWriteLock {
+
+        /** The read lock. */
+        private final Lock readLock;
+
+        /** The write lock. */
+        private final Lock writeLock;
+
+        /**
+         * Creates a new StripedReadWriteLock.
+         *
+         * @param indexes
+         *            the indexes of the locks to span in ascending order
+         */
+        StripedReadWriteLock(int[] indexes) {
+            Lock[] read = new Lock[indexes.length];
+            Lock[] write = new Lock[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                read[i] = locks[indexes[i]].readLock();
+                write[i] = locks[indexes[i]].writeLock();
+            }
+            readLock = new StripedLock(read);
+            writeLock = new StripedLock(write);
+        }
+
+        /** {@inheritDoc} */
+        public Lock readLock() {
+            return readLock;
+        }
+
+        /** {@inheritDoc} */
+        public Lock writeLock() {
+            return writeLock;
+        }
+    }
+
+    /** A Lock acquiring one or more locks in order. */
+    class StripedLock implements Lock {
+
+        /** The locks to acquire in order. */
+        private final Lock[] locks;
+
+        /**
+         * Creates a new StripedLock.
+         *
+         * @param locks
+         *            the locks to acquire in order
+         */
+        StripedLock(Lock[] locks) {
+            this.locks = locks;
+        }
+
+        /** {@inheritDoc} */
+        public void lock() {
+            if (timeout == Long.MAX_VALUE) {
+                for (Lock l : locks) {
+                    l.lock();
+                }
+            } else {
+                boolean isAcquired;
+                try {
+                    isAcquired = tryLock(timeout, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CacheException("Interrupted while waiting for lock", e);
+                }
+                if (!isAcquired) {
+                    throw new CacheException("Could not acquire lock within " + timeout
+                            + " nanoseconds");
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void lockInterruptibly() throws InterruptedException {
+            if (timeout != Long.MAX_VALUE) {
+                if (!tryLock(timeout, TimeUnit.NANOSECONDS)) {
+                    throw new CacheException("Could not acquire lock within " + timeout
+                            + " nanoseconds");
+                }
+                return;
+            }
+            int i = 0;
+            try {
+                for (; i < locks.length; i++) {
+                    locks[i].lockInterruptibly();
+                }
+            } finally {
+                if (i < locks.length) {
+                    unlock(i);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public Condition newCondition() {
+            if (locks.length == 1) {
+                return locks[0].newCondition();
+            }
+            throw new UnsupportedOperationException(
+                    "Conditions are not supported for locks spanning multiple keys");
+        }
+
+        /** {@inheritDoc} */
+        public boolean tryLock() {
+            for (int i = 0; i < locks.length; i++) {
+                if (!locks[i].tryLock()) {
+                    unlock(i);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(time);
+            int i = 0;
+            try {
+                for (; i < locks.length; i++) {
+                    long now = System.nanoTime();
+                    if (!locks[i].tryLock(nanos, TimeUnit.NANOSECONDS)) {
+                        return false;
+                    }
+                    nanos -= System.nanoTime() - now;
+                }
+                return true;
+            } finally {
+                if (i < locks.length) {
+                    unlock(i);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        public void unlock() {
+            unlock(locks.length);
+        }
+
+        /**
+         * Releases the first specified number of locks in reverse order.
+         *
+         * @param count
+         *            the number of locks to release
+         */
+        private void unlock(int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.coconut.cache.service.servicemanager.CacheLifecycle;
 import org.coconut.management.ManagedGroup;
 import org.coconut.management.ManagedVisitor;
 import org.coconut.management.Managements;
+import org.coconut.management.MetricsBuffer;
 import org.coconut.management.defaults.DefaultManagedGroup;
 
 /**
@@ -138,6 +139,11 @@ public class DefaultCacheManagementService extends AbstractCacheLifecycle implem
         return root.addChild(name, description);
     }
 
+    /** {@inheritDoc} */
+    public void exportMetrics(MetricsBuffer buffer) throws JMException {
+        root.exportMetrics(buffer);
+    }
+
     /** {@inheritDoc} */
     public Collection<ManagedGroup> getChildren() {
         return root.getChildren();
@@ -12,7 +12,9 @@ import javax.management.ObjectName;
 import org.coconut.cache.Cache;
 import org.coconut.cache.service.management.CacheMXBean;
 import org.coconut.cache.service.management.CacheManagementService;
+import org.coconut.cache.service.memorystore.MemoryStoreService;
 import org.coconut.management.ManagedGroup;
+import org.coconut.management.MetricsBuffer;
 import org.coconut.management.annotation.ManagedAttribute;
 import org.coconut.management.annotation.ManagedOperation;
 
@@ -26,7 +28,7 @@ import org.coconut.management.annotation.ManagedOperation;
  * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
  * @version $Id$
  */
-final class ManagementUtils {
+public final class ManagementUtils {
 
     /** Cannot instantiate. */
     // /CLOVER:OFF
@@ -89,6 +91,11 @@ final class ManagementUtils {
             return delegate.addChild(name, description);
         }
 
+        /** {@inheritDoc} */
+        public void exportMetrics(MetricsBuffer buffer) throws JMException {
+            delegate.exportMetrics(buffer);
+        }
+
         /** {@inheritDoc} */
         public Collection<ManagedGroup> getChildren() {
             return delegate.getChildren();
@@ -188,6 +195,12 @@ final class ManagementUtils {
         public long getVolume() {
             return cache.volume();
         }
+
+        /** {@inheritDoc} */
+        @ManagedOperation(description = "Writes a snapshot of the cache to disk")
+        public void saveSnapshot() {
+            cache.getService(MemoryStoreService.class).saveSnapshot();
+        }
     }
 
 }
@@ -3,19 +3,28 @@
  */
 package org.coconut.cache.internal.service.memorystore;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
+import org.coconut.cache.CacheException;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
+import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
 import org.coconut.cache.service.memorystore.MemoryStoreMXBean;
 import org.coconut.cache.service.memorystore.MemoryStoreService;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
 import org.coconut.cache.service.servicemanager.CacheLifecycle;
+import org.coconut.core.Clock;
 import org.coconut.operations.CollectionPredicates;
 import org.coconut.operations.Ops.Predicate;
 
@@ -34,12 +43,30 @@ import org.coconut.operations.Ops.Predicate;
 public abstract class AbstractMemoryService<K, V, T extends CacheEntry<K, V>> extends
         AbstractCacheLifecycle implements MemoryStoreService<K, V>, MemoryStoreMXBean {
 
+    /** The number of entries that are copied from the memory store at a time. */
+    private static final int SNAPSHOT_CHUNK_SIZE = 256;
+
+    /** The maximum number of idle entries that are evicted at a time. */
+    static final int IDLE_BATCH_SIZE = 256;
+
     private final AbstractCacheEntryFactoryService<K, V> entryFactory;
 
+    /** Used for reporting a snapshot that could not be loaded at startup. */
+    private final InternalCacheExceptionService<K, V> exceptionService;
+
     final MemoryStore<K, V> ms;
 
     private final InternalCache<K, V> cache;
 
+    /** The clock used for determining if entries has expired. */
+    private final Clock clock;
+
+    /** The configured snapshot file or <code>null</code> if none has been configured. */
+    private final File snapshotFile;
+
+    /** The idle time of entries in milliseconds, or Long.MAX_VALUE if there is none. */
+    final long idleTime;
+
     /**
      * Creates a new AbstractEvictionService.
      * 
@@ -47,10 +74,16 @@ public abstract class AbstractMemoryService<K, V, T extends CacheEntry<K, V>> ex
      *            the InternalCacheSupport for the cache
      */
     public AbstractMemoryService(InternalCache<K, V> cache, MemoryStore<K, V> ms,
-            AbstractCacheEntryFactoryService<K, V> factory) {
+            Clock clock, MemoryStoreConfiguration<K, V> conf,
+            AbstractCacheEntryFactoryService<K, V> factory,
+            InternalCacheExceptionService<K, V> exceptionService) {
         this.entryFactory = factory;
+        this.exceptionService = exceptionService;
         this.ms = ms;
         this.cache = cache;
+        this.clock = clock;
+        this.snapshotFile = conf.getSnapshotFile();
+        this.idleTime = conf.getIdleTime(TimeUnit.MILLISECONDS);
     }
     void checkStarted() {
 
@@ -73,6 +106,107 @@ public abstract class AbstractMemoryService<K, V, T extends CacheEntry<K, V>> ex
         return entryFactory.isDisabled();
     }
 
+    /**
+     * Loads the configured snapshot file, if it exists, before the cache is made
+     * available to users. If the snapshot cannot be loaded, for example, because it has
+     * been corrupted, the failure is reported to the exception service and the cache is
+     * started without any entries.
+     * 
+     * @param cache
+     *            the cache that was started
+     */
+    @Override
+    public void started(Cache<?, ?> cache) {
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                loadSnapshot(snapshotFile);
+            } catch (CacheException e) {
+                exceptionService.error("Could not load snapshot " + snapshotFile
+                        + ", starting with an empty cache", e);
+                // some entries might have been loaded before the failure
+                this.cache.clear();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int loadSnapshot(File file) {
+        try {
+            return new MemoryStoreSnapshot<K, V>(clock, file).load(cache);
+        } catch (IOException e) {
+            throw new CacheException("Could not load snapshot " + file, e);
+        } catch (ClassNotFoundException e) {
+            throw new CacheException("Could not load snapshot " + file, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file has been configured");
+        }
+        saveSnapshot(snapshotFile);
+    }
+
+    /** {@inheritDoc} */
+    public void saveSnapshot(File file) {
+        MemoryStoreSnapshot<K, V> snapshot = new MemoryStoreSnapshot<K, V>(clock, file);
+        ArrayList<CacheEntry<K, V>> chunk = new ArrayList<CacheEntry<K, V>>();
+        try {
+            snapshot.open();
+            int index = 0;
+            while (index >= 0) {
+                // only the copying of entries needs to hold any locks
+                index = copyEntries(index, chunk, SNAPSHOT_CHUNK_SIZE);
+                snapshot.write(chunk);
+                chunk.clear();
+            }
+            snapshot.commit();
+        } catch (IOException e) {
+            throw new CacheException("Could not save snapshot " + file, e);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Copies the entries in the memory store starting from the specified bucket index.
+     * 
+     * @param index
+     *            the index of the first bucket to copy
+     * @param to
+     *            the collection to copy the entries to
+     * @param count
+     *            the minimum number of entries to copy
+     * @return the index of the next bucket to copy or -1 if all buckets have been copied
+     * @see MemoryStore#copyEntries(int, Collection, int)
+     */
+    int copyEntries(int index, Collection<? super CacheEntry<K, V>> to, int count) {
+        return ms.copyEntries(index, to, count);
+    }
+
+    /** {@inheritDoc} */
+    public void evictIdleElements() {
+        if (idleTime != Long.MAX_VALUE) {
+            // evict in batches so other users of the cache are not blocked for long
+            while (evictIdle(clock.timestamp() - idleTime, IDLE_BATCH_SIZE) == IDLE_BATCH_SIZE) {
+                // keep going until all idle entries have been evicted
+            }
+        }
+    }
+
+    /**
+     * Evicts up to the specified number of entries that have not been accessed since the
+     * specified time.
+     *
+     * @param idleSince
+     *            entries that was last accessed at or before this time are evicted
+     * @param max
+     *            the maximum number of entries to evict
+     * @return the number of entries that was evicted
+     */
+    abstract int evictIdle(long idleSince, int max);
+
     public void setDisabled(boolean isDisabled) {
         entryFactory.setDisabled(isDisabled);
     }
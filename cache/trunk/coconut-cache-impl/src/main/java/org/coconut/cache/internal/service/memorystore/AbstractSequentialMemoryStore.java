@@ -5,11 +5,11 @@ import static org.coconut.operations.Mappers.MAP_ENTRY_TO_KEY_MAPPER;
 import static org.coconut.operations.Mappers.MAP_ENTRY_TO_VALUE_MAPPER;
 import static org.coconut.operations.Mappers.compoundMapper;
 
+import java.lang.ref.Reference;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -19,6 +19,8 @@ import org.coconut.attribute.AttributeMap;
 import org.coconut.attribute.Attributes;
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
+import org.coconut.cache.internal.service.entry.EntryReferences;
+import org.coconut.cache.internal.service.index.EntryIndexes;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
 import org.coconut.forkjoin.ParallelArray;
 import org.coconut.internal.util.CollectionUtils;
@@ -33,11 +35,29 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
 
     static final int MAXIMUM_CAPACITY = 1 << 30;
 
+    /** The maximum number of cleared references that are processed on each write. */
+    static final int PURGE_BATCH_SIZE = 16;
+
     private final MemoryStoreWithMapping<CacheEntry<K, V>> noMapping = new WithMappingImpl(
             CONSTANT_MAPPER);
 
     private final Cache<K, V> cache;
 
+    /** The secondary indexes to keep updated, or <code>null</code> if there are none. */
+    private final EntryIndexes<K, V> indexes;
+
+    /** Used for finding cleared entries, or <code>null</code> if strongly referenced. */
+    private final EntryReferences references;
+
+    /** Whether or not entries are kept in access order, for evicting idle entries. */
+    private final boolean isAccessOrdered;
+
+    /** The least recently accessed entry, only used if entries are kept in access order. */
+    private ChainingEntry<K, V> eldest;
+
+    /** The most recently accessed entry, only used if entries are kept in access order. */
+    private ChainingEntry<K, V> youngest;
+
     /**
      * The load factor for the hash table.
      */
@@ -53,11 +73,39 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
 
     long volume;
 
-    AbstractSequentialMemoryStore(Cache<K, V> cache) {
+    AbstractSequentialMemoryStore(Cache<K, V> cache, EntryIndexes<K, V> indexes,
+            EntryReferences references, boolean isAccessOrdered) {
         if (cache == null) {
             throw new NullPointerException("cache is null");
         }
         this.cache = cache;
+        this.indexes = indexes;
+        this.references = references;
+        this.isAccessOrdered = isAccessOrdered;
+    }
+
+    /**
+     * Returns the entry for the specified key, like {@link #get(Object)}, and records
+     * that it was accessed.
+     *
+     * @param key
+     *            the key of the entry
+     * @return the entry for the specified key, or <code>null</code> if no such entry
+     *         exists
+     */
+    public ChainingEntry<K, V> access(Object key) {
+        ChainingEntry<K, V> e = get(key);
+        if (e != null) {
+            touched(e);
+            if (isAccessOrdered) {
+                accessed(e);
+                if (e != youngest) {
+                    unlink(e);
+                    link(e);
+                }
+            }
+        }
+        return e;
     }
 
     public ParallelArray<CacheEntry<K, V>> all() {
@@ -93,8 +141,14 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         for (int i = 0; i < table.length; i++) {
             table[i] = null;
         }
+        eldest = null;
+        youngest = null;
         volume = 0;
         size = 0;
+        if (indexes != null) {
+            indexes.clear();
+        }
+        cleared();
     }
 
     public ChainingEntry<K, V> get(Object key) {
@@ -106,7 +160,8 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
             ChainingEntry<K, V> e = getFirst(hash);
             while (e != null) {
                 if (e.getHash() == hash && key.equals(e.getKey())) {
-                    return e;
+                    // the value might have been reclaimed but not yet purged
+                    return e.getValue() == null ? null : e;
                 }
                 e = e.next();
             }
@@ -114,6 +169,48 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         return null;
     }
 
+    public CacheEntry<K, V>[] getAll(Object[] keys) {
+        CacheEntry<K, V>[] entries = new CacheEntry[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            entries[i] = access(keys[i]);
+        }
+        return entries;
+    }
+
+    /**
+     * Copies the entries in the buckets of the hash table starting from the specified
+     * index to the specified collection. Whole buckets are copied until at least the
+     * specified number of entries has been copied or there are no more buckets.
+     * <p>
+     * Because the table is only ever resized by doubling it, an entry that was present in
+     * the table when copying started, and is still present, is never missed by calling
+     * this method repeatedly with the index returned from the previous call. Even if the
+     * table is resized in between calls. It might however be copied more then once.
+     *
+     * @param index
+     *            the index of the first bucket to copy
+     * @param to
+     *            the collection to copy the entries to
+     * @param count
+     *            the minimum number of entries to copy
+     * @return the index of the next bucket to copy or -1 if all buckets have been copied
+     */
+    public int copyEntries(int index, Collection<? super CacheEntry<K, V>> to, int count) {
+        ChainingEntry<K, V>[] tab = table;
+        int copied = 0;
+        while (index < tab.length) {
+            for (ChainingEntry<K, V> e = tab[index]; e != null; e = e.next()) {
+                to.add(e);
+                copied++;
+            }
+            index++;
+            if (copied >= count) {
+                return index < tab.length ? index : -1;
+            }
+        }
+        return -1;
+    }
+
     public int getMaximumSize() {
         return Integer.MAX_VALUE;
     }
@@ -122,54 +219,33 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         return Long.MAX_VALUE;
     }
 
+    /**
+     * Removes all entries whose key or value has been reclaimed by the garbage collector.
+     *
+     * @return the entries that was removed
+     */
+    public ParallelArray<CacheEntry<K, V>> purge() {
+        ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>();
+        purge(Integer.MAX_VALUE, list);
+        return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
+    }
+
     public Map.Entry<CacheEntry<K, V>, CacheEntry<K, V>> put(K key, V value, AttributeMap map,
             boolean onlyIfAbsent) {
-        int hash = hash(key.hashCode());
-        ChainingEntry<K, V>[] tab = table;
-        int index = hash & tab.length - 1;
-        ChainingEntry<K, V> e = tab[index];
-        ChainingEntry<K, V> prev = e;
-        while (e != null) {
-            ChainingEntry<K, V> next = e.next();
-            if (e.getHash() == hash && key.equals(e.getKey())) {
-                if (onlyIfAbsent) {
-                    return new CollectionUtils.SimpleImmutableEntry(e, null);
-                }
-                ++modCount;
-                ChainingEntry<K, V> entry = updated(e, key, value, map);
-                volume += (entry.getSize() - e.getSize());
-                if (prev == e) {
-                    tab[index] = entry;
-                } else {
-                    prev.setNext(entry);
-                }
-                entry.setNext(e.next());
-                return new CollectionUtils.SimpleImmutableEntry(e, entry);
-            }
-            prev = e;
-            e = next;
-        }
-        ++modCount;
-        ChainingEntry<K, V> entry = created(key, value, map);
-        volume += entry.getSize();
-        entry.setNext(tab[index]);
-        tab[index] = entry;
-        if (size++ >= threshold) {
-            // ensure capacity
-            rehash();
-        }
-        return new CollectionUtils.SimpleImmutableEntry(null, entry);
+        CacheEntry<K, V>[] prev = new CacheEntry[1];
+        ChainingEntry<K, V> entry = put(key, value, map, onlyIfAbsent, prev, 0);
+        return new CollectionUtils.SimpleImmutableEntry(prev[0], entry);
     }
 
-    public Map<CacheEntry<K, V>, CacheEntry<K, V>> putAllWithAttributes(
-            Map<K, Entry<V, AttributeMap>> data) {
-        HashMap<CacheEntry<K, V>, CacheEntry<K, V>> result = new HashMap<CacheEntry<K, V>, CacheEntry<K, V>>();
+    public void putAllWithAttributes(Map<K, Entry<V, AttributeMap>> data,
+            CacheEntry<K, V>[] prevEntries, CacheEntry<K, V>[] newEntries) {
+        // put grows the table as needed, keys that are already mapped do not add to the size
+        int i = 0;
         for (Map.Entry<K, Entry<V, AttributeMap>> e : data.entrySet()) {
-            Map.Entry<CacheEntry<K, V>, CacheEntry<K, V>> me = put(e.getKey(), e.getValue()
-                    .getKey(), e.getValue().getValue(), false);
-            result.put(me.getKey(), me.getValue());
+            Entry<V, AttributeMap> va = e.getValue();
+            newEntries[i] = put(e.getKey(), va.getKey(), va.getValue(), false, prevEntries, i);
+            i++;
         }
-        return result;
     }
 
     public CacheEntry<K, V> reduce(Reducer<CacheEntry<K, V>> reducer, CacheEntry<K, V> base) {
@@ -195,21 +271,63 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
             }
             table[i] = null;
         }
-        // TODO call clear.callback() for sub classes
+        eldest = null;
+        youngest = null;
         size = 0;
         volume = 0;
+        if (indexes != null) {
+            indexes.clear();
+        }
+        cleared();
         return fromArray(entries);
     }
 
+    /**
+     * Removes up to the specified number of entries that have not been accessed since the
+     * specified time. Because entries are kept in access order, only entries that are
+     * actually idle are visited. Entries that have been read through a near cache since
+     * the specified time are not removed. They are moved to the end of the access order
+     * instead, since near caches do not move the entries they read.
+     *
+     * @param idleSince
+     *            entries that was last accessed at or before this time are removed
+     * @param max
+     *            the maximum number of entries to remove
+     * @return the entries that was removed
+     */
+    public ParallelArray<CacheEntry<K, V>> removeIdle(long idleSince, int max) {
+        ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>();
+        while (list.size() < max && eldest != null && eldest.getLastAccessTime() <= idleSince) {
+            ChainingEntry<K, V> e = eldest;
+            long nearAccessTime = e.getNearAccessTime();
+            if (nearAccessTime > idleSince) {
+                // stops the sweep when it gets back to this entry
+                e.setLastAccessTime(nearAccessTime);
+                unlink(e);
+                link(e);
+            } else {
+                removeEntry(e);
+                list.add(e);
+            }
+        }
+        return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
+    }
+
     public ParallelArray<CacheEntry<K, V>> removeAll(Collection keys) {
-        ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>(keys.size());
+        CacheEntry<K, V>[] entries = new CacheEntry[keys.size()];
+        int count = 0;
         for (Object key : keys) {
             ChainingEntry<K, V> e = remove(key, null, false);
             if (e != null) {
-                list.add(e);
+                entries[count++] = e;
             }
         }
-        return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
+        if (count < entries.length) {
+            CacheEntry<K, V>[] tmp = new CacheEntry[count];
+            System.arraycopy(entries, 0, tmp, 0, count);
+            entries = tmp;
+        }
+        return fromArray(entries);
     }
 
     public CacheEntry<K, V> removeAny(Predicate<? super CacheEntry<K, V>> selector) {
@@ -318,30 +436,44 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
     @Override
     public void terminated() {
         table = new ChainingEntry[1];
+        eldest = null;
+        youngest = null;
+        if (indexes != null) {
+            indexes.clear();
+        }
+        cleared();
     }
 
+    /**
+     * Removes cleared entries, and evicts entries until neither the maximum size nor the
+     * maximum volume of this store is exceeded.
+     *
+     * @return the entries that was removed
+     */
     public ParallelArray<CacheEntry<K, V>> trim() {
-        if (this.size == 0 || size == 0 || volume == 0) {
-            return removeAll();
-        } else {
-            ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>(Math.max(0,
-                    this.size - size));
-// while (this.size > size && this.volume > volume) {
-//
-// }
-            return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
-        }
+        ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>();
+        purge(PURGE_BATCH_SIZE, list);
+        evict(getMaximumSize(), getMaximumVolume(), list);
+        return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
     }
 
+    /**
+     * Evicts entries until the size of this store is at most the specified size and the
+     * volume is at most the specified volume.
+     *
+     * @param size
+     *            the size to trim to
+     * @param volume
+     *            the volume to trim to
+     * @return the entries that was evicted
+     */
     public ParallelArray<CacheEntry<K, V>> trimTo(int size, long volume) {
         if (this.size == 0 || size == 0 || volume == 0) {
             return removeAll();
         } else {
             ArrayList<ChainingEntry<K, V>> list = new ArrayList<ChainingEntry<K, V>>(Math.max(0,
                     this.size - size));
-// while (this.size > size && this.volume > volume) {
-//
-// }
+            evict(size, volume, list);
             return fromArray((CacheEntry<K, V>[]) list.toArray(new CacheEntry[list.size()]));
         }
     }
@@ -381,10 +513,32 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         return withMapping(MAP_ENTRY_TO_VALUE_MAPPER);
     }
 
+    /**
+     * Evicts the entries selected by {@link #evictNext()} until the size of this store is
+     * at most the specified size and the volume is at most the specified volume, or there
+     * are no more entries to evict.
+     */
+    private void evict(int size, long volume, Collection<? super ChainingEntry<K, V>> evicted) {
+        while (this.size > size || this.volume > volume) {
+            ChainingEntry<K, V> e = evictNext();
+            if (e == null) {
+                return;
+            }
+            removeEntry(e);
+            evicted.add(e);
+        }
+    }
+
     private void deleted(ChainingEntry<K, V> entry, boolean isEvicted) {
         entry.setNext(null);// the entry might have a long lifespan, so clear references
+        if (isAccessOrdered) {
+            unlink(entry);
+        }
         removed(entry, isEvicted);
         volume -= entry.getSize();
+        if (indexes != null) {
+            indexes.removed(entry);
+        }
     }
 
     /**
@@ -395,6 +549,161 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         return (ChainingEntry<K, V>) tab[hash & tab.length - 1];
     }
 
+    /**
+     * Adds the specified entry as the most recently accessed entry.
+     */
+    private void link(ChainingEntry<K, V> entry) {
+        entry.setBefore(youngest);
+        entry.setAfter(null);
+        if (youngest == null) {
+            eldest = entry;
+        } else {
+            youngest.setAfter(entry);
+        }
+        youngest = entry;
+    }
+
+    /**
+     * Removes the specified entry from the access order.
+     */
+    private void unlink(ChainingEntry<K, V> entry) {
+        ChainingEntry<K, V> before = entry.before();
+        ChainingEntry<K, V> after = entry.after();
+        if (before == null) {
+            eldest = after;
+        } else {
+            before.setAfter(after);
+        }
+        if (after == null) {
+            youngest = before;
+        } else {
+            after.setBefore(before);
+        }
+        entry.setBefore(null);
+        entry.setAfter(null);
+    }
+
+    /**
+     * Processes up to the specified number of references that have been cleared by the
+     * garbage collector, removing the entries they belonged to.
+     *
+     * @param max
+     *            the maximum number of cleared references to process
+     * @param purged
+     *            the list to add removed entries to
+     */
+    private void purge(int max, Collection<? super ChainingEntry<K, V>> purged) {
+        if (references == null) {
+            return;
+        }
+        Reference<?> r;
+        for (int i = 0; i < max && (r = references.poll()) != null; i++) {
+            int hash = EntryReferences.getHash(r);
+            ChainingEntry<K, V>[] tab = table;
+            int index = hash & tab.length - 1;
+            ChainingEntry<K, V> prev = null;
+            ChainingEntry<K, V> next;
+            for (ChainingEntry<K, V> e = tab[index]; e != null; e = next) {
+                next = e.next();
+                if (e.getHash() == hash && (e.getKey() == null || e.getValue() == null)) {
+                    modCount++;
+                    size--;
+                    if (prev == null) {
+                        tab[index] = next;
+                    } else {
+                        prev.setNext(next);
+                    }
+                    deleted(e, true);
+                    purged.add(e);
+                } else {
+                    prev = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or updates the mapping for the specified key. Any previous entry is stored in
+     * <tt>prevEntries[pos]</tt>. Returns the new entry, or <code>null</code> if
+     * onlyIfAbsent is <code>true</code> and a mapping already existed.
+     */
+    private ChainingEntry<K, V> put(K key, V value, AttributeMap map, boolean onlyIfAbsent,
+            CacheEntry<K, V>[] prevEntries, int pos) {
+        int hash = hash(key.hashCode());
+        ChainingEntry<K, V>[] tab = table;
+        int index = hash & tab.length - 1;
+        ChainingEntry<K, V> e = tab[index];
+        ChainingEntry<K, V> prev = e;
+        while (e != null) {
+            ChainingEntry<K, V> next = e.next();
+            if (e.getHash() == hash && key.equals(e.getKey())) {
+                // an entry whose value has been reclaimed is treated as absent
+                boolean isCleared = e.getValue() == null;
+                prevEntries[pos] = isCleared ? null : e;
+                if (onlyIfAbsent && !isCleared) {
+                    return null;
+                }
+                ++modCount;
+                ChainingEntry<K, V> entry = updated(e, key, value, map);
+                volume += (entry.getSize() - e.getSize());
+                if (isAccessOrdered) {
+                    unlink(e);
+                    accessed(entry);
+                    link(entry);
+                }
+                if (prev == e) {
+                    tab[index] = entry;
+                } else {
+                    prev.setNext(entry);
+                }
+                entry.setNext(e.next());
+                if (indexes != null) {
+                    indexes.updated(e, entry);
+                }
+                return entry;
+            }
+            prev = e;
+            e = next;
+        }
+        ++modCount;
+        ChainingEntry<K, V> entry = created(key, value, map);
+        volume += entry.getSize();
+        if (isAccessOrdered) {
+            accessed(entry);
+            link(entry);
+        }
+        entry.setNext(tab[index]);
+        tab[index] = entry;
+        if (indexes != null) {
+            indexes.added(entry);
+        }
+        if (size++ >= threshold) {
+            // ensure capacity
+            rehash();
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the specified entry, that must be present in the hash table, as evicted.
+     */
+    private void removeEntry(ChainingEntry<K, V> entry) {
+        ChainingEntry<K, V>[] tab = table;
+        int index = entry.getHash() & tab.length - 1;
+        ChainingEntry<K, V> prev = null;
+        for (ChainingEntry<K, V> e = tab[index]; e != entry; e = e.next()) {
+            prev = e;
+        }
+        modCount++;
+        size--;
+        if (prev == null) {
+            tab[index] = entry.next();
+        } else {
+            prev.setNext(entry.next());
+        }
+        deleted(entry, true);
+    }
+
     private void rehash() {
         ChainingEntry<K, V>[] oldTable = table;
         int oldCapacity = oldTable.length;
@@ -463,8 +772,31 @@ public abstract class AbstractSequentialMemoryStore<K, V> extends AbstractCacheL
         return null;
     }
 
+    void accessed(ChainingEntry<K, V> entry) {}
+
+    /**
+     * Called when all entries has been removed at once, without calling
+     * {@link #removed(ChainingEntry, boolean)} for each of them.
+     */
+    void cleared() {}
+
+    /**
+     * Selects and detaches the next entry to evict. The entry is removed from the hash
+     * table by the caller.
+     *
+     * @return the next entry to evict, or <code>null</code> if no entry can be evicted
+     */
+    ChainingEntry<K, V> evictNext() {
+        return null;
+    }
+
     void removed(ChainingEntry<K, V> entry, boolean isEvicted) {};
 
+    /**
+     * Called whenever an entry is read through {@link #access(Object)}.
+     */
+    void touched(ChainingEntry<K, V> entry) {}
+
     abstract ChainingEntry<K, V> updated(ChainingEntry<K, V> old, K key, V value,
             AttributeMap attributes);
 
@@ -8,4 +8,55 @@ public interface ChainingEntry<K, V> extends InternalCacheEntry<K, V> {
     void setNext(ChainingEntry entry);
 
     int getHash();
+
+    ChainingEntry before();
+
+    void setBefore(ChainingEntry entry);
+
+    ChainingEntry after();
+
+    void setAfter(ChainingEntry entry);
+
+    /**
+     * Returns the last time the entry was read through a near cache. Near caches record
+     * this time without holding the lock of the cache, and without moving the entry in
+     * the access order.
+     *
+     * @return the last time the entry was read through a near cache, or 0 if it never
+     *         has been
+     */
+    long getNearAccessTime();
+
+    /**
+     * Sets the last time the entry was read through a near cache.
+     *
+     * @param nearAccessTime
+     *            the time the entry was read
+     */
+    void setNearAccessTime(long nearAccessTime);
+
+    /**
+     * Sets the last time the entry was accessed.
+     *
+     * @param lastAccessTime
+     *            the time the entry was accessed
+     */
+    void setLastAccessTime(long lastAccessTime);
+
+    /**
+     * Returns the index of the entry in the replacement policy of the memory store.
+     *
+     * @return the index of the entry in the replacement policy, or a negative number if
+     *         the entry is not held by the policy
+     */
+    int getPolicyIndex();
+
+    /**
+     * Sets the index of the entry in the replacement policy of the memory store.
+     *
+     * @param index
+     *            the index of the entry in the replacement policy, or a negative number
+     *            if the entry is not held by the policy
+     */
+    void setPolicyIndex(int index);
 }
@@ -3,8 +3,10 @@ package org.coconut.cache.internal.service.memorystore;
 import java.util.Arrays;
 import java.util.Collection;
 
+import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.Cache;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
+import org.coconut.cache.internal.service.index.EntryIndexes;
 import org.coconut.cache.internal.service.servicemanager.CompositeService;
 import org.coconut.cache.policy.ReplacementPolicy;
 import org.coconut.cache.policy.paging.LRUPolicy;
@@ -20,12 +22,18 @@ public class DefaultEvictableMemoryStore<K, V> extends UnlimitedSequentialMemory
     private int maxSize;
 
     /** The ReplacementPolicy used for deciding which elements to evict. */
-    private final ReplacementPolicy cp;
+    private final ReplacementPolicy<ChainingEntry<K, V>> cp;
 
     public DefaultEvictableMemoryStore(Cache<K, V> cache, AbstractCacheEntryFactoryService e,
             MemoryStoreConfiguration<K, V> conf) {
-        super(cache, e);
-        cp = conf.getPolicy() == null ? new LRUPolicy(1) : (ReplacementPolicy) conf.getPolicy();
+        this(cache, e, conf, null);
+    }
+
+    public DefaultEvictableMemoryStore(Cache<K, V> cache, AbstractCacheEntryFactoryService e,
+            MemoryStoreConfiguration<K, V> conf, EntryIndexes<K, V> indexes) {
+        super(cache, e, indexes);
+        cp = conf.getPolicy() == null ? new LRUPolicy<ChainingEntry<K, V>>(1)
+                : (ReplacementPolicy) conf.getPolicy();
         maxSize = getMaximumSizeFromConfiguration(conf);
         // System.out.println("maxSize " + maxSize);
         maxVolume = getMaximumVolumeFromConfiguration(conf);
@@ -72,13 +80,71 @@ public class DefaultEvictableMemoryStore<K, V> extends UnlimitedSequentialMemory
 
     @Override
     public void setMaximumSize(int size) {
-        size = new MemoryStoreConfiguration<K, V>().setMaximumSize(size).getMaximumSize();
-        super.setMaximumSize(size);
+        maxSize = getMaximumSizeFromConfiguration(new MemoryStoreConfiguration<K, V>()
+                .setMaximumSize(size));
     }
 
     @Override
     public void setMaximumVolume(long volume) {
-        volume = new MemoryStoreConfiguration<K, V>().setMaximumVolume(volume).getMaximumVolume();
-        super.setMaximumVolume(volume);
+        maxVolume = getMaximumVolumeFromConfiguration(new MemoryStoreConfiguration<K, V>()
+                .setMaximumVolume(volume));
+    }
+
+    @Override
+    void cleared() {
+        cp.clear();
+    }
+
+    @Override
+    ChainingEntry<K, V> created(K key, V value, AttributeMap attributes) {
+        ChainingEntry<K, V> entry = super.created(key, value, attributes);
+        if (entry.getPolicyIndex() != Integer.MIN_VALUE) {
+            entry.setPolicyIndex(cp.add(entry, attributes));
+        }
+        return entry;
+    }
+
+    @Override
+    ChainingEntry<K, V> evictNext() {
+        ChainingEntry<K, V> entry = cp.evictNext();
+        if (entry != null) {
+            entry.setPolicyIndex(-1); // already removed from the policy
+        }
+        return entry;
+    }
+
+    @Override
+    void removed(ChainingEntry<K, V> entry, boolean isEvicted) {
+        int index = entry.getPolicyIndex();
+        if (index > 0) {
+            cp.remove(index);
+            entry.setPolicyIndex(-1);
+        }
+    }
+
+    @Override
+    void touched(ChainingEntry<K, V> entry) {
+        int index = entry.getPolicyIndex();
+        if (index > 0) {
+            cp.touch(index);
+        }
+    }
+
+    @Override
+    ChainingEntry<K, V> updated(ChainingEntry<K, V> old, K key, V value, AttributeMap attributes) {
+        ChainingEntry<K, V> entry = super.updated(old, key, value, attributes);
+        int index = old.getPolicyIndex();
+        if (entry.getPolicyIndex() == Integer.MIN_VALUE) {
+            if (index > 0) {
+                cp.remove(index);
+            }
+        } else if (index <= 0) {
+            entry.setPolicyIndex(cp.add(entry, attributes));
+        } else if (!cp.update(index, entry, attributes)) {
+            // the policy must never hand out the old entry
+            cp.remove(index);
+            entry.setPolicyIndex(-1);
+        }
+        return entry;
     }
 }
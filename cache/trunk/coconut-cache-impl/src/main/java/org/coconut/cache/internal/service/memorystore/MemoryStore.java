@@ -10,14 +10,19 @@ import org.coconut.operations.Ops.Predicate;
 
 public interface MemoryStore<K, V> extends MemoryStoreWithFilter<K, V> {
     CacheEntry<K, V> get(Object key);
+    CacheEntry<K, V> access(Object key);
+    CacheEntry<K, V>[] getAll(Object[] keys);
+    int copyEntries(int index, Collection<? super CacheEntry<K, V>> to, int count);
     int getMaximumSize();
+    ParallelArray<CacheEntry<K, V>> purge();
+    ParallelArray<CacheEntry<K, V>> removeIdle(long idleSince, int max);
     long getMaximumVolume();
     ParallelArray<CacheEntry<K, V>> trim();
     ParallelArray<CacheEntry<K, V>> trimTo(int size, long volume);
     Map.Entry<CacheEntry<K, V>, CacheEntry<K, V>> put(K key, V value, AttributeMap attributes,
            boolean OnlyIfAbsent);
-    Map<CacheEntry<K, V>, CacheEntry<K, V>> putAllWithAttributes(
-            Map<K, Map.Entry<V, AttributeMap>> data);
+    void putAllWithAttributes(Map<K, Map.Entry<V, AttributeMap>> data,
+            CacheEntry<K, V>[] prevEntries, CacheEntry<K, V>[] newEntries);
     CacheEntry<K, V> remove(Object key);
     CacheEntry<K, V> remove(Object key, Object value);
     ParallelArray<CacheEntry<K, V>> removeAll(Collection entries);
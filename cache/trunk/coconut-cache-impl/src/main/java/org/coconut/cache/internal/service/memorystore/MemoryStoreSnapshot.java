@@ -0,0 +1,284 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.coconut.attribute.AttributeMap;
+import org.coconut.attribute.DefaultAttributeMap;
+import org.coconut.attribute.common.CostAttribute;
+import org.coconut.attribute.common.DateCreatedAttribute;
+import org.coconut.attribute.common.DateModifiedAttribute;
+import org.coconut.attribute.common.HitsAttribute;
+import org.coconut.attribute.common.SizeAttribute;
+import org.coconut.attribute.common.TimeToLiveAttribute;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.internal.InternalCache;
+import org.coconut.core.Clock;
+import org.coconut.internal.util.CollectionUtils;
+
+/**
+ * Reads and writes snapshots of the entries in a cache. A snapshot consists of a header,
+ * followed by a record for each entry and a CRC32 checksum of all the preceding bytes.
+ * The checksum is verified before any entries are loaded into the cache.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+final class MemoryStoreSnapshot<K, V> {
+
+    /** The number of entries that are loaded into the cache at a time. */
+    static final int BATCH_SIZE = 1024;
+
+    /** The magic number that all snapshots start with. */
+    private static final int MAGIC = 0x43434853;
+
+    /** The version of the snapshot format. */
+    private static final int VERSION = 1;
+
+    /** The clock used for determining if entries has expired. */
+    private final Clock clock;
+
+    /** The file the snapshot is written to or read from. */
+    private final File file;
+
+    /** The temporary file that the snapshot is written to before being renamed. */
+    private final File tmp;
+
+    /** Used for calculating the checksum while writing. */
+    private CheckedOutputStream checked;
+
+    /** The stream writing to the temporary file. */
+    private FileOutputStream fos;
+
+    /** The stream that entries are written to. */
+    private ObjectOutputStream out;
+
+    /**
+     * Creates a new MemoryStoreSnapshot.
+     *
+     * @param clock
+     *            the clock used for determining if entries has expired
+     * @param file
+     *            the file to read or write the snapshot from
+     */
+    MemoryStoreSnapshot(Clock clock, File file) {
+        if (file == null) {
+            throw new NullPointerException("file is null");
+        }
+        this.clock = clock;
+        this.file = file;
+        this.tmp = new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Opens the temporary file and writes the header of the snapshot.
+     *
+     * @throws IOException
+     *             the temporary file could not be opened
+     */
+    void open() throws IOException {
+        fos = new FileOutputStream(tmp);
+        checked = new CheckedOutputStream(fos, new CRC32());
+        out = new ObjectOutputStream(new BufferedOutputStream(checked));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Writes the specified entries to the snapshot, skipping those entries that have
+     * expired or whose key or value has been reclaimed by the garbage collector.
+     *
+     * @param entries
+     *            the entries to write
+     * @return the number of entries written
+     * @throws IOException
+     *             the entries could not be written
+     */
+    int write(Collection<? extends CacheEntry<K, V>> entries) throws IOException {
+        long now = clock.timestamp();
+        int count = 0;
+        for (CacheEntry<K, V> e : entries) {
+            K key = e.getKey();
+            V value = e.getValue();
+            if (key == null || value == null) {
+                continue; // reclaimed by the garbage collector
+            }
+            long expirationTime = e.getExpirationTime();
+            if (expirationTime == TimeToLiveAttribute.FOREVER
+                    || !Clock.isPassed(now, expirationTime)) {
+                out.writeBoolean(true);
+                out.writeObject(key);
+                out.writeObject(value);
+                out.writeLong(expirationTime);
+                out.writeLong(e.getHits());
+                out.writeDouble(e.getCost());
+                out.writeLong(e.getSize());
+                out.writeLong(e.getCreationTime());
+                out.writeLong(e.getLastUpdateTime());
+                count++;
+            }
+        }
+        // don't keep references to the entries around until the snapshot is done
+        out.reset();
+        return count;
+    }
+
+    /**
+     * Writes the end of the snapshot and the checksum, and replaces the snapshot file
+     * with the temporary file.
+     *
+     * @throws IOException
+     *             the snapshot could not be finished
+     */
+    void commit() throws IOException {
+        out.writeBoolean(false);
+        out.flush();
+        // the checksum itself is not included in the checksum
+        new DataOutputStream(fos).writeLong(checked.getChecksum().getValue());
+        out.close();
+        out = null;
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Closes the temporary file and deletes it, if the snapshot was not committed.
+     */
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignore) {/* ignore */}
+            out = null;
+        }
+        tmp.delete();
+    }
+
+    /**
+     * Loads the snapshot into the specified cache. The entries are added as if they had
+     * been loaded by the cache loader, so they are not written back to a cache store.
+     *
+     * @param cache
+     *            the cache to load the entries into
+     * @return the number of entries loaded into the cache
+     * @throws IOException
+     *             the snapshot could not be read or it has been corrupted
+     * @throws ClassNotFoundException
+     *             the class of a key or value in the snapshot could not be found
+     */
+    int load(InternalCache<K, V> cache) throws IOException, ClassNotFoundException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.toString());
+        }
+        long length = file.length();
+        if (length < 8) {
+            throw new StreamCorruptedException("Snapshot " + file + " has been truncated");
+        }
+        verify(length - 8);
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException(file + " is not a snapshot");
+            } else if (in.readInt() != VERSION) {
+                throw new StreamCorruptedException("Unknown version of snapshot " + file);
+            }
+            Map<K, Map.Entry<V, AttributeMap>> batch;
+            batch = new LinkedHashMap<K, Map.Entry<V, AttributeMap>>();
+            int count = 0;
+            while (in.readBoolean()) {
+                K key = (K) in.readObject();
+                V value = (V) in.readObject();
+                long expirationTime = in.readLong();
+                AttributeMap map = new DefaultAttributeMap();
+                HitsAttribute.set(map, in.readLong());
+                CostAttribute.setCost(map, in.readDouble());
+                SizeAttribute.set(map, in.readLong());
+                DateCreatedAttribute.set(map, in.readLong());
+                DateModifiedAttribute.set(map, in.readLong());
+                if (expirationTime == TimeToLiveAttribute.FOREVER) {
+                    TimeToLiveAttribute.set(map, TimeToLiveAttribute.FOREVER,
+                            TimeUnit.MILLISECONDS);
+                } else {
+                    long remaining = expirationTime - clock.timestamp();
+                    if (remaining <= 0) {
+                        continue; // expired since the snapshot was taken
+                    }
+                    TimeToLiveAttribute.set(map, remaining, TimeUnit.MILLISECONDS);
+                }
+                batch.put(key, new CollectionUtils.SimpleImmutableEntry<V, AttributeMap>(value,
+                        map));
+                if (batch.size() == BATCH_SIZE) {
+                    cache.putAllFromLoader(batch);
+                    count += batch.size();
+                    batch = new LinkedHashMap<K, Map.Entry<V, AttributeMap>>();
+                }
+            }
+            if (batch.size() > 0) {
+                cache.putAllFromLoader(batch);
+                count += batch.size();
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Verifies that the checksum of the first specified number of bytes of the snapshot
+     * matches the checksum stored after them.
+     *
+     * @param length
+     *            the number of bytes the checksum was calculated from
+     * @throws IOException
+     *             the snapshot could not be read or the checksums did not match
+     */
+    private void verify(long length) throws IOException {
+        CheckedInputStream cis = new CheckedInputStream(new BufferedInputStream(
+                new FileInputStream(file)), new CRC32());
+        DataInputStream in = new DataInputStream(cis);
+        try {
+            byte[] buf = new byte[8192];
+            long remaining = length;
+            while (remaining > 0) {
+                in.readFully(buf, 0, (int) Math.min(buf.length, remaining));
+                remaining -= Math.min(buf.length, remaining);
+            }
+            long checksum = cis.getChecksum().getValue();
+            if (checksum != in.readLong()) {
+                throw new StreamCorruptedException("Checksum of snapshot " + file
+                        + " does not match its content");
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
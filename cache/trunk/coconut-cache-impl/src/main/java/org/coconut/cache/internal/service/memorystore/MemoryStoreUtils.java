@@ -3,6 +3,8 @@
  */
 package org.coconut.cache.internal.service.memorystore;
 
+import java.io.File;
+
 import org.coconut.cache.ParallelCache;
 import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
 import org.coconut.cache.service.memorystore.MemoryStoreMXBean;
@@ -82,6 +84,12 @@ final class MemoryStoreUtils {
         public void trimToVolume(long capacity) {
             service.trimToVolume(capacity);
         }
+
+        /** {@inheritDoc} */
+        @ManagedOperation(description = "Evicts all entries that have been idle for too long")
+        public void evictIdleElements() {
+            service.evictIdleElements();
+        }
     }
 
     /**
@@ -136,6 +144,11 @@ final class MemoryStoreUtils {
             service.trimToVolume(volume);
         }
 
+        /** {@inheritDoc} */
+        public void evictIdleElements() {
+            service.evictIdleElements();
+        }
+
         /** {@inheritDoc} */
         public boolean isDisabled() {
             return service.isDisabled();
@@ -149,6 +162,21 @@ final class MemoryStoreUtils {
         public ParallelCache<K, V> getParallelCache() {
             return service.getParallelCache();
         }
+
+        /** {@inheritDoc} */
+        public int loadSnapshot(File file) {
+            return service.loadSnapshot(file);
+        }
+
+        /** {@inheritDoc} */
+        public void saveSnapshot() {
+            service.saveSnapshot();
+        }
+
+        /** {@inheritDoc} */
+        public void saveSnapshot(File file) {
+            service.saveSnapshot(file);
+        }
     }
 
     /**
@@ -0,0 +1,297 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.internal.service.event.InternalCacheEventService;
+import org.coconut.cache.internal.service.statistics.DefaultCacheStatisticsService;
+import org.coconut.cache.service.event.CacheEntryEvent;
+import org.coconut.cache.service.event.CacheEvent;
+import org.coconut.cache.service.event.CacheEventConfiguration;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
+import org.coconut.core.Clock;
+import org.coconut.operations.Ops.Predicate;
+import org.coconut.operations.Ops.Procedure;
+
+/**
+ * A small per-thread cache of entries recently read from a synchronized cache. Each
+ * thread has a direct-mapped table of entries that can be read without synchronizing on
+ * the cache.
+ * <p>
+ * Invalidations are recorded by incrementing a version in one of a fixed number of
+ * stripes, selected by the hash of the key. An entry is only returned from the table if
+ * the version of its stripe is the same as when the entry was read from the cache, so an
+ * invalidation from any thread is seen by all threads without having to access their
+ * tables. Invalidations are triggered by ItemUpdated, ItemDeleted and CacheCleared
+ * events. If a maximum staleness has been configured entries are also discarded once
+ * they have been in the table for longer than the maximum staleness.
+ * <p>
+ * If idle entries are evicted from the cache, a hit records the time on the entry as its
+ * near access time. This is a single write that does not need the lock of the cache. The
+ * idle sweep checks this time before evicting an entry.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <K>
+ *            the type of keys maintained by the cache
+ * @param <V>
+ *            the type of mapped values
+ */
+public class NearCache<K, V> {
+
+    /** The number of stripes that invalidations are recorded in, must be a power of 2. */
+    static final int STRIPES = 1024;
+
+    /** The clock used for measuring staleness. */
+    private final Clock clock;
+
+    /** The size of the table of each thread, a power of 2. */
+    private final int capacity;
+
+    /** The maximum staleness in nanoseconds or Long.MAX_VALUE if there is no limit. */
+    private final long maximumStaleness;
+
+    /** Whether or not hits are recorded on the entries, only needed for idle eviction. */
+    private final boolean isRecordingAccess;
+
+    /** Records hits and misses. */
+    private final DefaultCacheStatisticsService<K, V> statistics;
+
+    /** The table of each thread. */
+    private final ThreadLocal<Table<K, V>> tables = new ThreadLocal<Table<K, V>>() {
+        @Override
+        protected Table<K, V> initialValue() {
+            return new Table<K, V>(capacity);
+        }
+    };
+
+    /** The current version of each stripe. */
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    /**
+     * Creates a new NearCache that is only invalidated by staleness.
+     *
+     * @param conf
+     *            the configuration of the memory store
+     * @param clock
+     *            the clock used for measuring staleness
+     * @param statistics
+     *            the statistics service used for recording hits and misses
+     */
+    public NearCache(MemoryStoreConfiguration<K, V> conf, Clock clock,
+            DefaultCacheStatisticsService<K, V> statistics) {
+        int c = 1;
+        while (c < conf.getNearCacheSize()) {
+            c <<= 1;
+        }
+        this.capacity = c;
+        this.maximumStaleness = conf.getNearCacheMaximumStaleness(TimeUnit.NANOSECONDS);
+        this.isRecordingAccess = conf.getIdleTime(TimeUnit.NANOSECONDS) != Long.MAX_VALUE;
+        this.clock = clock;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Creates a new NearCache that is invalidated by the events raised by the specified
+     * event service.
+     *
+     * @param conf
+     *            the configuration of the memory store
+     * @param eventConf
+     *            the configuration of the event service
+     * @param clock
+     *            the clock used for measuring staleness
+     * @param statistics
+     *            the statistics service used for recording hits and misses
+     * @param event
+     *            the event service to subscribe to
+     */
+    public NearCache(MemoryStoreConfiguration<K, V> conf, CacheEventConfiguration eventConf,
+            Clock clock, DefaultCacheStatisticsService<K, V> statistics,
+            InternalCacheEventService<K, V> event) {
+        this(conf, clock, statistics);
+        if (isInvalidatedByEvents(eventConf)) {
+            event.subscribe(new Invalidator());
+        }
+    }
+
+    /**
+     * Returns the entry for the specified key if it is held in the table of the current
+     * thread and has not been invalidated.
+     *
+     * @param key
+     *            the key to look up
+     * @return the entry for the specified key or <code>null</code> if the key is not
+     *         held in the table of the current thread
+     */
+    public CacheEntry<K, V> get(Object key) {
+        int hash = AbstractSequentialMemoryStore.hash(key.hashCode());
+        Table<K, V> t = tables.get();
+        int i = hash & (t.keys.length - 1);
+        Object k = t.keys[i];
+        if (k != null && (k == key || k.equals(key))
+                && t.versions[i] == versions.get(hash & (STRIPES - 1))
+                && (maximumStaleness == Long.MAX_VALUE
+                        || clock.relativeTime() - t.times[i] <= maximumStaleness)) {
+            statistics.afterNearCacheHit();
+            CacheEntry<K, V> e = t.entries[i];
+            if (isRecordingAccess) {
+                ChainingEntry<K, V> ce = (ChainingEntry<K, V>) e;
+                long now = clock.timestamp();
+                // avoid writing to an entry shared by many threads more than needed
+                if (ce.getNearAccessTime() != now) {
+                    ce.setNearAccessTime(now);
+                }
+            }
+            return e;
+        }
+        statistics.afterNearCacheMiss();
+        return null;
+    }
+
+    /**
+     * Returns the current version of the stripe the specified key belongs to. Must be
+     * read before the entry is read from the cache and passed to
+     * {@link #put(Object, CacheEntry, long)}, so that invalidations that happen
+     * concurrently with reading the entry are not lost.
+     *
+     * @param key
+     *            the key to return the version for
+     * @return the current version of the stripe the specified key belongs to
+     */
+    public long version(Object key) {
+        return versions.get(AbstractSequentialMemoryStore.hash(key.hashCode()) & (STRIPES - 1));
+    }
+
+    /**
+     * Adds the specified entry to the table of the current thread, replacing any entry
+     * with the same index.
+     *
+     * @param key
+     *            the key of the entry
+     * @param entry
+     *            the entry read from the cache
+     * @param version
+     *            the version returned by {@link #version(Object)} before the entry was
+     *            read
+     */
+    public void put(Object key, CacheEntry<K, V> entry, long version) {
+        Table<K, V> t = tables.get();
+        int i = AbstractSequentialMemoryStore.hash(key.hashCode()) & (t.keys.length - 1);
+        t.keys[i] = key;
+        t.entries[i] = entry;
+        t.versions[i] = version;
+        if (maximumStaleness != Long.MAX_VALUE) {
+            t.times[i] = clock.relativeTime();
+        }
+    }
+
+    /**
+     * Invalidates any entry for the specified key in the tables of all threads.
+     *
+     * @param key
+     *            the key to invalidate
+     */
+    void invalidate(Object key) {
+        versions.incrementAndGet(AbstractSequentialMemoryStore.hash(key.hashCode())
+                & (STRIPES - 1));
+    }
+
+    /**
+     * Invalidates all entries in the tables of all threads.
+     */
+    void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Returns whether or not a near cache should be used for a cache with the specified
+     * configuration. A near cache is used if a size has been configured and it will be
+     * invalidated either by events or by a maximum staleness.
+     *
+     * @param conf
+     *            the configuration of the cache
+     * @return whether or not a near cache should be used
+     */
+    public static boolean isEnabled(CacheConfiguration<?, ?> conf) {
+        MemoryStoreConfiguration<?, ?> ms = conf.eviction();
+        return ms.getNearCacheSize() > 0
+                && (isInvalidatedByEvents(conf.event()) || ms
+                        .getNearCacheMaximumStaleness(TimeUnit.NANOSECONDS) != Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns whether or not all events needed for invalidating a near cache are raised
+     * by an event service with the specified configuration.
+     *
+     * @param conf
+     *            the configuration of the event service
+     * @return whether or not all events needed for invalidation are raised
+     */
+    static boolean isInvalidatedByEvents(CacheEventConfiguration conf) {
+        if (!conf.isEnabled()) {
+            return false;
+        }
+        Predicate p = conf.getEnabledEventPredicate();
+        return p == null
+                || p.evaluate(CacheEntryEvent.ItemUpdated.class)
+                && p.evaluate(CacheEntryEvent.ItemDeleted.class)
+                && p.evaluate(CacheEvent.CacheCleared.class);
+    }
+
+    /**
+     * The table of a single thread.
+     */
+    static final class Table<K, V> {
+        /** The keys of the entries. */
+        final Object[] keys;
+
+        /** The entries. */
+        final CacheEntry<K, V>[] entries;
+
+        /** The version of the stripe of each key at the time the entry was read. */
+        final long[] versions;
+
+        /** The time each entry was read, only used if a maximum staleness is set. */
+        final long[] times;
+
+        /**
+         * Creates a new Table.
+         *
+         * @param capacity
+         *            the number of entries in the table
+         */
+        @SuppressWarnings("unchecked")
+        Table(int capacity) {
+            keys = new Object[capacity];
+            entries = new CacheEntry[capacity];
+            versions = new long[capacity];
+            times = new long[capacity];
+        }
+    }
+
+    /**
+     * Invalidates entries when they are updated or removed from the cache.
+     */
+    final class Invalidator implements Procedure<CacheEvent<K, V>> {
+        /** {@inheritDoc} */
+        public void apply(CacheEvent<K, V> event) {
+            if (event instanceof CacheEntryEvent.ItemUpdated
+                    || event instanceof CacheEntryEvent.ItemDeleted) {
+                invalidate(((CacheEntryEvent<K, V>) event).getKey());
+            } else if (event instanceof CacheEvent.CacheCleared) {
+                invalidateAll();
+            }
+        }
+    }
+}
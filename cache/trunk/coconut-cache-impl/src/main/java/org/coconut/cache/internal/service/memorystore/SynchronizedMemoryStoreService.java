@@ -3,15 +3,22 @@
  */
 package org.coconut.cache.internal.service.memorystore;
 
-import java.util.Collections;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.CacheMutex;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
+import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
 import org.coconut.cache.internal.service.listener.InternalCacheListener;
 import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
+import org.coconut.cache.service.worker.CacheWorkerService;
+import org.coconut.core.Clock;
 import org.coconut.management.ManagedGroup;
 import org.coconut.management.ManagedLifecycle;
 
@@ -29,14 +36,78 @@ import org.coconut.management.ManagedLifecycle;
  */
 public class SynchronizedMemoryStoreService<K, V> extends UnsynchronizedMemoryStoreService
         implements ManagedLifecycle {
+    /** The delay in milliseconds between purging entries that has been reclaimed. */
+    static final long PURGE_DELAY = 1000;
+
+    /** The maximum delay in milliseconds between evicting idle entries. */
+    static final long MAXIMUM_IDLE_DELAY = 60 * 1000;
+
     private final Object mutex;
 
+    /** Whether or not keys or values are softly or weakly referenced. */
+    private final boolean hasReferences;
+
+    /** Used for running the tasks below, or null if there are no tasks to run. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The task purging reclaimed entries. */
+    private ScheduledFuture<?> purger;
+
+    /** The task evicting idle entries. */
+    private ScheduledFuture<?> idleEvicter;
+
     public SynchronizedMemoryStoreService(
             InternalCache cache,
-            MemoryStore<K, V> ms, CacheMutex mutex,
-            InternalCacheListener listener, AbstractCacheEntryFactoryService<K, V> factory) {
-        super(cache, ms, listener, factory);
+            MemoryStore<K, V> ms, CacheMutex mutex, Clock clock,
+            MemoryStoreConfiguration<K, V> conf, InternalCacheListener listener,
+            AbstractCacheEntryFactoryService<K, V> factory, CacheWorkerService worker,
+            InternalCacheExceptionService<K, V> exceptionService) {
+        super(cache, ms, clock, conf, listener, factory, exceptionService);
         this.mutex = mutex.getMutex();
+        this.hasReferences = factory.getReferences() != null;
+        this.scheduler = !hasReferences && idleTime == Long.MAX_VALUE ? null : worker
+                .getScheduledExecutorService(SynchronizedMemoryStoreService.class);
+    }
+
+    /**
+     * Starts periodically purging entries that has been reclaimed by the garbage
+     * collector, if keys or values are softly or weakly referenced. Otherwise they are
+     * only purged when the cache is modified. Also starts periodically evicting idle
+     * entries, if an idle time has been configured. Idle entries are looked for at least
+     * every minute, or more often if the idle time is shorter.
+     *
+     * @param cache
+     *            the cache that was started
+     */
+    @Override
+    public void started(Cache cache) {
+        super.started(cache);
+        if (hasReferences) {
+            purger = scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    purgeCleared();
+                }
+            }, PURGE_DELAY, PURGE_DELAY, TimeUnit.MILLISECONDS);
+        }
+        if (idleTime != Long.MAX_VALUE) {
+            long delay = Math.max(1, Math.min(idleTime, MAXIMUM_IDLE_DELAY));
+            idleEvicter = scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictIdleElements();
+                }
+            }, delay, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shutdown(Shutdown shutdown) {
+        if (purger != null) {
+            purger.cancel(false);
+        }
+        if (idleEvicter != null) {
+            idleEvicter.cancel(false);
+        }
     }
 
     /** {@inheritDoc} */
@@ -78,23 +149,73 @@ public class SynchronizedMemoryStoreService<K, V> extends UnsynchronizedMemorySt
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    int copyEntries(int index, Collection to, int count) {
+        synchronized (mutex) {
+            return super.copyEntries(index, to, count);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void purgeCleared() {
+        int size;
+        int newSize;
+        long volume;
+        long newVolume;
+        List<CacheEntry<K, V>> l;
+        synchronized (mutex) {
+            size = ms.size();
+            volume = ms.volume();
+            l = ms.purge().asList();
+            newSize = ms.size();
+            newVolume = ms.volume();
+        }
+        if (!l.isEmpty()) {
+            long started = listener.beforeTrim(Integer.MAX_VALUE, Long.MAX_VALUE);
+            listener.afterTrimCache(started, l, size, newSize, volume, newVolume);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    int evictIdle(long idleSince, int max) {
+        int size;
+        int newSize;
+        long volume;
+        long newVolume;
+        List<CacheEntry<K, V>> l;
+        synchronized (mutex) {
+            size = ms.size();
+            volume = ms.volume();
+            l = ms.removeIdle(idleSince, max).asList();
+            newSize = ms.size();
+            newVolume = ms.volume();
+        }
+        if (l.isEmpty()) {
+            return 0;
+        }
+        long started = listener.beforeTrim(Integer.MAX_VALUE, Long.MAX_VALUE);
+        listener.afterTrimCache(started, l, size, newSize, volume, newVolume);
+        return l.size();
+    }
+
     /** {@inheritDoc} */
     @Override
     void trimCache(int toSize, long toVolume) {
         long started = listener.beforeTrim(toSize, toVolume);
-        int size = 0;
-        int newSize = 0;
-        long volume = 0;
-        long newVolume = 0;
-        List<CacheEntry<K, V>> l = Collections.EMPTY_LIST;
-
-        synchronized (this) {
-            // manager.lazyStart(true);
-// size = map.size();
-// volume = map.volume();
-// l = map.trimCache(toSize, toVolume);
-// newSize = map.size();
-// newVolume = map.volume();
+        int size;
+        int newSize;
+        long volume;
+        long newVolume;
+        List<CacheEntry<K, V>> l;
+        synchronized (mutex) {
+            size = ms.size();
+            volume = ms.volume();
+            l = ms.trimTo(toSize, toVolume).asList();
+            newSize = ms.size();
+            newVolume = ms.volume();
         }
         listener.afterTrimCache(started, l, size, newSize, volume, newVolume);
     }
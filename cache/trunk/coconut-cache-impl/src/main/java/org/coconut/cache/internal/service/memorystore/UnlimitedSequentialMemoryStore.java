@@ -3,18 +3,28 @@ package org.coconut.cache.internal.service.memorystore;
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.Cache;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
+import org.coconut.cache.internal.service.index.EntryIndexes;
 
 public class UnlimitedSequentialMemoryStore<K, V> extends AbstractSequentialMemoryStore<K, V> {
     AbstractCacheEntryFactoryService e;
 
     public UnlimitedSequentialMemoryStore(Cache<K, V> cache,
             AbstractCacheEntryFactoryService e) {
-        super(cache);
+        this(cache, e, null);
+    }
+
+    public UnlimitedSequentialMemoryStore(Cache<K, V> cache,
+            AbstractCacheEntryFactoryService e, EntryIndexes<K, V> indexes) {
+        super(cache, indexes, e.getReferences(), e.isRecordingAccess());
         threshold = (int) (16 * loadFactor);
         table = new ChainingEntry[16];
         this.e = e;
     }
 
+    void accessed(ChainingEntry<K, V> entry) {
+        e.accessed(entry);
+    }
+
     ChainingEntry<K, V> created(K key, V value, AttributeMap attributes) {
         ChainingEntry<K, V> entry = e.createEntry(key, value, attributes, null);
         return entry;
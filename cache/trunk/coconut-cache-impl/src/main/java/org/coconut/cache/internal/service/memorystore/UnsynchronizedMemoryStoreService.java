@@ -4,6 +4,7 @@
 package org.coconut.cache.internal.service.memorystore;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.ParallelCache;
@@ -11,7 +12,10 @@ import org.coconut.cache.ParallelCache.WithFilter;
 import org.coconut.cache.ParallelCache.WithMapping;
 import org.coconut.cache.internal.InternalCache;
 import org.coconut.cache.internal.service.entry.AbstractCacheEntryFactoryService;
+import org.coconut.cache.internal.service.exceptionhandling.InternalCacheExceptionService;
 import org.coconut.cache.internal.service.listener.InternalCacheListener;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration;
+import org.coconut.core.Clock;
 import org.coconut.operations.Mappers;
 import org.coconut.operations.Predicates;
 import org.coconut.operations.Ops.Mapper;
@@ -42,8 +46,10 @@ public class UnsynchronizedMemoryStoreService<K, V, T extends CacheEntry<K, V>>
 
     // @SuppressWarnings("unchecked")
     public UnsynchronizedMemoryStoreService(InternalCache<K, V> cache, MemoryStore<K, V> ms,
-            InternalCacheListener listener, AbstractCacheEntryFactoryService<K, V> factory) {
-        super(cache, ms, factory);
+            Clock clock, MemoryStoreConfiguration<K, V> conf, InternalCacheListener listener,
+            AbstractCacheEntryFactoryService<K, V> factory,
+            InternalCacheExceptionService<K, V> exceptionService) {
+        super(cache, ms, clock, conf, factory, exceptionService);
         this.listener = listener;
         pc = new UnsynchronizedParallelCache();
         safeMs = ms.withMapping(SAFE_MAPPER);
@@ -56,13 +62,38 @@ public class UnsynchronizedMemoryStoreService<K, V, T extends CacheEntry<K, V>>
     @Override
     void trimCache(int toSize, long toVolume) {
         long started = listener.beforeTrim(toSize, toVolume);
+        int size = ms.size();
+        long volume = ms.volume();
+        List<CacheEntry<K, V>> l = ms.trimTo(toSize, toVolume).asList();
+        listener.afterTrimCache(started, l, size, ms.size(), volume, ms.volume());
+    }
 
-        // manager.lazyStart(true);
-        // int size = map.size();
-        // long volume = map.volume();
-        // List<CacheEntry<K, V>> l = map.trimCache(toSize, toVolume);
+    /**
+     * Removes all entries whose key or value has been reclaimed by the garbage collector.
+     * The removed entries are reported to the listener as evicted entries.
+     */
+    void purgeCleared() {
+        int size = ms.size();
+        long volume = ms.volume();
+        List<CacheEntry<K, V>> l = ms.purge().asList();
+        if (!l.isEmpty()) {
+            long started = listener.beforeTrim(Integer.MAX_VALUE, Long.MAX_VALUE);
+            listener.afterTrimCache(started, l, size, ms.size(), volume, ms.volume());
+        }
+    }
 
-        // listener.afterTrimCache(started, l, size, map.size(), volume, map.volume());
+    /** {@inheritDoc} */
+    @Override
+    int evictIdle(long idleSince, int max) {
+        int size = ms.size();
+        long volume = ms.volume();
+        List<CacheEntry<K, V>> l = ms.removeIdle(idleSince, max).asList();
+        if (l.isEmpty()) {
+            return 0;
+        }
+        long started = listener.beforeTrim(Integer.MAX_VALUE, Long.MAX_VALUE);
+        listener.afterTrimCache(started, l, size, ms.size(), volume, ms.volume());
+        return l.size();
     }
 
     class UnsynchronizedParallelCache extends ParallelCache<K, V> {
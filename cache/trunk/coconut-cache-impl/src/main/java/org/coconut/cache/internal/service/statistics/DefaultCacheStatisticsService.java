@@ -5,20 +5,19 @@ package org.coconut.cache.internal.service.statistics;
 
 import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.Cache;
 import org.coconut.cache.CacheEntry;
 import org.coconut.cache.internal.CacheInternals;
-import org.coconut.cache.internal.service.statistics.LongCounter.ConcurrentLongCounter;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
 import org.coconut.cache.service.servicemanager.CacheLifecycle;
 import org.coconut.cache.service.statistics.CacheHitStat;
 import org.coconut.cache.service.statistics.CacheStatisticsConfiguration;
 import org.coconut.cache.service.statistics.CacheStatisticsService;
 import org.coconut.core.Clock;
-import org.coconut.internal.util.AtomicDouble;
+import org.coconut.internal.util.StripedDoubleCounter;
+import org.coconut.internal.util.StripedLongCounter;
 import org.coconut.management.ManagedGroup;
 import org.coconut.management.ManagedLifecycle;
 
@@ -64,6 +63,8 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 
     public final static String ENTRY_HIT_TIMER = "Cache hit time";
 
+    public final static String ENTRY_LOAD_TIMER = "Cache load time";
+
     public final static String ENTRY_MISS_COUNTER = "Cache misses";
 
     public final static String ENTRY_MISS_TIMER = "Cache miss time";
@@ -81,11 +82,11 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 
     private final DateSampler cacheClearLast;
 
-    private final LongSamplingCounter cacheClearTime;
+    private final LatencyHistogram cacheClearTime;
 
     private final LongCounter cacheEvictCount;
 
-    private final LongSamplingCounter cacheEvictTime;
+    private final LatencyHistogram cacheEvictTime;
 
     private final LongCounter cacheStatisticsResetCount;
 
@@ -95,49 +96,64 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 
     /* Cache Entry Statistics */
 
-    private final LongSamplingCounter entryEvictedTime;
+    private final LatencyHistogram entryEvictedTime;
 
     private final LongCounter entryExpiredCount;
 
-    private final AtomicDouble entryGetHitCostCount = new AtomicDouble();
+    private final StripedDoubleCounter entryGetHitCostCount = new StripedDoubleCounter();
+
+    private final StripedLongCounter entryGetHitCount = new StripedLongCounter();
 
-    private final ConcurrentLongCounter entryGetHitCount;
+    private final StripedLongCounter entryGetHitSizeCount = new StripedLongCounter();
 
-    private final AtomicLong entryGetHitSizeCount = new AtomicLong();
+    private final LatencyHistogram entryGetHitTime;
 
-    private final LongSamplingCounter entryGetHitTime;
+    private final StripedDoubleCounter entryGetMissCostCount = new StripedDoubleCounter();
 
-    private final AtomicDouble entryGetMissCostCount = new AtomicDouble();
+    private final StripedLongCounter entryGetMissCount = new StripedLongCounter();
 
-    private final LongCounter entryGetMissCount;
+    private final StripedLongCounter entryGetMissSizeCount = new StripedLongCounter();
 
-    private final AtomicLong entryGetMissSizeCount = new AtomicLong();
+    private final LatencyHistogram entryGetMissTime;
 
-    private final LongSamplingCounter entryGetMissTime;
+    private final LatencyHistogram entryLoadTime;
 
-    private final LongCounter entryPutCount;
+    private final StripedLongCounter entryPutCount = new StripedLongCounter();
 
-    private final LongSamplingCounter entryPutTime;
+    private final LatencyHistogram entryPutTime;
 
     private final LongCounter entryRemoveCount;
 
-    private final LongSamplingCounter entryRemoveTime;
+    private final LatencyHistogram entryRemoveTime;
+
+    private final StripedLongCounter nearCacheHitCount = new StripedLongCounter();
+
+    private final StripedLongCounter nearCacheMissCount = new StripedLongCounter();
+
+    /** The clock used for timing operations. */
+    private final Clock clock;
 
     volatile long started;
 
-    public DefaultCacheStatisticsService() {
-        Clock c = Clock.DEFAULT_CLOCK;
+    /**
+     * Creates a new DefaultCacheStatisticsService.
+     *
+     * @param c
+     *            the clock used for timing operations
+     */
+    public DefaultCacheStatisticsService(Clock c) {
+        clock = c;
         // cache counters
 
         // invocations of evict() on the cache (since start or last reset)
         cacheEvictCount = LongCounter.newConcurrent(CACHE_EVICT_COUNTER,
                 getDesc(CACHE_EVICT_COUNTER));
-        cacheEvictTime = new LongSamplingCounter(CACHE_EVICT_TIMER, getDesc(CACHE_EVICT_TIMER));
+        cacheEvictTime = new LatencyHistogram(CACHE_EVICT_TIMER, getDesc(CACHE_EVICT_TIMER));
 
         cacheClearCount = LongCounter.newConcurrent(CACHE_CLEAR_COUNTER,
                 getDesc(CACHE_CLEAR_COUNTER));
         cacheClearLast = new DateSampler(CACHE_CLEAR_LASTTIME, getDesc(CACHE_CLEAR_LASTTIME), c);
-        cacheClearTime = new LongSamplingCounter(CACHE_CLEAR_TIMER, getDesc(CACHE_CLEAR_TIMER));
+        cacheClearTime = new LatencyHistogram(CACHE_CLEAR_TIMER, getDesc(CACHE_CLEAR_TIMER));
 
         cacheStatisticsResetCount = LongCounter.newConcurrent(CACHE_RESET_COUNTER,
                 getDesc(CACHE_RESET_COUNTER));
@@ -148,24 +164,22 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 
         entryEvictedCount = LongCounter.newConcurrent(ENTRY_EVICTED_COUNTER,
                 getDesc(ENTRY_EVICTED_COUNTER));
-        entryEvictedTime = new LongSamplingCounter(ENTRY_EVICTED_TIMER,
+        entryEvictedTime = new LatencyHistogram(ENTRY_EVICTED_TIMER,
                 getDesc(ENTRY_EVICTED_TIMER));
         entryExpiredCount = LongCounter.newConcurrent(ENTRY_EXPIRED_COUNTER,
                 getDesc(ENTRY_EXPIRED_COUNTER));
 
-        entryGetHitCount = LongCounter.newConcurrent(ENTRY_HIT_COUNTER, getDesc(ENTRY_HIT_COUNTER));
-        entryGetHitTime = new LongSamplingCounter(ENTRY_HIT_TIMER, getDesc(ENTRY_HIT_TIMER));
+        entryGetHitTime = new LatencyHistogram(ENTRY_HIT_TIMER, getDesc(ENTRY_HIT_TIMER));
 
-        entryGetMissCount = LongCounter.newConcurrent(ENTRY_MISS_COUNTER,
-                getDesc(ENTRY_MISS_COUNTER));
-        entryGetMissTime = new LongSamplingCounter(ENTRY_MISS_TIMER, getDesc(ENTRY_MISS_TIMER));
+        entryGetMissTime = new LatencyHistogram(ENTRY_MISS_TIMER, getDesc(ENTRY_MISS_TIMER));
 
-        entryPutCount = LongCounter.newConcurrent(ENTRY_PUT_COUNTER, getDesc(ENTRY_PUT_COUNTER));
-        entryPutTime = new LongSamplingCounter(ENTRY_PUT_TIMER, getDesc(ENTRY_PUT_TIMER));
+        entryLoadTime = new LatencyHistogram(ENTRY_LOAD_TIMER, getDesc(ENTRY_LOAD_TIMER));
+
+        entryPutTime = new LatencyHistogram(ENTRY_PUT_TIMER, getDesc(ENTRY_PUT_TIMER));
 
         entryRemoveCount = LongCounter.newConcurrent(ENTRY_REMOVE_COUNTER,
                 getDesc(ENTRY_REMOVE_COUNTER));
-        entryRemoveTime = new LongSamplingCounter(ENTRY_REMOVE_TIMER, getDesc(ENTRY_REMOVE_TIMER));
+        entryRemoveTime = new LatencyHistogram(ENTRY_REMOVE_TIMER, getDesc(ENTRY_REMOVE_TIMER));
     }
 
 // public void addTo(ManagedGroup dg) {
@@ -209,7 +223,7 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
         long time = getTimeStamp() - start;
         // TODO what about removed?
         cacheClearLast.run();
-        cacheClearTime.report(time);
+        cacheClearTime.record(time);
         cacheClearCount.incrementAndGet();
     }
 
@@ -219,7 +233,7 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 // Collection<? extends CacheEntry<K, V>> expired) {
 // long time = System.nanoTime() - started;
 // cacheEvictLast.run();
-// cacheEvictTime.report(time);
+// cacheEvictTime.record(time);
 // cacheEvictCount.incrementAndGet();
 // entryEvictedCount.addAndGet(evicted.size());
 // entryExpiredCount.addAndGet(expired.size());
@@ -246,14 +260,14 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 // }
 // // TODO fix
 // if (isHit) {
-// entryGetHitTime.report(time);
+// entryGetHitTime.record(time);
 // entryGetHitCount.incrementAndGet();
 // double cost = prev.getCost();
 // entryGetHitCostCount.addAndGet(cost);
 // long size = prev.getSize();
 // entryGetHitSizeCount.addAndGet(size);
 // } else {
-// entryGetMissTime.report(time);
+// entryGetMissTime.record(time);
 // entryGetMissCount.incrementAndGet();
 // // if (entry != null) {
 // // double cost = entry.getCost();
@@ -266,39 +280,65 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 
     public void afterHit(Cache<K, V> cache, long started, K key, CacheEntry<K, V> entry) {
         long time = getTimeStamp() - started;
-        entryGetHitTime.report(time);
-        entryGetHitCount.incrementAndGet();
-        double cost = entry.getCost();
-        entryGetHitCostCount.addAndGet(cost);
-        long size = entry.getSize();
-        entryGetHitSizeCount.addAndGet(size);
+        entryGetHitTime.record(time);
+        entryGetHitCount.increment();
+        entryGetHitCostCount.add(entry.getCost());
+        entryGetHitSizeCount.add(entry.getSize());
     }
 
     public void afterMiss(Cache<K, V> cache, long started, K key, CacheEntry<K, V> previousEntry,
             CacheEntry<K, V> newEntry, boolean isExpired) {
 
         long time = getTimeStamp() - started;
-        entryGetMissTime.report(time);
-        entryGetMissCount.incrementAndGet();
+        entryGetMissTime.record(time);
+        entryGetMissCount.increment();
+        if (newEntry != null) {
+            entryGetMissCostCount.add(newEntry.getCost());
+            entryGetMissSizeCount.add(newEntry.getSize());
+        }
+    }
+
+    /**
+     * Records a lookup that was answered by the near cache.
+     */
+    public void afterNearCacheHit() {
+        nearCacheHitCount.increment();
+    }
+
+    /**
+     * Records a lookup that was not answered by the near cache.
+     */
+    public void afterNearCacheMiss() {
+        nearCacheMissCount.increment();
     }
 
     public void afterPut(Cache<K, V> cache, long started,
             Collection<? extends CacheEntry<K, V>> evictedEntries, CacheEntry<K, V> oldEntry,
-            CacheEntry<K, V> newEntry) {}
+            CacheEntry<K, V> newEntry) {
+        long time = getTimeStamp() - started;
+        entryPutTime.record(time);
+        entryPutCount.increment();
+        entryEvictedCount.addAndGet(evictedEntries.size());
+    }
 
     public void afterPutAll(Cache<K, V> cache, long started,
-            Collection<? extends CacheEntry<K, V>> evictedEntries,
-            Map<CacheEntry<K, V>, CacheEntry<K, V>> newPrevEntries) {}
+            Collection<? extends CacheEntry<K, V>> evictedEntries, CacheEntry<K, V>[] prevEntries,
+            CacheEntry<K, V>[] newEntries) {
+        long time = getTimeStamp() - started;
+        entryPutTime.record(time);
+        entryPutCount.add(newEntries.length);
+        entryEvictedCount.addAndGet(evictedEntries.size());
+    }
 
     public void afterRemove(Cache<K, V> cache, long start, CacheEntry<K, V> removed) {
         long time = getTimeStamp() - start;
-        entryRemoveTime.report(time);
+        entryRemoveTime.record(time);
         entryRemoveCount.incrementAndGet();
     }
 
     public void afterRemoveAll(Cache<K, V> cache, long start, Collection<CacheEntry<K, V>> removed) {
-        long time = System.nanoTime() - start;
-        entryRemoveTime.report(time);
+        long time = getTimeStamp() - start;
+        entryRemoveTime.record(time);
         entryRemoveCount.addAndGet(removed.size());
     }
 
@@ -306,13 +346,27 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
 // Collection<? extends CacheEntry<K, V>> evicted, CacheEntry<K, V> oldEntry,
 // CacheEntry<K, V> newEntry) {
 // long time = System.nanoTime() - started;
-// entryPutTime.report(time);
+// entryPutTime.record(time);
 // entryPutCount.incrementAndGet();
 // }
 
     public void afterTrimCache(Cache<K, V> cache, long started,
             Collection<? extends CacheEntry<K, V>> evictedEntries, int previousSize, int newSize,
-            long previousVolume, long newVolume) {}
+            long previousVolume, long newVolume) {
+        long time = getTimeStamp() - started;
+        cacheEvictTime.record(time);
+        cacheEvictCount.incrementAndGet();
+        entryEvictedCount.addAndGet(evictedEntries.size());
+    }
+
+    public void afterLoad(Cache<K, V> cache, long started, K key, V value) {
+        long time = getTimeStamp() - started;
+        entryLoadTime.record(time);
+    }
+
+    public long beforeLoad(Cache<K, V> cache, K key) {
+        return getTimeStamp();
+    }
 
     public long beforeCacheClear(Cache<K, V> cache) {
         return getTimeStamp();
@@ -335,8 +389,8 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
                 hits++;
             }
         }
-        entryGetHitCount.addAndGet(hits);
-        entryGetMissCount.addAndGet(isHit.length - hits);
+        entryGetHitCount.add(hits);
+        entryGetMissCount.add(isHit.length - hits);
     }
 
     public long beforePut(Cache<K, V> cache, Object key, Object value) {
@@ -364,6 +418,19 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
         cacheStatisticsResetLast.run();
         entryGetHitCount.reset();
         entryGetMissCount.reset();
+        nearCacheHitCount.reset();
+        nearCacheMissCount.reset();
+        entryGetHitCostCount.reset();
+        entryGetHitSizeCount.reset();
+        entryGetMissCostCount.reset();
+        entryGetMissSizeCount.reset();
+        entryPutCount.reset();
+        entryPutTime.reset();
+        entryGetHitTime.reset();
+        entryGetMissTime.reset();
+        entryLoadTime.reset();
+        cacheEvictTime.reset();
+        entryEvictedCount.reset();
         // TODO reset others;
         cacheStatisticsResetCount.incrementAndGet();
     }
@@ -372,6 +439,50 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
         return new CacheHitStat(entryGetHitCount.get(), entryGetMissCount.get());
     }
 
+    public CacheHitStat getNearCacheHitStat() {
+        return new CacheHitStat(nearCacheHitCount.get(), nearCacheMissCount.get());
+    }
+
+    public long getNumberOfEvictions() {
+        return entryEvictedCount.get();
+    }
+
+    /**
+     * Returns the histogram of the time spent on cache hits.
+     *
+     * @return the histogram of the time spent on cache hits
+     */
+    public LatencyHistogram getHitTime() {
+        return entryGetHitTime;
+    }
+
+    /**
+     * Returns the histogram of the time spent on cache misses.
+     *
+     * @return the histogram of the time spent on cache misses
+     */
+    public LatencyHistogram getMissTime() {
+        return entryGetMissTime;
+    }
+
+    /**
+     * Returns the histogram of the time spent loading elements.
+     *
+     * @return the histogram of the time spent loading elements
+     */
+    public LatencyHistogram getLoadTime() {
+        return entryLoadTime;
+    }
+
+    /**
+     * Returns the histogram of the time spent evicting elements.
+     *
+     * @return the histogram of the time spent evicting elements
+     */
+    public LatencyHistogram getEvictionTime() {
+        return cacheEvictTime;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void initialize(CacheLifecycle.Initializer cli) {
@@ -413,7 +524,7 @@ public final class DefaultCacheStatisticsService<K, V> extends AbstractCacheLife
     }
 
     long getTimeStamp() {
-        return 0;
+        return clock.relativeTime();
     }
 
     @Override
@@ -0,0 +1,276 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent histogram of latencies measured in nanoseconds. Samples are recorded in
+ * log-linear buckets: values are grouped by their most significant bit and each group
+ * is split into 16 linear sub buckets. Reported percentiles are therefore never more
+ * than 1/16 of the real value off. Values larger than 2^41-1 nanoseconds (roughly 36
+ * minutes) are recorded as 2^41-1.
+ * <p>
+ * To avoid contention between threads recording samples, the histogram is split into
+ * a number of stripes. A thread always records into the same stripe, and stripes are
+ * only merged when the histogram is read. Stripes are allocated lazily the first time
+ * they are needed, after that recording a value never allocates any objects.
+ * <p>
+ * NOTICE: This is an internal class and should not be directly referred. No guarantee is
+ * made to the compatibility of this class between different releases of Coconut Cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    /** The number of bits used for the linear sub buckets. */
+    private static final int SUB_BITS = 4;
+
+    /** The number of linear sub buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The position of the highest bit that can be recorded. */
+    private static final int MAX_BIT = 40;
+
+    /** The largest value that can be recorded. */
+    private static final long MAX_VALUE = (1L << (MAX_BIT + 1)) - 1;
+
+    /** The number of buckets in each stripe. */
+    static final int BUCKETS = (MAX_BIT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    /** The maximum number of stripes. */
+    private static final int MAX_STRIPES = 64;
+
+    /** The index of the slot in each stripe that holds the sum of all samples. */
+    private static final int SUM = BUCKETS;
+
+    /** The name of the histogram. */
+    private final String name;
+
+    /** The description of the histogram. */
+    private final String description;
+
+    /** The stripes, each stripe holds a count per bucket followed by the sum. */
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+    /** Used for mapping a thread id to a stripe. */
+    private final int mask;
+
+    /**
+     * Creates a new LatencyHistogram.
+     *
+     * @param name
+     *            the name of the histogram
+     * @param description
+     *            the description of the histogram
+     */
+    public LatencyHistogram(String name, String description) {
+        this.name = name;
+        this.description = description;
+        int size = 1;
+        while (size < Runtime.getRuntime().availableProcessors() && size < MAX_STRIPES) {
+            size <<= 1;
+        }
+        stripes = new AtomicReferenceArray<AtomicLongArray>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the description of this histogram.
+     *
+     * @return the description of this histogram
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the name of this histogram.
+     *
+     * @return the name of this histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of samples recorded.
+     *
+     * @return the number of samples recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (long c : merge()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of all samples recorded, or 0 if no samples has been recorded.
+     *
+     * @return the mean of all samples recorded
+     */
+    public double getMean() {
+        long sum = 0;
+        long count = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKETS; j++) {
+                    count += stripe.get(j);
+                }
+                sum += stripe.get(SUM);
+            }
+        }
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value at the specified percentile. That is, the largest value that
+     * the specified percentage of all recorded samples is less than or equal to.
+     *
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the value at the specified percentile, or 0 if no samples has been recorded
+     * @throws IllegalArgumentException
+     *             if the percentile is not between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        return getValuesAtPercentiles(percentile)[0];
+    }
+
+    /**
+     * Returns the values at each of the specified percentiles. This method is more
+     * efficient than calling {@link #getValueAtPercentile(double)} once for each
+     * percentile, and the returned values are guaranteed to be consistent with each
+     * other.
+     *
+     * @param percentiles
+     *            the percentiles, each between 0 and 100
+     * @return the values at each of the specified percentiles
+     * @throws IllegalArgumentException
+     *             if one of the percentiles is not between 0 and 100
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        for (double p : percentiles) {
+            if (!(p >= 0 && p <= 100)) {
+                throw new IllegalArgumentException(
+                        "percentile must be between 0 and 100, was " + p);
+            }
+        }
+        long[] buckets = merge();
+        long count = 0;
+        for (long c : buckets) {
+            count += c;
+        }
+        long[] result = new long[percentiles.length];
+        if (count > 0) {
+            for (int i = 0; i < percentiles.length; i++) {
+                long rank = Math.max(1, (long) Math.ceil(percentiles[i] / 100 * count));
+                long seen = 0;
+                for (int j = 0; j < BUCKETS; j++) {
+                    seen += buckets[j];
+                    if (seen >= rank) {
+                        result[i] = highestValue(j);
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the specified value.
+     *
+     * @param value
+     *            the value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        int index = (int) Thread.currentThread().getId() & mask;
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 1));
+            stripe = stripes.get(index);
+        }
+        stripe.incrementAndGet(bucketOf(v));
+        stripe.addAndGet(SUM, v);
+    }
+
+    /**
+     * Removes all recorded samples. Samples recorded concurrently with this method might
+     * be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j <= SUM; j++) {
+                    stripe.set(j, 0);
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        long[] p = getValuesAtPercentiles(50, 90, 99, 99.9);
+        return name + " [count=" + getCount() + ", p50=" + p[0] + ", p90=" + p[1] + ", p99="
+                + p[2] + ", p99.9=" + p[3] + "]";
+    }
+
+    /**
+     * Sums the buckets of all stripes.
+     *
+     * @return the sum of the buckets of all stripes
+     */
+    private long[] merge() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                for (int j = 0; j < BUCKETS; j++) {
+                    buckets[j] += stripe.get(j);
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the index of the bucket that the specified value should be recorded in.
+     *
+     * @param value
+     *            the value, between 0 and {@link #MAX_VALUE}
+     * @return the index of the bucket
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that is recorded in the specified bucket.
+     *
+     * @param bucket
+     *            the index of the bucket
+     * @return the highest value that is recorded in the specified bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket - shift * SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
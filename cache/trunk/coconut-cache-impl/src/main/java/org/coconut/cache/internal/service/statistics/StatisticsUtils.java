@@ -19,6 +19,10 @@ import org.coconut.management.annotation.ManagedOperation;
  * @version $Id$
  */
 public final class StatisticsUtils {
+
+    /** The percentiles exposed through {@link CacheStatisticsMXBean}. */
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
     /** Cannot instantiate. */
     // /CLOVER:OFF
     private StatisticsUtils() {}
@@ -26,13 +30,13 @@ public final class StatisticsUtils {
     // /CLOVER:ON
 
     /**
-     * Wraps a CacheLoadingService in a CacheLoadingMXBean.
+     * Wraps a DefaultCacheStatisticsService in a CacheStatisticsMXBean.
      * 
      * @param service
-     *            the CacheLoadingService to wrap
-     * @return the wrapped CacheLoadingMXBean
+     *            the DefaultCacheStatisticsService to wrap
+     * @return the wrapped CacheStatisticsMXBean
      */
-    public static CacheStatisticsMXBean wrapMXBean(CacheStatisticsService service) {
+    public static CacheStatisticsMXBean wrapMXBean(DefaultCacheStatisticsService<?, ?> service) {
         return new DelegatedCacheStatisticsMXBean(service);
     }
 
@@ -58,8 +62,8 @@ public final class StatisticsUtils {
      * A wrapper class that exposes an ExecutorService as a CacheExpirationMXBean.
      */
     public static class DelegatedCacheStatisticsMXBean implements CacheStatisticsMXBean {
-        /** The CacheStatisticsService we are wrapping. */
-        private final CacheStatisticsService service;
+        /** The DefaultCacheStatisticsService we are wrapping. */
+        private final DefaultCacheStatisticsService<?, ?> service;
 
         /**
          * Creates a new DelegatedCacheStatisticsMXBean from the specified statistics
@@ -68,7 +72,7 @@ public final class StatisticsUtils {
          * @param service
          *            the statistics service to wrap
          */
-        public DelegatedCacheStatisticsMXBean(CacheStatisticsService service) {
+        public DelegatedCacheStatisticsMXBean(DefaultCacheStatisticsService<?, ?> service) {
             if (service == null) {
                 throw new NullPointerException("service is null");
             }
@@ -81,6 +85,36 @@ public final class StatisticsUtils {
             return service.getHitStat().getHitRatio();
         }
 
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "The hit ratio of the near cache")
+        public double getNearCacheHitRatio() {
+            return service.getNearCacheHitStat().getHitRatio();
+        }
+
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "Percentiles (50, 90, 99, 99.9) of time spent on cache hits in ns")
+        public long[] getHitLatencyPercentiles() {
+            return service.getHitTime().getValuesAtPercentiles(PERCENTILES);
+        }
+
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "Percentiles (50, 90, 99, 99.9) of time spent on cache misses in ns")
+        public long[] getMissLatencyPercentiles() {
+            return service.getMissTime().getValuesAtPercentiles(PERCENTILES);
+        }
+
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "Percentiles (50, 90, 99, 99.9) of time spent loading elements in ns")
+        public long[] getLoadLatencyPercentiles() {
+            return service.getLoadTime().getValuesAtPercentiles(PERCENTILES);
+        }
+
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "Percentiles (50, 90, 99, 99.9) of time spent on evictions in ns")
+        public long[] getEvictionLatencyPercentiles() {
+            return service.getEvictionTime().getValuesAtPercentiles(PERCENTILES);
+        }
+
         /** {@inheritDoc} */
         @ManagedAttribute(description = "The number of hits")
         public long getNumberOfHits() {
@@ -93,6 +127,12 @@ public final class StatisticsUtils {
             return service.getHitStat().getNumberOfMisses();
         }
 
+        /** {@inheritDoc} */
+        @ManagedAttribute(description = "The number of evictions")
+        public long getNumberOfEvictions() {
+            return service.getNumberOfEvictions();
+        }
+
         /** {@inheritDoc} */
         @ManagedOperation(description = "Resets the cache statistics")
         public void resetStatistics() {
@@ -127,6 +167,16 @@ public final class StatisticsUtils {
             return service.getHitStat();
         }
 
+        /** {@inheritDoc} */
+        public CacheHitStat getNearCacheHitStat() {
+            return service.getNearCacheHitStat();
+        }
+
+        /** {@inheritDoc} */
+        public long getNumberOfEvictions() {
+            return service.getNumberOfEvictions();
+        }
+
         /** {@inheritDoc} */
         public void resetStatistics() {
             service.resetStatistics();
@@ -9,6 +9,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import org.coconut.attribute.Attributes;
 import org.coconut.cache.service.servicemanager.AbstractCacheLifecycle;
 import org.coconut.cache.service.worker.CacheWorkerService;
+import org.coconut.core.KeyAffinityExecutor;
 
 public abstract class AbstractCacheWorkerService extends AbstractCacheLifecycle implements
         CacheWorkerService {
@@ -30,6 +31,10 @@ public abstract class AbstractCacheWorkerService extends AbstractCacheLifecycle
         return getScheduledExecutorService(service, Attributes.EMPTY_ATTRIBUTE_MAP);
     }
 
+    public final KeyAffinityExecutor getKeyAffinityExecutor(Object service) {
+        return getKeyAffinityExecutor(service, Attributes.EMPTY_ATTRIBUTE_MAP);
+    }
+
     public String toString() {
         return "Worker Service";
     }
@@ -11,6 +11,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.coconut.attribute.AttributeMap;
 import org.coconut.cache.service.worker.CacheWorkerManager;
+import org.coconut.core.KeyAffinityExecutor;
 
 public class SharedCacheWorkerManager extends CacheWorkerManager {
 
@@ -18,7 +19,13 @@ public class SharedCacheWorkerManager extends CacheWorkerManager {
 
     private final ScheduledExecutorService ses;
 
+    private final String cacheName;
+
+    /** Lazily created, since most caches does not need one. */
+    private KeyAffinityExecutor kae;
+
     SharedCacheWorkerManager(String cacheName) {
+        this.cacheName = cacheName;
         es = Executors.newCachedThreadPool(new WorkerUtils.DefaultThreadFactory("cache-"
                 + cacheName));
         ses = Executors.newScheduledThreadPool(5, new WorkerUtils.DefaultThreadFactory("cache-"
@@ -37,20 +44,44 @@ public class SharedCacheWorkerManager extends CacheWorkerManager {
         return ses;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public synchronized KeyAffinityExecutor getKeyAffinityExecutor(Object service,
+            AttributeMap attributes) {
+        if (kae == null) {
+            kae = new KeyAffinityExecutor(new WorkerUtils.DefaultThreadFactory("cache-"
+                    + cacheName + "-keyed"));
+        }
+        return kae;
+    }
+
     @Override
     public void shutdown(Shutdown shutdown) {
         es.shutdown();
         ses.shutdown();
+        final KeyAffinityExecutor kae;
+        synchronized (this) {
+            kae = this.kae;
+        }
+        if (kae != null) {
+            kae.shutdown();
+        }
         shutdown.shutdownAsynchronously(new Callable() {
             public Object call() {
                 for (;;) {
                     try {
                         es.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
                         ses.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                        if (kae != null) {
+                            kae.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                        }
                         return Void.TYPE;
                     } catch (InterruptedException ie) {
                         es.shutdownNow();
                         ses.shutdownNow();
+                        if (kae != null) {
+                            kae.shutdownNow();
+                        }
                     }
                 }
             }
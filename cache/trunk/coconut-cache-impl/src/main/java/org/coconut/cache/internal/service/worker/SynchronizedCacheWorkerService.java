@@ -14,6 +14,7 @@ import org.coconut.cache.service.servicemanager.CacheLifecycle;
 import org.coconut.cache.service.worker.CacheWorkerConfiguration;
 import org.coconut.cache.service.worker.CacheWorkerManager;
 import org.coconut.cache.service.worker.CacheWorkerService;
+import org.coconut.core.KeyAffinityExecutor;
 
 /**
  * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
@@ -49,6 +50,11 @@ public class SynchronizedCacheWorkerService extends AbstractCacheWorkerService i
         return worker.getScheduledExecutorService(service, attributes);
     }
 
+    /** {@inheritDoc} */
+    public KeyAffinityExecutor getKeyAffinityExecutor(Object service, AttributeMap attributes) {
+        return worker.getKeyAffinityExecutor(service, attributes);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void initialize(CacheLifecycle.Initializer cli) {
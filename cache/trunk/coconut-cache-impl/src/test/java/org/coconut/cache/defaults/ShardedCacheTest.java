@@ -0,0 +1,219 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.defaults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.service.management.CacheMXBean;
+import org.coconut.cache.service.statistics.CacheHitStat;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ShardedCache}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class ShardedCacheTest {
+
+    private ShardedCache<Integer, String> c;
+
+    private List<Cache<Integer, String>> shards;
+
+    @Before
+    public void setup() {
+        shards = new ArrayList<Cache<Integer, String>>();
+        for (int i = 0; i < 3; i++) {
+            CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+            conf.setName("shard" + i);
+            shards.add(new UnsynchronizedCache<Integer, String>(conf));
+        }
+        c = new ShardedCache<Integer, String>("sharded", shards);
+    }
+
+    @Test
+    public void routing() {
+        for (int i = 0; i < 100; i++) {
+            assertNull(c.put(i, "" + i));
+        }
+        assertEquals(100, c.size());
+        assertEquals(100, c.volume());
+        int sum = 0;
+        for (Cache<Integer, String> shard : shards) {
+            assertTrue(shard.size() > 0);
+            sum += shard.size();
+        }
+        assertEquals(100, sum);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(c.getShard(i).containsKey(i));
+            assertEquals("" + i, c.get(i));
+            assertEquals("" + i, c.peek(i));
+            assertEquals("" + i, c.getEntry(i).getValue());
+        }
+        assertEquals("5", c.remove(5));
+        assertFalse(c.containsKey(5));
+        assertNull(c.putIfAbsent(5, "x"));
+        assertEquals("x", c.putIfAbsent(5, "y"));
+        assertTrue(c.remove(5, "x"));
+        assertTrue(c.containsValue("7"));
+        assertFalse(c.containsValue("5"));
+        assertEquals(99, c.size());
+    }
+
+    /**
+     * The keys of each shard must use all the buckets of the memory store of the shard,
+     * also when the number of shards is a power of two.
+     */
+    @Test
+    public void indexForIndependentOfBuckets() {
+        List<Cache<Integer, String>> four = new ArrayList<Cache<Integer, String>>();
+        for (int i = 0; i < 4; i++) {
+            four.add(new UnsynchronizedCache<Integer, String>());
+        }
+        ShardedCache<Integer, String> sc = new ShardedCache<Integer, String>("sharded", four);
+        List<Set<Integer>> buckets = new ArrayList<Set<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            buckets.add(new HashSet<Integer>());
+        }
+        for (int i = 0; i < 10000; i++) {
+            // the bucket in a table of 64 buckets, see HashMap.hash(int)
+            int h = Integer.valueOf(i).hashCode();
+            h ^= h >>> 20 ^ h >>> 12;
+            h ^= h >>> 7 ^ h >>> 4;
+            buckets.get(sc.indexFor(i)).add(h & 63);
+        }
+        for (Set<Integer> s : buckets) {
+            assertEquals(64, s.size());
+        }
+    }
+
+    @Test
+    public void bulk() {
+        Map<Integer, String> m = new HashMap<Integer, String>();
+        for (int i = 0; i < 50; i++) {
+            m.put(i, "" + i);
+        }
+        c.putAll(m);
+        assertEquals(50, c.size());
+        Map<Integer, String> result = c.getAll(Arrays.asList(1, 2, 3, 100));
+        assertEquals(4, result.size());
+        assertEquals("2", result.get(2));
+        assertNull(result.get(100));
+        assertTrue(result.containsKey(100));
+
+        c.removeAll(Arrays.asList(1, 2, 3, 4));
+        assertEquals(46, c.size());
+        assertFalse(c.containsKey(1));
+
+        c.clear();
+        assertTrue(c.isEmpty());
+        for (Cache<Integer, String> shard : shards) {
+            assertTrue(shard.isEmpty());
+        }
+    }
+
+    @Test
+    public void views() {
+        for (int i = 0; i < 20; i++) {
+            c.put(i, "" + i);
+        }
+        assertEquals(20, c.entrySet().size());
+        Set<Integer> keys = new HashSet<Integer>(c.keySet());
+        assertEquals(20, keys.size());
+        assertTrue(keys.contains(19));
+        assertTrue(c.values().contains("3"));
+        for (Iterator<Integer> i = c.keySet().iterator(); i.hasNext();) {
+            if (i.next() % 2 == 0) {
+                i.remove();
+            }
+        }
+        assertEquals(10, c.size());
+        assertFalse(c.containsKey(2));
+
+        Map<Integer, String> m = new HashMap<Integer, String>(c);
+        assertEquals(m, c);
+    }
+
+    @Test
+    public void statistics() {
+        c.put(1, "1");
+        c.getAll(Arrays.asList(1, 2, 3));
+        CacheStatisticsService s = c.services().statistics();
+        assertSame(s, c.getService(CacheStatisticsService.class));
+        assertEquals(new CacheHitStat(1, 2), s.getHitStat());
+        s.resetStatistics();
+        assertEquals(CacheHitStat.STAT00, s.getHitStat());
+    }
+
+    @Test
+    public void shardMXBeans() {
+        c.put(1, "1");
+        List<CacheMXBean> beans = c.getShardMXBeans();
+        assertEquals(3, beans.size());
+        int size = 0;
+        for (int i = 0; i < 3; i++) {
+            assertEquals("shard" + i, beans.get(i).getName());
+            size += beans.get(i).getSize();
+        }
+        assertEquals(1, size);
+        assertEquals(shards, c.getShards());
+    }
+
+    @Test
+    public void lifecycle() throws Exception {
+        c.put(1, "1");
+        assertFalse(c.isShutdown());
+        c.shutdown();
+        assertTrue(c.isShutdown());
+        assertTrue(c.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(c.isTerminated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownService() {
+        c.getService(String.class);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getNPE() {
+        c.get(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void putAllNPE() {
+        c.putAll(new HashMap<Integer, String>() {
+            {
+                put(null, "1");
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noShards() {
+        new ShardedCache<Integer, String>("sharded", new ArrayList<Cache<Integer, String>>());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullShard() {
+        new ShardedCache<Integer, String>("sharded", Arrays.asList(shards.get(0), null));
+    }
+}
@@ -0,0 +1,165 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.service.event.CacheEntryEvent;
+import org.coconut.cache.service.event.CacheEvent;
+import org.coconut.cache.service.statistics.CacheHitStat;
+
+import org.coconut.operations.Ops.Procedure;
+import org.junit.Test;
+
+/**
+ * Tests the batch operations of {@link SynchronizedInternalCache} and
+ * {@link UnsynchronizedInternalCache}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class InternalCacheBatchTest {
+
+    @Test
+    public void getAll() {
+        for (Cache<Integer, String> c : caches()) {
+            c.put(1, "a");
+            c.put(2, "b");
+            c.put(3, "c");
+            Map<Integer, String> result = c.getAll(Arrays.asList(1, 2, 4));
+            assertEquals(3, result.size());
+            assertEquals("a", result.get(1));
+            assertEquals("b", result.get(2));
+            assertTrue(result.containsKey(4));
+            assertNull(result.get(4));
+            // hits and misses are recorded once per batch
+            CacheHitStat stat = c.services().statistics().getHitStat();
+            assertEquals(2, stat.getNumberOfHits());
+            assertEquals(1, stat.getNumberOfMisses());
+
+            assertTrue(c.getAll(Collections.<Integer> emptyList()).isEmpty());
+        }
+    }
+
+    @Test
+    public void getAllNull() {
+        for (Cache<Integer, String> c : caches()) {
+            try {
+                c.getAll(Arrays.asList(1, null));
+                fail("should throw NullPointerException");
+            } catch (NullPointerException ok) {/* ok */}
+        }
+    }
+
+    @Test
+    public void removeKeys() {
+        for (Cache<Integer, String> c : caches()) {
+            c.put(1, "a");
+            c.put(2, "b");
+            c.put(3, "c");
+            EventCounter counter = subscribe(c);
+            c.removeAll(Arrays.asList(1, 3, 4));
+            assertEquals(1, c.size());
+            assertFalse(c.containsKey(1));
+            assertTrue(c.containsKey(2));
+            assertFalse(c.containsKey(3));
+            assertEquals(2, counter.deleted.size());
+            assertTrue(counter.deleted.containsAll(Arrays.asList(1, 3)));
+        }
+    }
+
+    /**
+     * Cache.putAll is implemented by putAllWithAttributes in the internal caches.
+     */
+    @Test
+    public void putAllWithAttributes() {
+        for (Cache<Integer, String> c : caches()) {
+            c.put(1, "a");
+            EventCounter counter = subscribe(c);
+            Map<Integer, String> data = new HashMap<Integer, String>();
+            for (int i = 1; i <= 4; i++) {
+                data.put(i, "v" + i);
+            }
+            c.putAll(data);
+            assertEquals(4, c.size());
+            for (int i = 1; i <= 4; i++) {
+                assertEquals("v" + i, c.peek(i));
+            }
+            // new keys used to collapse onto a single null key, so only one was reported
+            Collections.sort(counter.created);
+            assertEquals(Arrays.asList(2, 3, 4), counter.created);
+            assertEquals(Arrays.asList(1), counter.updated);
+        }
+    }
+
+    @Test
+    public void putAllGrowsTable() {
+        for (Cache<Integer, String> c : caches()) {
+            for (int i = 0; i < 100; i++) {
+                c.put(i, "" + i);
+            }
+            // only a few of the keys are new, but all must be found afterwards
+            Map<Integer, String> m = new HashMap<Integer, String>();
+            for (int i = 90; i < 110; i++) {
+                m.put(i, "x" + i);
+            }
+            c.putAll(m);
+            assertEquals(110, c.size());
+            for (int i = 0; i < 110; i++) {
+                assertEquals(i < 90 ? "" + i : "x" + i, c.peek(i));
+            }
+        }
+    }
+
+    static List<Cache<Integer, String>> caches() {
+        List<Cache<Integer, String>> caches = new ArrayList<Cache<Integer, String>>();
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.event().setEnabled(true);
+        caches.add(new SynchronizedCache<Integer, String>(conf));
+        conf = CacheConfiguration.create();
+        conf.event().setEnabled(true);
+        caches.add(new UnsynchronizedCache<Integer, String>(conf));
+        return caches;
+    }
+
+    static EventCounter subscribe(Cache<Integer, String> c) {
+        EventCounter counter = new EventCounter();
+        c.services().event().subscribe(counter);
+        return counter;
+    }
+
+    /** Records the keys of the entry events raised by a cache. */
+    static class EventCounter implements Procedure<CacheEvent<Integer, String>> {
+        final List<Integer> created = new ArrayList<Integer>();
+
+        final List<Integer> updated = new ArrayList<Integer>();
+
+        final List<Integer> deleted = new ArrayList<Integer>();
+
+        public void apply(CacheEvent<Integer, String> event) {
+            if (event instanceof CacheEntryEvent.ItemCreated) {
+                created.add(((CacheEntryEvent<Integer, String>) event).getKey());
+            } else if (event instanceof CacheEntryEvent.ItemUpdated) {
+                updated.add(((CacheEntryEvent<Integer, String>) event).getKey());
+            } else if (event instanceof CacheEntryEvent.ItemDeleted) {
+                deleted.add(((CacheEntryEvent<Integer, String>) event).getKey());
+            }
+        }
+    }
+}
@@ -211,7 +211,7 @@ public class EntryMapTest {
     static class EntryStub extends UnsynchronizedCacheEntry<Integer, String> {
 
         public EntryStub(Integer key, String value) {
-            super(key, value, -1, 0, 0, 0, 0, Attributes.EMPTY_ATTRIBUTE_MAP);
+            super(key, value, -1, 0, 0, 0, 0, Attributes.EMPTY_ATTRIBUTE_MAP, null);
         }
     }
 }
@@ -0,0 +1,226 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.index;
+
+import static org.coconut.operations.Mappers.MAP_ENTRY_TO_KEY_MAPPER;
+import static org.coconut.operations.Mappers.MAP_ENTRY_TO_VALUE_MAPPER;
+import static org.coconut.operations.Predicates.and;
+import static org.coconut.operations.Predicates.between;
+import static org.coconut.operations.Predicates.greaterThen;
+import static org.coconut.operations.Predicates.isEquals;
+import static org.coconut.operations.Predicates.lessThen;
+import static org.coconut.operations.Predicates.mapAndEvaluate;
+import static org.coconut.operations.Predicates.truePredicate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.CacheEntry;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.service.index.CacheIndexService;
+import org.coconut.cache.service.index.CacheQuery;
+import org.coconut.operations.Mappers;
+import org.coconut.operations.Ops.Mapper;
+import org.coconut.operations.Ops.Predicate;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultCacheIndexService}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class DefaultCacheIndexServiceTest {
+
+    static final Mapper<Integer, Integer> TENS = new Mapper<Integer, Integer>() {
+        public Integer map(Integer t) {
+            return t / 10;
+        }
+    };
+
+    private CacheConfiguration<Integer, String> conf;
+
+    private Cache<Integer, String> c;
+
+    @Before
+    public void setup() {
+        conf = CacheConfiguration.create();
+        conf.index().addHashIndex(MAP_ENTRY_TO_VALUE_MAPPER).addSortedIndex(
+                MAP_ENTRY_TO_KEY_MAPPER).addHashIndex(
+                Mappers.compoundMapper(MAP_ENTRY_TO_KEY_MAPPER, TENS));
+        c = new SynchronizedCache<Integer, String>(conf);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, "v" + i % 3);
+        }
+    }
+
+    @Test
+    public void hashIndex() {
+        CacheQuery<Integer, String> q = query(values(isEquals("v1")));
+        assertTrue(q.isIndexed());
+        List<CacheEntry<Integer, String>> l = q.getAll();
+        assertEquals(33, l.size());
+        assertEquals(33, q.getCurrentIndex());
+        for (CacheEntry<Integer, String> e : l) {
+            assertEquals(1, e.getKey() % 3);
+        }
+        c.remove(1);
+        c.put(2, "v1");
+        List<Integer> keys = keys(query(values(isEquals("v1"))).getAll());
+        assertEquals(33, keys.size());
+        assertFalse(keys.contains(1));
+        assertTrue(keys.contains(2));
+        c.putAll(Collections.singletonMap(2, "v2"));
+        assertFalse(keys(query(values(isEquals("v1"))).getAll()).contains(2));
+    }
+
+    @Test
+    public void sortedIndex() {
+        CacheQuery<Integer, String> q = query(keys(between(10, 19)));
+        assertTrue(q.isIndexed());
+        assertEquals(Arrays.asList(10, 11, 12), keys(q.getNext(3)));
+        assertEquals(Arrays.asList(13, 14, 15, 16, 17, 18, 19), keys(q.getNext(20)));
+        assertFalse(q.hasNext());
+
+        assertEquals(Arrays.asList(96, 97, 98, 99), keys(query(keys(greaterThen(95))).getAll()));
+        assertEquals(Arrays.asList(0, 1), keys(query(keys(lessThen(2))).getAll()));
+        assertEquals(Arrays.asList(4, 5), keys(query(
+                and(keys(greaterThen(3)), keys(lessThen(6)))).getAll()));
+    }
+
+    @Test
+    public void modifiedWhileQuerying() {
+        CacheQuery<Integer, String> q = query(keys(between(10, 19)));
+        assertEquals(Arrays.asList(10, 11), keys(q.getNext(2)));
+        c.remove(15);
+        c.remove(12);
+        c.put(150, "v");
+        assertEquals(Arrays.asList(13, 14, 16, 17, 18, 19), keys(q.getAll()));
+    }
+
+    @Test
+    public void compoundIndex() {
+        // the same predicate as withFilterOnKeys would create
+        CacheQuery<Integer, String> q = query(keys(mapAndEvaluate(TENS, isEquals(4))));
+        assertTrue(q.isIndexed());
+        assertEquals(10, q.getAll().size());
+    }
+
+    @Test
+    public void combined() {
+        CacheQuery<Integer, String> q = query(and(keys(greaterThen(10)), values(isEquals("v0"))));
+        assertTrue(q.isIndexed());
+        List<CacheEntry<Integer, String>> l = q.getAll();
+        assertEquals(30, l.size());
+        for (CacheEntry<Integer, String> e : l) {
+            assertTrue(e.getKey() > 10);
+            assertEquals("v0", e.getValue());
+        }
+    }
+
+    @Test
+    public void notIndexed() {
+        CacheQuery<Integer, String> q = query(values(greaterThen("v1")));
+        assertFalse(q.isIndexed());
+        assertEquals(33, q.getAll().size());
+    }
+
+    @Test
+    public void cleared() {
+        c = new UnsynchronizedCache<Integer, String>(conf);
+        c.put(2, "v1");
+        c.clear();
+        assertFalse(query(values(isEquals("v1"))).hasNext());
+        c.put(1, "v1");
+        assertEquals(1, query(values(isEquals("v1"))).getAll().size());
+    }
+
+    @Test
+    public void unsynchronized() {
+        c = new UnsynchronizedCache<Integer, String>(conf);
+        c.put(1, "v1");
+        c.put(2, "v1");
+        c.put(3, "v2");
+        assertEquals(Arrays.asList(2, 3), keys(query(keys(greaterThen(1))).getAll()));
+    }
+
+    @Test
+    public void weakKeys() throws InterruptedException {
+        CacheConfiguration<Object, String> conf = CacheConfiguration.create();
+        conf.eviction().setWeakKeys(true);
+        conf.index().addHashIndex(MAP_ENTRY_TO_VALUE_MAPPER);
+        Cache<Object, String> c = new UnsynchronizedCache<Object, String>(conf);
+        Object key = new Object();
+        c.put(key, "v");
+        Object reclaimed = new Object();
+        WeakReference<Object> ref = new WeakReference<Object>(reclaimed);
+        c.put(reclaimed, "v");
+        reclaimed = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        Predicate<CacheEntry<Object, String>> isV = mapAndEvaluate(
+                (Mapper) MAP_ENTRY_TO_VALUE_MAPPER, isEquals("v"));
+
+        // the entry has been reclaimed, but not yet purged
+        assertEquals(2, c.size());
+        List<CacheEntry<Object, String>> l = c.services().index().query(isV).getAll();
+        assertEquals(1, l.size());
+        assertSame(key, l.get(0).getKey());
+        assertEquals(1, c.services().index().query(truePredicate()).getAll().size());
+
+        // every write purges a small batch of the cleared entries
+        for (int i = 0; i < 100 && c.size() > 1; i++) {
+            c.put(key, "v");
+        }
+        assertEquals(1, c.size());
+        assertEquals(1, c.services().index().query(isV).getAll().size());
+        c.remove(key);
+        assertFalse(c.services().index().query(isV).hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noIndexes() {
+        new SynchronizedCache<Integer, String>().getService(CacheIndexService.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getNextIAE() {
+        query(values(isEquals("v1"))).getNext(0);
+    }
+
+    private CacheQuery<Integer, String> query(Predicate<? super CacheEntry<Integer, String>> p) {
+        return c.services().index().query(p);
+    }
+
+    static Predicate<CacheEntry<Integer, String>> keys(Predicate<? super Integer> p) {
+        return mapAndEvaluate((Mapper) MAP_ENTRY_TO_KEY_MAPPER, p);
+    }
+
+    static Predicate<CacheEntry<Integer, String>> values(Predicate<? super String> p) {
+        return mapAndEvaluate((Mapper) MAP_ENTRY_TO_VALUE_MAPPER, p);
+    }
+
+    static List<Integer> keys(List<CacheEntry<Integer, String>> entries) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (CacheEntry<Integer, String> e : entries) {
+            result.add(e.getKey());
+        }
+        return result;
+    }
+}
@@ -16,6 +16,7 @@ import org.coconut.cache.service.loading.CacheLoadingConfiguration;
 import org.coconut.cache.service.loading.CacheLoadingService;
 import org.coconut.cache.service.worker.CacheWorkerManager;
 import org.coconut.cache.service.worker.CacheWorkerService;
+import org.coconut.core.KeyAffinityExecutor;
 import org.coconut.test.TestUtil;
 import org.junit.Test;
 
@@ -350,5 +351,13 @@ public class DefaultCacheLoaderServiceTest {
             return TestUtil.dummy(ExecutorService.class);
         }
 
+        public KeyAffinityExecutor getKeyAffinityExecutor(Object service) {
+            throw new UnsupportedOperationException();
+        }
+
+        public KeyAffinityExecutor getKeyAffinityExecutor(Object service,
+                AttributeMap attributes) {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,79 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.loading;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.attribute.AttributeMap;
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.service.loading.CacheLoader;
+import org.coconut.core.Clock;
+import org.coconut.core.RateLimiter;
+import org.junit.Test;
+
+/**
+ * Tests that bulk loads acquire permits from the configured rate limiter.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class RateLimitedLoadingTest {
+
+    @Test
+    public void forceLoadAll() {
+        Clock.DeterministicClock clock = new Clock.DeterministicClock();
+        RateLimiter limiter = new RateLimiter(1000, TimeUnit.SECONDS, 10, clock);
+        BatchLoader loader = new BatchLoader();
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.loading().setLoader(loader).setRateLimiter(limiter);
+        Cache<Integer, String> c = new UnsynchronizedCache<Integer, String>(conf);
+
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 25; i++) {
+            keys.add(i);
+        }
+        c.services().loading().forceLoadAll(keys);
+        assertEquals(25, c.size());
+        assertEquals("24", c.peek(24));
+        // no batch is larger than the burst
+        assertEquals(Arrays.asList(10, 10, 5), loader.batches);
+        // the clock has not moved, so all the permits are still used
+        assertEquals(0, limiter.getAvailablePermits());
+    }
+
+    @Test
+    public void notLimited() {
+        BatchLoader loader = new BatchLoader();
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.loading().setLoader(loader);
+        Cache<Integer, String> c = new UnsynchronizedCache<Integer, String>(conf);
+        c.services().loading().forceLoadAll(Arrays.asList(1, 2, 3));
+        assertEquals(3, c.size());
+        assertEquals(Arrays.asList(3), loader.batches);
+    }
+
+    static class BatchLoader implements CacheLoader<Integer, String> {
+        final List<Integer> batches = new ArrayList<Integer>();
+
+        public String load(Integer key, AttributeMap attributes) {
+            return key.toString();
+        }
+
+        public void loadAll(
+                Collection<? extends LoaderCallback<? extends Integer, ? super String>> callbacks) {
+            batches.add(callbacks.size());
+            for (LoaderCallback<? extends Integer, ? super String> callback : callbacks) {
+                callback.completed(load(callback.getKey(), callback.getAttributes()));
+            }
+        }
+    }
+}
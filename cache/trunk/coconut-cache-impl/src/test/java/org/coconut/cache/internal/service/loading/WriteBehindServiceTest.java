@@ -0,0 +1,145 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.loading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.attribute.AttributeMap;
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.service.loading.AbstractCacheLoader;
+import org.coconut.cache.spi.CacheStore;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link WriteBehindService}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class WriteBehindServiceTest {
+
+    private CacheConfiguration<Integer, String> conf;
+
+    private RecordingStore store;
+
+    @Before
+    public void setup() {
+        store = new RecordingStore();
+        conf = CacheConfiguration.create();
+        conf.loading().setStore(store).setWriteBehindDelay(1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void coalescedBatch() throws InterruptedException {
+        conf.loading().setWriteBehindBatchSize(2);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.put(1, "A");
+        c.put(1, "B");
+        assertNull(store.writes.poll(50, TimeUnit.MILLISECONDS));
+        c.put(2, "C");
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        expected.put(1, "B");
+        expected.put(2, "C");
+        assertEquals(expected, store.writes.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void writtenOnShutdown() throws InterruptedException {
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.put(1, "A");
+        c.put(2, "B");
+        c.remove(2);
+        c.remove(3);
+        c.shutdown();
+        c.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonMap(1, "A"), store.writes.poll());
+        assertEquals(Collections.singletonList(2), store.writes.poll());
+        assertNull(store.writes.poll());
+    }
+
+    @Test
+    public void writtenAfterDelay() throws InterruptedException {
+        conf.loading().setWriteBehindDelay(20, TimeUnit.MILLISECONDS);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.put(1, "A");
+        assertEquals(Collections.singletonMap(1, "A"), store.writes.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void retried() throws InterruptedException {
+        conf.loading().setWriteBehindBatchSize(1).setWriteBehindRetryDelay(0,
+                TimeUnit.NANOSECONDS);
+        store.failures = 1;
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.put(1, "A");
+        assertEquals(Collections.singletonMap(1, "A"), store.writes.poll(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonMap(1, "A"), store.writes.poll(10, TimeUnit.SECONDS));
+        assertEquals(0, store.failures);
+    }
+
+    @Test
+    public void snapshotNotWritten() throws IOException, InterruptedException {
+        File file = File.createTempFile("coconut", ".snapshot");
+        try {
+            Cache<Integer, String> saved = new SynchronizedCache<Integer, String>();
+            saved.put(1, "A");
+            saved.services().memoryStore().saveSnapshot(file);
+
+            Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+            assertEquals(1, c.services().memoryStore().loadSnapshot(file));
+            assertEquals("A", c.peek(1));
+            c.shutdown();
+            c.awaitTermination(10, TimeUnit.SECONDS);
+            assertNull(store.writes.poll());
+        } finally {
+            file.delete();
+        }
+    }
+
+    static class RecordingStore extends AbstractCacheLoader<Integer, String> implements
+            CacheStore<Integer, String> {
+        final BlockingQueue<Object> writes = new LinkedBlockingQueue<Object>();
+
+        volatile int failures;
+
+        public void delete(Integer key) {
+            deleteAll(Collections.singleton(key));
+        }
+
+        public void deleteAll(Collection<? extends Integer> keys) {
+            writes.add(new ArrayList<Integer>(keys));
+        }
+
+        public String load(Integer key, AttributeMap attributes) {
+            return key.toString();
+        }
+
+        public void store(Integer key, String value) {
+            storeAll(Collections.singletonMap(key, value));
+        }
+
+        public void storeAll(Map<Integer, String> entries) {
+            writes.add(new HashMap<Integer, String>(entries));
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("failed");
+            }
+        }
+    }
+}
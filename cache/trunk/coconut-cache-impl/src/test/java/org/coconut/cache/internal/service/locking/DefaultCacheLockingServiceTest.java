@@ -0,0 +1,238 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.CacheException;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.service.locking.CacheLockingConfiguration;
+import org.coconut.cache.service.locking.CacheLockingService;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultCacheLockingService}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class DefaultCacheLockingServiceTest {
+
+    private CacheLockingConfiguration<Integer, String> conf;
+
+    private DefaultCacheLockingService<Integer, String> service;
+
+    @Before
+    public void setup() {
+        conf = new CacheLockingConfiguration<Integer, String>();
+        service = new DefaultCacheLockingService<Integer, String>(conf);
+    }
+
+    @Test
+    public void registered() {
+        CacheConfiguration<Integer, String> cc = CacheConfiguration.create();
+        SynchronizedCache<Integer, String> c = new SynchronizedCache<Integer, String>(cc);
+        CacheLockingService<Integer, String> s = c.services().locking();
+        assertSame(s, c.getService(CacheLockingService.class));
+    }
+
+    @Test
+    public void entryLock() {
+        ReadWriteLock l = service.getEntryLock(1);
+        assertSame(l, service.getEntryLock(1));
+        assertSame(l, service.getEntryLock(Arrays.asList(1, 1)));
+        l.readLock().lock();
+        assertTrue(otherThreadTryLock(l.readLock()));
+        assertFalse(otherThreadTryLock(l.writeLock()));
+        l.readLock().unlock();
+        assertTrue(otherThreadTryLock(l.writeLock()));
+        l.writeLock().newCondition();
+    }
+
+    @Test
+    public void concurrencyLevel() {
+        service = new DefaultCacheLockingService<Integer, String>(conf.setConcurrencyLevel(3));
+        // rounded up to 4
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            int index = service.indexFor(i);
+            assertTrue(index >= 0 && index < 4);
+            if (!indexes.contains(index)) {
+                indexes.add(index);
+            }
+        }
+        assertEquals(4, indexes.size());
+    }
+
+    @Test
+    public void multipleKeys() {
+        List<Integer> keys = keysWithDifferentLocks(3);
+        ReadWriteLock l = service.getEntryLock(keys);
+        l.writeLock().lock();
+        for (Integer key : keys) {
+            assertFalse(otherThreadTryLock(service.getEntryLock(key).readLock()));
+        }
+        l.writeLock().unlock();
+        for (Integer key : keys) {
+            assertTrue(otherThreadTryLock(service.getEntryLock(key).writeLock()));
+        }
+    }
+
+    @Test
+    public void tryLockReleasesOnFailure() {
+        List<Integer> keys = keysWithDifferentLocks(2);
+        ReadWriteLock first = service.getEntryLock(keys.get(0));
+        ReadWriteLock last = service.getEntryLock(keys.get(1));
+        if (service.indexFor(keys.get(0)) > service.indexFor(keys.get(1))) {
+            ReadWriteLock tmp = first;
+            first = last;
+            last = tmp;
+        }
+        last.writeLock().lock();
+        try {
+            assertFalse(otherThreadTryLock(service.getEntryLock(keys).writeLock()));
+        } finally {
+            last.writeLock().unlock();
+        }
+        // the lock acquired before the failure must have been released
+        assertTrue(otherThreadTryLock(first.writeLock()));
+    }
+
+    @Test
+    public void noDeadlock() throws Exception {
+        final List<Integer> keys = keysWithDifferentLocks(4);
+        final List<Integer> reversed = new ArrayList<Integer>(keys);
+        Collections.reverse(reversed);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(2);
+        for (final List<Integer> l : Arrays.asList(keys, reversed)) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            Lock lock = service.getEntryLock(l).writeLock();
+                            lock.lock();
+                            lock.unlock();
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertFalse(failed.get());
+    }
+
+    @Test
+    public void cacheLock() {
+        ReadWriteLock l = service.getCacheLock();
+        l.readLock().lock();
+        assertTrue(otherThreadTryLock(service.getEntryLock(1).readLock()));
+        assertFalse(otherThreadTryLock(service.getEntryLock(2).writeLock()));
+        l.readLock().unlock();
+        l.writeLock().lock();
+        assertFalse(otherThreadTryLock(service.getEntryLock(3).readLock()));
+        l.writeLock().unlock();
+        assertTrue(otherThreadTryLock(service.getCacheLock().writeLock()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cacheLockCondition() {
+        service.getCacheLock().writeLock().newCondition();
+    }
+
+    @Test(expected = CacheException.class)
+    public void lockTimeout() throws Exception {
+        service = new DefaultCacheLockingService<Integer, String>(conf.setLockTimeout(10,
+                TimeUnit.MILLISECONDS));
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                Lock l = service.getEntryLock(1).writeLock();
+                l.lock();
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {} finally {
+                    l.unlock();
+                }
+            }
+        }.start();
+        locked.await();
+        try {
+            service.getEntryLock(1).writeLock().lock();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void entryLockNPE() {
+        service.getEntryLock((Integer) null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void entryLockListNPE() {
+        service.getEntryLock((List<Integer>) null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void entryLockListKeyNPE() {
+        service.getEntryLock(Arrays.asList(1, null));
+    }
+
+    private List<Integer> keysWithDifferentLocks(int count) {
+        List<Integer> keys = new ArrayList<Integer>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; keys.size() < count; i++) {
+            if (!indexes.contains(service.indexFor(i))) {
+                indexes.add(service.indexFor(i));
+                keys.add(i);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Tries to acquire the specified lock from another thread, and releases it again if
+     * successful.
+     */
+    static boolean otherThreadTryLock(final Lock lock) {
+        final AtomicBoolean result = new AtomicBoolean();
+        Thread t = new Thread() {
+            public void run() {
+                if (lock.tryLock()) {
+                    result.set(true);
+                    lock.unlock();
+                }
+            }
+        };
+        t.start();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return result.get();
+    }
+}
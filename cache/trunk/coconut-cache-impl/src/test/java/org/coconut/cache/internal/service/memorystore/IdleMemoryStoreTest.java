@@ -0,0 +1,189 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.core.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the eviction of entries that have not been accessed for longer than the
+ * configured idle time.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class IdleMemoryStoreTest {
+
+    private Clock.DeterministicClock clock;
+
+    private Cache<Integer, String> c;
+
+    @Before
+    public void setup() {
+        clock = new Clock.DeterministicClock();
+        clock.setTimestamp(1000);
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        conf.eviction().setIdleTime(10, TimeUnit.SECONDS);
+        c = new UnsynchronizedCache<Integer, String>(conf);
+    }
+
+    @Test
+    public void evictIdleElements() {
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        clock.setTimestamp(5000);
+        assertEquals("1", c.get(1));
+        c.put(2, "b"); // updating an entry counts as an access
+
+        clock.setTimestamp(10999);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(3, c.size());
+
+        clock.setTimestamp(11000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(2, c.size());
+        assertFalse(c.containsKey(3));
+        assertEquals(1, c.services().statistics().getNumberOfEvictions());
+        assertEquals(5000, c.peekEntry(1).getLastAccessTime());
+
+        clock.setTimestamp(15000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(0, c.size());
+        assertEquals(3, c.services().statistics().getNumberOfEvictions());
+    }
+
+    @Test
+    public void peekIsNotAccess() {
+        c.put(1, "1");
+        clock.setTimestamp(10000);
+        assertEquals("1", c.peek(1));
+        assertTrue(c.containsKey(1));
+        clock.setTimestamp(11000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void getAll() {
+        c.put(1, "1");
+        c.put(2, "2");
+        clock.setTimestamp(5000);
+        c.getAll(Arrays.asList(2));
+        clock.setTimestamp(11000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(1, c.size());
+        assertTrue(c.containsKey(2));
+    }
+
+    @Test
+    public void removedEntries() {
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        c.remove(1);
+        c.remove(3);
+        clock.setTimestamp(5000);
+        c.put(4, "4");
+        clock.setTimestamp(11000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(1, c.size());
+        assertTrue(c.containsKey(4));
+        assertEquals(1, c.services().statistics().getNumberOfEvictions());
+    }
+
+    @Test
+    public void manyEntries() {
+        for (int i = 0; i < 1000; i++) {
+            c.put(i, "" + i);
+        }
+        clock.setTimestamp(2000);
+        for (int i = 0; i < 1000; i += 2) {
+            c.get(i);
+        }
+        clock.setTimestamp(11000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(500, c.size());
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(c.containsKey(i));
+        }
+        clock.setTimestamp(12000);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void nearCacheHits() {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        conf.eviction().setIdleTime(10, TimeUnit.SECONDS).setNearCacheSize(16);
+        conf.event().setEnabled(true);
+        c = new SynchronizedCache<Integer, String>(conf);
+        try {
+            c.put(1, "1");
+            c.put(2, "2");
+            assertEquals("1", c.get(1));
+            clock.setTimestamp(5000);
+            // served by the near cache, so the entry is not moved in the access order
+            assertEquals("1", c.get(1));
+            assertEquals(1, c.services().statistics().getNearCacheHitStat().getNumberOfHits());
+
+            clock.setTimestamp(11000);
+            c.services().memoryStore().evictIdleElements();
+            assertEquals(1, c.size());
+            assertTrue(c.containsKey(1));
+            assertEquals(5000, c.peekEntry(1).getLastAccessTime());
+
+            clock.setTimestamp(15000);
+            c.services().memoryStore().evictIdleElements();
+            assertEquals(0, c.size());
+        } finally {
+            c.shutdown();
+        }
+    }
+
+    @Test
+    public void noIdleTime() {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        c = new UnsynchronizedCache<Integer, String>(conf);
+        c.put(1, "1");
+        clock.setTimestamp(Long.MAX_VALUE / 2);
+        c.services().memoryStore().evictIdleElements();
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void synchronizedCacheEvictsInBackground() throws InterruptedException {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.eviction().setIdleTime(50, TimeUnit.MILLISECONDS);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        try {
+            for (int i = 0; i < 10; i++) {
+                c.put(i, "" + i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (c.size() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, c.size());
+            assertEquals(10, c.services().statistics().getNumberOfEvictions());
+        } finally {
+            c.shutdown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.service.memorystore.MemoryStoreService;
+import org.coconut.cache.util.MemoryPressureController;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link MemoryPressureController} evicts elements from a real cache.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MemoryPressureEvictionTest {
+
+    @Test
+    public void shrinkEvicts() {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        Cache<Integer, String> c = new UnsynchronizedCache<Integer, String>(conf);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, "" + i);
+        }
+        c.get(0); // 0 is now the most recently used element
+        MemoryPressureController controller = new MemoryPressureController();
+        controller.register(c);
+        controller.adjust(0.9);
+
+        MemoryStoreService<Integer, String> memory = c.services().memoryStore();
+        assertTrue(memory.getMaximumSize() < 100);
+        assertEquals(memory.getMaximumSize(), c.size());
+        assertEquals(c.size(), c.volume());
+        // the least recently used elements are evicted first
+        assertTrue(c.containsKey(0));
+        assertFalse(c.containsKey(1));
+        assertTrue(c.containsKey(99));
+    }
+
+}
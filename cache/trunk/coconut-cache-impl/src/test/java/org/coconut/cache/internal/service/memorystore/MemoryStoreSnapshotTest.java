@@ -0,0 +1,197 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.CacheException;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.internal.service.management.ManagementUtils;
+import org.coconut.cache.service.exceptionhandling.CacheExceptionContext;
+import org.coconut.cache.service.exceptionhandling.CacheExceptionHandler;
+import org.coconut.core.Clock;
+import org.coconut.core.Logger.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests saving and loading snapshots through the memory store service.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MemoryStoreSnapshotTest {
+
+    private Clock.DeterministicClock clock;
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        clock = new Clock.DeterministicClock();
+        clock.setTimestamp(1000);
+        file = File.createTempFile("coconut", ".snapshot");
+        file.delete();
+    }
+
+    @After
+    public void teardown() {
+        file.delete();
+    }
+
+    @Test
+    public void saveAndLoad() {
+        Cache<Integer, String> c = newCache(null);
+        for (int i = 0; i < 3000; i++) {
+            c.put(i, "" + i);
+        }
+        c.services().memoryStore().saveSnapshot(file);
+        assertTrue(file.exists());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        clock.setTimestamp(5000);
+        Cache<Integer, String> loaded = newCache(null);
+        assertEquals(3000, loaded.services().memoryStore().loadSnapshot(file));
+        assertEquals(3000, loaded.size());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals("" + i, loaded.peek(i));
+        }
+        assertEquals(1000, loaded.getEntry(1).getCreationTime());
+        assertEquals(1000, loaded.getEntry(1).getLastUpdateTime());
+    }
+
+    @Test
+    public void synchronizedCache() {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, "" + i);
+        }
+        c.services().memoryStore().saveSnapshot(file);
+        Cache<Integer, String> loaded = new SynchronizedCache<Integer, String>(conf);
+        assertEquals(100, loaded.services().memoryStore().loadSnapshot(file));
+        assertEquals("50", loaded.peek(50));
+    }
+
+    @Test
+    public void expiration() {
+        Cache<Integer, String> c = newCache(null);
+        c.services().expiration().put(1, "1", 1, TimeUnit.SECONDS);
+        c.services().expiration().put(2, "2", 10, TimeUnit.SECONDS);
+        c.put(3, "3");
+        c.services().memoryStore().saveSnapshot(file);
+
+        clock.setTimestamp(3000);
+        Cache<Integer, String> loaded = newCache(null);
+        assertEquals(2, loaded.services().memoryStore().loadSnapshot(file));
+        assertNull(loaded.peek(1));
+        assertEquals(11000, loaded.getEntry(2).getExpirationTime());
+        assertEquals(Long.MAX_VALUE, loaded.getEntry(3).getExpirationTime());
+    }
+
+    @Test
+    public void loadAtStartup() {
+        Cache<Integer, String> c = newCache(file);
+        c.put(1, "1");
+        c.put(2, "2");
+        c.services().memoryStore().saveSnapshot();
+
+        Cache<Integer, String> loaded = newCache(file);
+        assertEquals(2, loaded.size());
+        assertEquals("2", loaded.get(2));
+    }
+
+    @Test
+    public void mxBean() {
+        Cache<Integer, String> c = newCache(file);
+        c.put(1, "1");
+        ManagementUtils.wrapMXBean(c).saveSnapshot();
+        assertTrue(file.exists());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noSnapshotFile() {
+        newCache(null).services().memoryStore().saveSnapshot();
+    }
+
+    @Test(expected = CacheException.class)
+    public void corrupted() throws IOException {
+        Cache<Integer, String> c = newCache(null);
+        c.put(1, "1");
+        c.services().memoryStore().saveSnapshot(file);
+        corrupt(file);
+        newCache(null).services().memoryStore().loadSnapshot(file);
+    }
+
+    @Test
+    public void corruptedAtStartup() throws IOException {
+        Cache<Integer, String> c = newCache(file);
+        c.put(1, "1");
+        c.services().memoryStore().saveSnapshot();
+        corrupt(file);
+
+        final List<CacheExceptionContext<Integer, String>> errors = new ArrayList<CacheExceptionContext<Integer, String>>();
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        conf.eviction().setSnapshotFile(file);
+        conf.exceptionHandling().setExceptionHandler(
+                new CacheExceptionHandler<Integer, String>() {
+                    @Override
+                    public void apply(CacheExceptionContext<Integer, String> context) {
+                        errors.add(context);
+                    }
+                });
+        Cache<Integer, String> loaded = new UnsynchronizedCache<Integer, String>(conf);
+        assertEquals(0, loaded.size());
+        assertEquals(1, errors.size());
+        assertEquals(Level.Error, errors.get(0).getLevel());
+        assertTrue(errors.get(0).getCause() instanceof CacheException);
+        loaded.put(2, "2");
+        assertEquals("2", loaded.get(2));
+    }
+
+    @Test(expected = CacheException.class)
+    public void missing() {
+        newCache(null).services().memoryStore().loadSnapshot(file);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void saveNPE() {
+        newCache(null).services().memoryStore().saveSnapshot(null);
+    }
+
+    private static void corrupt(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private Cache<Integer, String> newCache(File snapshotFile) {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.setClock(clock);
+        conf.eviction().setSnapshotFile(snapshotFile);
+        return new UnsynchronizedCache<Integer, String>(conf);
+    }
+}
@@ -0,0 +1,131 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.service.event.CacheEntryEvent;
+import org.coconut.cache.service.statistics.CacheHitStat;
+import org.coconut.cache.service.statistics.CacheStatisticsService;
+import org.coconut.core.Clock.DeterministicClock;
+import org.coconut.operations.Predicates;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link NearCache}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class NearCacheTest {
+
+    private CacheConfiguration<Integer, String> conf;
+
+    @Before
+    public void setup() {
+        conf = CacheConfiguration.create();
+        conf.eviction().setNearCacheSize(16);
+    }
+
+    @Test
+    public void isEnabled() {
+        assertFalse(NearCache.isEnabled(conf));
+        conf.event().setEnabled(true);
+        assertTrue(NearCache.isEnabled(conf));
+        conf.event().setEnabledEventPredicate(
+                Predicates.isEquals(CacheEntryEvent.ItemCreated.class));
+        assertFalse(NearCache.isEnabled(conf));
+        conf.eviction().setNearCacheMaximumStaleness(1, TimeUnit.SECONDS);
+        assertTrue(NearCache.isEnabled(conf));
+        conf.eviction().setNearCacheSize(0);
+        assertFalse(NearCache.isEnabled(conf));
+    }
+
+    @Test
+    public void invalidatedByEvents() {
+        conf.event().setEnabled(true);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.putAll(Collections.singletonMap(1, "A"));
+        assertEquals("A", c.get(1));
+        assertEquals("A", c.get(1));
+        assertHitStat(c, 1, 1);
+        // only the lookup that missed the near cache reached the cache
+        assertCacheHitStat(c, 1, 0);
+
+        c.putAll(Collections.singletonMap(1, "B"));
+        assertEquals("B", c.get(1));
+        assertEquals("B", c.get(1));
+        assertHitStat(c, 2, 2);
+        assertCacheHitStat(c, 2, 0);
+
+        c.remove(1);
+        assertNull(c.get(1));
+        assertNull(c.get(1));
+        assertHitStat(c, 2, 4);
+        assertCacheHitStat(c, 2, 2);
+
+        c.getService(CacheStatisticsService.class).resetStatistics();
+        assertHitStat(c, 0, 0);
+        assertCacheHitStat(c, 0, 0);
+    }
+
+    @Test
+    public void invalidatedByStaleness() {
+        DeterministicClock clock = new DeterministicClock();
+        conf.setClock(clock);
+        conf.eviction().setNearCacheMaximumStaleness(10, TimeUnit.NANOSECONDS);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.putAll(Collections.singletonMap(1, "A"));
+        assertEquals("A", c.get(1));
+        c.putAll(Collections.singletonMap(1, "B"));
+        clock.incrementRelativeTime(10);
+        assertEquals("A", c.get(1));
+        clock.incrementRelativeTime();
+        assertEquals("B", c.get(1));
+    }
+
+    @Test
+    public void disabled() {
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        c.putAll(Collections.singletonMap(1, "A"));
+        assertEquals("A", c.get(1));
+        assertEquals("A", c.get(1));
+        assertNull(c.get(2));
+        assertHitStat(c, 0, 0);
+        assertCacheHitStat(c, 2, 1);
+    }
+
+    @Test
+    public void versions() {
+        NearCache<Integer, String> nc = new NearCache<Integer, String>(conf.eviction(),
+                conf.getClock(), null);
+        long version = nc.version(1);
+        nc.invalidate(1);
+        assertEquals(version + 1, nc.version(1));
+        nc.invalidateAll();
+        assertEquals(version + 2, nc.version(1));
+    }
+
+    static void assertHitStat(Cache<?, ?> c, long hits, long misses) {
+        CacheHitStat stat = c.getService(CacheStatisticsService.class).getNearCacheHitStat();
+        assertEquals(hits, stat.getNumberOfHits());
+        assertEquals(misses, stat.getNumberOfMisses());
+    }
+
+    static void assertCacheHitStat(Cache<?, ?> c, long hits, long misses) {
+        CacheHitStat stat = c.getService(CacheStatisticsService.class).getHitStat();
+        assertEquals(hits, stat.getNumberOfHits());
+        assertEquals(misses, stat.getNumberOfMisses());
+    }
+}
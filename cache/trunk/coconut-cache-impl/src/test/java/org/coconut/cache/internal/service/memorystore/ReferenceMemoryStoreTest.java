@@ -0,0 +1,142 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.memorystore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.coconut.cache.Cache;
+import org.coconut.cache.CacheConfiguration;
+import org.coconut.cache.defaults.SynchronizedCache;
+import org.coconut.cache.defaults.UnsynchronizedCache;
+import org.coconut.cache.service.memorystore.MemoryStoreConfiguration.ReferenceType;
+import org.junit.Test;
+
+/**
+ * Tests caches that hold their keys or values using soft or weak references.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class ReferenceMemoryStoreTest {
+
+    @Test
+    public void weakValues() throws InterruptedException {
+        Cache<Integer, String> c = newCache(ReferenceType.WEAK, false);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, new String("" + i));
+        }
+        String strong = new String("strong");
+        c.put(100, strong);
+        awaitCleared(c, 0);
+        for (int i = 0; i < 100; i++) {
+            assertNull(c.get(i));
+        }
+        assertEquals(strong, c.get(100));
+
+        // every write purges a small batch of the cleared entries
+        for (int i = 0; i < 100 && c.size() > 1; i++) {
+            c.put(100, strong);
+        }
+        assertEquals(1, c.size());
+        assertEquals(100, c.services().statistics().getNumberOfEvictions());
+    }
+
+    @Test
+    public void putIfAbsentCleared() throws InterruptedException {
+        Cache<Integer, String> c = newCache(ReferenceType.WEAK, false);
+        c.put(1, new String("1"));
+        awaitCleared(c, 1);
+        assertNull(c.putIfAbsent(1, "2"));
+        assertEquals("2", c.get(1));
+    }
+
+    @Test
+    public void weakKeys() throws InterruptedException {
+        CacheConfiguration<Object, String> conf = CacheConfiguration.create();
+        conf.eviction().setWeakKeys(true);
+        Cache<Object, String> c = new UnsynchronizedCache<Object, String>(conf);
+        Object key = new Object();
+        c.put(key, "1");
+        for (int i = 0; i < 10; i++) {
+            c.put(new Object(), "2");
+        }
+        for (int i = 0; i < 50 && c.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+            c.put(key, "1");
+        }
+        assertEquals(1, c.size());
+        assertEquals("1", c.get(key));
+        assertEquals(10, c.services().statistics().getNumberOfEvictions());
+    }
+
+    @Test
+    public void strongValues() {
+        Cache<Integer, String> c = newCache(ReferenceType.STRONG, false);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, new String("" + i));
+        }
+        System.gc();
+        assertEquals(100, c.size());
+        assertEquals("50", c.get(50));
+    }
+
+    @Test
+    public void softValues() {
+        Cache<Integer, String> c = newCache(ReferenceType.SOFT, false);
+        for (int i = 0; i < 100; i++) {
+            c.put(i, new String("" + i));
+        }
+        // soft references are only cleared when running low on memory
+        System.gc();
+        c.put(100, "100");
+        assertEquals(101, c.size());
+        assertEquals("50", c.get(50));
+    }
+
+    @Test
+    public void synchronizedCachePurgesInBackground() throws InterruptedException {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.eviction().setValueReferenceType(ReferenceType.WEAK);
+        Cache<Integer, String> c = new SynchronizedCache<Integer, String>(conf);
+        try {
+            for (int i = 0; i < 10; i++) {
+                c.put(i, new String("" + i));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (c.size() > 0 && System.nanoTime() < deadline) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            assertEquals(0, c.size());
+            assertEquals(10, c.services().statistics().getNumberOfEvictions());
+        } finally {
+            c.shutdown();
+        }
+    }
+
+    /**
+     * Waits until the garbage collector has cleared the values of the specified cache,
+     * except for the specified number of entries.
+     */
+    private static void awaitCleared(Cache<Integer, String> c, int index)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && c.get(index) != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(c.get(index));
+        assertTrue(c.size() > 0);
+    }
+
+    private static Cache<Integer, String> newCache(ReferenceType type, boolean weakKeys) {
+        CacheConfiguration<Integer, String> conf = CacheConfiguration.create();
+        conf.eviction().setValueReferenceType(type).setWeakKeys(weakKeys);
+        return new UnsynchronizedCache<Integer, String>(conf);
+    }
+}
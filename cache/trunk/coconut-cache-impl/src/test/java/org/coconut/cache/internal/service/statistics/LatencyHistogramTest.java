@@ -0,0 +1,112 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.internal.service.statistics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link LatencyHistogram}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class LatencyHistogramTest {
+
+    private LatencyHistogram h;
+
+    @Before
+    public void setup() {
+        h = new LatencyHistogram("name", "desc");
+    }
+
+    @Test
+    public void nameDescription() {
+        assertEquals("name", h.getName());
+        assertEquals("desc", h.getDescription());
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMean(), 0);
+        assertEquals(0, h.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void buckets() {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long high = LatencyHistogram.highestValue(i);
+            assertEquals(i, LatencyHistogram.bucketOf(previous + 1));
+            assertEquals(i, LatencyHistogram.bucketOf(high));
+            // never more than 1/16 off
+            assertTrue(high - (previous + 1) <= (previous + 1) / 16);
+            previous = high;
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500.5, h.getMean(), 0.0001);
+        long[] p = h.getValuesAtPercentiles(50, 90, 99, 99.9, 100);
+        assertEquals(5, p.length);
+        long[] expected = new long[] { 500, 900, 990, 999, 1000 };
+        for (int i = 0; i < p.length; i++) {
+            assertTrue(p[i] >= expected[i]);
+            assertTrue(p[i] <= expected[i] + expected[i] / 16);
+        }
+        assertEquals(1, h.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void outOfRange() {
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals((1L << 41) - 1, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void reset() {
+        h.record(100);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertArrayEquals(new long[] { 0, 0 }, h.getValuesAtPercentiles(50, 99));
+    }
+
+    @Test
+    public void concurrentRecord() throws InterruptedException {
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        h.record(j);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(threads * 10000, h.getCount());
+        assertEquals(4999.5, h.getMean(), 0.0001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileIAE() {
+        h.getValueAtPercentile(100.1);
+    }
+}
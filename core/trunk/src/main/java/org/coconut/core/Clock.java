@@ -4,8 +4,10 @@
 package org.coconut.core;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A Clock is used to create timestamps and measure time in a deterministic manner. For
@@ -104,6 +106,149 @@ public abstract class Clock {
         }
     }
 
+    /**
+     * A Clock that trades precision for speed. A single background thread reads
+     * {@link System#currentTimeMillis()} and {@link System#nanoTime()} at a fixed
+     * resolution, and {@link #timestamp()} and {@link #relativeTime()} simply return the
+     * values last read as a volatile field. This makes it useful for caches that read the
+     * time for every access but do not need sub-millisecond precision.
+     * <p>
+     * The values returned by this clock can be up to one resolution (plus any scheduling
+     * delay of the background thread) behind the real time. Timings shorter than the
+     * resolution will therefore often be measured as 0.
+     * <p>
+     * The background thread is started when the clock is created and runs until
+     * {@link #stop()} is called. It is a daemon thread unless a ThreadFactory that
+     * creates non-daemon threads is specified, so it will not prevent the JVM from
+     * exiting. A single instance can be shared among any number of caches.
+     *
+     * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+     * @version $Id$
+     */
+    public static class CachedClock extends Clock {
+
+        /** The number of nanoseconds between each update. */
+        private final long resolutionNanos;
+
+        /** The last relative time read by the ticker. */
+        private volatile long relativeTime;
+
+        /** Whether or not the ticker has been stopped. */
+        private volatile boolean stopped;
+
+        /** The thread updating the time. */
+        private final Thread ticker;
+
+        /** The last timestamp read by the ticker. */
+        private volatile long timestamp;
+
+        /**
+         * Creates a new CachedClock and starts a daemon thread that updates it.
+         *
+         * @param resolution
+         *            the time between each update of the clock
+         * @param unit
+         *            the time unit of the resolution argument
+         * @throws IllegalArgumentException
+         *             if the resolution is not positive
+         * @throws NullPointerException
+         *             if the specified unit is null
+         */
+        public CachedClock(long resolution, TimeUnit unit) {
+            this(resolution, unit, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CachedClock-ticker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        /**
+         * Creates a new CachedClock, the thread updating the clock is created by the
+         * specified ThreadFactory.
+         *
+         * @param resolution
+         *            the time between each update of the clock
+         * @param unit
+         *            the time unit of the resolution argument
+         * @param threadFactory
+         *            the ThreadFactory used for creating the thread updating the clock
+         * @throws IllegalArgumentException
+         *             if the resolution is not positive
+         * @throws NullPointerException
+         *             if the specified unit or thread factory is null
+         */
+        public CachedClock(long resolution, TimeUnit unit, ThreadFactory threadFactory) {
+            if (resolution <= 0) {
+                throw new IllegalArgumentException("resolution must be positive, was "
+                        + resolution);
+            } else if (unit == null) {
+                throw new NullPointerException("unit is null");
+            } else if (threadFactory == null) {
+                throw new NullPointerException("threadFactory is null");
+            }
+            resolutionNanos = unit.toNanos(resolution);
+            tick();
+            ticker = threadFactory.newThread(new Runnable() {
+                public void run() {
+                    while (!stopped) {
+                        LockSupport.parkNanos(resolutionNanos);
+                        tick();
+                    }
+                }
+            });
+            ticker.start();
+        }
+
+        /**
+         * Returns the time between each update of the clock.
+         *
+         * @param unit
+         *            the time unit to return the resolution in
+         * @return the time between each update of the clock
+         */
+        public long getResolution(TimeUnit unit) {
+            return unit.convert(resolutionNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns whether or not this clock has been stopped.
+         *
+         * @return <tt>true</tt> if this clock has been stopped, otherwise <tt>false</tt>
+         */
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long relativeTime() {
+            return relativeTime;
+        }
+
+        /**
+         * Stops the thread updating this clock. After this method has been called the
+         * clock will keep returning the last values read.
+         */
+        public void stop() {
+            stopped = true;
+            LockSupport.unpark(ticker);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        /** Reads the current time. */
+        void tick() {
+            relativeTime = System.nanoTime();
+            timestamp = System.currentTimeMillis();
+        }
+    }
+
     /**
      * DeterministicClock is useful for testing components that rely on time.
      *
@@ -0,0 +1,434 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An ExecutorService that executes commands submitted with the same key in the order
+ * they where submitted, one at a time, while commands with different keys are
+ * executed in parallel.
+ * <p>
+ * Every key is mapped to one of a fixed number of <tt>slots</tt>. Each slot has a
+ * lock-free queue of pending commands and is owned by one of the worker threads. When
+ * a command is added to a slot that is not already scheduled, the slot is handed to
+ * its owner. A worker that runs out of slots will steal whole slots from other
+ * workers, this way no commands for the same key are ever executed concurrently or
+ * out of order. A worker runs at most {@link #getBatchSize()} commands from a slot
+ * before it moves on to the next slot, so a busy key cannot starve other keys.
+ * <p>
+ * Commands submitted through {@link #execute(Runnable)} has no ordering constraints
+ * and are distributed among all slots. If a command throws an exception it is passed
+ * to the {@link Thread.UncaughtExceptionHandler} of the worker thread, and the worker
+ * continues with the next command.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class KeyAffinityExecutor extends AbstractExecutorService {
+
+    /** The default number of commands a worker runs from a slot before moving on. */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /** The number of slots per worker thread. */
+    private static final int SLOTS_PER_WORKER = 16;
+
+    /** The state of the executor. */
+    private static final int RUNNING = 0;
+
+    /** The state of the executor after shutdown has been called. */
+    private static final int SHUTDOWN = 1;
+
+    /** The state of the executor after shutdownNow has been called. */
+    private static final int STOP = 2;
+
+    /** The maximum number of commands to run from a slot before moving on. */
+    private final int batchSize;
+
+    /** Used for mapping a hash to a slot. */
+    private final int slotMask;
+
+    /** The slots, each key is mapped to one slot. */
+    private final Slot[] slots;
+
+    /** The worker threads. */
+    private final Worker[] workers;
+
+    /** The number of parked workers, used to avoid scanning for idle workers. */
+    private final AtomicInteger parkedWorkers = new AtomicInteger();
+
+    /** The number of commands submitted but not yet completed. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** Used for selecting slots for commands without a key. */
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    /** Counts down when each worker terminates. */
+    private final CountDownLatch termination;
+
+    /** The current state of this executor. */
+    private volatile int state = RUNNING;
+
+    /**
+     * Creates a new KeyAffinityExecutor with one worker per available processor.
+     *
+     * @param threadFactory
+     *            the factory used for creating worker threads
+     * @throws NullPointerException
+     *             if the specified thread factory is null
+     */
+    public KeyAffinityExecutor(ThreadFactory threadFactory) {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, threadFactory);
+    }
+
+    /**
+     * Creates a new KeyAffinityExecutor.
+     *
+     * @param workers
+     *            the number of worker threads
+     * @param batchSize
+     *            the maximum number of commands to run from the same slot before
+     *            moving on to another slot
+     * @param threadFactory
+     *            the factory used for creating worker threads
+     * @throws IllegalArgumentException
+     *             if the number of workers or the batch size is not positive
+     * @throws NullPointerException
+     *             if the specified thread factory is null
+     */
+    public KeyAffinityExecutor(int workers, int batchSize, ThreadFactory threadFactory) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive, was " + workers);
+        } else if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive, was "
+                    + batchSize);
+        } else if (threadFactory == null) {
+            throw new NullPointerException("threadFactory is null");
+        }
+        this.batchSize = batchSize;
+        int size = 1;
+        while (size < workers * SLOTS_PER_WORKER) {
+            size <<= 1;
+        }
+        slotMask = size - 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i % workers);
+        }
+        this.workers = new Worker[workers];
+        termination = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i);
+        }
+        for (int i = 0; i < workers; i++) {
+            Worker w = this.workers[i];
+            w.thread = threadFactory.newThread(w);
+            w.thread.start();
+        }
+    }
+
+    /**
+     * Returns the maximum number of commands a worker runs from a single slot before it
+     * moves on to another slot.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the number of commands that has been submitted but not yet completed.
+     *
+     * @return the number of commands that has been submitted but not yet completed
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the total number of slots that has been stolen by idle workers.
+     *
+     * @return the total number of slots that has been stolen by idle workers
+     */
+    public long getStealCount() {
+        long count = 0;
+        for (Worker w : workers) {
+            count += w.steals;
+        }
+        return count;
+    }
+
+    /**
+     * Executes the specified command after all previously submitted commands with the
+     * same key has finished.
+     *
+     * @param key
+     *            the key of the command
+     * @param command
+     *            the command to execute
+     * @throws NullPointerException
+     *             if the specified key or command is null
+     * @throws RejectedExecutionException
+     *             if the executor has been shutdown
+     */
+    public void execute(Object key, Runnable command) {
+        if (key == null) {
+            throw new NullPointerException("key is null");
+        } else if (command == null) {
+            throw new NullPointerException("command is null");
+        }
+        enqueue(slots[hash(key.hashCode()) & slotMask], command);
+    }
+
+    /**
+     * Executes the specified command with no ordering constraints with respect to
+     * other commands.
+     *
+     * @param command
+     *            the command to execute
+     * @throws NullPointerException
+     *             if the specified command is null
+     * @throws RejectedExecutionException
+     *             if the executor has been shutdown
+     */
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("command is null");
+        }
+        enqueue(slots[nextSlot.getAndIncrement() & slotMask], command);
+    }
+
+    /** {@inheritDoc} */
+    public void shutdown() {
+        if (state == RUNNING) {
+            state = SHUTDOWN;
+        }
+        wakeAll();
+    }
+
+    /** {@inheritDoc} */
+    public List<Runnable> shutdownNow() {
+        state = STOP;
+        List<Runnable> result = new ArrayList<Runnable>();
+        for (Slot s : slots) {
+            for (Runnable r = s.queue.poll(); r != null; r = s.queue.poll()) {
+                pending.decrementAndGet();
+                result.add(r);
+            }
+        }
+        for (Worker w : workers) {
+            w.thread.interrupt();
+        }
+        wakeAll();
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isShutdown() {
+        return state != RUNNING;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isTerminated() {
+        return termination.getCount() == 0;
+    }
+
+    /** {@inheritDoc} */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /** Adds the specified command to the specified slot. */
+    private void enqueue(Slot slot, Runnable command) {
+        // increment pending before checking the state, so workers do not terminate
+        // while we are adding the command
+        pending.incrementAndGet();
+        if (state != RUNNING) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("executor has been shutdown");
+        }
+        slot.queue.add(command);
+        if (slot.scheduled.compareAndSet(false, true)) {
+            schedule(slot, workers[slot.owner]);
+        }
+    }
+
+    /**
+     * Hands the specified slot to the specified worker, and wakes up an idle worker if
+     * the specified worker is busy so it can steal the slot.
+     */
+    private void schedule(Slot slot, Worker worker) {
+        worker.ready.add(slot);
+        if (worker.parked) {
+            LockSupport.unpark(worker.thread);
+        } else if (parkedWorkers.get() > 0) {
+            for (Worker w : workers) {
+                if (w.parked) {
+                    LockSupport.unpark(w.thread);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Returns whether or not any worker has slots that are ready to run. */
+    private boolean hasReadySlots() {
+        for (Worker w : workers) {
+            if (!w.ready.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void wakeAll() {
+        for (Worker w : workers) {
+            LockSupport.unpark(w.thread);
+        }
+    }
+
+    /** Runs up to batchSize commands from the specified slot. */
+    private void runSlot(Worker worker, Slot slot) {
+        final Queue<Runnable> queue = slot.queue;
+        for (int i = 0; i < batchSize; i++) {
+            Runnable r = queue.poll();
+            if (r == null) {
+                break;
+            }
+            try {
+                r.run();
+            } catch (Throwable t) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+        if (queue.isEmpty()) {
+            slot.scheduled.set(false);
+            // a command might have been added after we checked the queue
+            if (queue.isEmpty() || !slot.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        // more work, put the slot at the back of our own queue to be fair to others
+        schedule(slot, worker);
+    }
+
+    /**
+     * Hashes the specified hash code, uses the same hash as java.util.*
+     */
+    private static int hash(int h) {
+        h += ~(h << 9);
+        h ^= (h >>> 14);
+        h += (h << 4);
+        h ^= (h >>> 10);
+        return h;
+    }
+
+    /** A slot containing the commands of all keys that are mapped to it. */
+    static final class Slot {
+        /** The index of the worker that owns this slot. */
+        final int owner;
+
+        /** The pending commands of this slot. */
+        final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+
+        /** Whether or not this slot is scheduled or currently running. */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Slot(int owner) {
+            this.owner = owner;
+        }
+    }
+
+    /** A worker thread. */
+    final class Worker implements Runnable {
+        /** The index of the worker. */
+        private final int index;
+
+        /** The slots that are ready to run. */
+        final Queue<Slot> ready = new ConcurrentLinkedQueue<Slot>();
+
+        /** Whether or not the worker is parked or about to park. */
+        volatile boolean parked;
+
+        /** The number of slots stolen by this worker, only written by the worker. */
+        volatile long steals;
+
+        /** The thread running this worker. */
+        Thread thread;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        /** Returns the next slot to run, stealing one from another worker if needed. */
+        private Slot nextSlot() {
+            Slot s = ready.poll();
+            if (s == null) {
+                for (int i = 1; i < workers.length && s == null; i++) {
+                    s = workers[(index + i) % workers.length].ready.poll();
+                }
+                if (s != null) {
+                    steals++;
+                }
+            }
+            return s;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            try {
+                while (state != STOP) {
+                    Slot s = nextSlot();
+                    if (s != null) {
+                        runSlot(this, s);
+                    } else if (state == SHUTDOWN && pending.get() == 0) {
+                        wakeAll(); // let the other workers terminate
+                        return;
+                    } else {
+                        parked = true;
+                        parkedWorkers.incrementAndGet();
+                        try {
+                            // recheck after publishing that we are parked
+                            if (!hasReadySlots() && state == RUNNING) {
+                                LockSupport.park(this);
+                            } else if (state == SHUTDOWN) {
+                                LockSupport.parkNanos(this, 1000000);
+                            }
+                        } finally {
+                            parkedWorkers.decrementAndGet();
+                            parked = false;
+                        }
+                        Thread.interrupted(); // clear interrupts, we check state instead
+                    }
+                }
+            } finally {
+                termination.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe token bucket that can be used to limit the rate at which some
+ * resource is accessed. For example, to limit the number of times a backend system is
+ * called per second.
+ * <p>
+ * Permits are replenished at a fixed rate, up to a maximum of <tt>burst</tt> stored
+ * permits. The complete state of the bucket is kept in a single <tt>long</tt>: the
+ * point in time where the bucket will be full again. Since the number of stored
+ * permits can be derived from this time and the rate, acquiring permits is a single
+ * compare-and-set and never blocks other threads.
+ * <p>
+ * Permits can be acquired in the following ways:
+ * <ul>
+ * <li>{@link #tryAcquire(int)} acquires the permits only if they are available
+ * immediately.</li>
+ * <li>{@link #tryAcquireMaximum(int)} acquires as many of the requested permits as are
+ * available immediately.</li>
+ * <li>{@link #tryAcquire(int, long, TimeUnit)} waits up to the specified time for the
+ * permits to become available.</li>
+ * <li>{@link #acquire(int)} waits until the permits are available.</li>
+ * <li>{@link #reserve(int)} acquires the permits without waiting, and returns how long
+ * the caller should wait before using them. This can be used by asynchronous callers
+ * that schedule work instead of blocking.</li>
+ * </ul>
+ * The rate cannot be higher than one permit per nanosecond.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class RateLimiter {
+
+    /** The clock used for measuring time. */
+    private final Clock clock;
+
+    /** The maximum number of stored permits. */
+    private final int burst;
+
+    /** The relative time (in nanoseconds) where the bucket will be full again. */
+    private final AtomicLong fullAt;
+
+    /** The number of nanoseconds it takes to replenish one permit. */
+    private volatile long nanosPerPermit;
+
+    /**
+     * Creates a new RateLimiter.
+     *
+     * @param permits
+     *            the number of permits replenished per time unit
+     * @param unit
+     *            the time unit of the rate
+     * @param burst
+     *            the maximum number of permits that can be stored, and therefore
+     *            acquired in a single burst
+     * @throws IllegalArgumentException
+     *             if the rate or the burst is not positive
+     * @throws NullPointerException
+     *             if the specified unit is null
+     */
+    public RateLimiter(double permits, TimeUnit unit, int burst) {
+        this(permits, unit, burst, Clock.DEFAULT_CLOCK);
+    }
+
+    /**
+     * Creates a new RateLimiter that uses the specified clock for measuring time.
+     *
+     * @param permits
+     *            the number of permits replenished per time unit
+     * @param unit
+     *            the time unit of the rate
+     * @param burst
+     *            the maximum number of permits that can be stored, and therefore
+     *            acquired in a single burst
+     * @param clock
+     *            the clock used for measuring time
+     * @throws IllegalArgumentException
+     *             if the rate or the burst is not positive
+     * @throws NullPointerException
+     *             if the specified unit or clock is null
+     */
+    public RateLimiter(double permits, TimeUnit unit, int burst, Clock clock) {
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive, was " + burst);
+        } else if (clock == null) {
+            throw new NullPointerException("clock is null");
+        }
+        this.nanosPerPermit = toNanosPerPermit(permits, unit);
+        this.burst = burst;
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.relativeTime());
+    }
+
+    /**
+     * Acquires the specified number of permits, waiting if necessary until they are
+     * available.
+     *
+     * @param permits
+     *            the number of permits to acquire
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting. The permits are
+     *             still consumed
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long delay = reserve(permits);
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * Returns the maximum number of permits that can be stored.
+     *
+     * @return the maximum number of permits that can be stored
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Returns the rate at which permits are replenished.
+     *
+     * @param unit
+     *            the time unit to return the rate in
+     * @return the number of permits replenished per the specified time unit
+     */
+    public double getRate(TimeUnit unit) {
+        return unit.toNanos(1) / (double) nanosPerPermit;
+    }
+
+    /**
+     * Returns the number of permits that can be acquired immediately.
+     *
+     * @return the number of permits that can be acquired immediately
+     */
+    public int getAvailablePermits() {
+        final long now = clock.relativeTime();
+        return available(fullAt.get(), now, nanosPerPermit);
+    }
+
+    /**
+     * Acquires the specified number of permits without waiting, and returns the number
+     * of nanoseconds the caller must wait before the permits may be used. Reservations
+     * always succeed, if more permits are reserved than are available subsequent
+     * callers will have to wait longer.
+     *
+     * @param permits
+     *            the number of permits to reserve
+     * @return the number of nanoseconds to wait before the permits may be used, 0 if
+     *         they may be used immediately
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive
+     */
+    public long reserve(int permits) {
+        checkPermits(permits);
+        for (;;) {
+            final long now = clock.relativeTime();
+            final long interval = nanosPerPermit;
+            final long current = fullAt.get();
+            final long next = Math.max(current, now) + permits * interval;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - now - burst * interval);
+            }
+        }
+    }
+
+    /**
+     * Sets the rate at which permits are replenished. Already stored permits are not
+     * affected.
+     *
+     * @param permits
+     *            the number of permits replenished per time unit
+     * @param unit
+     *            the time unit of the rate
+     * @throws IllegalArgumentException
+     *             if the rate is not positive
+     * @throws NullPointerException
+     *             if the specified unit is null
+     */
+    public void setRate(double permits, TimeUnit unit) {
+        nanosPerPermit = toNanosPerPermit(permits, unit);
+    }
+
+    /**
+     * Acquires a single permit if it is available immediately.
+     *
+     * @return <tt>true</tt> if the permit was acquired, otherwise <tt>false</tt>
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquires the specified number of permits if they are all available immediately.
+     *
+     * @param permits
+     *            the number of permits to acquire
+     * @return <tt>true</tt> if the permits was acquired, otherwise <tt>false</tt>
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive
+     */
+    public boolean tryAcquire(int permits) {
+        checkPermits(permits);
+        for (;;) {
+            final long now = clock.relativeTime();
+            final long interval = nanosPerPermit;
+            final long current = fullAt.get();
+            final long next = Math.max(current, now) + permits * interval;
+            if (next - now > burst * interval) {
+                return false;
+            } else if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquires the specified number of permits if they become available within the
+     * specified waiting time. If the permits cannot be obtained within the waiting time
+     * this method returns immediately without consuming any permits.
+     *
+     * @param permits
+     *            the number of permits to acquire
+     * @param timeout
+     *            the maximum time to wait for the permits
+     * @param unit
+     *            the time unit of the timeout argument
+     * @return <tt>true</tt> if the permits was acquired, otherwise <tt>false</tt>
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting. The permits are
+     *             still consumed
+     * @throws IllegalArgumentException
+     *             if the number of permits is not positive
+     * @throws NullPointerException
+     *             if the specified unit is null
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        checkPermits(permits);
+        final long timeoutNanos = unit.toNanos(timeout);
+        for (;;) {
+            final long now = clock.relativeTime();
+            final long interval = nanosPerPermit;
+            final long current = fullAt.get();
+            final long next = Math.max(current, now) + permits * interval;
+            final long delay = Math.max(0, next - now - burst * interval);
+            if (delay > timeoutNanos) {
+                return false;
+            } else if (fullAt.compareAndSet(current, next)) {
+                if (delay > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquires as many of the specified number of permits as are available
+     * immediately.
+     *
+     * @param maximum
+     *            the maximum number of permits to acquire
+     * @return the number of permits acquired, between 0 and the specified maximum
+     * @throws IllegalArgumentException
+     *             if the specified maximum is not positive
+     */
+    public int tryAcquireMaximum(int maximum) {
+        checkPermits(maximum);
+        for (;;) {
+            final long now = clock.relativeTime();
+            final long interval = nanosPerPermit;
+            final long current = fullAt.get();
+            final int permits = Math.min(maximum, available(current, now, interval));
+            if (permits == 0) {
+                return 0;
+            } else if (fullAt.compareAndSet(current, Math.max(current, now) + permits
+                    * interval)) {
+                return permits;
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "RateLimiter[rate=" + getRate(TimeUnit.SECONDS) + "/s, burst=" + burst + "]";
+    }
+
+    /** Returns the number of available permits. */
+    private int available(long fullAt, long now, long interval) {
+        long debt = Math.max(fullAt, now) - now;
+        return (int) Math.max(0, (burst * interval - debt) / interval);
+    }
+
+    private static void checkPermits(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive, was " + permits);
+        }
+    }
+
+    private static long toNanosPerPermit(double permits, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (!(permits > 0)) {
+            throw new IllegalArgumentException("permits must be positive, was " + permits);
+        }
+        return Math.max(1, Math.round(unit.toNanos(1) / permits));
+    }
+}
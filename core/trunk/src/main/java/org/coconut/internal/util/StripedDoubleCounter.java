@@ -0,0 +1,165 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code double} counter that can be updated concurrently by many threads with very
+ * little contention. This is the {@code double} equivalent of {@link StripedLongCounter},
+ * see it for details. Each cell holds the bits of a {@code double} and is updated with
+ * a compare-and-set loop like {@link AtomicDouble}, but since threads normally update
+ * different cells the loop very rarely has to retry.
+ * <p>
+ * Since floating point addition is not associative, the value of the counter might
+ * differ slightly from the value obtained by adding the same values to a single
+ * {@code double} in order.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class StripedDoubleCounter extends Number {
+
+    /** The maximum number of cells. */
+    private static final int MAX_CELLS = 64;
+
+    /** The number of longs between each cell, 128 bytes. */
+    private static final int PADDING = StripedLongCounter.PADDING;
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = 7340513961434151592L;
+
+    /** The cells of the counter, with {@link #PADDING} longs between each cell. */
+    private final AtomicLongArray cells;
+
+    /** Used for mapping a thread id to a cell. */
+    private final int mask;
+
+    /** The sum of the cells at the time of the last reset. */
+    private volatile double base;
+
+    /**
+     * Creates a new StripedDoubleCounter with initial value <tt>0</tt> and one cell per
+     * available processor.
+     */
+    public StripedDoubleCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new StripedDoubleCounter with initial value <tt>0</tt>.
+     *
+     * @param concurrencyLevel
+     *            the estimated number of concurrently updating threads, the number of
+     *            cells is the nearest power of two that is greater than or equal to this
+     *            value
+     * @throws IllegalArgumentException
+     *             if the concurrency level is not positive
+     */
+    public StripedDoubleCounter(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive, was "
+                    + concurrencyLevel);
+        }
+        int size = 1;
+        while (size < concurrencyLevel && size < MAX_CELLS) {
+            size <<= 1;
+        }
+        // 0L is the bit pattern of 0.0d, so the cells need no initialization
+        cells = new AtomicLongArray((size + 1) * PADDING);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param delta
+     *            the value to add
+     */
+    public void add(double delta) {
+        int cell = (((int) Thread.currentThread().getId() & mask) + 1) * PADDING;
+        for (;;) {
+            long current = cells.get(cell);
+            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+            if (cells.compareAndSet(cell, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the current value of the counter.
+     *
+     * @return the current value
+     */
+    public double get() {
+        return sum() - base;
+    }
+
+    /**
+     * Returns the current value of the counter and resets it to <tt>0</tt>.
+     *
+     * @return the value of the counter before it was reset
+     */
+    public synchronized double getThenReset() {
+        double sum = sum();
+        double previous = sum - base;
+        base = sum;
+        return previous;
+    }
+
+    /**
+     * Resets the counter to <tt>0</tt>.
+     */
+    public void reset() {
+        getThenReset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double doubleValue() {
+        return get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public float floatValue() {
+        return (float) get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long longValue() {
+        return (long) get();
+    }
+
+    /**
+     * Returns the String representation of the current value.
+     *
+     * @return the String representation of the current value.
+     */
+    @Override
+    public String toString() {
+        return Double.toString(get());
+    }
+
+    /**
+     * Returns the sum of all cells.
+     *
+     * @return the sum of all cells
+     */
+    private double sum() {
+        double sum = 0;
+        for (int i = PADDING; i < cells.length(); i += PADDING) {
+            sum += Double.longBitsToDouble(cells.get(i));
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,189 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@code long} counter that can be updated concurrently by many threads with very
+ * little contention. Instead of a single atomic variable the counter is split into a
+ * number of cells, and each thread updates the cell selected by its thread id. The
+ * cells are placed 128 bytes apart, so threads updating different cells never share a
+ * cache line. The value of the counter is the sum of all cells.
+ * <p>
+ * This class is useful for statistics that are updated far more often than they are
+ * read. Updates never return the new value, since calculating it would require reading
+ * all cells. Consequently, {@link #get()} does not return an atomic snapshot if the
+ * counter is updated concurrently, but it is guaranteed to include all updates that
+ * completed before the call.
+ * <p>
+ * The counter is never actually reset, instead {@link #reset()} remembers the current
+ * sum of the cells which is then subtracted from any subsequent reads. This means that
+ * every update is reflected either in the value returned by {@link #getThenReset()} or
+ * in the value of the counter afterwards, but never in both and never in none.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class StripedLongCounter extends Number {
+
+    /** The number of longs between each cell, 128 bytes. */
+    static final int PADDING = 16;
+
+    /** The maximum number of cells. */
+    private static final int MAX_CELLS = 64;
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = -4622138212434283536L;
+
+    /** The cells of the counter, with {@link #PADDING} longs between each cell. */
+    private final AtomicLongArray cells;
+
+    /** Used for mapping a thread id to a cell. */
+    private final int mask;
+
+    /** The sum of the cells at the time of the last reset. */
+    private volatile long base;
+
+    /**
+     * Creates a new StripedLongCounter with initial value <tt>0</tt> and one cell per
+     * available processor.
+     */
+    public StripedLongCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new StripedLongCounter with initial value <tt>0</tt>.
+     *
+     * @param concurrencyLevel
+     *            the estimated number of concurrently updating threads, the number of
+     *            cells is the nearest power of two that is greater than or equal to this
+     *            value
+     * @throws IllegalArgumentException
+     *             if the concurrency level is not positive
+     */
+    public StripedLongCounter(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive, was "
+                    + concurrencyLevel);
+        }
+        int size = 1;
+        while (size < concurrencyLevel && size < MAX_CELLS) {
+            size <<= 1;
+        }
+        cells = new AtomicLongArray((size + 1) * PADDING);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param delta
+     *            the value to add
+     */
+    public void add(long delta) {
+        cells.addAndGet(cell(), delta);
+    }
+
+    /**
+     * Decrements the counter by one.
+     */
+    public void decrement() {
+        cells.decrementAndGet(cell());
+    }
+
+    /**
+     * Returns the current value of the counter.
+     *
+     * @return the current value
+     */
+    public long get() {
+        return sum() - base;
+    }
+
+    /**
+     * Returns the current value of the counter and resets it to <tt>0</tt>.
+     *
+     * @return the value of the counter before it was reset
+     */
+    public synchronized long getThenReset() {
+        long sum = sum();
+        long previous = sum - base;
+        base = sum;
+        return previous;
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() {
+        cells.incrementAndGet(cell());
+    }
+
+    /**
+     * Resets the counter to <tt>0</tt>.
+     */
+    public void reset() {
+        getThenReset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double doubleValue() {
+        return get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public float floatValue() {
+        return get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long longValue() {
+        return get();
+    }
+
+    /**
+     * Returns the String representation of the current value.
+     *
+     * @return the String representation of the current value.
+     */
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    /**
+     * Returns the index of the cell the current thread should update. The first cell
+     * starts at {@link #PADDING} so it does not share a cache line with the array
+     * header.
+     *
+     * @return the index of the cell the current thread should update
+     */
+    private int cell() {
+        return (((int) Thread.currentThread().getId() & mask) + 1) * PADDING;
+    }
+
+    /**
+     * Returns the sum of all cells.
+     *
+     * @return the sum of all cells
+     */
+    private long sum() {
+        long sum = 0;
+        for (int i = PADDING; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+}
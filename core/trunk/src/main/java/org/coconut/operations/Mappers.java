@@ -81,6 +81,24 @@ public final class Mappers {
         public V map(T t) {
             return second.map(first.map(t));
         }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (!(obj instanceof CompoundMapper)) {
+                return false;
+            }
+            CompoundMapper<?, ?, ?> other = (CompoundMapper<?, ?, ?>) obj;
+            return first.equals(other.first) && second.equals(other.second);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return first.hashCode() ^ second.hashCode();
+        }
     }
 
     static class KeyFromMapEntry<K, V> implements Mapper<Map.Entry<K, V>, K>, Serializable {
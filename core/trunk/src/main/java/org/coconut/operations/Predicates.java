@@ -781,8 +781,8 @@ public final class Predicates {
      * A Predicate that tests that <tt>all</tt> of the supplied Predicates accepts a
      * given element.
      */
-    final static class AllPredicate<E> implements Predicate<E>, Iterable<Predicate<? super E>>,
-            Serializable {
+    public final static class AllPredicate<E> implements Predicate<E>,
+            Iterable<Predicate<? super E>>, Serializable {
 
         /** Default <code>serialVersionUID</code>. */
         private static final long serialVersionUID = -2054989348063839373L;
@@ -874,7 +874,7 @@ public final class Predicates {
     /**
      * A Predicate that performs a logical exclusive AND on two supplied predicates.
      */
-    final static class AndPredicate<E> implements Predicate<E>, Serializable {
+    public final static class AndPredicate<E> implements Predicate<E>, Serializable {
 
         /** Default <code>serialVersionUID</code>. */
         private static final long serialVersionUID = 6981902451700512606L;
@@ -1069,7 +1069,8 @@ public final class Predicates {
     /**
      * A Greather Then Or Equal predicate as per Comparable/Comparator contract.
      */
-    final static class GreaterThenOrEqualPredicate<E> implements Predicate<E>, Serializable {
+    public final static class GreaterThenOrEqualPredicate<E> implements Predicate<E>,
+            Serializable {
 
         /** <code>serialVersionUID</code>. */
         private static final long serialVersionUID = -6815218477296552273L;
@@ -1150,7 +1151,7 @@ public final class Predicates {
     /**
      * A greather-then predicate as per Comparable/Comparator contract.
      */
-    final static class GreaterThenPredicate<E> implements Predicate<E>, Serializable {
+    public final static class GreaterThenPredicate<E> implements Predicate<E>, Serializable {
 
         /** <code>serialVersionUID</code>. */
         private static final long serialVersionUID = -6815218477296552273L;
@@ -1232,7 +1233,7 @@ public final class Predicates {
      * A Predicate that evaluates to <code>true</code> iff the element being evaluated
      * is {@link Object#equals equal} to the element being specified.
      */
-    final static class IsEqualsPredicate<E> implements Predicate<E>, Serializable {
+    public final static class IsEqualsPredicate<E> implements Predicate<E>, Serializable {
 
         /** Default <code>serialVersionUID</code>. */
         private static final long serialVersionUID = -802615306772905787L;
@@ -1411,7 +1412,7 @@ public final class Predicates {
     /**
      * A Less Then predicate as per Comparable/Comparator contract.
      */
-    final static class LessThenOrEqualPredicate<E> implements Predicate<E>, Serializable {
+    public final static class LessThenOrEqualPredicate<E> implements Predicate<E>, Serializable {
 
         /** <code>serialVersionUID</code>. */
         private static final long serialVersionUID = 1330339174193813467L;
@@ -1492,7 +1493,7 @@ public final class Predicates {
     /**
      * A Less Then predicate as per Comparable/Comparator contract.
      */
-    final static class LessThenPredicate<E> implements Predicate<E>, Serializable {
+    public final static class LessThenPredicate<E> implements Predicate<E>, Serializable {
 
         /** <code>serialVersionUID</code>. */
         private static final long serialVersionUID = 1330339174193813467L;
@@ -1575,7 +1576,7 @@ public final class Predicates {
      * A Predicate that first applies the specified mapper to the argument before
      * evaluating the specified predicate.
      */
-    final static class MapAndEvaluatePredicate<F, T> implements Predicate<F>, Serializable {
+    public final static class MapAndEvaluatePredicate<F, T> implements Predicate<F>, Serializable {
 
         /** serialVersionUID. */
         private static final long serialVersionUID = -6292758840373110577L;
@@ -5,10 +5,12 @@ package org.coconut.core;
 
 import static org.coconut.test.TestUtil.assertIsSerializable;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.TimeUnit;
 
+import org.coconut.core.Clock.CachedClock;
 import org.coconut.core.Clock.DeterministicClock;
 import org.junit.Test;
 /**
@@ -61,4 +63,37 @@ public class ClockTest {
 
         assertIsSerializable(c);
     }
+
+    @Test
+    public void testCachedClock() throws InterruptedException {
+        long before = System.nanoTime();
+        long beforeTs = System.currentTimeMillis();
+        CachedClock c = new CachedClock(1, TimeUnit.MILLISECONDS);
+        try {
+            assertEquals(1, c.getResolution(TimeUnit.MILLISECONDS));
+            assertFalse(c.isStopped());
+            assertTrue(before <= c.relativeTime());
+            assertTrue(beforeTs <= c.timestamp());
+            long first = c.relativeTime();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (c.relativeTime() == first && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(c.relativeTime() > first);
+            assertTrue(c.relativeTime() <= System.nanoTime());
+        } finally {
+            c.stop();
+        }
+        assertTrue(c.isStopped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCachedClockIAE() {
+        new CachedClock(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testCachedClockNPE() {
+        new CachedClock(1, null);
+    }
 }
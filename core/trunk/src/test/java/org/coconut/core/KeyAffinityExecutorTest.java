@@ -0,0 +1,160 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link KeyAffinityExecutor}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class KeyAffinityExecutorTest {
+
+    private KeyAffinityExecutor e;
+
+    @Before
+    public void setup() {
+        e = new KeyAffinityExecutor(4, 8, Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        e.shutdownNow();
+        assertTrue(e.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sameKeyInOrder() throws InterruptedException {
+        final int keys = 10;
+        final int commands = 2000;
+        final int[] last = new int[keys];
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger[] running = new AtomicInteger[keys];
+        final CountDownLatch done = new CountDownLatch(keys * commands);
+        for (int i = 0; i < keys; i++) {
+            running[i] = new AtomicInteger();
+        }
+        for (int j = 1; j <= commands; j++) {
+            for (int i = 0; i < keys; i++) {
+                final int key = i;
+                final int sequence = j;
+                e.execute(key, new Runnable() {
+                    public void run() {
+                        if (running[key].incrementAndGet() != 1 || last[key] != sequence - 1) {
+                            failures.incrementAndGet();
+                        }
+                        last[key] = sequence;
+                        running[key].decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void differentKeysInParallel() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            // keys 0 and 1 map to different slots
+            e.execute(i, new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignore) {/* ignore */}
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void exceptionDoesNotStopWorker() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        e.execute("key", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("expected by test");
+            }
+        });
+        e.execute("key", new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdown() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            e.execute(i % 3, new Runnable() {
+                public void run() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        e.shutdown();
+        assertTrue(e.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(e.isTerminated());
+        assertEquals(100, count.get());
+        assertEquals(0, e.getPendingCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectAfterShutdown() {
+        e.shutdown();
+        e.execute("key", new Runnable() {
+            public void run() {}
+        });
+    }
+
+    @Test
+    public void shutdownNow() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        e.execute("key", new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {/* ignore */}
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        e.execute("key", new Runnable() {
+            public void run() {}
+        });
+        List<Runnable> l = e.shutdownNow();
+        assertEquals(1, l.size());
+        release.countDown();
+        assertTrue(e.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void executeNPE() {
+        e.execute(null, new Runnable() {
+            public void run() {}
+        });
+    }
+}
@@ -0,0 +1,157 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.coconut.core.Clock.DeterministicClock;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link RateLimiter}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class RateLimiterTest {
+
+    private DeterministicClock clock;
+
+    /** 10 permits per second, that is one permit every 100 ms. */
+    private RateLimiter r;
+
+    @Before
+    public void setup() {
+        clock = new DeterministicClock();
+        r = new RateLimiter(10, TimeUnit.SECONDS, 5, clock);
+    }
+
+    @Test
+    public void burst() {
+        assertEquals(5, r.getBurst());
+        assertEquals(5, r.getAvailablePermits());
+        assertTrue(r.tryAcquire(3));
+        assertTrue(r.tryAcquire(2));
+        assertFalse(r.tryAcquire());
+        assertEquals(0, r.getAvailablePermits());
+        assertFalse(r.tryAcquire(6));
+    }
+
+    @Test
+    public void replenish() {
+        assertTrue(r.tryAcquire(5));
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(99));
+        assertFalse(r.tryAcquire());
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(r.tryAcquire());
+        assertFalse(r.tryAcquire());
+
+        // never more than burst permits stored
+        clock.setRelativeTime(TimeUnit.SECONDS.toNanos(100));
+        assertEquals(5, r.getAvailablePermits());
+    }
+
+    @Test
+    public void tryAcquireMaximum() {
+        assertEquals(2, r.tryAcquireMaximum(2));
+        assertEquals(3, r.tryAcquireMaximum(10));
+        assertEquals(0, r.tryAcquireMaximum(10));
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(2, r.tryAcquireMaximum(10));
+    }
+
+    @Test
+    public void reserve() {
+        assertEquals(0, r.reserve(5));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), r.reserve(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), r.reserve(2));
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(300));
+        assertFalse(r.tryAcquire());
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(r.tryAcquire());
+    }
+
+    @Test
+    public void tryAcquireTimeout() throws InterruptedException {
+        assertTrue(r.tryAcquire(5, 0, TimeUnit.SECONDS));
+        assertFalse(r.tryAcquire(1, 99, TimeUnit.MILLISECONDS));
+        // nothing was consumed by the failed attempt
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(r.tryAcquire(1, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void setRate() {
+        assertEquals(10, r.getRate(TimeUnit.SECONDS), 0.0001);
+        assertEquals(600, r.getRate(TimeUnit.MINUTES), 0.0001);
+        r.setRate(1, TimeUnit.MILLISECONDS);
+        assertEquals(1000, r.getRate(TimeUnit.SECONDS), 0.0001);
+        assertTrue(r.tryAcquire(5));
+        clock.setRelativeTime(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(r.tryAcquire());
+    }
+
+    @Test
+    public void acquireBlocks() throws InterruptedException {
+        RateLimiter rl = new RateLimiter(100, TimeUnit.SECONDS, 1);
+        rl.acquire(1);
+        long start = System.nanoTime();
+        rl.acquire(2);
+        rl.acquire(1);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void concurrentTryAcquire() throws InterruptedException {
+        final RateLimiter rl = new RateLimiter(1, TimeUnit.HOURS, 1000, clock);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            new Thread() {
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        if (rl.tryAcquire()) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1000, acquired.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void permitsIAE() {
+        r.tryAcquire(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateIAE() {
+        r.setRate(0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void burstIAE() {
+        new RateLimiter(1, TimeUnit.SECONDS, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void unitNPE() {
+        new RateLimiter(1, null, 1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void clockNPE() {
+        new RateLimiter(1, TimeUnit.SECONDS, 1, null);
+    }
+}
@@ -0,0 +1,68 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.internal.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StripedDoubleCounter}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class StripedDoubleCounterTest {
+
+    @Test
+    public void updates() {
+        StripedDoubleCounter c = new StripedDoubleCounter(4);
+        assertEquals(0, c.get(), 0);
+        c.add(1.5);
+        c.add(2.25);
+        assertEquals(3.75, c.get(), 0);
+        assertEquals(3.75, c.doubleValue(), 0);
+        assertEquals(3, c.longValue());
+        assertEquals("3.75", c.toString());
+    }
+
+    @Test
+    public void reset() {
+        StripedDoubleCounter c = new StripedDoubleCounter();
+        c.add(5);
+        assertEquals(5, c.getThenReset(), 0);
+        assertEquals(0, c.get(), 0);
+        c.add(3);
+        c.reset();
+        assertEquals(0, c.get(), 0);
+        c.add(-1);
+        assertEquals(-1, c.get(), 0);
+    }
+
+    @Test
+    public void concurrentUpdates() throws InterruptedException {
+        final StripedDoubleCounter c = new StripedDoubleCounter(8);
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        c.add(0.5);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(threads * 5000, c.get(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyLevelIAE() {
+        new StripedDoubleCounter(-1);
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.internal.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StripedLongCounter}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class StripedLongCounterTest {
+
+    @Test
+    public void updates() {
+        StripedLongCounter c = new StripedLongCounter(4);
+        assertEquals(0, c.get());
+        c.increment();
+        c.increment();
+        c.decrement();
+        c.add(10);
+        assertEquals(11, c.get());
+        assertEquals(11, c.longValue());
+        assertEquals(11, c.intValue());
+        assertEquals(11.0, c.doubleValue(), 0);
+        assertEquals("11", c.toString());
+    }
+
+    @Test
+    public void reset() {
+        StripedLongCounter c = new StripedLongCounter();
+        c.add(5);
+        assertEquals(5, c.getThenReset());
+        assertEquals(0, c.get());
+        c.add(3);
+        c.reset();
+        assertEquals(0, c.get());
+        c.increment();
+        assertEquals(1, c.get());
+    }
+
+    @Test
+    public void concurrentUpdatesAndResets() throws InterruptedException {
+        final StripedLongCounter c = new StripedLongCounter(8);
+        final AtomicLong snapshots = new AtomicLong();
+        final int threads = 4;
+        final int count = 100000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        c.increment();
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        while (done.getCount() > 0) {
+            snapshots.addAndGet(c.getThenReset());
+            Thread.yield();
+        }
+        // no update is lost or counted twice
+        assertEquals(threads * count, snapshots.get() + c.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyLevelIAE() {
+        new StripedLongCounter(0);
+    }
+}
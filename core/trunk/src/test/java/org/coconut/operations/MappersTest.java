@@ -11,6 +11,7 @@ import static org.coconut.test.CollectionTestUtil.M1_KEY_NULL;
 import static org.coconut.test.CollectionTestUtil.M1_NULL_VALUE;
 import static org.coconut.test.TestUtil.assertIsSerializable;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 
 import java.io.Serializable;
@@ -34,6 +35,20 @@ public class MappersTest {
         assertIsSerializable(m);
     }
 
+    /**
+     * Tests that compound mappers are equal if they combine equal mappers.
+     */
+    @Test
+    public void compoundMapperEquals() {
+        Mapper1 m1 = new Mapper1();
+        Mapper2 m2 = new Mapper2();
+        Mapper<Integer, String> m = Mappers.compoundMapper(m1, m2);
+        assertEquals(m, Mappers.compoundMapper(m1, m2));
+        assertEquals(m.hashCode(), Mappers.compoundMapper(m1, m2).hashCode());
+        assertFalse(m.equals(Mappers.compoundMapper(m1, new Mapper2())));
+        assertFalse(m.equals(m1));
+    }
+
     /**
      * Tests that {@link Mappers#compoundMapper(Mapper, Mapper)} throws a
      * {@link NullPointerException} when invoked with a left side <code>null</code>
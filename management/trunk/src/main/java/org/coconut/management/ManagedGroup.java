@@ -52,6 +52,22 @@ public interface ManagedGroup {
      */
     ManagedGroup addChild(String name, String description);
 
+    /**
+     * Adds the current value of every readable numeric or boolean attribute of this group
+     * to the specified buffer. Boolean attributes are added as <tt>1</tt> for
+     * <tt>true</tt> and <tt>0</tt> for <tt>false</tt>. The attributes of child groups
+     * are not added.
+     * 
+     * @param buffer
+     *            the buffer to add the values to
+     * @throws NullPointerException
+     *             if the specified buffer is null
+     * @throws JMException
+     *             if the value of an attribute could not be read
+     * @see Managements#exportMetrics(MetricsBuffer)
+     */
+    void exportMetrics(MetricsBuffer buffer) throws JMException;
+
     /**
      * Returns all this groups child groups.
      * 
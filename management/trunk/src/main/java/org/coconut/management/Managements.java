@@ -38,6 +38,30 @@ public final class Managements {
         return new UnregisterAll();
     }
 
+    /**
+     * Returns a ManagedVisitor that will add the value of every numeric attribute of a
+     * ManagedGroup and all its children to the specified buffer. The buffer is cleared
+     * before the traversal starts, and is returned from the
+     * {@link ManagedVisitor#traverse(Object)} method. The attributes are read directly
+     * from the managed objects, so the groups do not need to be registered with a
+     * MBeanServer.
+     * <p>
+     * The buffer can be reused for subsequent traversals, which avoids allocating any
+     * memory for the values when a tree is read at regular intervals.
+     *
+     * @param buffer
+     *            the buffer to add the values to
+     * @return a ManagedVisitor that will export all the numeric attributes of a tree of
+     *         ManagedGroups
+     * @throws NullPointerException
+     *             if the specified buffer is <code>null</code>
+     * @see ManagedGroup#exportMetrics(MetricsBuffer)
+     * @see MetricsBuffer#writeText(Appendable)
+     */
+    public static ManagedVisitor<MetricsBuffer> exportMetrics(MetricsBuffer buffer) {
+        return new MetricsExporter(buffer);
+    }
+
     public static ManagedVisitor hierarchicalRegistrant(MBeanServer server, String domain,
             String... levels) {
         return new HierarchicalRegistrant(server, domain, levels);
@@ -75,6 +99,38 @@ public final class Managements {
 
     }
 
+    static class MetricsExporter implements ManagedVisitor<MetricsBuffer> {
+        /** The buffer to add values to. */
+        private final MetricsBuffer buffer;
+
+        MetricsExporter(MetricsBuffer buffer) {
+            if (buffer == null) {
+                throw new NullPointerException("buffer is null");
+            }
+            this.buffer = buffer;
+        }
+
+        /** {@inheritDoc} */
+        public void visitManagedGroup(ManagedGroup mg) throws JMException {
+            mg.exportMetrics(buffer);
+            for (ManagedGroup child : mg.getChildren()) {
+                visitManagedGroup(child);
+            }
+        }
+
+        // /CLOVER:OFF
+        /** {@inheritDoc} */
+        public void visitManagedObject(Object o) throws JMException {}
+
+        // /CLOVER:ON
+        /** {@inheritDoc} */
+        public MetricsBuffer traverse(Object node) throws JMException {
+            buffer.clear();
+            visitManagedGroup((ManagedGroup) node);
+            return buffer;
+        }
+    }
+
     static class HierarchicalRegistrant implements ManagedVisitor {
         /** The MBeanServer to register with. */
         private final MBeanServer server;
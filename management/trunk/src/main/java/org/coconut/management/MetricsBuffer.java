@@ -0,0 +1,374 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.management;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A reusable buffer of numeric attribute values read from a tree of {@link ManagedGroup}s.
+ * Each entry in the buffer consists of the group the value was read from, the name of
+ * the attribute and its value. The buffer is normally filled by the visitor returned
+ * from {@link Managements#exportMetrics(MetricsBuffer)}, which reads all numeric
+ * attributes of a tree in a single pass without going through an MBeanServer.
+ * <p>
+ * The entries are stored in flat arrays that are only grown, never shrunk, so a buffer
+ * that is cleared and refilled at regular intervals, for example by a monitoring
+ * system, does not allocate any memory once it has grown to the size of the tree.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MetricsBuffer {
+
+    /** The separator used between the names of groups in a group path. */
+    private static final char PATH_SEPARATOR = '/';
+
+    /** The group of each entry. */
+    private ManagedGroup[] groups;
+
+    /** The attribute name of each entry. */
+    private String[] names;
+
+    /** The value of each entry. */
+    private double[] values;
+
+    /** The order the entries are written in, reused between invocations. */
+    private int[] order;
+
+    /** A temporary array used while sorting the entries. */
+    private int[] tmp;
+
+    /** The number of entries in this buffer. */
+    private int size;
+
+    /**
+     * Creates a new MetricsBuffer with an initial capacity of 64 entries.
+     */
+    public MetricsBuffer() {
+        this(64);
+    }
+
+    /**
+     * Creates a new MetricsBuffer with the specified initial capacity.
+     *
+     * @param initialCapacity
+     *            the initial number of entries that can be held without growing the
+     *            buffer
+     * @throws IllegalArgumentException
+     *             if the specified initial capacity is negative
+     */
+    public MetricsBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be 0 or greater, was "
+                    + initialCapacity);
+        }
+        groups = new ManagedGroup[initialCapacity];
+        names = new String[initialCapacity];
+        values = new double[initialCapacity];
+    }
+
+    /**
+     * Adds an entry to this buffer.
+     *
+     * @param group
+     *            the group the value was read from
+     * @param name
+     *            the name of the attribute
+     * @param value
+     *            the value of the attribute
+     * @throws NullPointerException
+     *             if the specified group or name is <code>null</code>
+     */
+    public void add(ManagedGroup group, String name, double value) {
+        if (group == null) {
+            throw new NullPointerException("group is null");
+        } else if (name == null) {
+            throw new NullPointerException("name is null");
+        }
+        if (size == names.length) {
+            int capacity = Math.max(16, size * 2);
+            ManagedGroup[] g = new ManagedGroup[capacity];
+            String[] n = new String[capacity];
+            double[] v = new double[capacity];
+            System.arraycopy(groups, 0, g, 0, size);
+            System.arraycopy(names, 0, n, 0, size);
+            System.arraycopy(values, 0, v, 0, size);
+            groups = g;
+            names = n;
+            values = v;
+        }
+        groups[size] = group;
+        names[size] = name;
+        values[size++] = value;
+    }
+
+    /**
+     * Removes all entries from this buffer. The capacity of the buffer is retained.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            groups[i] = null;
+            names[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns the group of the entry at the specified index.
+     *
+     * @param index
+     *            the index of the entry
+     * @return the group of the entry at the specified index
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or not less than {@link #size()}
+     */
+    public ManagedGroup getGroup(int index) {
+        checkIndex(index);
+        return groups[index];
+    }
+
+    /**
+     * Returns the attribute name of the entry at the specified index.
+     *
+     * @param index
+     *            the index of the entry
+     * @return the attribute name of the entry at the specified index
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or not less than {@link #size()}
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    /**
+     * Returns the value of the entry at the specified index.
+     *
+     * @param index
+     *            the index of the entry
+     * @return the value of the entry at the specified index
+     * @throws IndexOutOfBoundsException
+     *             if the index is negative or not less than {@link #size()}
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Returns the number of entries in this buffer.
+     *
+     * @return the number of entries in this buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the entries of this buffer in the Prometheus text exposition format. Every
+     * attribute name is written as a metric of type gauge, with one sample for each group
+     * that has the attribute. The group is identified by a <tt>group</tt> label whose
+     * value is the names of the group and its ancestors, separated by <tt>/</tt>. For
+     * example:
+     *
+     * <pre>
+     * # TYPE NumberOfHits gauge
+     * NumberOfHits{group=&quot;caches/a&quot;} 1024.0
+     * NumberOfHits{group=&quot;caches/b&quot;} 12.0
+     * </pre>
+     *
+     * Characters in attribute names that are not valid in metric names are replaced with
+     * <tt>_</tt>.
+     *
+     * @param out
+     *            the appendable to write to
+     * @throws IOException
+     *             if the specified appendable threw an IOException
+     * @throws NullPointerException
+     *             if the specified appendable is <code>null</code>
+     */
+    public void writeText(Appendable out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        sort();
+        Map<ManagedGroup, String> paths = new IdentityHashMap<ManagedGroup, String>();
+        String previous = null;
+        for (int i = 0; i < size; i++) {
+            int index = order[i];
+            String name = names[index];
+            if (!name.equals(previous)) {
+                out.append("# TYPE ");
+                appendName(out, name);
+                out.append(" gauge\n");
+                previous = name;
+            }
+            String path = paths.get(groups[index]);
+            if (path == null) {
+                path = pathOf(groups[index]);
+                paths.put(groups[index], path);
+            }
+            appendName(out, name);
+            out.append("{group=\"");
+            appendLabelValue(out, path);
+            out.append("\"} ");
+            appendValue(out, values[index]);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Returns the entries of this buffer in the Prometheus text exposition format.
+     *
+     * @return the entries of this buffer in the Prometheus text exposition format
+     * @see #writeText(Appendable)
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder(size * 48);
+        try {
+            writeText(sb);
+        } catch (IOException e) {
+            // /CLOVER:OFF
+            throw new IllegalStateException(e);// a StringBuilder never throws IOException
+            // /CLOVER:ON
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks that the specified index is a valid index of an entry.
+     *
+     * @param index
+     *            the index to check
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index = " + index + ", size = " + size);
+        }
+    }
+
+    /**
+     * Sorts the entries by attribute name, keeping entries with the same name in the
+     * order they were added.
+     */
+    private void sort() {
+        if (order == null || order.length < size) {
+            order = new int[names.length];
+            tmp = new int[names.length];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // a bottom-up merge sort, which is stable and does not allocate
+        int[] src = order;
+        int[] dst = tmp;
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size; lo += 2 * width) {
+                int mid = Math.min(lo + width, size);
+                int hi = Math.min(lo + 2 * width, size);
+                int l = lo;
+                int r = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (l < mid && (r >= hi || names[src[l]].compareTo(names[src[r]]) <= 0)) {
+                        dst[k] = src[l++];
+                    } else {
+                        dst[k] = src[r++];
+                    }
+                }
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        order = src;
+        tmp = dst;
+    }
+
+    /**
+     * Returns the path of the specified group.
+     *
+     * @param group
+     *            the group to return the path of
+     * @return the path of the specified group
+     */
+    static String pathOf(ManagedGroup group) {
+        ManagedGroup parent = group.getParent();
+        if (parent == null) {
+            return group.getName();
+        }
+        return pathOf(parent) + PATH_SEPARATOR + group.getName();
+    }
+
+    /**
+     * Appends the specified attribute name as a valid metric name.
+     *
+     * @param out
+     *            the appendable to write to
+     * @param name
+     *            the name of the attribute
+     * @throws IOException
+     *             if the specified appendable threw an IOException
+     */
+    static void appendName(Appendable out, String name) throws IOException {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == ':'
+                    || c >= '0' && c <= '9' && i > 0) {
+                out.append(c);
+            } else {
+                out.append('_');
+            }
+        }
+    }
+
+    /**
+     * Appends the specified label value, escaping backslashes, double quotes and line
+     * feeds.
+     *
+     * @param out
+     *            the appendable to write to
+     * @param value
+     *            the value of the label
+     * @throws IOException
+     *             if the specified appendable threw an IOException
+     */
+    static void appendLabelValue(Appendable out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Appends the specified sample value.
+     *
+     * @param out
+     *            the appendable to write to
+     * @param value
+     *            the value to write
+     * @throws IOException
+     *             if the specified appendable threw an IOException
+     */
+    static void appendValue(Appendable out, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (value == Double.POSITIVE_INFINITY) {
+            out.append("+Inf");
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            out.append("-Inf");
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+}
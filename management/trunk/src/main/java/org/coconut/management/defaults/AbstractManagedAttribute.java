@@ -76,6 +76,15 @@ abstract class AbstractManagedAttribute {
      */
     abstract Object getValue() throws ReflectionException;
 
+    /**
+     * Returns whether or not this attribute is readable and has a numeric or boolean
+     * value.
+     * 
+     * @return whether or not this attribute is readable and has a numeric or boolean
+     *         value
+     */
+    abstract boolean isNumeric();
+
     /**
      * Sets the value of the attribute to specified object.
      * 
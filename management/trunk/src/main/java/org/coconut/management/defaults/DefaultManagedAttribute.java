@@ -4,8 +4,9 @@
 package org.coconut.management.defaults;
 
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,6 +31,15 @@ class DefaultManagedAttribute extends AbstractManagedAttribute {
     /** The setter for this attribute or <code>null</code> if it is read-only. */
     private final Method setter;
 
+    /** Invokes the getter, or <code>null</code> if the attribute is write-only. */
+    private final InvocationHandler getterAccessor;
+
+    /** Invokes the setter, or <code>null</code> if the attribute is read-only. */
+    private final InvocationHandler setterAccessor;
+
+    /** Whether or not the attribute is readable and has a numeric or boolean value. */
+    private final boolean isNumeric;
+
     /**
      * Creates a new DefaultManagedAttribute.
      * 
@@ -60,6 +70,9 @@ class DefaultManagedAttribute extends AbstractManagedAttribute {
         this.obj = obj;
         this.getter = reader;
         this.setter = writer;
+        this.getterAccessor = reader == null ? null : MethodAccessors.accessorFor(reader);
+        this.setterAccessor = writer == null ? null : MethodAccessors.accessorFor(writer);
+        this.isNumeric = reader != null && isNumeric(reader.getReturnType());
     }
 
     /** {@inheritDoc} */
@@ -73,44 +86,64 @@ class DefaultManagedAttribute extends AbstractManagedAttribute {
             throw new IllegalStateException("Attribute is write-only");
         }
         try {
-            return getter.invoke(obj, (Object[]) null);
-        } catch (InvocationTargetException e) {
-            Throwable t = e.getTargetException();
-            if (t instanceof RuntimeException) {
-                throw (RuntimeException) t;
-            } else if (t instanceof Error) {
-                throw (Error) t;
-            } else {
-                throw new ReflectionException((Exception) t,
-                        "Exception thrown in the getter for the attribute " + getName());
-            }
+            return getterAccessor.invoke(obj, getter, null);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
         } catch (IllegalAccessException e) {
             throw new ReflectionException(e, "Exception thrown trying to"
                     + " invoke the getter for the attribute " + getName());
+        } catch (Exception e) {
+            throw new ReflectionException(e,
+                    "Exception thrown in the getter for the attribute " + getName());
+        } catch (Throwable t) {
+            // neither an Exception nor an Error
+            throw new ReflectionException(new UndeclaredThrowableException(t),
+                    "Exception thrown in the getter for the attribute " + getName());
         }
     }
 
+    /** {@inheritDoc} */
+    boolean isNumeric() {
+        return isNumeric;
+    }
+
     /** {@inheritDoc} */
     void setValue(Object o) throws ReflectionException {
         if (setter == null) {
             throw new IllegalStateException("Attribute is read-only");
         }
         try {
-            setter.invoke(this.obj, o);
+            setterAccessor.invoke(this.obj, setter, new Object[] { o });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
         } catch (IllegalAccessException e) {
             throw new ReflectionException(e, "IllegalAccessException"
                     + " occured trying to invoke the setter on the MBean");
-        } catch (InvocationTargetException e) {
-            Throwable t = e.getTargetException();
-            if (t instanceof RuntimeException) {
-                throw (RuntimeException) t;
-            } else if (t instanceof Error) {
-                throw (Error) t;
-            } else {
-                throw new ReflectionException((Exception) t,
-                        "Exception thrown in the MBean's setter");
-            }
+        } catch (Exception e) {
+            throw new ReflectionException(e, "Exception thrown in the MBean's setter");
+        } catch (Throwable t) {
+            // neither an Exception nor an Error
+            throw new ReflectionException(new UndeclaredThrowableException(t),
+                    "Exception thrown in the MBean's setter");
+        }
+    }
+
+    /**
+     * Returns whether or not values of the specified type can be exported as a number.
+     * 
+     * @param type
+     *            the type to check
+     * @return whether or not values of the specified type can be exported as a number
+     */
+    static boolean isNumeric(Class<?> type) {
+        if (type.isPrimitive()) {
+            return type != void.class && type != char.class;
         }
+        return Number.class.isAssignableFrom(type) || type == Boolean.class;
     }
 
     /**
@@ -12,7 +12,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import javax.management.JMException;
+
 import org.coconut.management.ManagedGroup;
+import org.coconut.management.MetricsBuffer;
 
 /**
  * The default implementation of {@link ManagedGroup}.
@@ -92,6 +95,23 @@ public class DefaultManagedGroup extends AbstractManagedGroup {
         }
     }
 
+    /** {@inheritDoc} */
+    public void exportMetrics(MetricsBuffer buffer) throws JMException {
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        for (AbstractManagedAttribute a : attributes.values()) {
+            if (a.isNumeric()) {
+                Object value = a.getValue();
+                if (value instanceof Number) {
+                    buffer.add(this, a.getName(), ((Number) value).doubleValue());
+                } else if (value instanceof Boolean) {
+                    buffer.add(this, a.getName(), ((Boolean) value).booleanValue() ? 1 : 0);
+                }
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     public Collection<?> getObjects() {
         return new ArrayList(os);
@@ -4,8 +4,9 @@
 package org.coconut.management.defaults;
 
 import java.beans.MethodDescriptor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +30,9 @@ class DefaultManagedOperation extends AbstractManagedOperation {
     /** The object to invoke on. */
     private final Object o;
 
+    /** Invokes the method. */
+    private final InvocationHandler accessor;
+
     /**
      * Creates a new DefaultManagedOperation.
      * 
@@ -53,26 +57,28 @@ class DefaultManagedOperation extends AbstractManagedOperation {
         }
         this.m = method;
         this.o = obj;
+        this.accessor = MethodAccessors.accessorFor(method);
     }
 
     /** {@inheritDoc} */
     @Override
     Object invoke(Object... objects) throws MBeanException, ReflectionException {
         try {
-            return m.invoke(o, objects);
+            return accessor.invoke(o, m, objects);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
         } catch (IllegalAccessException e) {
             throw new ReflectionException(e, "Exception thrown trying to"
                     + " invoke the operation " + getName());
-        } catch (InvocationTargetException e) {
-            Throwable t = e.getTargetException();
-            if (t instanceof RuntimeException) {
-                throw (RuntimeException) t;
-            } else if (t instanceof Error) {
-                throw (Error) t;
-            } else {
-                throw new ReflectionException((Exception) t,
-                        "Exception thrown while invoking the operation " + getName());
-            }
+        } catch (Exception e) {
+            throw new ReflectionException(e,
+                    "Exception thrown while invoking the operation " + getName());
+        } catch (Throwable t) {
+            // neither an Exception nor an Error
+            throw new ReflectionException(new UndeclaredThrowableException(t),
+                    "Exception thrown while invoking the operation " + getName());
         }
     }
 
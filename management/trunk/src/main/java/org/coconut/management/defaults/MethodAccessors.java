@@ -0,0 +1,276 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.management.defaults;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.coconut.internal.asm.ClassWriter;
+import org.coconut.internal.asm.Opcodes;
+import org.coconut.internal.asm.Type;
+import org.coconut.internal.asm.commons.GeneratorAdapter;
+
+/**
+ * Creates accessors that invoke a method directly instead of through
+ * {@link Method#invoke(Object, Object[])}. For every public method declared in a public
+ * class a small class is generated, the first time an accessor for the method is
+ * requested, that casts the target and arguments and invokes the method with a normal
+ * invoke instruction. This avoids the access checks, argument array copying and
+ * exception wrapping of reflection, which matters for attributes that are polled very
+ * frequently. Accessors for other methods fall back to reflection.
+ * <p>
+ * An accessor is an {@link InvocationHandler}, since the generated classes are defined
+ * in a class loader of their own and can only implement types that are visible from the
+ * class loader of the method. The <tt>proxy</tt> argument is the object to invoke the
+ * method on, the <tt>method</tt> argument is ignored. Exceptions thrown by the method
+ * are rethrown unwrapped.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+final class MethodAccessors {
+
+    /** The internal name of the generated classes, suffixed with a counter. */
+    private static final String CLASS_NAME = "org/coconut/management/defaults/GeneratedAccessor";
+
+    /** The type of Object. */
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+
+    /** The invoke method of InvocationHandler. */
+    private static final org.coconut.internal.asm.commons.Method INVOKE = org.coconut.internal.asm.commons.Method
+            .getMethod("Object invoke(Object, java.lang.reflect.Method, Object[])");
+
+    /** The default constructor. */
+    private static final org.coconut.internal.asm.commons.Method CONSTRUCTOR = org.coconut.internal.asm.commons.Method
+            .getMethod("void <init> ()");
+
+    /** The class loaders used for defining accessors, keyed by the class loader of the method. */
+    private static final Map<ClassLoader, WeakReference<AccessorClassLoader>> LOADERS = new WeakHashMap<ClassLoader, WeakReference<AccessorClassLoader>>();
+
+    /** Used for loading accessors for methods declared in classes loaded by the bootstrap loader. */
+    private static AccessorClassLoader bootstrapLoader;
+
+    /** Cannot instantiate. */
+    // /CLOVER:OFF
+    private MethodAccessors() {}
+
+    // /CLOVER:ON
+
+    /**
+     * Returns an accessor for the specified method.
+     *
+     * @param method
+     *            the method to return an accessor for
+     * @return an accessor for the specified method
+     */
+    static InvocationHandler accessorFor(Method method) {
+        if (!Modifier.isPublic(method.getModifiers())
+                || !isPublic(method.getDeclaringClass())) {
+            return new ReflectiveAccessor(method);
+        }
+        for (Class<?> c : method.getParameterTypes()) {
+            if (!isPublic(c)) {
+                return new ReflectiveAccessor(method);
+            }
+        }
+        try {
+            return loaderFor(method.getDeclaringClass().getClassLoader()).accessorFor(method);
+        } catch (LinkageError e) {
+            // for example, if the declaring class is not public in the class loader
+            // that the accessor is defined in
+            return new ReflectiveAccessor(method);
+        }
+    }
+
+    /**
+     * Returns whether or not the specified type can be accessed from any class.
+     *
+     * @param type
+     *            the type to check
+     * @return whether or not the specified type can be accessed from any class
+     */
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    /**
+     * Returns the class loader that accessors for methods declared in classes loaded by
+     * the specified class loader should be defined in.
+     *
+     * @param parent
+     *            the class loader of the declaring class
+     * @return the class loader to define accessors in
+     */
+    private static synchronized AccessorClassLoader loaderFor(ClassLoader parent) {
+        if (parent == null) {
+            if (bootstrapLoader == null) {
+                bootstrapLoader = new AccessorClassLoader(null);
+            }
+            return bootstrapLoader;
+        }
+        // the value is weakly referenced, since the loader references the key
+        WeakReference<AccessorClassLoader> ref = LOADERS.get(parent);
+        AccessorClassLoader loader = ref == null ? null : ref.get();
+        if (loader == null) {
+            loader = new AccessorClassLoader(parent);
+            LOADERS.put(parent, new WeakReference<AccessorClassLoader>(loader));
+        }
+        return loader;
+    }
+
+    /**
+     * Generates the bytecode of an accessor for the specified method.
+     *
+     * @param name
+     *            the internal name of the class to generate
+     * @param method
+     *            the method to invoke
+     * @return the bytecode of the accessor
+     */
+    static byte[] generate(String name, Method method) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL + Opcodes.ACC_SUPER, name,
+                null, OBJECT_TYPE.getInternalName(), new String[] { Type
+                        .getInternalName(InvocationHandler.class) });
+
+        GeneratorAdapter g = new GeneratorAdapter(Opcodes.ACC_PUBLIC, CONSTRUCTOR, null, null, cw);
+        g.loadThis();
+        g.invokeConstructor(OBJECT_TYPE, CONSTRUCTOR);
+        g.returnValue();
+        g.endMethod();
+
+        g = new GeneratorAdapter(Opcodes.ACC_PUBLIC, INVOKE, null, new Type[] { Type
+                .getType(Throwable.class) }, cw);
+        Class<?> declaring = method.getDeclaringClass();
+        Type owner = Type.getType(declaring);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (!isStatic) {
+            g.loadArg(0);
+            g.checkCast(owner);
+        }
+        Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++) {
+            g.loadArg(2);
+            g.push(i);
+            g.arrayLoad(OBJECT_TYPE);
+            g.unbox(Type.getType(parameters[i]));
+        }
+        org.coconut.internal.asm.commons.Method m = new org.coconut.internal.asm.commons.Method(
+                method.getName(), Type.getMethodDescriptor(method));
+        if (isStatic) {
+            g.invokeStatic(owner, m);
+        } else if (declaring.isInterface()) {
+            g.invokeInterface(owner, m);
+        } else {
+            g.invokeVirtual(owner, m);
+        }
+        Type returnType = Type.getType(method.getReturnType());
+        if (returnType.getSort() == Type.VOID) {
+            g.visitInsn(Opcodes.ACONST_NULL);
+        } else {
+            g.box(returnType);
+        }
+        g.returnValue();
+        g.endMethod();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * A class loader that defines accessors and caches them by method.
+     */
+    static final class AccessorClassLoader extends ClassLoader {
+
+        /** The accessors defined by this loader. */
+        private final Map<Method, InvocationHandler> accessors = new HashMap<Method, InvocationHandler>();
+
+        /** Used for naming the generated classes. */
+        private int counter;
+
+        /**
+         * Creates a new AccessorClassLoader.
+         *
+         * @param parent
+         *            the class loader of the classes declaring the methods
+         */
+        AccessorClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Returns an accessor for the specified method, generating it if needed.
+         *
+         * @param method
+         *            the method to return an accessor for
+         * @return an accessor for the specified method
+         */
+        synchronized InvocationHandler accessorFor(Method method) {
+            InvocationHandler h = accessors.get(method);
+            if (h == null) {
+                String name = CLASS_NAME + counter++;
+                byte[] b = generate(name, method);
+                Class<?> c = defineClass(name.replace('/', '.'), b, 0, b.length);
+                try {
+                    h = (InvocationHandler) c.getConstructor().newInstance();
+                } catch (InvocationTargetException e) {
+                    // /CLOVER:OFF
+                    throw new IllegalStateException(e.getCause());// don't test
+                    // /CLOVER:ON
+                } catch (NoSuchMethodException e) {
+                    // /CLOVER:OFF
+                    throw new IllegalStateException(e);// don't test
+                    // /CLOVER:ON
+                } catch (InstantiationException e) {
+                    // /CLOVER:OFF
+                    throw new IllegalStateException(e);// don't test
+                    // /CLOVER:ON
+                } catch (IllegalAccessException e) {
+                    // /CLOVER:OFF
+                    throw new IllegalStateException(e);// don't test
+                    // /CLOVER:ON
+                }
+                accessors.put(method, h);
+            }
+            return h;
+        }
+    }
+
+    /**
+     * An accessor that uses reflection, used for methods that cannot be accessed from a
+     * generated class.
+     */
+    static final class ReflectiveAccessor implements InvocationHandler {
+
+        /** The method to invoke. */
+        private final Method method;
+
+        /**
+         * Creates a new ReflectiveAccessor.
+         *
+         * @param method
+         *            the method to invoke
+         */
+        ReflectiveAccessor(Method method) {
+            this.method = method;
+        }
+
+        /** {@inheritDoc} */
+        public Object invoke(Object proxy, Method ignore, Object[] args) throws Throwable {
+            try {
+                return method.invoke(proxy, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
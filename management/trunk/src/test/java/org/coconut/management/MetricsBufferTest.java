@@ -0,0 +1,123 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.coconut.management.annotation.ManagedAttribute;
+import org.coconut.management.defaults.DefaultManagedGroup;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link MetricsBuffer} and {@link Managements#exportMetrics(MetricsBuffer)}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MetricsBufferTest {
+
+    private MetricsBuffer buffer;
+
+    private DefaultManagedGroup root;
+
+    @Before
+    public void setup() {
+        buffer = new MetricsBuffer(1);
+        root = new DefaultManagedGroup("caches", "desc");
+    }
+
+    @Test
+    public void addAndClear() {
+        buffer.add(root, "a", 1);
+        buffer.add(root, "b", 2);
+        assertEquals(2, buffer.size());
+        assertSame(root, buffer.getGroup(1));
+        assertEquals("b", buffer.getName(1));
+        assertEquals(2.0, buffer.getValue(1), 0);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals("", buffer.toText());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getIOOBE() {
+        buffer.add(root, "a", 1);
+        buffer.getValue(1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void addNPE() {
+        buffer.add(root, null, 1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void exportMetricsNPE() {
+        Managements.exportMetrics(null);
+    }
+
+    @Test
+    public void exportMetrics() throws Exception {
+        root.add(new Stats(5, true));
+        root.addChild("a", "desc").add(new Stats(7, false)).addChild("b", "desc").add(
+                new Stats(9, true));
+        root.addChild("c", "desc");
+        buffer.add(root, "stale", 0);
+
+        ManagedVisitor<MetricsBuffer> v = Managements.exportMetrics(buffer);
+        assertSame(buffer, v.traverse(root));
+        assertEquals(6, buffer.size());
+        assertEquals("# TYPE Enabled gauge\n"
+                + "Enabled{group=\"caches\"} 1.0\n"
+                + "Enabled{group=\"caches/a\"} 0.0\n"
+                + "Enabled{group=\"caches/a/b\"} 1.0\n"
+                + "# TYPE NumberOfHits gauge\n"
+                + "NumberOfHits{group=\"caches\"} 5.0\n"
+                + "NumberOfHits{group=\"caches/a\"} 7.0\n"
+                + "NumberOfHits{group=\"caches/a/b\"} 9.0\n", buffer.toText());
+
+        // the buffer can be reused
+        assertSame(buffer, v.traverse(root.getChildren().iterator().next()));
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    public void writeTextEscaping() {
+        buffer.add(root, "1st-name", Double.NaN);
+        buffer.add(root.addChild("q", "desc"), "inf", Double.POSITIVE_INFINITY);
+        buffer.add(root, "inf", Double.NEGATIVE_INFINITY);
+        assertEquals("# TYPE _st_name gauge\n" + "_st_name{group=\"caches\"} NaN\n"
+                + "# TYPE inf gauge\n" + "inf{group=\"caches/q\"} +Inf\n"
+                + "inf{group=\"caches\"} -Inf\n", buffer.toText());
+    }
+
+    public static class Stats {
+        private final long hits;
+
+        private final boolean enabled;
+
+        private String name = "ignored";
+
+        Stats(long hits, boolean enabled) {
+            this.hits = hits;
+            this.enabled = enabled;
+        }
+
+        @ManagedAttribute
+        public long getNumberOfHits() {
+            return hits;
+        }
+
+        @ManagedAttribute
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @ManagedAttribute
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.management.defaults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.coconut.management.defaults.stubs.PrivateMethods;
+import org.junit.Test;
+
+/**
+ * Tests {@link MethodAccessors}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class MethodAccessorsTest {
+
+    @Test
+    public void primitives() throws Throwable {
+        Target t = new Target();
+        InvocationHandler set = accessor("setValue", int.class);
+        InvocationHandler get = accessor("getValue");
+        assertFalse(set instanceof MethodAccessors.ReflectiveAccessor);
+        assertNull(set.invoke(t, null, new Object[] { 123 }));
+        assertEquals(123, get.invoke(t, null, null));
+        assertEquals(246L, accessor("add", long.class, int.class).invoke(t, null,
+                new Object[] { 123L, 123 }));
+    }
+
+    @Test
+    public void objects() throws Throwable {
+        Target t = new Target();
+        assertEquals("foo1", accessor("concat", String.class, int[].class).invoke(t, null,
+                new Object[] { "foo", new int[] { 1 } }));
+        assertEquals("bar", accessor("echo", Object.class).invoke(null, null,
+                new Object[] { "bar" }));
+    }
+
+    @Test
+    public void interfaceMethod() throws Throwable {
+        List<String> list = new ArrayList<String>();
+        InvocationHandler h = MethodAccessors.accessorFor(List.class.getMethod("add",
+                Object.class));
+        assertEquals(Boolean.TRUE, h.invoke(list, null, new Object[] { "a" }));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void cached() throws Exception {
+        assertSame(accessor("getValue"), accessor("getValue"));
+    }
+
+    @Test(expected = IOException.class)
+    public void exceptionsUnwrapped() throws Throwable {
+        accessor("fail").invoke(new Target(), null, null);
+    }
+
+    @Test
+    public void nonPublicUsesReflection() throws Throwable {
+        Method m = PrivateMethods.class.getDeclaredMethod("getIllegal");
+        assertTrue(MethodAccessors.accessorFor(m) instanceof MethodAccessors.ReflectiveAccessor);
+        m = Hidden.class.getMethod("get");
+        InvocationHandler h = MethodAccessors.accessorFor(m);
+        assertTrue(h instanceof MethodAccessors.ReflectiveAccessor);
+    }
+
+    static InvocationHandler accessor(String name, Class<?>... parameters)
+            throws NoSuchMethodException {
+        return MethodAccessors.accessorFor(Target.class.getMethod(name, parameters));
+    }
+
+    public static class Target {
+        private int value;
+
+        public int getValue() {
+            return value;
+        }
+
+        public void setValue(int value) {
+            this.value = value;
+        }
+
+        public long add(long a, int b) {
+            return a + b;
+        }
+
+        public String concat(String s, int[] i) {
+            return s + i[0];
+        }
+
+        public static Object echo(Object o) {
+            return o;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException();
+        }
+    }
+
+    static class Hidden {
+        public int get() {
+            return 1;
+        }
+    }
+}
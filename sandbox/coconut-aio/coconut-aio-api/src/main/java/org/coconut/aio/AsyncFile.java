@@ -10,6 +10,7 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 
@@ -72,9 +73,144 @@ public abstract class AsyncFile {
 
     public abstract Opened openFile(File file, String mode);
     public abstract Opened openFile(String file, String mode);
-    //public abstract Read openFileAndRead(File file, String mode, Pool<ByteBuffer> buf);
-    //public abstract Read openFileAndRead(File file, String mode, Pool<ByteBuffer> buf, int bufSizes);
-//    public abstract TransferedTo transferTo(long position, long count, WritableByteChannel target);
+    //public abstract Read openFileAndRead(File file, String mode, ByteBufferPool buf);
+    //public abstract Read openFileAndRead(File file, String mode, ByteBufferPool buf, int bufSizes);
+
+    /**
+     * Asynchronously transfers bytes from this file to the given target
+     * channel, starting at the given position in the file. Fewer than
+     * <tt>count</tt> bytes are transferred if the end of the file is reached.
+     * <p>
+     * If the target is an {@link AsyncSocket} created by the same provider, the
+     * transfer is queued on the socket together with any other writes and
+     * performed by the operating system without copying the data through the
+     * Java heap where supported. For any other target the transfer is
+     * performed by {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     * 
+     * @param position
+     *            the position within the file at which the transfer is to
+     *            begin; must be non-negative
+     * @param count
+     *            the maximum number of bytes to be transferred; must be
+     *            non-negative
+     * @param target
+     *            the target channel
+     * @return a future for the transfer
+     * @throws IllegalArgumentException
+     *             if the position or count is negative
+     * @throws NullPointerException
+     *             if the specified target is <tt>null</tt>
+     */
+    public abstract TransferedTo transferTo(long position, long count, WritableByteChannel target);
+
+    /**
+     * Asynchronously maps a region of this file directly into memory.
+     * 
+     * @param mode
+     *            the map mode
+     * @param position
+     *            the position within the file at which the mapped region is to
+     *            start; must be non-negative
+     * @param size
+     *            the size of the region to be mapped; must be non-negative and
+     *            no greater than {@link Integer#MAX_VALUE}
+     * @return a future for the mapped region
+     * @throws IllegalArgumentException
+     *             if the position or size is invalid
+     * @throws NullPointerException
+     *             if the specified mode is <tt>null</tt>
+     * @see FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)
+     */
+    public abstract MapFile map(FileChannel.MapMode mode, long position, long size);
+
+    /**
+     * Asynchronously reads a sequence of bytes from this file into the given
+     * buffer, starting at the given file position. This method does not modify
+     * the position of the file.
+     * 
+     * @param dst
+     *            the buffer into which bytes are to be transferred
+     * @param position
+     *            the file position at which the transfer is to begin; must be
+     *            non-negative
+     * @return a future for the read
+     * @throws IllegalArgumentException
+     *             if the position is negative
+     * @throws NullPointerException
+     *             if the specified buffer is <tt>null</tt>
+     */
+    public abstract Read read(ByteBuffer dst, long position);
+
+    /**
+     * Asynchronously reads a sequence of bytes from this file into a subsequence
+     * of the given buffers, starting at the given file position. Each buffer is
+     * filled before moving on to the next one. This method does not modify the
+     * position of the file.
+     * 
+     * @param dsts
+     *            the buffers into which bytes are to be transferred
+     * @param offset
+     *            the offset within the buffer array of the first buffer into
+     *            which bytes are to be transferred
+     * @param length
+     *            the maximum number of buffers to be accessed
+     * @param position
+     *            the file position at which the transfer is to begin; must be
+     *            non-negative
+     * @return a future for the read
+     * @throws IndexOutOfBoundsException
+     *             if the preconditions on the offset and length parameters do
+     *             not hold
+     * @throws IllegalArgumentException
+     *             if the position is negative
+     * @throws NullPointerException
+     *             if the specified buffer array is <tt>null</tt>
+     */
+    public abstract Read read(ByteBuffer[] dsts, int offset, int length, long position);
+
+    /**
+     * Asynchronously writes a sequence of bytes to this file from the given
+     * buffer, starting at the given file position. This method does not modify
+     * the position of the file.
+     * 
+     * @param src
+     *            the buffer from which bytes are to be transferred
+     * @param position
+     *            the file position at which the transfer is to begin; must be
+     *            non-negative
+     * @return a future for the write
+     * @throws IllegalArgumentException
+     *             if the position is negative
+     * @throws NullPointerException
+     *             if the specified buffer is <tt>null</tt>
+     */
+    public abstract Written write(ByteBuffer src, long position);
+
+    /**
+     * Asynchronously writes a sequence of bytes to this file from a subsequence
+     * of the given buffers, starting at the given file position. This method
+     * does not modify the position of the file.
+     * 
+     * @param srcs
+     *            the buffers from which bytes are to be transferred
+     * @param offset
+     *            the offset within the buffer array of the first buffer from
+     *            which bytes are to be transferred
+     * @param length
+     *            the maximum number of buffers to be accessed
+     * @param position
+     *            the file position at which the transfer is to begin; must be
+     *            non-negative
+     * @return a future for the write
+     * @throws IndexOutOfBoundsException
+     *             if the preconditions on the offset and length parameters do
+     *             not hold
+     * @throws IllegalArgumentException
+     *             if the position is negative
+     * @throws NullPointerException
+     *             if the specified buffer array is <tt>null</tt>
+     */
+    public abstract Written write(ByteBuffer[] srcs, int offset, int length, long position);
 
     public abstract Truncated truncate(long size);
     
@@ -143,24 +279,21 @@ public abstract class AsyncFile {
     
     
     /*
-     * public abstract Forced force(boolean metaData); public abstract Map
-     * map(FileChannel.MapMode mode, long position, long size) ; public abstract
-     * Position position() ; public abstract Position position(long newPosition) ;
+     * public abstract Forced force(boolean metaData);
+     * public abstract Position position() ; public abstract Position position(long newPosition) ;
      * 
      * public abstract Read read(ByteBuffer dst) ; public abstract Read
      * read(ByteBuffer[] dsts) ;
      * 
      * public abstract Read read(ByteBuffer[] dsts, int offset, int length) ;
-     * public abstract Read read(ByteBuffer dst, long position) ; public
-     * abstract Size size() ;
+     * public abstract Size size() ;
      * 
      * 
      * public abstract FileLock tryLock() throws IOException; public abstract
      * FileLock tryLock(long position, long size, boolean shared) throws
      * IOException; public abstract Written write(ByteBuffer src); public
      * abstract Written write(ByteBuffer[] srcs); public abstract Written
-     * write(ByteBuffer[] srcs, int offset, int length); public abstract Written
-     * write(ByteBuffer src, long position);
+     * write(ByteBuffer[] srcs, int offset, int length);
      */
     /**
      * The base event used for all asynchronous file events.
@@ -298,7 +431,7 @@ public abstract class AsyncFile {
         public long getPosition();
     }
 
-    public interface MapFile extends AsyncFile.Event {
+    public interface MapFile extends AsyncFile.Event, AioFuture<MappedByteBuffer, Event> {
         public MappedByteBuffer getBuffer();
         public FileChannel.MapMode getMode();
         public long getPosition();
@@ -335,10 +468,36 @@ public abstract class AsyncFile {
 //        public long getPosition();
 //        public ReadableByteChannel getSrc();
 //    }
-//    public interface TransferedTo extends Event, AioFuture {
-//        public long getBytesTransfered();
-//        public long getCount();
-//        public long getPosition();
-//        public WritableByteChannel getTarget();
-//    }
+    /**
+     * A future for a transfer from a file to a channel.
+     */
+    public interface TransferedTo extends Event, AioFuture<Long, Event> {
+        /**
+         * Returns the number of bytes transferred so far.
+         * 
+         * @return the number of bytes transferred so far
+         */
+        public long getBytesTransfered();
+
+        /**
+         * Returns the maximum number of bytes to transfer.
+         * 
+         * @return the maximum number of bytes to transfer
+         */
+        public long getCount();
+
+        /**
+         * Returns the position in the file where the transfer started.
+         * 
+         * @return the position in the file where the transfer started
+         */
+        public long getPosition();
+
+        /**
+         * Returns the channel that was transferred to.
+         * 
+         * @return the channel that was transferred to
+         */
+        public WritableByteChannel getTarget();
+    }
 }
\ No newline at end of file
@@ -293,6 +293,32 @@ public abstract class AsyncSocket implements WritableByteChannel, ScatteringByte
      */
     public abstract ReadHandler<AsyncSocket> getReader();
 
+    /**
+     * Reads a sequence of bytes from this socket into a direct buffer borrowed
+     * from the {@link ByteBufferPool} of the provider. This saves the caller
+     * from allocating a buffer for every read, and avoids the copy through a
+     * temporary direct buffer that reading into a heap buffer incurs.
+     * <p>
+     * The returned buffer is flipped, so its remaining bytes are the bytes
+     * read. When called from {@link ReadHandler#handle(Object)} every buffer
+     * returned by this method is automatically returned to the pool when the
+     * handler completes, so the buffer must not be used after that. When called
+     * outside of a ReadHandler the buffers returned are valid until the next
+     * invocation of this method.
+     * <p>
+     * A returned buffer can be passed directly to one of the
+     * <tt>writeAsync</tt> methods of this socket, for example to echo the
+     * bytes read. In that case the buffer is not returned to the pool until it
+     * has been written.
+     *
+     * @return a buffer containing the bytes read, or <tt>null</tt> if no bytes
+     *         was available
+     * @throws IOException
+     *             if an I/O error occurs
+     * @see org.coconut.aio.spi.AioProvider#getBufferPool()
+     */
+    public abstract ByteBuffer readPooled() throws IOException;
+
     /**
      * Returns the address of the endpoint this socket is connected to, or
      * <code>null</code> if it is unconnected.
@@ -160,4 +160,42 @@ public abstract class AsyncSocketGroup extends AbstractSet<AsyncSocket> {
      * @return the leave handler or <tt>null</tt> is no handler is set
      */
     public abstract EventProcessor<AsyncSocket> getLeaveHandler();
+
+    /**
+     * Sets the limits for coalescing writes on the sockets in this group. If
+     * enabled, writes that are queued on a socket while it is waiting to write
+     * are combined into a single gathering write, instead of one write per
+     * <tt>writeAsync</tt> call. Each future is still completed with the number
+     * of bytes written from its own buffers. Coalescing is disabled by
+     * default.
+     * 
+     * @param maxBytes
+     *            the maximum number of bytes to combine into one gathering
+     *            write, or <tt>0</tt> to disable coalescing
+     * @param maxBuffers
+     *            the maximum number of buffers to combine into one gathering
+     *            write
+     * @return this group
+     * @throws IllegalArgumentException
+     *             if any of the limits are negative
+     */
+    public abstract AsyncSocketGroup setWriteCoalescing(int maxBytes, int maxBuffers);
+
+    /**
+     * Returns the maximum number of bytes that is combined into one gathering
+     * write, or <tt>0</tt> if write coalescing is disabled.
+     * 
+     * @return the maximum number of bytes that is combined into one gathering
+     *         write
+     */
+    public abstract int getWriteCoalescingMaxBytes();
+
+    /**
+     * Returns the maximum number of buffers that is combined into one
+     * gathering write.
+     * 
+     * @return the maximum number of buffers that is combined into one
+     *         gathering write
+     */
+    public abstract int getWriteCoalescingMaxBuffers();
 }
\ No newline at end of file
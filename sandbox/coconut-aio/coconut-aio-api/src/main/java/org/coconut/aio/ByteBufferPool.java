@@ -0,0 +1,82 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+
+package org.coconut.aio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of direct byte buffers. Allocating direct buffers is expensive, and
+ * reading into or writing from a heap buffer makes the JDK copy the data
+ * through a temporary direct buffer. A ByteBufferPool lets buffers be reused
+ * instead of being allocated for each read or write.
+ * <p>
+ * Buffers are borrowed with {@link #borrow(int)} and handed back with
+ * {@link #returnToPool(ByteBuffer)}, like the ressources of a
+ * <tt>org.coconut.pool.Pool</tt>. Unlike such a pool the number of buffers is
+ * not fixed: if no pooled buffer is available a new one is allocated, and
+ * buffers that cannot be kept are left to the garbage collector. A buffer must
+ * not be used after it has been returned to the pool.
+ * <p>
+ * The pool used by a provider is available through
+ * {@link org.coconut.aio.spi.AioProvider#getBufferPool()}. It is used by
+ * {@link AsyncSocket#readPooled()}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public interface ByteBufferPool {
+
+    /**
+     * Borrows a cleared buffer with a capacity of at least the specified
+     * number of bytes. The limit of the returned buffer is set to the specified
+     * capacity.
+     *
+     * @param capacity
+     *            the minimum capacity of the buffer
+     * @return a cleared buffer
+     * @throws IllegalArgumentException
+     *             if the specified capacity is not positive
+     */
+    ByteBuffer borrow(int capacity);
+
+    /**
+     * Returns the number of times a buffer was borrowed and a pooled buffer
+     * could be reused.
+     *
+     * @return the number of pool hits
+     */
+    long getNumberOfHits();
+
+    /**
+     * Returns the number of times a buffer was borrowed and a new buffer had to
+     * be allocated.
+     *
+     * @return the number of pool misses
+     */
+    long getNumberOfMisses();
+
+    /**
+     * Returns the number of buffers that was returned to the pool but not kept
+     * because the pool was full, or because the buffer was not allocated by the
+     * pool.
+     *
+     * @return the number of discarded buffers
+     */
+    long getNumberOfDiscarded();
+
+    /**
+     * Returns a buffer previously obtained from {@link #borrow(int)} to the
+     * pool.
+     *
+     * @param buffer
+     *            the buffer to return
+     * @throws NullPointerException
+     *             if the specified buffer is <tt>null</tt>
+     * @throws IllegalStateException
+     *             if the specified buffer has already been returned to the pool
+     *             and has not been borrowed since
+     */
+    void returnToPool(ByteBuffer buffer);
+}
@@ -25,6 +25,10 @@ public interface ReadHandler<E> {
      * If this methods throws any exception during the processing, the socket
      * will close immediatly.
      * 
+     * Any buffers obtained from {@link AsyncSocket#readPooled()} while this
+     * method is running are returned to the pool of the provider when it
+     * returns.
+     * 
      * @return An unique socket id
      */
 	void handle(E socket) throws IOException;
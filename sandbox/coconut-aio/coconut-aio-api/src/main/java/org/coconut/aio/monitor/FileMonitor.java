@@ -4,6 +4,9 @@
 
 package org.coconut.aio.monitor;
 
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
 import org.coconut.aio.AsyncFile;
 
 /**
@@ -42,4 +45,75 @@ public class FileMonitor {
     public void closed(AsyncFile file, Throwable cause) {
     }
 
+    /**
+     * Called after a positional read from a file has completed.
+     * 
+     * @param file
+     *            the file that was read from
+     * @param position
+     *            the position in the file where the read started
+     * @param bytes
+     *            the number of bytes read, or -1 if the position was at or
+     *            beyond the end of the file
+     * @param cause
+     *            the cause of the failure or <tt>null</tt> if the read
+     *            succeeded
+     */
+    public void read(AsyncFile file, long position, long bytes, Throwable cause) {
+    }
+
+    /**
+     * Called after a positional write to a file has completed.
+     * 
+     * @param file
+     *            the file that was written to
+     * @param position
+     *            the position in the file where the write started
+     * @param bytes
+     *            the number of bytes written
+     * @param cause
+     *            the cause of the failure or <tt>null</tt> if the write
+     *            succeeded
+     */
+    public void written(AsyncFile file, long position, long bytes, Throwable cause) {
+    }
+
+    /**
+     * Called after a transfer from a file to a channel has completed.
+     * 
+     * @param file
+     *            the file that was transferred from
+     * @param target
+     *            the channel that was transferred to
+     * @param position
+     *            the position in the file where the transfer started
+     * @param bytes
+     *            the number of bytes transferred
+     * @param cause
+     *            the cause of the failure or <tt>null</tt> if the transfer
+     *            succeeded
+     */
+    public void transferredTo(AsyncFile file, WritableByteChannel target, long position,
+            long bytes, Throwable cause) {
+    }
+
+    /**
+     * Called after a region of a file has been mapped into memory.
+     * 
+     * @param file
+     *            the file that was mapped
+     * @param mode
+     *            the map mode
+     * @param position
+     *            the position in the file where the mapped region starts
+     * @param size
+     *            the size of the mapped region
+     * @param cause
+     *            the cause of the failure or <tt>null</tt> if the region was
+     *            mapped
+     */
+    public void mapped(AsyncFile file, FileChannel.MapMode mode, long position, long size,
+            Throwable cause) {
+    }
+
 }
\ No newline at end of file
@@ -163,6 +163,26 @@ public class SocketMonitor {
             Throwable cause) {
     }
 
+    /**
+     * This method is called whenever a number of queued writes are combined
+     * into a single gathering write, before {@link #preWrite} is called for
+     * the combined write. Writes are only combined if write coalescing is
+     * enabled for the group of the socket.
+     * 
+     * @param socket
+     *            the socket that the data is being written to.
+     * @param writes
+     *            the number of writes that was combined
+     * @param buffers
+     *            the total number of buffers of the combined writes
+     * @param bytes
+     *            the total number of bytes remaining in the buffers of the
+     *            combined writes
+     * @see org.coconut.aio.AsyncSocketGroup#setWriteCoalescing(int, int)
+     */
+    public void coalescedWrite(AsyncSocket socket, int writes, int buffers, long bytes) {
+    }
+
     /**
      * This method is called before a socket does the actual read. Every call to
      * preRead() has a corresponding call to a postRead() method even if the
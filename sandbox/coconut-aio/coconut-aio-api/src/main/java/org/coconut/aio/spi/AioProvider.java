@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.coconut.aio.AioFuture;
+import org.coconut.aio.ByteBufferPool;
 import org.coconut.aio.management.DatagramGroupMXBean;
 import org.coconut.aio.management.DatagramMXBean;
 import org.coconut.aio.management.FileMXBean;
@@ -208,6 +209,13 @@ public abstract class AioProvider implements AsyncFactory {
     public abstract DatagramGroupMXBean getDatagramGroupMXBean();
     public abstract FileMXBean getFileMXBean();
 
+    /**
+     * Returns the pool of direct byte buffers used by this provider.
+     *
+     * @return the pool of direct byte buffers used by this provider
+     */
+    public abstract ByteBufferPool getBufferPool();
+
     public abstract void setErrorHandler(AioErrorHandler< ? > handler);
     public abstract AioErrorHandler< ? > getErrorHandler();
 }
\ No newline at end of file
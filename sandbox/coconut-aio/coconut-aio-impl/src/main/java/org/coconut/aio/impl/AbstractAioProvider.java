@@ -15,6 +15,8 @@ import org.coconut.aio.AsyncDatagram;
 import org.coconut.aio.AsyncFile;
 import org.coconut.aio.AsyncServerSocket;
 import org.coconut.aio.AsyncSocket;
+import org.coconut.aio.ByteBufferPool;
+import org.coconut.aio.impl.util.DirectByteBufferPool;
 import org.coconut.aio.management.FileMXBean;
 import org.coconut.aio.monitor.DatagramGroupMonitor;
 import org.coconut.aio.monitor.DatagramMonitor;
@@ -34,6 +36,7 @@ public abstract class AbstractAioProvider extends AioProvider {
 
     private final Lock lock = new ReentrantLock();
     private final AtomicLong idGenerator = new AtomicLong();
+    private final ByteBufferPool bufferPool = new DirectByteBufferPool();
 
     volatile ServerSocketMonitor defaultServerSocketMonitor;
     volatile SocketGroupMonitor defaultSocketGroupMonitor;
@@ -278,6 +281,13 @@ public abstract class AbstractAioProvider extends AioProvider {
         return null;
     }
 
+    /**
+     * @see org.coconut.aio.spi.AioProvider#getBufferPool()
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     /**
      * @see org.coconut.aio.spi.AioProvider#setErrorHandler(org.coconut.aio.spi.AioErrorHandler)
      */
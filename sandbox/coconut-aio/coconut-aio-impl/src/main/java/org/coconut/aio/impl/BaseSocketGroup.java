@@ -60,6 +60,12 @@ public class BaseSocketGroup extends AsyncSocketGroup {
     /** An EventHandler called every time a socket leaves this group. */
     private volatile EventProcessor<AsyncSocket> leaveHandler;
 
+    /** The maximum number of bytes combined into one write, 0 if disabled. */
+    private volatile int coalescingMaxBytes;
+
+    /** The maximum number of buffers combined into one write. */
+    private volatile int coalescingMaxBuffers = 64;
+
     /**
      * Constructs a new BaseSocketGroup.
      * 
@@ -97,6 +103,35 @@ public class BaseSocketGroup extends AsyncSocketGroup {
         return this;
     }
 
+    /**
+     * @see org.coconut.aio.AsyncSocketGroup#setWriteCoalescing(int, int)
+     */
+    public AsyncSocketGroup setWriteCoalescing(int maxBytes, int maxBuffers) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative, was " + maxBytes);
+        } else if (maxBuffers < 0) {
+            throw new IllegalArgumentException("maxBuffers must not be negative, was "
+                + maxBuffers);
+        }
+        this.coalescingMaxBuffers = maxBuffers;
+        this.coalescingMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncSocketGroup#getWriteCoalescingMaxBytes()
+     */
+    public int getWriteCoalescingMaxBytes() {
+        return coalescingMaxBytes;
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncSocketGroup#getWriteCoalescingMaxBuffers()
+     */
+    public int getWriteCoalescingMaxBuffers() {
+        return coalescingMaxBuffers;
+    }
+
     /**
      * @see org.coconut.aio.AsyncSocketGroup#setAddHandler(coconut.event.Handler)
      */
@@ -15,6 +15,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.coconut.core.EventProcessor;
@@ -23,6 +24,11 @@ import org.coconut.core.EventProcessor;
 /**
  * A selector doing the actual selection process. This selector is single
  * threaded.
+ * <p>
+ * Commands handed to the selector with {@link #addFuture(Runnable)} are
+ * queued and run as a batch by the selector thread before each select. The
+ * selector is only woken up for the first command added while it is
+ * selecting, subsequent commands are picked up by the same wakeup.
  * 
  * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
  * @version $Id$
@@ -35,11 +41,15 @@ final class AsyncSingleSelector implements Runnable {
     //
     //private final ExceptionHandler errorHandler;
     private final SelectorMonitor monitor;
+
+    /** Whether or not the selector has been woken up since the last select. */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
     private int selectTimeOut;
 
     private final Selector selector;
     private final ThreadFactory factory;
-    AsyncSingleSelector(ThreadFactory fac, int selectTimeOut) throws IOException {
+    AsyncSingleSelector(ThreadFactory fac, int selectTimeOut, SelectorMonitor monitor)
+        throws IOException {
     	this.selector = Selector.open();
         this.thread = fac.newThread(this);
 
@@ -57,7 +67,7 @@ final class AsyncSingleSelector implements Runnable {
         this.selectTimeOut = selectTimeOut;
         this.factory = fac;
         state = new AtomicInteger(SelectorState.NOT_INITED.getValue());
-        monitor = new SelectorMonitor(); //just use the default (no-op) for
+        this.monitor = monitor;
         monitor.opened(null);
 
     }
@@ -90,11 +100,19 @@ final class AsyncSingleSelector implements Runnable {
             throw new IllegalStateException("state was " + state.get());
 
         while (state.get() == SelectorState.STARTED.getValue()) {
+            // must be cleared before draining the queue, otherwise we might
+            // miss the wakeup for a command added after the queue was drained
+            wakenUp.set(false);
+            int events = 0;
             Runnable event = eventQueue.poll();
             while (event != null) {
                 event.run();
+                events++;
                 event = eventQueue.poll();
             }
+            if (events > 0) {
+                monitor.processedEvents(events);
+            }
 
             int selectSize = 0;
 
@@ -151,6 +169,7 @@ final class AsyncSingleSelector implements Runnable {
      */
     void shutdown() {
         if (state.compareAndSet(SelectorState.STARTED.getValue(), SelectorState.STOP_NOW.getValue())) {
+            wakenUp.set(true);
             selector.wakeup();
             monitor.wakeup();
         } else
@@ -198,8 +217,12 @@ final class AsyncSingleSelector implements Runnable {
      */
     void addFuture(Runnable runnable) {
         eventQueue.add(runnable);
-        selector.wakeup();
-        monitor.wakeup();
+        if (Thread.currentThread() != thread && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
+            monitor.wakeup();
+        } else {
+            monitor.wakeupSuppressed();
+        }
     }
     
     private enum SelectorState {
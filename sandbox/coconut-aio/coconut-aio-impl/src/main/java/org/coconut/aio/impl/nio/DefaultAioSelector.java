@@ -11,32 +11,63 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.coconut.core.EventProcessor;
 
 
 /**
- * The default nethandler
+ * The default nethandler. Server sockets are accepted by a single selector,
+ * while sockets and datagrams are spread over a number of read and
+ * write/connect selectors. Each channel is assigned a selector index when it
+ * is created and all its registrations are handled by the selectors with that
+ * index.
  * 
  * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen </a>
  * @version $Id$
  */
 final class DefaultAioSelector {
 
-    private AsyncSingleSelector acceptHandler;
+    private final NioAioProvider provider;
+
+    private final NioAioProvider.SelectorBalancing balancing;
+
+    private final AtomicInteger nextSelector = new AtomicInteger();
+
+    /** The number of open channels assigned to each selector index. */
+    private final AtomicIntegerArray channels;
 
-    private AsyncSingleSelector writeConnectHandler;
+    private final AsyncSingleSelector[] writeConnectHandlers;
 
-    private AsyncSingleSelector readHandler;
+    private final AsyncSingleSelector[] readHandlers;
+
+    private AsyncSingleSelector acceptHandler;
+
+    DefaultAioSelector(NioAioProvider provider, int selectors,
+        NioAioProvider.SelectorBalancing balancing) {
+        if (selectors <= 0) {
+            throw new IllegalArgumentException("selectors must be a positive number, was "
+                + selectors);
+        } else if (balancing == null) {
+            throw new NullPointerException("balancing is null");
+        }
+        this.provider = provider;
+        this.balancing = balancing;
+        this.writeConnectHandlers = new AsyncSingleSelector[selectors];
+        this.readHandlers = new AsyncSingleSelector[selectors];
+        this.channels = new AtomicIntegerArray(selectors);
+    }
 
     /**
      * Shutdown the AIO Selector.
      */
     void shutdown() {
         acceptHandler.shutdown();
-        writeConnectHandler.shutdown();
-        readHandler.shutdown();
-
+        for (int i = 0; i < readHandlers.length; i++) {
+            writeConnectHandlers[i].shutdown();
+            readHandlers[i].shutdown();
+        }
     }
 
     /**
@@ -44,37 +75,100 @@ final class DefaultAioSelector {
      */
     void start() throws IOException {
         int selecttimeout = 1000;
-        acceptHandler = new AsyncSingleSelector(new ThreadSupplier("AIO-Accept"), selecttimeout);
+        acceptHandler = newSelector("AIO-Accept", selecttimeout);
         acceptHandler.start();
 
-        writeConnectHandler = new AsyncSingleSelector(new ThreadSupplier("AIO-WriteConnect"),
-            selecttimeout);
-        writeConnectHandler.start();
+        for (int i = 0; i < readHandlers.length; i++) {
+            String suffix = readHandlers.length == 1 ? "" : "-" + i;
+            AsyncSingleSelector writeConnect = newSelector("AIO-WriteConnect" + suffix,
+                selecttimeout);
+            writeConnect.start();
+            writeConnectHandlers[i] = writeConnect;
+
+            AsyncSingleSelector read = newSelector("AIO-Read" + suffix, selecttimeout);
+            read.start();
+            readHandlers[i] = read;
+        }
+    }
 
-        readHandler = new AsyncSingleSelector(new ThreadSupplier("AIO-Read"), selecttimeout);
-        readHandler.start();
+    /**
+     * Returns the number of read and write/connect selectors.
+     * 
+     * @return the number of read and write/connect selectors
+     */
+    int getSelectorCount() {
+        return readHandlers.length;
+    }
+
+    /**
+     * Assigns a selector index to a new socket or datagram.
+     * 
+     * @return the index of the selectors that should handle the channel
+     */
+    int assignSelector() {
+        int index = 0;
+        if (readHandlers.length > 1) {
+            if (balancing == NioAioProvider.SelectorBalancing.LEAST_LOADED) {
+                int min = Integer.MAX_VALUE;
+                for (int i = 0; i < readHandlers.length; i++) {
+                    int load = channels.get(i);
+                    if (load < min) {
+                        min = load;
+                        index = i;
+                    }
+                }
+            } else {
+                index = (nextSelector.getAndIncrement() & Integer.MAX_VALUE)
+                    % readHandlers.length;
+            }
+        }
+        channels.incrementAndGet(index);
+        return index;
+    }
+
+    /**
+     * Releases a selector index previously assigned with
+     * {@link #assignSelector()}, when the channel is closed.
+     * 
+     * @param index
+     *            the index of the selectors handling the channel
+     */
+    void releaseSelector(int index) {
+        channels.decrementAndGet(index);
+    }
+
+    /**
+     * Returns the number of open channels assigned to the selectors with the
+     * specified index.
+     * 
+     * @param index
+     *            the index of the selectors
+     * @return the number of open channels assigned to the selectors
+     */
+    int getChannelCount(int index) {
+        return channels.get(index);
     }
 
     void serverSocketRegisterCommand(Runnable runnable) {
         acceptHandler.addFuture(runnable);
     }
 
-    void socketRegisterConnectCommand(Runnable runnable) {
-        writeConnectHandler.addFuture(runnable);
+    void socketRegisterConnectCommand(NioSocket socket, Runnable runnable) {
+        writeConnectHandlers[socket.selector].addFuture(runnable);
     }
 
-    void socketRegisterWriteCommand(Runnable runnable) {
-        writeConnectHandler.addFuture(runnable);
+    void socketRegisterWriteCommand(NioSocket socket, Runnable runnable) {
+        writeConnectHandlers[socket.selector].addFuture(runnable);
     }
 
-    void socketRegisterReadCommand(Runnable runnable) {
-        readHandler.addFuture(runnable);
+    void socketRegisterReadCommand(NioSocket socket, Runnable runnable) {
+        readHandlers[socket.selector].addFuture(runnable);
     }
-    void datagramRegisterWriteCommand(Runnable runnable) {
-        writeConnectHandler.addFuture(runnable);
+    void datagramRegisterWriteCommand(NioDatagram datagram, Runnable runnable) {
+        writeConnectHandlers[datagram.selector].addFuture(runnable);
     }
-    void datagramRegisterReadCommand(Runnable runnable) {
-        readHandler.addFuture(runnable);
+    void datagramRegisterReadCommand(NioDatagram datagram, Runnable runnable) {
+        readHandlers[datagram.selector].addFuture(runnable);
     }
 
     Callable serverSocketStartAccepting(NioServerSocket socket, ServerSocketChannel channel,
@@ -84,26 +178,36 @@ final class DefaultAioSelector {
 
     Callable socketStartReading(NioSocket socket, SocketChannel channel, EventProcessor handler)
         throws IOException {
-        return readHandler.registerChannel(channel, SelectionKey.OP_READ, handler);
+        return readHandlers[socket.selector].registerChannel(channel, SelectionKey.OP_READ,
+            handler);
     }
 
     Callable datagramStartReading(NioDatagram socket, DatagramChannel channel, EventProcessor handler)
         throws IOException {
-        return readHandler.registerChannel(channel, SelectionKey.OP_READ, handler);
+        return readHandlers[socket.selector].registerChannel(channel, SelectionKey.OP_READ,
+            handler);
     }
 
     void socketStartConnecting(NioSocket socket, SocketChannel channel, EventProcessor handler)
         throws IOException {
-        writeConnectHandler.registerChannel(channel, SelectionKey.OP_CONNECT, handler);
+        writeConnectHandlers[socket.selector].registerChannel(channel, SelectionKey.OP_CONNECT,
+            handler);
     }
     Callable socketStartWriting(NioSocket socket, SocketChannel channel, EventProcessor handler)
         throws IOException {
-        return writeConnectHandler.registerChannel(channel, SelectionKey.OP_WRITE, handler);
+        return writeConnectHandlers[socket.selector].registerChannel(channel,
+            SelectionKey.OP_WRITE, handler);
     }
 
     Callable datagramStartWriting(NioDatagram socket, DatagramChannel channel, EventProcessor handler)
         throws IOException {
-        return writeConnectHandler.registerChannel(channel, SelectionKey.OP_WRITE, handler);
+        return writeConnectHandlers[socket.selector].registerChannel(channel,
+            SelectionKey.OP_WRITE, handler);
+    }
+
+    private AsyncSingleSelector newSelector(String name, int selecttimeout) throws IOException {
+        return new AsyncSingleSelector(new ThreadSupplier(name), selecttimeout, provider
+            .newSelectorMonitor(name));
     }
 
     static class ThreadSupplier implements ThreadFactory {
@@ -7,6 +7,11 @@ package org.coconut.aio.impl.nio;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
@@ -117,6 +122,41 @@ public class DefaultFile extends BaseFile {
         completion.offer(r);
     }
 
+    /**
+     * Returns the channel of the currently open file.
+     * 
+     * @return the channel of the currently open file
+     * @throws ClosedChannelException
+     *             if the file is not open
+     */
+    private FileChannel channel() throws ClosedChannelException {
+        final RandomAccessFile r = raf;
+        if (r == null || !isOpen) {
+            throw new ClosedChannelException();
+        }
+        return r.getChannel();
+    }
+
+    private static void checkPosition(long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("position must be a non negative number, was "
+                + position);
+        }
+    }
+
+    private static void checkBuffers(ByteBuffer[] buffers, int offset, int length) {
+        if (buffers == null) {
+            throw new NullPointerException("buffers is null");
+        } else if (offset < 0 || length < 0 || offset > buffers.length - length) {
+            throw new IndexOutOfBoundsException();
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if (buffers[i] == null) {
+                throw new NullPointerException("buffer at index " + i + " is null");
+            }
+        }
+    }
+
     /**
      * @see org.coconut.aio.AsyncFile#isWritable()
      */
@@ -326,65 +366,252 @@ public class DefaultFile extends BaseFile {
 //            return src;
 //        }
 //    }
-//    class TransferedToEvent extends BaseEvent implements AsyncFile.TransferedTo {
-//        private final WritableByteChannel target;
-//        private final WritableByteChannel realTarget;
-//        private final CountDownLatch latch;
-//        private final Runnable completer;
-//        private final long count;
-//        private final long position;
-//        volatile long bytes;
-//        private TransferedToEvent(WritableByteChannel target, WritableByteChannel realTarget, CountDownLatch latch,
-//                Runnable completer, long position, long count) {
-//            this.target = target;
-//            this.realTarget = realTarget;
-//            this.count = count;
-//            this.completer = completer;
-//            this.latch = latch;
-//            this.position = position;
-//        }
-//
-//        /**
-//         * @see org.coconut.aio.impl.BaseCallable#call()
-//         */
-//        public Object call() throws Exception {
-//            if (latch.getCount() == 0) {
-//                bytes = raf.getChannel().transferTo(position, count, realTarget);
-//                return Long.valueOf(bytes);
-//            } else {
-//                System.out.println("wait a bit");
-//                return null;
-//            }
-//        }
-//
-//        /**
-//         * @see org.coconut.aio.AsyncFile.TransferedFrom#getBytesTransfered()
-//         */
-//        public long getBytesTransfered() {
-//            return bytes;
-//        }
-//
-//        /**
-//         * @see org.coconut.aio.AsyncFile.TransferedFrom#getCount()
-//         */
-//        public long getCount() {
-//            return count;
-//        }
-//
-//        /**
-//         * @see org.coconut.aio.AsyncFile.TransferedFrom#getPosition()
-//         */
-//        public long getPosition() {
-//            return position;
-//        }
-//
-//        /**
-//         * @see org.coconut.aio.AsyncFile.TransferedFrom#getSrc()
-//         */
-//        public WritableByteChannel getTarget() {
-//            return target;
-//        }
-//    }
+    private class ReadEvent extends BaseEvent<Long> implements AsyncFile.Read {
+        private final ByteBuffer[] dsts;
+        private final int offset;
+        private final int length;
+        private final long position;
+        private volatile long bytesRead;
+
+        private ReadEvent(ByteBuffer[] dsts, int offset, int length, long position) {
+            this.dsts = dsts;
+            this.offset = offset;
+            this.length = length;
+            this.position = position;
+        }
+        public long getBytesRead() {
+            return bytesRead;
+        }
+        public ByteBuffer[] getDsts() {
+            return dsts;
+        }
+        public int getLength() {
+            return length;
+        }
+        public int getOffset() {
+            return offset;
+        }
+        public long getPosition() {
+            return position;
+        }
+        /**
+         * @see org.coconut.aio.impl.util.AioFutureTask#call()
+         */
+        public Long call() throws IOException {
+            final FileMonitor m = getMonitor();
+            long bytes = 0;
+            try {
+                final FileChannel fc = channel();
+                long pos = position;
+                buffers: for (int i = offset; i < offset + length; i++) {
+                    final ByteBuffer dst = dsts[i];
+                    while (dst.hasRemaining()) {
+                        final int read = fc.read(dst, pos);
+                        if (read < 0) {
+                            // end of file, -1 if nothing was read at all
+                            bytes = bytes == 0 ? -1 : bytes;
+                            break buffers;
+                        }
+                        pos += read;
+                        bytes += read;
+                        bytesRead = bytes;
+                    }
+                }
+            } catch (IOException e) {
+                if (m != null)
+                    m.read(DefaultFile.this, position, bytesRead, e);
+                throw e;
+            }
+            if (m != null)
+                m.read(DefaultFile.this, position, bytes, null);
+            return Long.valueOf(bytes);
+        }
+    }
+
+    private class WrittenEvent extends BaseEvent<Long> implements AsyncFile.Written {
+        private final ByteBuffer[] srcs;
+        private final int offset;
+        private final int length;
+        private final long position;
+        private volatile long bytesWritten;
+
+        private WrittenEvent(ByteBuffer[] srcs, int offset, int length, long position) {
+            this.srcs = srcs;
+            this.offset = offset;
+            this.length = length;
+            this.position = position;
+        }
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+        public ByteBuffer[] getSrcs() {
+            return srcs;
+        }
+        public int getLength() {
+            return length;
+        }
+        public int getOffset() {
+            return offset;
+        }
+        public long getPosition() {
+            return position;
+        }
+        /**
+         * @see org.coconut.aio.impl.util.AioFutureTask#call()
+         */
+        public Long call() throws IOException {
+            final FileMonitor m = getMonitor();
+            try {
+                final FileChannel fc = channel();
+                long pos = position;
+                for (int i = offset; i < offset + length; i++) {
+                    final ByteBuffer src = srcs[i];
+                    while (src.hasRemaining()) {
+                        final int written = fc.write(src, pos);
+                        pos += written;
+                        bytesWritten += written;
+                    }
+                }
+            } catch (IOException e) {
+                if (m != null)
+                    m.written(DefaultFile.this, position, bytesWritten, e);
+                throw e;
+            }
+            if (m != null)
+                m.written(DefaultFile.this, position, bytesWritten, null);
+            return Long.valueOf(bytesWritten);
+        }
+    }
+
+    private class MapFileEvent extends BaseEvent<MappedByteBuffer> implements AsyncFile.MapFile {
+        private final FileChannel.MapMode mode;
+        private final long position;
+        private final long size;
+        private volatile MappedByteBuffer buffer;
+
+        private MapFileEvent(FileChannel.MapMode mode, long position, long size) {
+            this.mode = mode;
+            this.position = position;
+            this.size = size;
+        }
+        public MappedByteBuffer getBuffer() {
+            return buffer;
+        }
+        public FileChannel.MapMode getMode() {
+            return mode;
+        }
+        public long getPosition() {
+            return position;
+        }
+        public long getSize() {
+            return size;
+        }
+        /**
+         * @see org.coconut.aio.impl.util.AioFutureTask#call()
+         */
+        public MappedByteBuffer call() throws IOException {
+            final FileMonitor m = getMonitor();
+            try {
+                buffer = channel().map(mode, position, size);
+            } catch (IOException e) {
+                if (m != null)
+                    m.mapped(DefaultFile.this, mode, position, size, e);
+                throw e;
+            }
+            if (m != null)
+                m.mapped(DefaultFile.this, mode, position, size, null);
+            return buffer;
+        }
+    }
+
+    /**
+     * A transfer from this file to a channel. If the target is a
+     * {@link NioSocket} the transfer is performed by the socket when all
+     * previously queued writes have been written. Otherwise it is performed
+     * by the disk handler.
+     */
+    final class TransferedToEvent extends BaseEvent<Long> implements AsyncFile.TransferedTo {
+        private final WritableByteChannel target;
+        private final long count;
+        private final long position;
+        private volatile long bytes;
+
+        /** The number of bytes to transfer, -1 if not yet calculated */
+        private long remaining = -1;
+
+        private TransferedToEvent(WritableByteChannel target, long position, long count) {
+            this.target = target;
+            this.count = count;
+            this.position = position;
+        }
+
+        /**
+         * Transfers as many bytes as the specified channel will accept without
+         * blocking. Completes this future if all bytes was transferred or the
+         * transfer failed.
+         * 
+         * @param channel
+         *            the channel to transfer to
+         * @return <tt>true</tt> if the transfer is complete, <tt>false</tt>
+         *         if the channel could not accept more bytes
+         * @throws IOException
+         *             if the transfer failed
+         */
+        boolean transferTo(WritableByteChannel channel) throws IOException {
+            final FileMonitor m = getMonitor();
+            try {
+                final FileChannel fc = channel();
+                if (remaining < 0) {
+                    remaining = Math.max(0, Math.min(count, fc.size() - position));
+                }
+                while (bytes < remaining) {
+                    long transferred = fc.transferTo(position + bytes, remaining - bytes,
+                        channel);
+                    if (transferred == 0) {
+                        return false;
+                    }
+                    bytes += transferred;
+                }
+            } catch (IOException e) {
+                if (m != null)
+                    m.transferredTo(DefaultFile.this, target, position, bytes, e);
+                setException(e);
+                throw e;
+            }
+            if (m != null)
+                m.transferredTo(DefaultFile.this, target, position, bytes, null);
+            set(Long.valueOf(bytes));
+            return true;
+        }
+
+        /**
+         * @see org.coconut.aio.impl.util.AioFutureTask#run()
+         */
+        public void run() {
+            try {
+                transferTo(target);
+            } catch (IOException ignore) {
+                // the future has already been failed
+            }
+            if (!isDone()) {
+                // the target did not accept all bytes
+                set(Long.valueOf(bytes));
+            }
+        }
+        public long getBytesTransfered() {
+            return bytes;
+        }
+        public long getCount() {
+            return count;
+        }
+        public long getPosition() {
+            return position;
+        }
+        public WritableByteChannel getTarget() {
+            return target;
+        }
+    }
+
     /**
      * @see org.coconut.aio.AsyncFile#getFile()
      */
@@ -427,23 +654,86 @@ public class DefaultFile extends BaseFile {
 //        execute(tfe);
 //        return tfe;
 //    }
-//
-//    /**
-//     * @see org.coconut.aio.AsyncFile#transferTo(long, long, java.lang.Object)
-//     */
-//    public TransferedTo transferTo(long position, long count, WritableByteChannel target) {
-//        final TransferedToEvent tte;
-//        CountDownLatch latch = new CountDownLatch(1);
-//        if (target instanceof NioSocket) {
-//            NioSocket ds = (NioSocket) target;
-//            Runnable event = ds.createTransferFrom(latch);
-//            tte = new TransferedToEvent(target, ds.channel, latch, event, position, count);
-//        } else {
-//            throw new UnsupportedOperationException();
-//        }
-//        execute(tte);
-//        return tte;
-//    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#transferTo(long, long,
+     *      java.nio.channels.WritableByteChannel)
+     */
+    public TransferedTo transferTo(long position, long count, WritableByteChannel target) {
+        checkPosition(position);
+        if (count < 0) {
+            throw new IllegalArgumentException("count must be a non negative number, was "
+                + count);
+        } else if (target == null) {
+            throw new NullPointerException("target is null");
+        }
+        TransferedToEvent event = new TransferedToEvent(target, position, count);
+        if (target instanceof NioSocket) {
+            ((NioSocket) target).transferFromFile(event);
+        } else {
+            execute(event);
+        }
+        return event;
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#map(java.nio.channels.FileChannel.MapMode,
+     *      long, long)
+     */
+    public MapFile map(FileChannel.MapMode mode, long position, long size) {
+        checkPosition(position);
+        if (mode == null) {
+            throw new NullPointerException("mode is null");
+        } else if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("size must be between 0 and Integer.MAX_VALUE, was "
+                + size);
+        }
+        MapFileEvent event = new MapFileEvent(mode, position, size);
+        execute(event);
+        return event;
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#read(java.nio.ByteBuffer, long)
+     */
+    public Read read(ByteBuffer dst, long position) {
+        if (dst == null) {
+            throw new NullPointerException("dst is null");
+        }
+        return read(new ByteBuffer[] { dst }, 0, 1, position);
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#read(java.nio.ByteBuffer[], int, int, long)
+     */
+    public Read read(ByteBuffer[] dsts, int offset, int length, long position) {
+        checkBuffers(dsts, offset, length);
+        checkPosition(position);
+        ReadEvent event = new ReadEvent(dsts, offset, length, position);
+        execute(event);
+        return event;
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#write(java.nio.ByteBuffer, long)
+     */
+    public Written write(ByteBuffer src, long position) {
+        if (src == null) {
+            throw new NullPointerException("src is null");
+        }
+        return write(new ByteBuffer[] { src }, 0, 1, position);
+    }
+
+    /**
+     * @see org.coconut.aio.AsyncFile#write(java.nio.ByteBuffer[], int, int, long)
+     */
+    public Written write(ByteBuffer[] srcs, int offset, int length, long position) {
+        checkBuffers(srcs, offset, length);
+        checkPosition(position);
+        WrittenEvent event = new WrittenEvent(srcs, offset, length, position);
+        execute(event);
+        return event;
+    }
 
     /**
      * @see org.coconut.aio.AsyncFile#truncate(long)
@@ -27,17 +27,92 @@ import org.coconut.core.Offerable;
 
 
 /**
+ * An AioProvider based on java.nio. Server sockets are accepted by a single
+ * selector thread, while sockets and datagrams are spread across a number of
+ * read and write/connect selector threads. By default one of each is used per
+ * available processor.
+ * 
  * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen </a>
  */
 public class NioAioProvider extends ManagedAioProvider {
 
+    /**
+     * Strategies for assigning new sockets and datagrams to selector threads.
+     */
+    public enum SelectorBalancing {
+        /** Channels are assigned to the selectors in turn. */
+        ROUND_ROBIN,
+
+        /** Channels are assigned to the selector with the fewest open channels. */
+        LEAST_LOADED
+    }
+
     private final DefaultAioSelector netHandler;
     private final DefaultDiskHandler diskHandler;
 
+    /**
+     * Creates a new NioAioProvider using one selector per available processor
+     * and least loaded balancing.
+     */
     public NioAioProvider() {
-        netHandler = new DefaultAioSelector();
+        this(Runtime.getRuntime().availableProcessors(), SelectorBalancing.LEAST_LOADED);
+    }
+
+    /**
+     * Creates a new NioAioProvider.
+     * 
+     * @param selectors
+     *            the number of read and write/connect selectors to use
+     * @param balancing
+     *            how channels are assigned to selectors
+     * @throws IllegalArgumentException
+     *             if the number of selectors is not positive
+     * @throws NullPointerException
+     *             if the specified balancing is null
+     */
+    public NioAioProvider(int selectors, SelectorBalancing balancing) {
+        netHandler = new DefaultAioSelector(this, selectors, balancing);
         diskHandler = new DefaultDiskHandler(this);
     }
+
+    /**
+     * Returns the number of read and write/connect selectors used by this
+     * provider.
+     * 
+     * @return the number of read and write/connect selectors
+     */
+    public int getSelectorCount() {
+        return netHandler.getSelectorCount();
+    }
+
+    /**
+     * Returns the number of open sockets and datagrams assigned to the read and
+     * write/connect selectors with the specified index.
+     * 
+     * @param selector
+     *            the index of the selectors, between <tt>0</tt> and
+     *            {@link #getSelectorCount()} exclusive
+     * @return the number of open channels assigned to the selectors
+     * @throws IndexOutOfBoundsException
+     *             if the index is out of range
+     */
+    public int getNumberOfChannels(int selector) {
+        return netHandler.getChannelCount(selector);
+    }
+
+    /**
+     * Creates the monitor for the selector with the specified name. The default
+     * implementation returns a monitor that does nothing, subclasses can
+     * override this method to collect per-selector statistics.
+     * 
+     * @param selectorName
+     *            the name of the selector thread, for example
+     *            <tt>AIO-Read-2</tt>
+     * @return the monitor for the selector
+     */
+    protected SelectorMonitor newSelectorMonitor(String selectorName) {
+        return new SelectorMonitor();
+    }
     /**
      * @throws IOException
      * @see org.coconut.aio.impl.AbstractAioProvider#startupDisk()
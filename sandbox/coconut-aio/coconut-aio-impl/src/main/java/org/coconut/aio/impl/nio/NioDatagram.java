@@ -17,6 +17,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -56,6 +57,12 @@ public class NioDatagram extends BaseDatagram {
     /** A reference to the main handler */
     private final DefaultAioSelector netHandler;
 
+    /** The index of the selectors handling this datagram */
+    final int selector;
+
+    /** Whether or not the selector index has been released */
+    private final AtomicBoolean selectorReleased = new AtomicBoolean();
+
     /** The datagrams channel */
     private final DatagramChannel channel;
 
@@ -160,6 +167,7 @@ public class NioDatagram extends BaseDatagram {
 
         this.netHandler = handler;
         this.channel = channel;
+        this.selector = handler.assignSelector();
         this.id = id;
         this.defaultExecutor = executor;
         this.defaultDestination = destination;
@@ -615,7 +623,7 @@ public class NioDatagram extends BaseDatagram {
                 }
             }
         };
-        netHandler.datagramRegisterReadCommand(r);
+        netHandler.datagramRegisterReadCommand(this, r);
         return event;
     }
 
@@ -653,7 +661,7 @@ public class NioDatagram extends BaseDatagram {
                     if (writes.size() == 0 || !writeState.compareAndSet(0, 1))
                         return;
                 } else if (currentWrite.tryWrite() < 1) {
-                    netHandler.datagramRegisterWriteCommand(currentWrite);
+                    netHandler.datagramRegisterWriteCommand(this, currentWrite);
                     return;
                 }
             }
@@ -930,6 +938,10 @@ public class NioDatagram extends BaseDatagram {
         public Object call() throws Exception {
             try {
                 innerSetGroup(CLOSED_GROUP);
+                // the datagram must only be removed from the load of its selectors once
+                if (selectorReleased.compareAndSet(false, true)) {
+                    netHandler.releaseSelector(selector);
+                }
                 channel.close();
                 closed(cause, null);
             } catch (IOException e) {
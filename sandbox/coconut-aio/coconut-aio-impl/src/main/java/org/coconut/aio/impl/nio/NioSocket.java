@@ -14,8 +14,8 @@ import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -45,6 +45,12 @@ final class NioSocket extends BaseSocket {
     /** A reference to the main handler */
     private final DefaultAioSelector netHandler;
 
+    /** The index of the selectors handling this socket */
+    final int selector;
+
+    /** Whether or not the selector index has been released */
+    private final AtomicBoolean selectorReleased = new AtomicBoolean();
+
     /** The sockets channel, package private because of file transferFrom/To */
     public final SocketChannel channel;
 
@@ -58,8 +64,6 @@ final class NioSocket extends BaseSocket {
     private static final int WRITE_USER_THREAD = 1;
     /** Value representing that we running in the selector thread */
     private static final int WRITE_SELECTOR_THREAD = 2;
-    /** Value representing that we are transfering data directly from a file */
-    private static final int WRITE_FILE_TRANSFER = 3;
 
     /** The Queue we are enqueuing new write requests on */
     private final Queue<Writeable> writes = new ConcurrentLinkedQueue<Writeable>();
@@ -87,6 +91,15 @@ final class NioSocket extends BaseSocket {
     /** call this to cancel read subscription */
     private Callable cancelRead;
 
+    /** The size of the buffers borrowed by readPooled */
+    private static final int POOLED_READ_SIZE = 8192;
+
+    /** Buffers handed out by readPooled that has not yet been returned */
+    private final List<ByteBuffer> pooledReads = new ArrayList<ByteBuffer>(2);
+
+    /** Whether or not the ReadHandler is running, guarded by readLock */
+    private boolean inReadHandler;
+
     // -- Constructors --
 
     /**
@@ -104,6 +117,7 @@ final class NioSocket extends BaseSocket {
         super(id, monitor, provider, destination, executor);
         this.netHandler = handler;
         this.channel = channel;
+        this.selector = handler.assignSelector();
     }
 
     // -- Public methods --
@@ -162,7 +176,7 @@ final class NioSocket extends BaseSocket {
             }
         };
 		
-		netHandler.socketRegisterConnectCommand(runnable);
+		netHandler.socketRegisterConnectCommand(this, runnable);
     }
 
     /**
@@ -171,6 +185,7 @@ final class NioSocket extends BaseSocket {
     public AioFuture<Long, Event> writeAsync(ByteBuffer[] buffer, int offset, int length) {
         checkBufferLimit(ByteBufferUtil.calcSize(buffer));
         WrittenEvent future = new WrittenEvent(this, buffer, offset, length);
+        future.pooled = takePooledReads(buffer, offset, length);
         writes.add(future);
         tryAndWriteSocketEvents();
         return future;
@@ -187,6 +202,8 @@ final class NioSocket extends BaseSocket {
         // add currentwrite to list
         if (!(w.contains(current)) && current instanceof Written) {
             l.add((Written) current);
+        } else if (current instanceof CoalescedWrite) {
+            ((CoalescedWrite) current).addOutstanding(l);
         }
         for (Writeable wr : w) {
             if (wr instanceof Written) {
@@ -251,7 +268,7 @@ final class NioSocket extends BaseSocket {
                 }
             }
         };
-        netHandler.socketRegisterReadCommand(r);
+        netHandler.socketRegisterReadCommand(this, r);
     }
 
     private void readAvailable() {
@@ -260,6 +277,7 @@ final class NioSocket extends BaseSocket {
             try {
                 ReadHandler<AsyncSocket> r = getReader();
                 if (r != null) {
+                    inReadHandler = true;
                     try {
                         r.handle(this);
                     } catch (IOException e) {
@@ -268,6 +286,9 @@ final class NioSocket extends BaseSocket {
                     } catch (RuntimeException e) {
                         readClose(e);
                         // System.out.println("error");
+                    } finally {
+                        inReadHandler = false;
+                        releasePooledReads();
                     }
                 } else {
                     // System.err.println("ServerSocket: readAvailable"); //TODO
@@ -379,6 +400,76 @@ final class NioSocket extends BaseSocket {
 
     }
 
+    /**
+     * @see org.coconut.aio.AsyncSocket#readPooled()
+     */
+    public ByteBuffer readPooled() {
+        readLock.lock();
+        try {
+            if (!inReadHandler) {
+                releasePooledReads();
+            }
+            ByteBuffer b = mProvider.getBufferPool().borrow(POOLED_READ_SIZE);
+            if (read(b) <= 0) {
+                mProvider.getBufferPool().returnToPool(b);
+                return null;
+            }
+            b.flip();
+            pooledReads.add(b);
+            return b;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Takes ownership of any of the specified buffers that was handed out by
+     * {@link #readPooled()}, so they are not returned to the pool before they
+     * have been written.
+     * 
+     * @param srcs the buffers that are about to be written
+     * @param offset the offset within the buffer array of the first buffer
+     * @param length the number of buffers to check
+     * @return the buffers that should be returned to the pool once written, or
+     *         <tt>null</tt> if none of the buffers was handed out by readPooled
+     */
+    private ByteBuffer[] takePooledReads(ByteBuffer[] srcs, int offset, int length) {
+        // the buffers might be written by any thread, so we must wait for a
+        // concurrent readPooled to finish before we can safely take them
+        readLock.lock();
+        try {
+            List<ByteBuffer> taken = null;
+            for (int i = offset; i < offset + length && !pooledReads.isEmpty(); i++) {
+                for (int j = 0; j < pooledReads.size(); j++) {
+                    // ByteBuffer.equals compares content, we need identity
+                    if (pooledReads.get(j) == srcs[i]) {
+                        if (taken == null) {
+                            taken = new ArrayList<ByteBuffer>(2);
+                        }
+                        taken.add(pooledReads.remove(j));
+                        break;
+                    }
+                }
+            }
+            return taken == null ? null : taken.toArray(new ByteBuffer[taken.size()]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns all buffers handed out by {@link #readPooled()} to the pool. Must
+     * be called while holding the read lock.
+     */
+    private void releasePooledReads() {
+        if (!pooledReads.isEmpty()) {
+            for (ByteBuffer b : pooledReads) {
+                mProvider.getBufferPool().returnToPool(b);
+            }
+            pooledReads.clear();
+        }
+    }
+
     public static abstract class BaseNioEvent<V> extends AioFutureTask<V, Event> implements
         AsyncSocket.Event, AioFuture<V, Event> {
         private final AsyncSocket socket;
@@ -416,7 +507,14 @@ final class NioSocket extends BaseSocket {
     }
 
     protected void closeCommandRun(AsyncSocket.Closed task) throws IOException {
-        channel.close();
+        try {
+            channel.close();
+        } finally {
+            // the socket must only be removed from the load of its selectors once
+            if (selectorReleased.compareAndSet(false, true)) {
+                netHandler.releaseSelector(selector);
+            }
+        }
     }
 
     protected void tryAndWriteSocketEvents() {
@@ -432,7 +530,7 @@ final class NioSocket extends BaseSocket {
         final int state = writeState.get();
         for (;;) {
             if (currentWrite == null)
-                currentWrite = writes.poll();
+                currentWrite = nextWrite();
 
             if (currentWrite == null) {
                 writeState.set(WRITE_NOOP);
@@ -458,12 +556,66 @@ final class NioSocket extends BaseSocket {
         }
     }
 
+    /**
+     * Removes the next write from the queue. If write coalescing is enabled
+     * for the group of this socket, any WrittenEvents following the next write
+     * are combined with it into a single gathering write, as long as the
+     * limits of the group are not exceeded. Must only be called by the thread
+     * that is currently writing.
+     * 
+     * @return the next write or <tt>null</tt> if no writes are queued
+     */
+    private Writeable nextWrite() {
+        final Writeable w = writes.poll();
+        final BaseSocketGroup grp = getGroup();
+        if (!(w instanceof WrittenEvent) || grp == null
+            || !(writes.peek() instanceof WrittenEvent)) {
+            return w;
+        }
+        final int maxBytes = grp.getWriteCoalescingMaxBytes();
+        final int maxBuffers = grp.getWriteCoalescingMaxBuffers();
+        final WrittenEvent first = (WrittenEvent) w;
+        long bytes = first.remaining();
+        int buffers = first.getLength();
+        List<WrittenEvent> batch = null;
+        for (;;) {
+            // we are the only thread removing writes, so next is still the
+            // head of the queue when we poll it
+            Writeable next = writes.peek();
+            if (!(next instanceof WrittenEvent)) {
+                break;
+            }
+            WrittenEvent e = (WrittenEvent) next;
+            long remaining = e.remaining();
+            if (bytes + remaining > maxBytes || buffers + e.getLength() > maxBuffers) {
+                break;
+            }
+            writes.poll();
+            if (batch == null) {
+                batch = new ArrayList<WrittenEvent>();
+                batch.add(first);
+            }
+            batch.add(e);
+            bytes += remaining;
+            buffers += e.getLength();
+        }
+        if (batch == null) {
+            return first;
+        }
+        SocketMonitor m = getMonitor();
+        if (m != null)
+            m.coalescedWrite(this, batch.size(), buffers, bytes);
+        return new CoalescedWrite(batch, buffers);
+    }
+
     class WrittenEvent extends BaseNioEvent<Long> implements AsyncSocket.Written, EventProcessor,
         Writeable {
         private final ByteBuffer[] srcs;
         private final int offset;
         private final int length;
         private volatile long bytesWritten;
+        /** Buffers from readPooled to return to the pool once written */
+        ByteBuffer[] pooled;
 
         public int getLength() {
             return length;
@@ -503,7 +655,7 @@ final class NioSocket extends BaseSocket {
                 return true;
             } else if (result == 0) {
                 if (state == WRITE_USER_THREAD) {
-                    netHandler.socketRegisterWriteCommand(this);
+                    netHandler.socketRegisterWriteCommand(NioSocket.this, this);
                 } else if (cancelWrite == null) {
                     try {
                         cancelWrite = netHandler.socketStartWriting(NioSocket.this, channel, this);
@@ -531,6 +683,8 @@ final class NioSocket extends BaseSocket {
                 if (m != null)
                     m.postWrite(NioSocket.this, 0, getSrcs(), getOffset(), getLength(),
                         writeAttempts, e);
+                reportWritten();
+                releasePooled();
                 setException(e);
                 writeAttempts = 0;
                 return 1;
@@ -538,21 +692,86 @@ final class NioSocket extends BaseSocket {
             if (m != null)
                 m.postWrite(NioSocket.this, bytes, getSrcs(), getOffset(), getLength(),
                     writeAttempts, null);
-            if (bytes > 0) {
-                bytesWritten += bytes;
-                writeFinished(this);
-            }
+            bytesWritten += bytes;
             // System.out.println("wrote " + bytes);
             if (!hasRemaining()) {
                 writeAttempts++;
                 return 0;
             } else {
                 writeAttempts = 0;
+                reportWritten();
+                releasePooled();
                 set(Long.valueOf(bytesWritten));
                 return -1;
             }
         }
 
+        /**
+         * Returns the number of bytes remaining in the buffers of this event.
+         * 
+         * @return the number of bytes remaining
+         */
+        long remaining() {
+            long remaining = 0;
+            for (int i = 0; i < length; i++) {
+                remaining += srcs[i + offset].remaining();
+            }
+            return remaining;
+        }
+
+        /**
+         * Completes this event after it has been written as part of a
+         * coalesced write.
+         * 
+         * @param bytes the total number of bytes written from this event
+         */
+        void coalescedWritten(long bytes) {
+            bytesWritten = bytes;
+            reportWritten();
+            releasePooled();
+            set(Long.valueOf(bytes));
+        }
+
+        /**
+         * Fails this event after a coalesced write failed.
+         * 
+         * @param bytes the number of bytes written from this event before the
+         *        failure
+         * @param cause the cause of the failure
+         */
+        void coalescedFailed(long bytes, Throwable cause) {
+            bytesWritten = bytes;
+            reportWritten();
+            releasePooled();
+            setException(cause);
+        }
+
+        /**
+         * Adds the bytes written by this event to the statistics of the socket.
+         * Called once when the event completes, whether or not it was part of a
+         * coalesced write, so partial writes are never counted twice.
+         */
+        private void reportWritten() {
+            if (bytesWritten > 0) {
+                writeFinished(this);
+            }
+        }
+
+        /**
+         * Returns any buffers obtained from readPooled that was written by this
+         * event to the pool. Called before the event is completed, so the
+         * buffers are back in the pool once the future is done.
+         */
+        private void releasePooled() {
+            ByteBuffer[] p = pooled;
+            if (p != null) {
+                pooled = null;
+                for (ByteBuffer b : p) {
+                    mProvider.getBufferPool().returnToPool(b);
+                }
+            }
+        }
+
         boolean hasRemaining() {
             for (int i = 0; i < length; i++) {
                 if (srcs[i + offset].hasRemaining())
@@ -572,34 +791,179 @@ final class NioSocket extends BaseSocket {
         }
     }
 
-    TransferFromFileEvent createTransferFrom(CountDownLatch latch) {
-        TransferFromFileEvent rffe = new TransferFromFileEvent(latch);
-        writes.add(rffe);
+    /**
+     * A number of WrittenEvents that are written with a single gathering write.
+     * The events are completed in order, as soon as all of their bytes have
+     * been written.
+     */
+    private class CoalescedWrite implements Writeable, EventProcessor, Runnable {
+        /** The events that are combined. */
+        private final WrittenEvent[] events;
+
+        /** The number of bytes remaining in each event before the first write. */
+        private final long[] sizes;
+
+        /** The buffers of all events. */
+        private final ByteBuffer[] srcs;
+
+        /** The index of the first event that has not been completely written. */
+        private int first;
+
+        /** The index in srcs of the first buffer of the first event. */
+        private int offset;
+
+        CoalescedWrite(List<WrittenEvent> batch, int buffers) {
+            events = batch.toArray(new WrittenEvent[batch.size()]);
+            sizes = new long[events.length];
+            srcs = new ByteBuffer[buffers];
+            int index = 0;
+            for (int i = 0; i < events.length; i++) {
+                WrittenEvent e = events[i];
+                sizes[i] = e.remaining();
+                System.arraycopy(e.getSrcs(), e.getOffset(), srcs, index, e.getLength());
+                index += e.getLength();
+            }
+        }
+
+        /**
+         * Adds the events that has not yet been completely written.
+         * 
+         * @param l the list to add the events to
+         */
+        void addOutstanding(List<Written> l) {
+            for (int i = first; i < events.length; i++) {
+                l.add(events[i]);
+            }
+        }
+
+        public void process(Object o) {
+            handleWrite();
+        }
+
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            writeState.set(WRITE_SELECTOR_THREAD);
+            handleWrite();
+        }
+
+        /**
+         * @see org.coconut.aio.impl.nio.NioSocket.Writeable#runAndContinue(int)
+         */
+        public boolean runAndContinue(final int state) {
+            int result = tryWrite();
+            if (result == -1) {
+                currentWrite = null;
+                return true;
+            } else if (result == 0) {
+                if (state == WRITE_USER_THREAD) {
+                    netHandler.socketRegisterWriteCommand(NioSocket.this, this);
+                } else if (cancelWrite == null) {
+                    try {
+                        cancelWrite = netHandler.socketStartWriting(NioSocket.this, channel, this);
+                    } catch (IOException ioe) {
+                        writeClose(ioe);
+                    }
+                }
+            }
+            return false;
+        }
+
+        private int tryWrite() {
+            final int length = srcs.length - offset;
+            final long bytes;
+            SocketMonitor m = getMonitor();
+            if (m != null)
+                m.preWrite(NioSocket.this, srcs, offset, length);
+            try {
+                bytes = channel.write(srcs, offset, length);
+            } catch (Exception e) {
+                if (m != null)
+                    m.postWrite(NioSocket.this, 0, srcs, offset, length, writeAttempts, e);
+                // only the first outstanding event can have been partially written
+                events[first].coalescedFailed(sizes[first] - events[first].remaining(), e);
+                for (int i = first + 1; i < events.length; i++) {
+                    events[i].coalescedFailed(0, e);
+                }
+                writeAttempts = 0;
+                return 1;
+            }
+            if (m != null)
+                m.postWrite(NioSocket.this, bytes, srcs, offset, length, writeAttempts, null);
+            // complete all events that has been written, a gathering write
+            // writes the buffers in order so we can stop at the first event
+            // with remaining bytes
+            while (first < events.length && events[first].remaining() == 0) {
+                WrittenEvent e = events[first];
+                e.coalescedWritten(sizes[first]);
+                offset += e.getLength();
+                first++;
+            }
+            if (first < events.length) {
+                writeAttempts++;
+                return 0;
+            } else {
+                writeAttempts = 0;
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Queues a transfer from a file on this socket. The transfer is started
+     * when all previously queued writes have been written, and is performed
+     * directly from the file channel to the socket channel.
+     * 
+     * @param transfer the transfer to queue
+     */
+    void transferFromFile(DefaultFile.TransferedToEvent transfer) {
+        writes.add(new TransferFromFileEvent(transfer));
         tryAndWriteSocketEvents();
-        return rffe;
     }
 
-    private class TransferFromFileEvent implements Writeable, Runnable {
-        private final CountDownLatch latch;
+    private class TransferFromFileEvent implements Writeable, EventProcessor, Runnable {
+        private final DefaultFile.TransferedToEvent transfer;
 
-        private TransferFromFileEvent(CountDownLatch latch) {
-            this.latch = latch;
+        private TransferFromFileEvent(DefaultFile.TransferedToEvent transfer) {
+            this.transfer = transfer;
+        }
+
+        public void process(Object o) {
+            handleWrite();
         }
 
         /**
          * @see java.lang.Runnable#run()
          */
         public void run() {
-            writeState.set(WRITE_USER_THREAD); // FIXME no write in file thread
-            currentWrite = null;
+            writeState.set(WRITE_SELECTOR_THREAD);
             handleWrite();
         }
         /**
          * @see org.coconut.aio.impl.nio.NioSocket.Writeable#runAndContinue(int)
          */
         public boolean runAndContinue(int state) {
-            writeState.set(WRITE_FILE_TRANSFER);
-            latch.countDown();
+            final boolean done;
+            try {
+                done = transfer.transferTo(channel);
+            } catch (IOException e) {
+                currentWrite = null;
+                writeClose(e);
+                return false;
+            }
+            if (done) {
+                currentWrite = null;
+                return true;
+            } else if (state == WRITE_USER_THREAD) {
+                netHandler.socketRegisterWriteCommand(NioSocket.this, this);
+            } else if (cancelWrite == null) {
+                try {
+                    cancelWrite = netHandler.socketStartWriting(NioSocket.this, channel, this);
+                } catch (IOException ioe) {
+                    writeClose(ioe);
+                }
+            }
             return false;
         }
     }
@@ -51,6 +51,24 @@ public class SelectorMonitor {
     public void wakeup() {
     }
 
+    /**
+     * A command was handed to the selector, but the selector was not woken
+     * because it was already awake or the command was added by the selector
+     * thread itself.
+     */
+    public void wakeupSuppressed() {
+    }
+
+    /**
+     * Called after the selector thread has run a batch of queued commands, such
+     * as channel registrations.
+     * 
+     * @param count
+     *            the number of commands that was run
+     */
+    public void processedEvents(int count) {
+    }
+
     /**
      * The selector was closed
      * 
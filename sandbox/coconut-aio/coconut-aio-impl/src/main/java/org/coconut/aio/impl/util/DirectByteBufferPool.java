@@ -0,0 +1,263 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+
+package org.coconut.aio.impl.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.coconut.aio.ByteBufferPool;
+
+/**
+ * A size-classed pool of direct byte buffers. Requested capacities are rounded
+ * up to the nearest power of two between the minimum and maximum capacity of
+ * the pool, and each such size class is pooled separately. Requests larger than
+ * the maximum capacity are always allocated, and such buffers are never pooled.
+ * <p>
+ * Each thread keeps a small cache of buffers per size class, so a thread that
+ * returns the buffers it borrows, such as a selector thread, normally never
+ * touches any shared state. Buffers that do not fit in the thread local cache
+ * are kept in a shared queue per size class, up to a maximum number of
+ * buffers.
+ * <p>
+ * The pool keeps track of the buffers it currently holds by identity, so a
+ * buffer that is returned twice is rejected instead of being handed out to two
+ * borrowers.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class DirectByteBufferPool implements ByteBufferPool {
+
+    /** The shift of the smallest size class. */
+    private final int minShift;
+
+    /** The largest pooled capacity. */
+    private final int maxCapacity;
+
+    /** The maximum number of buffers kept in each shared queue. */
+    private final int maxShared;
+
+    /** The maximum number of buffers kept per size class per thread. */
+    private final int maxCached;
+
+    /** The shared queues, one per size class. */
+    private final Queue<ByteBuffer>[] shared;
+
+    /** The number of buffers in each of the shared queues. */
+    private final AtomicInteger[] sharedSizes;
+
+    /** The buffers currently held by the pool, either cached or shared. */
+    private final ConcurrentHashMap<Identity, Boolean> pooled =
+        new ConcurrentHashMap<Identity, Boolean>();
+
+    /** The buffers cached by each thread. */
+    private final ThreadLocal<ByteBuffer[][]> cache = new ThreadLocal<ByteBuffer[][]>() {
+        @Override
+        protected ByteBuffer[][] initialValue() {
+            return new ByteBuffer[shared.length][maxCached];
+        }
+    };
+
+    /** The number of pool hits. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of pool misses. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /** The number of discarded buffers. */
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a new DirectByteBufferPool pooling buffers between 512 bytes and
+     * 64 kilobytes, keeping up to 4 buffers per size class per thread and 64
+     * shared buffers per size class.
+     */
+    public DirectByteBufferPool() {
+        this(512, 64 * 1024, 4, 64);
+    }
+
+    /**
+     * Creates a new DirectByteBufferPool.
+     *
+     * @param minCapacity
+     *            the capacity of the smallest size class, rounded up to a
+     *            power of two
+     * @param maxCapacity
+     *            the capacity of the largest size class, rounded up to a power
+     *            of two
+     * @param maxCachedPerThread
+     *            the maximum number of buffers kept per size class per thread
+     * @param maxShared
+     *            the maximum number of buffers kept per size class in the
+     *            shared pool
+     * @throws IllegalArgumentException
+     *             if the minimum capacity is not positive or greater than the
+     *             maximum capacity, or if any of the maximum number of buffers
+     *             is negative
+     */
+    @SuppressWarnings("unchecked")
+    public DirectByteBufferPool(int minCapacity, int maxCapacity, int maxCachedPerThread,
+        int maxShared) {
+        if (minCapacity <= 0) {
+            throw new IllegalArgumentException("minCapacity must be positive, was "
+                + minCapacity);
+        } else if (maxCapacity < minCapacity) {
+            throw new IllegalArgumentException(
+                "maxCapacity must be greater than or equal to minCapacity, was " + maxCapacity);
+        } else if (maxCapacity > 1 << 30) {
+            throw new IllegalArgumentException("maxCapacity must be at most 2^30, was "
+                + maxCapacity);
+        } else if (maxCachedPerThread < 0) {
+            throw new IllegalArgumentException("maxCachedPerThread must not be negative, was "
+                + maxCachedPerThread);
+        } else if (maxShared < 0) {
+            throw new IllegalArgumentException("maxShared must not be negative, was "
+                + maxShared);
+        }
+        this.minShift = shiftFor(minCapacity);
+        int maxShift = shiftFor(maxCapacity);
+        this.maxCapacity = 1 << maxShift;
+        this.maxCached = maxCachedPerThread;
+        this.maxShared = maxShared;
+        int classes = maxShift - minShift + 1;
+        shared = new Queue[classes];
+        sharedSizes = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            shared[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            sharedSizes[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @see org.coconut.aio.ByteBufferPool#borrow(int)
+     */
+    public ByteBuffer borrow(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive, was " + capacity);
+        } else if (capacity > maxCapacity) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        int sizeClass = Math.max(shiftFor(capacity), minShift) - minShift;
+        ByteBuffer[] local = cache.get()[sizeClass];
+        ByteBuffer b = null;
+        for (int i = local.length - 1; i >= 0; i--) {
+            if (local[i] != null) {
+                b = local[i];
+                local[i] = null;
+                break;
+            }
+        }
+        if (b == null) {
+            b = shared[sizeClass].poll();
+            if (b != null) {
+                sharedSizes[sizeClass].decrementAndGet();
+            }
+        }
+        if (b == null) {
+            misses.incrementAndGet();
+            b = ByteBuffer.allocateDirect(1 << (sizeClass + minShift));
+        } else {
+            pooled.remove(new Identity(b));
+            hits.incrementAndGet();
+        }
+        b.limit(capacity);
+        return b;
+    }
+
+    /**
+     * @see org.coconut.aio.ByteBufferPool#getNumberOfDiscarded()
+     */
+    public long getNumberOfDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * @see org.coconut.aio.ByteBufferPool#getNumberOfHits()
+     */
+    public long getNumberOfHits() {
+        return hits.get();
+    }
+
+    /**
+     * @see org.coconut.aio.ByteBufferPool#getNumberOfMisses()
+     */
+    public long getNumberOfMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @see org.coconut.aio.ByteBufferPool#returnToPool(java.nio.ByteBuffer)
+     */
+    public void returnToPool(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || buffer.isReadOnly() || capacity > maxCapacity
+            || capacity < 1 << minShift || Integer.bitCount(capacity) != 1) {
+            discarded.incrementAndGet();
+            return;
+        }
+        Identity id = new Identity(buffer);
+        if (pooled.putIfAbsent(id, Boolean.TRUE) != null) {
+            throw new IllegalStateException("buffer has already been returned to the pool");
+        }
+        buffer.clear();
+        int sizeClass = shiftFor(capacity) - minShift;
+        ByteBuffer[] local = cache.get()[sizeClass];
+        for (int i = 0; i < local.length; i++) {
+            if (local[i] == null) {
+                local[i] = buffer;
+                return;
+            }
+        }
+        if (sharedSizes[sizeClass].incrementAndGet() <= maxShared) {
+            shared[sizeClass].offer(buffer);
+        } else {
+            sharedSizes[sizeClass].decrementAndGet();
+            pooled.remove(id);
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the exponent of the smallest power of two that is greater than
+     * or equal to the specified value.
+     *
+     * @param value
+     *            a positive value
+     * @return the exponent of the smallest power of two that is greater than
+     *         or equal to the specified value
+     */
+    static int shiftFor(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value - 1);
+    }
+
+    /**
+     * Wraps a buffer so it is compared by identity. ByteBuffer.equals and
+     * ByteBuffer.hashCode depend on the content of the buffer.
+     */
+    static final class Identity {
+        private final ByteBuffer buffer;
+
+        Identity(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity && ((Identity) obj).buffer == buffer;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+    }
+}
@@ -4,7 +4,14 @@
 
 package org.coconut.aio;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -127,4 +134,98 @@ public class AsyncFileTest extends AioTestCase {
         file1.close().getIO();
     }
 
+    public void testTransferTo() throws IOException {
+        final File f = newFile("0123456789");
+        final AsyncFile file = getFactory().openFile();
+        try {
+            file.openFile(f, "r").getIO();
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final AsyncFile.TransferedTo t = file.transferTo(2, 5, Channels.newChannel(baos));
+            assertEquals(5, t.getIO().longValue());
+            assertEquals(5, t.getBytesTransfered());
+            assertEquals("23456", new String(baos.toByteArray(), "ISO-8859-1"));
+        } finally {
+            file.close().getIO();
+            f.delete();
+        }
+    }
+
+    public void testMap() throws IOException {
+        final File f = newFile("0123456789");
+        final AsyncFile file = getFactory().openFile();
+        try {
+            file.openFile(f, "r").getIO();
+            final AsyncFile.MapFile m = file.map(FileChannel.MapMode.READ_ONLY, 3, 4);
+            final MappedByteBuffer b = m.getIO();
+            assertEquals(4, b.remaining());
+            assertEquals("3456", toString(b));
+            assertSame(FileChannel.MapMode.READ_ONLY, m.getMode());
+            assertEquals(3, m.getPosition());
+            assertEquals(4, m.getSize());
+        } finally {
+            file.close().getIO();
+            f.delete();
+        }
+    }
+
+    public void testScatterGather() throws IOException {
+        final File f = newFile("0123456789");
+        final AsyncFile file = getFactory().openFile();
+        try {
+            file.openFile(f, "rw").getIO();
+            final ByteBuffer[] srcs = new ByteBuffer[] { toBuffer("xx"), toBuffer("ab"),
+                    toBuffer("cde") };
+            assertEquals(5, file.write(srcs, 1, 2, 3).getIO().longValue());
+
+            final ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(1),
+                    ByteBuffer.allocate(4), ByteBuffer.allocate(3) };
+            assertEquals(8, file.read(dsts, 0, 3, 2).getIO().longValue());
+            assertEquals("2", toString((ByteBuffer) dsts[0].flip()));
+            assertEquals("abcd", toString((ByteBuffer) dsts[1].flip()));
+            assertEquals("e89", toString((ByteBuffer) dsts[2].flip()));
+        } finally {
+            file.close().getIO();
+            f.delete();
+        }
+    }
+
+    public void testScatterAtEndOfFile() throws IOException {
+        final File f = newFile("0123456789");
+        final AsyncFile file = getFactory().openFile();
+        try {
+            file.openFile(f, "r").getIO();
+            final ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(4),
+                    ByteBuffer.allocate(4), ByteBuffer.allocate(4) };
+            assertEquals(2, file.read(dsts, 0, 3, 8).getIO().longValue());
+            assertEquals("89", toString((ByteBuffer) dsts[0].flip()));
+            assertEquals(0, dsts[1].position());
+            assertEquals(0, dsts[2].position());
+
+            assertEquals(-1, file.read(dsts, 1, 2, 10).getIO().longValue());
+        } finally {
+            file.close().getIO();
+            f.delete();
+        }
+    }
+
+    private static File newFile(String content) throws IOException {
+        final File f = File.createTempFile("coconut", ".aio");
+        final FileOutputStream fos = new FileOutputStream(f);
+        try {
+            fos.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            fos.close();
+        }
+        return f;
+    }
+
+    private static ByteBuffer toBuffer(String s) throws IOException {
+        return ByteBuffer.wrap(s.getBytes("ISO-8859-1"));
+    }
+
+    private static String toString(ByteBuffer b) throws IOException {
+        final byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        return new String(bytes, "ISO-8859-1");
+    }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import org.coconut.aio.impl.nio.NioAioProvider;
 import org.coconut.aio.monitor.SocketMonitor;
 import org.coconut.core.EventProcessor;
 
@@ -130,4 +131,33 @@ public class AsyncSocketCloseTest extends AioTestCase {
         assertSame(socket, awaitOnQueue(q));
     }
 
+    public void testCloseReleasesSelector() throws IOException {
+        getFactory(); // ignores the MXBeans already registered by the default provider
+        NioAioProvider provider = new NioAioProvider(2,
+            NioAioProvider.SelectorBalancing.ROUND_ROBIN);
+        try {
+            AsyncSocket[] sockets = new AsyncSocket[4];
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = provider.openSocket();
+            }
+            assertEquals(2, provider.getNumberOfChannels(0));
+            assertEquals(2, provider.getNumberOfChannels(1));
+
+            sockets[0].closeNow().getIO();
+            assertEquals(1, provider.getNumberOfChannels(0));
+            // closing a socket again must not release its selectors again
+            sockets[0].closeNow().getIO();
+            sockets[0].close();
+            assertEquals(1, provider.getNumberOfChannels(0));
+
+            for (AsyncSocket s : sockets) {
+                s.closeNow().getIO();
+            }
+            assertEquals(0, provider.getNumberOfChannels(0));
+            assertEquals(0, provider.getNumberOfChannels(1));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.coconut.aio.monitor.SocketMonitor;
+import org.coconut.aio.spi.AioProvider;
 import org.coconut.core.Offerable;
 
 
@@ -261,5 +262,50 @@ public class AsyncSocketReadTest extends AioTestCase {
         socket.close().getIO();
     }
 
+    public void testReadPooledWriteAndRelease() throws IOException, ClosedChannelException,
+            InterruptedException {
+        final int port = getNextPort();
+        final AsyncServerSocket socket = getFactory().openServerSocket().bind(createBindingAddress(port));
+        final SocketChannel writeChannel = SocketChannel.open();
+        final BlockingQueue q = new LinkedBlockingQueue();
+        final BlockingQueue<ByteBuffer> buffers = new LinkedBlockingQueue<ByteBuffer>();
+        final BlockingQueue<AioFuture> writes = new LinkedBlockingQueue<AioFuture>();
+        final Offerable o = createQueueOfferableOnce(q);
+        final String str = "HelloWorld";
+
+        socket.startAccepting(o);
+
+        writeChannel.connect(createConnectAddress(port));
+        writeChannel.write(getBytebuffer(str));
+
+        final AsyncSocket acceptedSocket = ((AsyncServerSocket.SocketAccepted) awaitOnQueue(q)).getAcceptedSocket();
+        acceptedSocket.setReader(new ReadHandler<AsyncSocket>() {
+            public void handle(AsyncSocket socket) throws IOException {
+                ByteBuffer b = socket.readPooled();
+                if (b != null) {
+                    // echo the bytes, the buffer outlives the handler until written
+                    writes.add(socket.writeAsync(b));
+                    buffers.add(b);
+                }
+            }
+        });
+
+        ByteBuffer b = (ByteBuffer) awaitOnQueue(buffers);
+        assertTrue(b.isDirect());
+        AioFuture written = (AioFuture) awaitOnQueue(writes);
+        assertEquals(str.length(), ((Number) written.getIO()).intValue());
+        readAndEqual(writeChannel, str);
+
+        // the buffer was returned to the pool exactly once, when it was written
+        try {
+            AioProvider.provider().getBufferPool().returnToPool(b);
+            fail("buffer was not returned to the pool");
+        } catch (IllegalStateException ok) {/* ok */}
+
+        acceptedSocket.closeNow().getIO();
+        writeChannel.close();
+        socket.close().getIO();
+    }
+
     //todo test read erroneous
 }
\ No newline at end of file
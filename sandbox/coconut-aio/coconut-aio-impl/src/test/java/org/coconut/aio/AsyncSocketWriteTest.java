@@ -11,9 +11,13 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.coconut.aio.AsyncSocket.Written;
+import org.coconut.aio.impl.BaseSocket;
+import org.coconut.aio.monitor.SocketMonitor;
+import org.coconut.aio.spi.AioProvider;
 import org.coconut.core.Offerable;
 
 
@@ -136,6 +140,100 @@ public class AsyncSocketWriteTest extends AioTestCase {
         socket.closeNow().getIO();
     }
 
+    public void testWritePooledRead() throws IOException, ClosedChannelException,
+            InterruptedException {
+        final int port = getNextPort();
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        final AsyncSocket socket = getFactory().openSocket();
+
+        channel.socket().bind(createBindingAddress(port));
+
+        socket.connect(createConnectAddress(port));
+
+        final SocketChannel peer = channel.accept();
+        peer.configureBlocking(false);
+        peer.write(ByteBuffer.wrap("Hello".getBytes()));
+
+        ByteBuffer b = null;
+        for (int i = 0; i < 100 && b == null; i++) {
+            b = socket.readPooled();
+            if (b == null) {
+                Thread.sleep(10);
+            }
+        }
+        assertNotNull(b);
+        assertEquals(5, b.remaining());
+
+        // the write owns the buffer, releasing it again here would be rejected by the pool
+        assertEquals(5, ((Number) socket.writeAsync(b).getIO()).intValue());
+        assertNull(socket.readPooled());
+        readAndEqual(peer, "Hello");
+
+        // the buffer was returned to the pool exactly once, when it was written
+        try {
+            AioProvider.provider().getBufferPool().returnToPool(b);
+            fail("buffer was not returned to the pool");
+        } catch (IllegalStateException ok) {/* ok */}
+
+        peer.close();
+        channel.close();
+        socket.closeNow().getIO();
+    }
+
+    public void testCoalescedWrites() throws IOException, ClosedChannelException,
+            InterruptedException {
+        final int port = getNextPort();
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        final AsyncSocket socket = getFactory().openSocket();
+        final AtomicInteger coalesced = new AtomicInteger();
+        socket.setGroup(AsyncSocketGroup.open().setWriteCoalescing(1024, 16));
+        socket.setMonitor(new SocketMonitor() {
+            public void coalescedWrite(AsyncSocket s, int writes, int buffers, long bytes) {
+                coalesced.addAndGet(writes);
+            }
+        });
+        channel.socket().bind(createBindingAddress(port));
+
+        socket.connect(createConnectAddress(port));
+
+        final SocketChannel peer = channel.accept();
+        final BlockingQueue q = new LinkedBlockingQueue();
+
+        // fill the socket buffers, so the following writes are queued and coalesced
+        final int largeSize = 16 * 1024 * 1024;
+        AioFuture large = socket.writeAsync(DebugUtil.allocate(largeSize, (byte) 45));
+        large.setDestination(createQueueOfferableOnce(q));
+        String[] strings = new String[] { "a", "bb", "ccc", "dddd", "eeeee" };
+        AioFuture[] futures = new AioFuture[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            futures[i] = socket.writeAsync(ByteBuffer.wrap(strings[i].getBytes()));
+            futures[i].setDestination(createQueueOfferableOnce(q));
+        }
+
+        ByteBuffer read = ByteBuffer.allocate(largeSize + 15);
+        while (read.hasRemaining()) {
+            assertTrue(peer.read(read) >= 0);
+        }
+        assertEquals("abbcccddddeeeee", new String(read.array(), largeSize, 15));
+
+        assertEquals(largeSize, ((Number) large.getIO()).intValue());
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(strings[i].length(), ((Number) futures[i].getIO()).intValue());
+        }
+        // the writes completed in the order they were queued
+        assertEquals(largeSize, ((Written) awaitOnQueue(q)).getBytesWritten());
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(strings[i].length(), ((Written) awaitOnQueue(q)).getBytesWritten());
+        }
+        assertEquals(strings.length, coalesced.get());
+        // every write is counted once, however many partial writes it took
+        assertEquals(largeSize + 15, ((BaseSocket) socket).getNumberOfBytesWritten());
+
+        peer.close();
+        channel.close();
+        socket.closeNow().getIO();
+    }
+
     public void testWrites() throws IOException, ClosedChannelException, InterruptedException {
 
         final int numberOfBuffers = 256;
@@ -86,6 +86,11 @@ public class DebugSocketMonitor extends SocketMonitor {
         ByteUtil.pushBytes(buffers, offset, length);
     }
 
+    public void coalescedWrite(AsyncSocket socket, int writes, int buffers, long bytes) {
+        log("Socket[" + socket.getId() + "] coalesced " + writes + " writes of " + bytes
+                + " bytes into " + buffers + " buffers");
+    }
+
     public void postWrite(AsyncSocket socket, long bytes, ByteBuffer[] buffers, int offset, int length, int attempts,
             Throwable throwable) {
         log("Socket[" + socket.getId() + "] wrote " + bytes + " bytes to " + socket.getInetAddress() + ":"
@@ -0,0 +1,120 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.cache.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.coconut.attribute.AttributeMap;
+import org.coconut.cache.service.loading.AbstractCacheLoader;
+import org.coconut.cache.util.ConcurrentLoadingMap;
+import org.coconut.management.benchmark.Benchmark;
+import org.coconut.management.benchmark.BenchmarkRunner;
+import org.coconut.management.benchmark.SimpelRandom;
+
+/**
+ * Benchmarks concurrent retrievals from a {@link ConcurrentLoadingMap} against those
+ * from a {@link ConcurrentHashMap}. The same number of threads repeatedly retrieves
+ * random keys from a fixed key space that fits in both maps, so the difference is the
+ * overhead of recording statistics, expiration checks and marking entries as used.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class ConcurrentLoadingMapBenchmark implements Benchmark {
+
+    private final Map<Integer, Integer> map;
+
+    private final int size;
+
+    private final int threads;
+
+    private final Integer[] keyValues;
+
+    public ConcurrentLoadingMapBenchmark(Map<Integer, Integer> map, int size, int threads) {
+        if (map == null) {
+            throw new NullPointerException("map is null");
+        } else if (size < 0) {
+            throw new IllegalArgumentException();
+        } else if (threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.map = map;
+        this.size = size;
+        this.threads = threads;
+        keyValues = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keyValues[i] = i;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Map<Integer, Integer> chm = new ConcurrentHashMap<Integer, Integer>();
+        BenchmarkRunner.run(new ConcurrentLoadingMapBenchmark(chm, size, threads), 10000000);
+
+        Map<Integer, Integer> clm = new ConcurrentLoadingMap<Integer, Integer>(
+                new IdentityLoader(), size);
+        BenchmarkRunner.run(new ConcurrentLoadingMapBenchmark(clm, size, threads), 10000000);
+    }
+
+    public void benchmark(int iterations) {
+        final int perThread = iterations / threads;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    getAmount(new SimpelRandom(size), perThread);
+                    done.countDown();
+                }
+            }.start();
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @see org.coconut.cache.benchmark.Benchmark#getDescription()
+     */
+    public String getDescription() {
+        return "Benchmarks concurrent calls to get() of a " + map.getClass().getSimpleName()
+                + " using " + threads + " threads";
+    }
+
+    /**
+     * @see org.coconut.core.Named#getName()
+     */
+    public String getName() {
+        return map.getClass().getSimpleName() + ".get() benchmark";
+    }
+
+    /**
+     * @see org.coconut.cache.benchmark.Benchmark#warmup()
+     */
+    public void warmup() throws Exception {
+        for (int i = 0; i < size; i++) {
+            Integer v = keyValues[i];
+            map.put(v, v);
+        }
+        benchmark(size * 10);
+    }
+
+    private void getAmount(SimpelRandom random, int amount) {
+        for (int i = 0; i < amount; i++) {
+            map.get(keyValues[random.next(size)]);
+        }
+    }
+
+    /** A loader that maps each key to itself. */
+    static class IdentityLoader extends AbstractCacheLoader<Integer, Integer> {
+        public Integer load(Integer key, AttributeMap attributes) {
+            return key;
+        }
+    }
+}
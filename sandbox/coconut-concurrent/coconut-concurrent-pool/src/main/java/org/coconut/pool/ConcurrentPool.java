@@ -0,0 +1,698 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.pool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool that creates its ressources lazily, using a factory, up to a maximum size. The
+ * pool is designed for a very high borrow and return rate from many threads, and unlike
+ * the semaphore based pools borrowing and returning a ressource normally does not touch
+ * any state shared with other threads.
+ * <p>
+ * Every ressource has an atomic state and is borrowed by changing its state from
+ * available to borrowed. Each thread remembers the last ressource it borrowed or
+ * returned, and will try to borrow that ressource first. A thread that returns the
+ * ressource it borrowed last therefore only has to update the state of the ressource.
+ * Available ressources that are not remembered by a thread are kept on a lock-free
+ * stack shared by all threads. Only if no ressources are available, and no more
+ * ressources can be created, will a borrowing thread look for ressources remembered by
+ * other threads and, failing that, block until a ressource is returned.
+ * <p>
+ * If a maximum idle time is specified, ressources that have not been borrowed for that
+ * amount of time are periodically evicted from the pool by a task scheduled on the
+ * specified scheduler. If an evicted ressource implements {@link Closeable} it is
+ * closed.
+ * <p>
+ * Ressources are identified by identity, so the same ressource cannot be added to the
+ * pool more than once.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ * @param <E>
+ *            the type of ressources in the pool
+ */
+public class ConcurrentPool<E> implements Pool<E>, PoolMXBean {
+
+    /** The factory used for creating new ressources. */
+    private final Callable<? extends E> factory;
+
+    /** The maximum number of ressources in the pool. */
+    private final int maximumSize;
+
+    /** The maximum time in nanoseconds a ressource can be idle, or 0 for no limit. */
+    private final long maxIdleNanos;
+
+    /** All ressources in the pool, keyed by identity. */
+    private final ConcurrentHashMap<Entry<E>, Entry<E>> entries = new ConcurrentHashMap<Entry<E>, Entry<E>>();
+
+    /** The top of the stack of shared available ressources. */
+    private final AtomicReference<Node<E>> top = new AtomicReference<Node<E>>();
+
+    /** The last ressource borrowed or returned by each thread. */
+    private final ThreadLocal<Entry<E>> local = new ThreadLocal<Entry<E>>();
+
+    /** The current number of ressources, including ressources being created. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The number of threads waiting for a ressource. */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /** Lock held by threads waiting for a ressource. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a ressource is returned while threads are waiting. */
+    private final Condition available = lock.newCondition();
+
+    /** The number of ressources created. */
+    private final AtomicLong created = new AtomicLong();
+
+    /** The number of ressources evicted. */
+    private final AtomicLong evicted = new AtomicLong();
+
+    /** The number of borrows that timed out. */
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /** The scheduled eviction task, or <tt>null</tt> if idle ressources are kept. */
+    private final ScheduledFuture<?> evictionTask;
+
+    /**
+     * Creates a new ConcurrentPool that never evicts idle ressources.
+     *
+     * @param factory
+     *            the factory used for creating new ressources
+     * @param maximumSize
+     *            the maximum number of ressources in the pool
+     * @throws NullPointerException
+     *             if the specified factory is <tt>null</tt>
+     * @throws IllegalArgumentException
+     *             if the maximum size is not positive
+     */
+    public ConcurrentPool(Callable<? extends E> factory, int maximumSize) {
+        this(factory, maximumSize, 0, TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Creates a new ConcurrentPool that evicts ressources that has been idle for the
+     * specified amount of time.
+     *
+     * @param factory
+     *            the factory used for creating new ressources
+     * @param maximumSize
+     *            the maximum number of ressources in the pool
+     * @param maxIdleTime
+     *            the maximum time a ressource can be idle before it is evicted, or
+     *            <tt>0</tt> if idle ressources should never be evicted
+     * @param unit
+     *            the time unit of the maxIdleTime argument
+     * @param scheduler
+     *            the scheduler used for periodically evicting idle ressources, can be
+     *            <tt>null</tt> if the maximum idle time is <tt>0</tt>
+     * @throws NullPointerException
+     *             if the specified factory or time unit is <tt>null</tt>, or if the
+     *             maximum idle time is positive and the scheduler is <tt>null</tt>
+     * @throws IllegalArgumentException
+     *             if the maximum size is not positive or the maximum idle time is
+     *             negative
+     */
+    public ConcurrentPool(Callable<? extends E> factory, int maximumSize, long maxIdleTime,
+            TimeUnit unit, ScheduledExecutorService scheduler) {
+        if (factory == null) {
+            throw new NullPointerException("factory is null");
+        } else if (unit == null) {
+            throw new NullPointerException("unit is null");
+        } else if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive, was "
+                    + maximumSize);
+        } else if (maxIdleTime < 0) {
+            throw new IllegalArgumentException("maxIdleTime must not be negative, was "
+                    + maxIdleTime);
+        } else if (maxIdleTime > 0 && scheduler == null) {
+            throw new NullPointerException("scheduler is null");
+        }
+        this.factory = factory;
+        this.maximumSize = maximumSize;
+        this.maxIdleNanos = unit.toNanos(maxIdleTime);
+        if (maxIdleNanos > 0) {
+            // check twice per idle period, so nothing is idle for more than 1.5 periods
+            long period = Math.max(1, maxIdleNanos / 2);
+            evictionTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictIdle();
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+        } else {
+            evictionTask = null;
+        }
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#borrow()
+     */
+    public E borrow() throws InterruptedException {
+        return acquire(0, false).item;
+    }
+
+    /**
+     * Acquires the given number of ressources from this pool, one at a time. Any
+     * ressources acquired are returned to the pool if the thread is interrupted.
+     *
+     * @see org.coconut.pool.Pool#borrow(int)
+     */
+    public Collection<E> borrow(int ressources) throws InterruptedException {
+        checkRessources(ressources);
+        ArrayList<E> result = new ArrayList<E>(ressources);
+        try {
+            for (int i = 0; i < ressources; i++) {
+                result.add(acquire(0, false).item);
+            }
+        } catch (InterruptedException e) {
+            returnToPool(result);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#tryBorrow()
+     */
+    public E tryBorrow() {
+        Entry<E> e = acquire();
+        return e == null ? null : e.item;
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#tryBorrow(int)
+     */
+    public Collection<E> tryBorrow(int ressources) {
+        checkRessources(ressources);
+        ArrayList<E> result = new ArrayList<E>(ressources);
+        for (int i = 0; i < ressources; i++) {
+            Entry<E> e = acquire();
+            if (e == null) {
+                returnToPool(result);
+                return null;
+            }
+            result.add(e.item);
+        }
+        return result;
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#tryBorrow(int, long, java.util.concurrent.TimeUnit)
+     */
+    public Collection<E> tryBorrow(int ressources, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        checkRessources(ressources);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ArrayList<E> result = new ArrayList<E>(ressources);
+        try {
+            for (int i = 0; i < ressources; i++) {
+                Entry<E> e = acquire(deadline - System.nanoTime(), true);
+                if (e == null) {
+                    returnToPool(result);
+                    return null;
+                }
+                result.add(e.item);
+            }
+        } catch (InterruptedException e) {
+            returnToPool(result);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#tryBorrow(long, java.util.concurrent.TimeUnit)
+     */
+    public E tryBorrow(long timeout, TimeUnit unit) throws InterruptedException {
+        Entry<E> e = acquire(unit.toNanos(timeout), true);
+        return e == null ? null : e.item;
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#returnToPool(java.lang.Object)
+     */
+    public void returnToPool(E item) {
+        if (item == null) {
+            throw new NullPointerException("item is null");
+        }
+        final Entry<E> last = local.get();
+        Entry<E> e = last;
+        if (e == null || e.item != item) {
+            e = entries.get(new Entry<E>(item, Entry.EVICTED));
+            if (e == null) {
+                throw new IllegalArgumentException("item does not originate from this pool");
+            }
+        }
+        if (maxIdleNanos > 0) {
+            e.lastReturned = System.nanoTime();
+        }
+        if (!e.release()) {
+            throw new IllegalStateException("item has already been returned to the pool");
+        }
+        // the ressource must be available before we read waiters, see acquire(long,
+        // boolean)
+        if (waiters.get() > 0) {
+            push(e);
+            signalWaiters();
+        } else if (e != last) {
+            local.set(e);
+            // make sure the ressource we no longer remember can be found by others
+            if (last != null && last.isAvailable()) {
+                push(last);
+            }
+        }
+    }
+
+    /**
+     * @see org.coconut.pool.Pool#returnToPool(java.util.Collection)
+     */
+    @SuppressWarnings("unchecked")
+    public void returnToPool(Collection<? super E> items) {
+        for (Object o : items) {
+            returnToPool((E) o);
+        }
+    }
+
+    /**
+     * Returns the number of ressources that can currently be borrowed without
+     * blocking. This includes both idle ressources and ressources that can still be
+     * created.
+     *
+     * @see org.coconut.pool.Pool#getAvailable()
+     */
+    public int getAvailable() {
+        int count = maximumSize - size.get();
+        for (Entry<E> e : entries.values()) {
+            if (e.isAvailable()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the current number of ressources created by the pool and not yet
+     * evicted.
+     *
+     * @see org.coconut.pool.Pool#getSize()
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the maximum number of ressources in the pool.
+     *
+     * @return the maximum number of ressources in the pool
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @see org.coconut.pool.PoolMXBean#getNumberOfCreated()
+     */
+    public long getNumberOfCreated() {
+        return created.get();
+    }
+
+    /**
+     * @see org.coconut.pool.PoolMXBean#getNumberOfEvicted()
+     */
+    public long getNumberOfEvicted() {
+        return evicted.get();
+    }
+
+    /**
+     * @see org.coconut.pool.PoolMXBean#getNumberOfTimeouts()
+     */
+    public long getNumberOfTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @see org.coconut.pool.PoolMXBean#getNumberOfWaiters()
+     */
+    public int getNumberOfWaiters() {
+        return waiters.get();
+    }
+
+    /**
+     * @see org.coconut.pool.PoolMXBean#supportsDebugging()
+     */
+    public boolean supportsDebugging() {
+        return false;
+    }
+
+    /**
+     * Evicts all ressources that has been idle for longer than the maximum idle time.
+     * This method is periodically invoked by the scheduler specified when constructing
+     * the pool, but can also be invoked manually. Does nothing if no maximum idle time
+     * was specified.
+     *
+     * @return the number of ressources evicted
+     */
+    public int evictIdle() {
+        if (maxIdleNanos == 0) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        int count = 0;
+        for (Entry<E> e : entries.values()) {
+            if (e.isAvailable() && now - e.lastReturned > maxIdleNanos && e.evict()) {
+                entries.remove(e);
+                size.decrementAndGet();
+                evicted.incrementAndGet();
+                close(e.item);
+                count++;
+            }
+        }
+        if (count > 0) {
+            // remove evicted ressources from the shared stack
+            Node<E> n = top.getAndSet(null);
+            for (; n != null; n = n.next) {
+                if (n.entry.isAvailable()) {
+                    push(n.entry);
+                }
+            }
+            // waiting threads can now create new ressources
+            signalWaiters();
+        }
+        return count;
+    }
+
+    /**
+     * Stops the periodic eviction of idle ressources. Ressources already in the pool
+     * are not affected.
+     */
+    public void shutdown() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+    }
+
+    /**
+     * Tries to acquire a ressource without blocking.
+     *
+     * @return the acquired ressource or <tt>null</tt> if no ressource was available
+     */
+    private Entry<E> acquire() {
+        Entry<E> e = local.get();
+        if (e != null && e.borrow()) {
+            return e;
+        }
+        e = pop();
+        if (e == null) {
+            e = create();
+            if (e == null) {
+                e = steal();
+                if (e == null) {
+                    return null;
+                }
+            }
+        }
+        local.set(e);
+        return e;
+    }
+
+    /**
+     * Acquires a ressource, blocking if none is available.
+     *
+     * @param nanos
+     *            the maximum time to wait in nanoseconds
+     * @param timed
+     *            whether or not to only wait for the specified time
+     * @return the acquired ressource or <tt>null</tt> if the waiting time elapsed
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    private Entry<E> acquire(long nanos, boolean timed) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Entry<E> e = acquire();
+        if (e != null) {
+            return e;
+        }
+        // A returning thread first makes the ressource available and then reads
+        // waiters. Since we increment waiters before looking for available ressources,
+        // either we see the ressource or the returning thread sees us and pushes the
+        // ressource and signals under the lock.
+        waiters.incrementAndGet();
+        try {
+            for (;;) {
+                e = acquire();
+                if (e != null) {
+                    return e;
+                }
+                lock.lockInterruptibly();
+                try {
+                    e = pop();
+                    if (e != null) {
+                        local.set(e);
+                        return e;
+                    } else if (size.get() < maximumSize) {
+                        continue; // a ressource was evicted, try to create a new one
+                    } else if (!timed) {
+                        available.await();
+                    } else if (nanos <= 0) {
+                        timeouts.incrementAndGet();
+                        return null;
+                    } else {
+                        nanos = available.awaitNanos(nanos);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Creates a new ressource if the maximum size of the pool has not been reached.
+     *
+     * @return the new ressource in the borrowed state, or <tt>null</tt> if the pool
+     *         is full
+     * @throws PoolException
+     *             if the factory failed to create the ressource
+     */
+    private Entry<E> create() {
+        for (;;) {
+            int current = size.get();
+            if (current >= maximumSize) {
+                return null;
+            } else if (size.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        boolean success = false;
+        try {
+            E item = factory.call();
+            if (item == null) {
+                throw new PoolException("factory returned null", null);
+            }
+            Entry<E> e = new Entry<E>(item, Entry.BORROWED);
+            if (entries.putIfAbsent(e, e) != null) {
+                throw new PoolException("factory returned a ressource already in the pool",
+                        null);
+            }
+            created.incrementAndGet();
+            success = true;
+            return e;
+        } catch (PoolException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PoolException("factory failed to create a new ressource", e);
+        } finally {
+            if (!success) {
+                size.decrementAndGet();
+                signalWaiters();
+            }
+        }
+    }
+
+    /**
+     * Tries to borrow an available ressource that is remembered by another thread.
+     *
+     * @return the borrowed ressource or <tt>null</tt> if no ressource was available
+     */
+    private Entry<E> steal() {
+        for (Entry<E> e : entries.values()) {
+            if (e.borrow()) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pushes the specified ressource onto the shared stack.
+     *
+     * @param e
+     *            the ressource to push
+     */
+    private void push(Entry<E> e) {
+        Node<E> n = new Node<E>(e);
+        do {
+            n.next = top.get();
+        } while (!top.compareAndSet(n.next, n));
+    }
+
+    /**
+     * Borrows a ressource from the shared stack. Nodes of ressources that was
+     * borrowed by some other path are discarded.
+     *
+     * @return the borrowed ressource or <tt>null</tt> if the stack was empty
+     */
+    private Entry<E> pop() {
+        for (;;) {
+            Node<E> n = top.get();
+            if (n == null) {
+                return null;
+            } else if (top.compareAndSet(n, n.next) && n.entry.borrow()) {
+                return n.entry;
+            }
+        }
+    }
+
+    /**
+     * Wakes up a waiting thread, if any.
+     */
+    private void signalWaiters() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks the number of ressources requested.
+     *
+     * @param ressources
+     *            the number of ressources requested
+     */
+    private void checkRessources(int ressources) {
+        if (ressources < 0) {
+            throw new IllegalArgumentException("ressources must not be negative, was "
+                    + ressources);
+        } else if (ressources > maximumSize) {
+            throw new IllegalArgumentException(
+                    "ressources must not be greater than the maximum size of the pool, was "
+                            + ressources);
+        }
+    }
+
+    /**
+     * Closes the specified ressource if it implements {@link Closeable}.
+     *
+     * @param item
+     *            the ressource to close
+     */
+    private static void close(Object item) {
+        if (item instanceof Closeable) {
+            try {
+                ((Closeable) item).close();
+            } catch (IOException ignore) {
+                // the ressource is no longer part of the pool
+            }
+        }
+    }
+
+    /**
+     * A ressource in the pool along with its state. Entries are equal if they hold the
+     * same ressource.
+     */
+    static final class Entry<E> {
+        /** The state of a ressource that can be borrowed. */
+        static final int AVAILABLE = 0;
+
+        /** The state of a ressource that is borrowed. */
+        static final int BORROWED = 1;
+
+        /** The state of a ressource that has been evicted. */
+        static final int EVICTED = 2;
+
+        /** Updates the state of entries. */
+        @SuppressWarnings("unchecked")
+        private static final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater
+                .newUpdater(Entry.class, "state");
+
+        /** The ressource. */
+        final E item;
+
+        /** The state of the ressource. */
+        private volatile int state;
+
+        /** The time the ressource was last returned, in nanoseconds. */
+        volatile long lastReturned = System.nanoTime();
+
+        Entry(E item, int state) {
+            this.item = item;
+            this.state = state;
+        }
+
+        boolean borrow() {
+            return state == AVAILABLE && STATE.compareAndSet(this, AVAILABLE, BORROWED);
+        }
+
+        boolean release() {
+            return STATE.compareAndSet(this, BORROWED, AVAILABLE);
+        }
+
+        boolean evict() {
+            return STATE.compareAndSet(this, AVAILABLE, EVICTED);
+        }
+
+        boolean isAvailable() {
+            return state == AVAILABLE;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry<?>) obj).item == item;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(item);
+        }
+    }
+
+    /** A node in the shared stack. */
+    static final class Node<E> {
+        /** The ressource. */
+        final Entry<E> entry;
+
+        /** The next node in the stack. */
+        Node<E> next;
+
+        Node(Entry<E> entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -11,4 +11,24 @@ package org.coconut.pool;
  */
 public class PoolException extends RuntimeException{
 
+    /** serialVersionUID. */
+    private static final long serialVersionUID = -3186270745208245311L;
+
+    /**
+     * Constructs a new PoolException with <tt>null</tt> as its detail message.
+     */
+    public PoolException() {
+    }
+
+    /**
+     * Constructs a new PoolException with the specified detail message and cause.
+     * 
+     * @param message
+     *            the detail message
+     * @param cause
+     *            the cause or <tt>null</tt> if the cause is nonexistent or unknown
+     */
+    public PoolException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
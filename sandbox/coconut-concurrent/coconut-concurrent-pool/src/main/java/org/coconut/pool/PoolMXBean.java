@@ -13,4 +13,33 @@ public interface PoolMXBean {
     int getAvailable();
 
     boolean supportsDebugging();
+
+    /**
+     * Returns the number of ressources the pool has created.
+     * 
+     * @return the number of ressources the pool has created
+     */
+    long getNumberOfCreated();
+
+    /**
+     * Returns the number of ressources the pool has evicted because they were idle.
+     * 
+     * @return the number of ressources the pool has evicted
+     */
+    long getNumberOfEvicted();
+
+    /**
+     * Returns the number of timed borrows that failed because no ressource became
+     * available within the waiting time.
+     * 
+     * @return the number of timed borrows that failed
+     */
+    long getNumberOfTimeouts();
+
+    /**
+     * Returns the number of threads currently waiting for a ressource.
+     * 
+     * @return the number of threads currently waiting for a ressource
+     */
+    int getNumberOfWaiters();
 }
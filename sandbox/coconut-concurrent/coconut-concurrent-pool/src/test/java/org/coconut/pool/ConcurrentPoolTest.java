@@ -0,0 +1,204 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.pool;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ConcurrentPool}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id$
+ */
+public class ConcurrentPoolTest extends TestCase {
+
+    public void testBorrowReturn() throws InterruptedException {
+        ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 2);
+        assertEquals(0, pool.getSize());
+        assertEquals(2, pool.getAvailable());
+
+        Ressource r = pool.borrow();
+        assertNotNull(r);
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getAvailable());
+        assertEquals(1, pool.getNumberOfCreated());
+
+        pool.returnToPool(r);
+        assertEquals(1, pool.getSize());
+        assertEquals(2, pool.getAvailable());
+        assertSame(r, pool.borrow());
+        assertEquals(1, pool.getNumberOfCreated());
+
+        Ressource r2 = pool.borrow();
+        assertNotSame(r, r2);
+        assertEquals(2, pool.getNumberOfCreated());
+        assertEquals(0, pool.getAvailable());
+        assertNull(pool.tryBorrow());
+    }
+
+    public void testReturnTwice() throws InterruptedException {
+        ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 1);
+        Ressource r = pool.borrow();
+        pool.returnToPool(r);
+        try {
+            pool.returnToPool(r);
+            fail("should throw IllegalStateException");
+        } catch (IllegalStateException ok) {/* ok */}
+        try {
+            pool.returnToPool(new Ressource());
+            fail("should throw IllegalArgumentException");
+        } catch (IllegalArgumentException ok) {/* ok */}
+    }
+
+    public void testBorrowTimeout() throws InterruptedException {
+        ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 1);
+        Ressource r = pool.borrow();
+        long start = System.nanoTime();
+        assertNull(pool.tryBorrow(20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, pool.getNumberOfTimeouts());
+        assertEquals(0, pool.getNumberOfWaiters());
+
+        pool.returnToPool(r);
+        assertSame(r, pool.tryBorrow(20, TimeUnit.MILLISECONDS));
+        assertEquals(1, pool.getNumberOfTimeouts());
+    }
+
+    public void testWaiterWokenOnReturn() throws Exception {
+        final ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 1);
+        Ressource r = pool.borrow();
+        final AtomicReference<Ressource> borrowed = new AtomicReference<Ressource>();
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    borrowed.set(pool.borrow());
+                } catch (InterruptedException ignore) {/* fails below */}
+            }
+        };
+        t.start();
+        awaitWaiters(pool, 1);
+        assertTrue(t.isAlive());
+
+        pool.returnToPool(r);
+        t.join(10000);
+        assertFalse(t.isAlive());
+        assertSame(r, borrowed.get());
+        assertEquals(0, pool.getNumberOfWaiters());
+        assertEquals(1, pool.getNumberOfCreated());
+    }
+
+    public void testEvictIdle() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 2,
+                    10, TimeUnit.MILLISECONDS, scheduler);
+            Ressource idle = pool.borrow();
+            Ressource busy = pool.borrow();
+            pool.returnToPool(idle);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getNumberOfEvicted() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, pool.getNumberOfEvicted());
+            assertTrue(idle.closed);
+            assertFalse(busy.closed);
+            assertEquals(1, pool.getSize());
+            assertEquals(1, pool.getAvailable());
+
+            // a new ressource is created in place of the evicted one
+            Ressource r = pool.borrow();
+            assertNotSame(idle, r);
+            assertEquals(3, pool.getNumberOfCreated());
+            pool.shutdown();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void testEvictIdleDisabled() throws InterruptedException {
+        ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 1);
+        pool.returnToPool(pool.borrow());
+        assertEquals(0, pool.evictIdle());
+        assertEquals(0, pool.getNumberOfEvicted());
+        assertEquals(1, pool.getSize());
+    }
+
+    /**
+     * Tests that a ressource is never handed out to more than one thread at a time.
+     */
+    public void testConcurrentBorrow() throws Exception {
+        final ConcurrentPool<Ressource> pool = new ConcurrentPool<Ressource>(new Factory(), 4);
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final boolean timed = i % 2 == 0;
+            t[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 10000; j++) {
+                            Ressource r = timed ? pool.tryBorrow(10, TimeUnit.SECONDS)
+                                    : pool.borrow();
+                            if (r == null || !r.inUse.compareAndSet(false, true)) {
+                                failures.incrementAndGet();
+                                continue;
+                            }
+                            Thread.yield();
+                            r.inUse.set(false);
+                            pool.returnToPool(r);
+                        }
+                    } catch (Throwable e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            t[i].start();
+        }
+        start.countDown();
+        for (Thread thread : t) {
+            thread.join(60000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(0, failures.get());
+        assertTrue(pool.getNumberOfCreated() <= 4);
+        assertEquals(pool.getNumberOfCreated(), pool.getSize());
+        assertEquals(4, pool.getAvailable());
+        assertEquals(0, pool.getNumberOfWaiters());
+    }
+
+    static void awaitWaiters(PoolMXBean pool, int waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.getNumberOfWaiters() != waiters) {
+            assertTrue("timed out waiting for waiters", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    static class Ressource implements Closeable {
+        final AtomicBoolean inUse = new AtomicBoolean();
+
+        volatile boolean closed;
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static class Factory implements Callable<Ressource> {
+        public Ressource call() {
+            return new Ressource();
+        }
+    }
+}
@@ -0,0 +1,738 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer {@link CapacityQueue}
+ * backed by an array. This queue orders elements FIFO (first-in-first-out).
+ * <p>
+ * Every slot in the array carries a sequence number that tells producers and
+ * consumers whether the slot is ready to be written or read. A producer claims
+ * a slot by incrementing the <em>tail</em> counter with a single
+ * compare-and-set, and a consumer claims a slot by incrementing the
+ * <em>head</em> counter. Producers and consumers therefore never contend with
+ * each other unless the queue is empty or full. The head and tail counters
+ * are padded so they do not share a cache line.
+ * <p>
+ * The bulk operations {@link #offerAll(Collection)},
+ * {@link #drainTo(Collection)}, {@link #drainTo(Collection, int)} and
+ * {@link #drainTo(Collection, long, TimeUnit)} claim a whole range of slots
+ * with a single compare-and-set.
+ * <p>
+ * Blocking operations do not use locks or conditions. Instead a waiting
+ * thread consults a {@link WaitStrategy} every time it fails to make progress.
+ * <p>
+ * The array is allocated once with room for the <tt>maximum capacity</tt>
+ * specified at construction time. {@link #setCapacity(int)} can change the
+ * capacity of the queue to any value between 0 and the maximum capacity.
+ * <p>
+ * Unlike {@link CapacityArrayQueue} this queue does not support removal of
+ * arbitrary elements, {@link #remove(Object)} and <tt>Iterator.remove()</tt>
+ * throws {@link UnsupportedOperationException}. The iterator returned by
+ * {@link #iterator()} traverses a snapshot of the queue taken at the time the
+ * iterator was created.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id: Cache.java,v 1.2 2005/04/27 15:49:16 kasper Exp $
+ * @param <E>
+ *            the type of elements held in this collection
+ */
+public class LockFreeCapacityArrayQueue<E> extends AbstractQueue<E> implements
+        CapacityQueue<E> {
+
+    /** The sequence number of each slot. */
+    private final AtomicLongArray sequences;
+
+    /** The queued items. */
+    private final Object[] items;
+
+    /** Used for mapping a position to an index in the items array. */
+    private final int mask;
+
+    /** The position of the next slot to read. */
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+    /** The position of the next slot to write. */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    /** The wait strategy used by blocking operations. */
+    private final WaitStrategy waitStrategy;
+
+    /** The maximum capacity of this queue. */
+    private final int maximumCapacity;
+
+    /** The current capacity of this queue. */
+    private volatile int capacity;
+
+    /** Whether or not the queue has been closed. */
+    private volatile boolean isShutdown;
+
+    /**
+     * Creates a new LockFreeCapacityArrayQueue with the given (fixed) capacity
+     * using a {@link WaitStrategies#parking() parking} wait strategy.
+     *
+     * @param capacity
+     *            the capacity of this queue
+     * @throws IllegalArgumentException
+     *             if <tt>capacity</tt> is less than 1
+     */
+    public LockFreeCapacityArrayQueue(int capacity) {
+        this(capacity, capacity, WaitStrategies.parking());
+    }
+
+    /**
+     * Creates a new LockFreeCapacityArrayQueue with the given initial and
+     * maximum capacity and the specified wait strategy.
+     *
+     * @param capacity
+     *            the initial capacity of this queue
+     * @param maximumCapacity
+     *            the maximum capacity of this queue
+     * @param waitStrategy
+     *            the wait strategy used by blocking operations
+     * @throws IllegalArgumentException
+     *             if <tt>maximumCapacity</tt> is less than 1 or greater than
+     *             2<sup>30</sup>, or if <tt>capacity</tt> is negative or
+     *             greater than <tt>maximumCapacity</tt>
+     * @throws NullPointerException
+     *             if the specified wait strategy is null
+     */
+    public LockFreeCapacityArrayQueue(int capacity, int maximumCapacity,
+            WaitStrategy waitStrategy) {
+        if (maximumCapacity <= 0 || maximumCapacity > 1 << 30) {
+            throw new IllegalArgumentException(
+                    "maximumCapacity must be between 1 and 2^30, was " + maximumCapacity);
+        } else if (capacity < 0 || capacity > maximumCapacity) {
+            throw new IllegalArgumentException(
+                    "capacity must be between 0 and maximumCapacity, was " + capacity);
+        } else if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy is null");
+        }
+        int length = 1;
+        while (length < maximumCapacity) {
+            length <<= 1;
+        }
+        this.mask = length - 1;
+        this.items = new Object[length];
+        this.sequences = new AtomicLongArray(length);
+        for (int i = 0; i < length; i++) {
+            sequences.set(i, i);
+        }
+        this.capacity = capacity;
+        this.maximumCapacity = maximumCapacity;
+        this.waitStrategy = waitStrategy;
+    }
+
+    private int index(long position) {
+        return (int) position & mask;
+    }
+
+    private static void checkNull(Object[] elements) {
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null) {
+                throw new NullPointerException("collection contained a null element");
+            }
+        }
+    }
+
+    private void checkShutdownTake() {
+        if (isShutdown && size() == 0) {
+            throw new IllegalStateException(
+                    "Queue has been shutdown, no items can be taken");
+        }
+    }
+
+    /**
+     * Tries to claim and fill up to <tt>max</tt> consecutive slots with the
+     * elements of the specified array starting at <tt>offset</tt>.
+     *
+     * @return the number of elements added, or -1 if the queue has been
+     *         closed
+     */
+    private int tryOffer(Object[] elements, int offset, int max) {
+        for (;;) {
+            if (isShutdown) {
+                return -1;
+            }
+            final long pos = tail.get();
+            final long available = capacity - (pos - head.get());
+            final int n = (int) Math.min(max, available);
+            if (n <= 0) {
+                return 0;
+            }
+            int free = 0;
+            while (free < n && sequences.get(index(pos + free)) == pos + free) {
+                free++;
+            }
+            if (free == 0) {
+                if (sequences.get(index(pos)) < pos) {
+                    return 0; // full, a consumer has not yet released the slot
+                }
+                continue; // another producer claimed the slot
+            }
+            if (tail.compareAndSet(pos, pos + free)) {
+                for (int i = 0; i < free; i++) {
+                    final long p = pos + i;
+                    final int index = index(p);
+                    items[index] = elements[offset + i];
+                    sequences.set(index, p + 1);
+                }
+                return free;
+            }
+        }
+    }
+
+    /**
+     * Tries to claim and empty up to <tt>max</tt> consecutive slots, adding
+     * the elements to the specified collection. The slots are released before
+     * the elements are added, so producers never wait for the collection.
+     *
+     * @return the number of elements removed
+     */
+    @SuppressWarnings("unchecked")
+    private int tryDrain(Collection<? super E> c, int max) {
+        for (;;) {
+            final long pos = head.get();
+            int ready = 0;
+            while (ready < max && sequences.get(index(pos + ready)) == pos + ready + 1) {
+                ready++;
+            }
+            if (ready == 0) {
+                if (sequences.get(index(pos)) < pos + 1) {
+                    return 0; // empty, a producer has not yet published the slot
+                }
+                continue; // another consumer claimed the slot
+            }
+            if (head.compareAndSet(pos, pos + ready)) {
+                final int length = items.length;
+                final Object[] drained = new Object[ready];
+                for (int i = 0; i < ready; i++) {
+                    final long p = pos + i;
+                    final int index = index(p);
+                    drained[i] = items[index];
+                    items[index] = null;
+                    sequences.set(index, p + length);
+                }
+                for (Object o : drained) {
+                    c.add((E) o);
+                }
+                return ready;
+            }
+        }
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is
+     * possible to do so immediately without exceeding the queue's capacity,
+     * returning <tt>true</tt> upon success and <tt>false</tt> if this queue
+     * is full or has been closed.
+     *
+     * @throws NullPointerException
+     *             if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            if (isShutdown) {
+                return false;
+            }
+            final long pos = tail.get();
+            if (pos - head.get() >= capacity) {
+                return false;
+            }
+            final int index = index(pos);
+            final long seq = sequences.get(index);
+            if (seq < pos) {
+                return false; // full
+            } else if (seq == pos && tail.compareAndSet(pos, pos + 1)) {
+                items[index] = e;
+                sequences.set(index, pos + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting for
+     * space to become available if the queue is full.
+     *
+     * @throws InterruptedException
+     *             {@inheritDoc}
+     * @throws NullPointerException
+     *             {@inheritDoc}
+     * @throws IllegalStateException
+     *             if the queue has been closed
+     */
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (int counter = 0; !offer(e); counter++) {
+            if (isShutdown) {
+                throw new IllegalStateException("queue has been closed");
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting up to
+     * the specified wait time for space to become available if the queue is
+     * full.
+     *
+     * @throws InterruptedException
+     *             {@inheritDoc}
+     * @throws NullPointerException
+     *             {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int counter = 0; !offer(e); counter++) {
+            if (isShutdown || System.nanoTime() - deadline >= 0) {
+                return false;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+        return true;
+    }
+
+    /**
+     * @see java.util.Queue#poll()
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (;;) {
+            final long pos = head.get();
+            final int index = index(pos);
+            final long seq = sequences.get(index);
+            if (seq < pos + 1) {
+                return null; // empty
+            } else if (seq == pos + 1 && head.compareAndSet(pos, pos + 1)) {
+                E x = (E) items[index];
+                items[index] = null;
+                sequences.set(index, pos + items.length);
+                return x;
+            }
+        }
+    }
+
+    /**
+     * @see java.util.concurrent.BlockingQueue#take()
+     */
+    public E take() throws InterruptedException {
+        for (int counter = 0;; counter++) {
+            E x = poll();
+            if (x != null) {
+                return x;
+            }
+            checkShutdownTake();
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+    }
+
+    /**
+     * @see java.util.concurrent.BlockingQueue#poll(long,
+     *      java.util.concurrent.TimeUnit)
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int counter = 0;; counter++) {
+            E x = poll();
+            if (x != null || System.nanoTime() - deadline >= 0) {
+                return x;
+            }
+            checkShutdownTake();
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+    }
+
+    /**
+     * @see java.util.Queue#peek()
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (;;) {
+            final long pos = head.get();
+            final int index = index(pos);
+            final long seq = sequences.get(index);
+            if (seq < pos + 1) {
+                return null;
+            }
+            E x = (E) items[index];
+            // make sure the slot was not consumed while we read it
+            if (x != null && head.get() == pos) {
+                return x;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements in this queue. Because of the nature of
+     * lock-free algorithms this is only an estimate if other threads are
+     * concurrently modifying the queue.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        for (;;) {
+            final long h = head.get();
+            final long t = tail.get();
+            if (head.get() == h) {
+                return (int) Math.max(0, t - h);
+            }
+        }
+    }
+
+    /**
+     * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+     */
+    public int remainingCapacity() {
+        return Math.max(0, capacity - size());
+    }
+
+    /**
+     * @see org.coconut.concurrent.CapacityQueue#getCapacity()
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the maximum capacity of this queue.
+     *
+     * @return the maximum capacity of this queue
+     */
+    public int getMaximumCapacity() {
+        return maximumCapacity;
+    }
+
+    /**
+     * Returns the wait strategy used by blocking operations.
+     *
+     * @return the wait strategy used by blocking operations
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @see org.coconut.concurrent.CapacityQueue#setCapacity(int)
+     * @throws IllegalArgumentException
+     *             if the specified capacity is negative or greater than the
+     *             maximum capacity of this queue
+     */
+    public void setCapacity(int newCapacity) {
+        if (newCapacity < 0 || newCapacity > maximumCapacity) {
+            throw new IllegalArgumentException("newCapacity must be between 0 and "
+                    + maximumCapacity + ", was " + newCapacity);
+        }
+        if (!isShutdown) {
+            capacity = newCapacity;
+        }
+    }
+
+    /**
+     * The array backing this queue is never reallocated so <tt>downSize</tt>
+     * is ignored.
+     *
+     * @see org.coconut.concurrent.CapacityQueue#setCapacity(int, boolean)
+     */
+    public void setCapacity(int newCapacity, boolean downSize) {
+        setCapacity(newCapacity);
+    }
+
+    /**
+     * @see org.coconut.concurrent.CapacityQueue#closeQueue()
+     */
+    public void closeQueue() {
+        isShutdown = true;
+        capacity = 0;
+    }
+
+    /**
+     * Returns whether or not this queue has been closed.
+     *
+     * @return whether or not this queue has been closed
+     */
+    public boolean isTerminated() {
+        return isShutdown;
+    }
+
+    /**
+     * This operation is not supported.
+     *
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException(
+                "Removal of arbitrary elements is not supported");
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue. The
+     * iterator does not support removal.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList((java.util.List<E>) Arrays.asList(toArray()))
+                .iterator();
+    }
+
+    /**
+     * @see java.util.AbstractCollection#toArray()
+     */
+    public Object[] toArray() {
+        final ArrayList<Object> result = new ArrayList<Object>();
+        final long h = head.get();
+        final long t = tail.get();
+        for (long p = h; p < t; p++) {
+            final int index = index(p);
+            final Object x = items[index];
+            // only include published elements that has not been consumed
+            if (x != null && sequences.get(index) == p + 1) {
+                result.add(x);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * @see java.util.AbstractCollection#toArray(T[])
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] elements = toArray();
+        if (a.length < elements.length) {
+            a = (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(),
+                    elements.length);
+        }
+        System.arraycopy(elements, 0, a, 0, elements.length);
+        if (a.length > elements.length) {
+            a[elements.length] = null;
+        }
+        return a;
+    }
+
+    /**
+     * Removes all of the elements from this queue.
+     */
+    public void clear() {
+        while (tryDrain(new ArrayList<E>(), items.length) > 0) {
+            // keep draining
+        }
+    }
+
+    /**
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+     */
+    public int drainTo(Collection<? super E> c) {
+        // the queue never holds more than items.length elements, so this drains
+        // every element that was available when the method was called
+        return drainTo(c, items.length);
+    }
+
+    /**
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection,
+     *      int)
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        } else if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int total = 0;
+        while (total < maxElements) {
+            int n = tryDrain(c, Math.min(maxElements - total, items.length));
+            if (n == 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @see org.coconut.concurrent.BulkQueue#drainTo(java.util.Collection,
+     *      long, java.util.concurrent.TimeUnit)
+     */
+    public int drainTo(Collection<? super E> c, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (c == null) {
+            throw new NullPointerException();
+        } else if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int counter = 0;; counter++) {
+            int n = drainTo(c);
+            if (n > 0 || System.nanoTime() - deadline >= 0) {
+                return n;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+    }
+
+    /**
+     * Inserts all the specified elements if there is room for all of them,
+     * claiming all the needed slots with a single compare-and-set.
+     *
+     * @see org.coconut.concurrent.BulkQueue#offerAll(java.util.Collection)
+     */
+    public boolean offerAll(Collection<? extends E> c) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        Object[] elements = c.toArray();
+        if (elements.length == 0) {
+            return true;
+        }
+        checkNull(elements);
+        for (;;) {
+            if (isShutdown) {
+                return false;
+            }
+            final long pos = tail.get();
+            final int n = elements.length;
+            if (pos + n - head.get() > capacity) {
+                return false;
+            }
+            boolean tailMoved = false;
+            for (int i = 0; i < n; i++) {
+                final long seq = sequences.get(index(pos + i));
+                if (seq < pos + i) {
+                    return false; // full
+                } else if (seq > pos + i) {
+                    tailMoved = true;
+                    break;
+                }
+            }
+            if (!tailMoved && tail.compareAndSet(pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    final long p = pos + i;
+                    final int index = index(p);
+                    items[index] = elements[i];
+                    sequences.set(index, p + 1);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @see org.coconut.concurrent.BulkQueue#offerAll(java.util.Collection,
+     *      long, java.util.concurrent.TimeUnit)
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<? extends E> offerAll(Collection<? extends E> c, long timeout,
+            TimeUnit unit) throws InterruptedException {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        Object[] elements = c.toArray();
+        if (elements.length == 0) {
+            return c;
+        }
+        checkNull(elements);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int index = 0;
+        for (int counter = 0;; counter++) {
+            int n = tryOffer(elements, index, elements.length - index);
+            if (n < 0) {
+                throw new IllegalStateException("queue has been closed");
+            }
+            index += n;
+            if (index == elements.length) {
+                return Collections.emptyList();
+            } else if (n > 0) {
+                counter = 0;
+            } else if (System.nanoTime() - deadline >= 0) {
+                ArrayList<E> al = new ArrayList<E>(elements.length - index);
+                for (int i = index; i < elements.length; i++) {
+                    al.add((E) elements[i]);
+                }
+                return al;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else {
+                waitStrategy.idle(counter);
+            }
+        }
+    }
+
+    /**
+     * @see org.coconut.concurrent.BulkQueue#putAll(java.util.Collection)
+     */
+    public void putAll(Collection<? extends E> c) throws InterruptedException {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        Object[] elements = c.toArray();
+        checkNull(elements);
+        int index = 0;
+        for (int counter = 0; index < elements.length; counter++) {
+            int n = tryOffer(elements, index, elements.length - index);
+            if (n < 0) {
+                throw new IllegalStateException("queue has been closed");
+            } else if (n > 0) {
+                index += n;
+                counter = 0;
+            } else if (Thread.interrupted()) {
+                throw new InterruptedException();
+            } else {
+                waitStrategy.idle(counter);
+            }
+        }
+    }
+
+    /**
+     * An AtomicLong padded to occupy its own cache line.
+     */
+    static final class PaddedAtomicLong extends AtomicLong {
+        /** serialVersionUID. */
+        private static final long serialVersionUID = -2473532669394018853L;
+
+        /** Padding. */
+        long p1, p2, p3, p4, p5, p6, p7 = 7L;
+
+        /**
+         * Reads the padding so it will not be optimized away.
+         *
+         * @return the sum of the padding
+         */
+        long sumPadding() {
+            return p1 + p2 + p3 + p4 + p5 + p6 + p7;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Factory methods for the different {@link WaitStrategy} implementations.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id: Cache.java,v 1.2 2005/04/27 15:49:16 kasper Exp $
+ */
+public final class WaitStrategies {
+
+    /** The default number of nanoseconds the parking strategy will park. */
+    public static final long DEFAULT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /** A wait strategy that busy spins. */
+    private static final WaitStrategy SPINNING = new SpinningWaitStrategy();
+
+    /** A wait strategy that yields the current thread. */
+    private static final WaitStrategy YIELDING = new YieldingWaitStrategy();
+
+    /** Cannot instantiate. */
+    // /CLOVER:OFF
+    private WaitStrategies() {}
+
+    // /CLOVER:ON
+
+    /**
+     * Returns a wait strategy that busy spins. This gives the lowest possible
+     * latency, but burns a full core while waiting. It should only be used
+     * when there are more cores than active threads.
+     *
+     * @return a wait strategy that busy spins
+     */
+    public static WaitStrategy spinning() {
+        return SPINNING;
+    }
+
+    /**
+     * Returns a wait strategy that calls {@link Thread#yield()} while waiting.
+     *
+     * @return a wait strategy that yields the current thread
+     */
+    public static WaitStrategy yielding() {
+        return YIELDING;
+    }
+
+    /**
+     * Returns a wait strategy that first spins a little, then yields and
+     * finally parks the current thread for {@link #DEFAULT_PARK_NANOS}
+     * nanoseconds at a time.
+     *
+     * @return a wait strategy that parks the current thread
+     */
+    public static WaitStrategy parking() {
+        return parking(DEFAULT_PARK_NANOS);
+    }
+
+    /**
+     * Returns a wait strategy that first spins a little, then yields and
+     * finally parks the current thread for the specified number of
+     * nanoseconds at a time.
+     *
+     * @param parkNanos
+     *            the number of nanoseconds to park the current thread
+     * @return a wait strategy that parks the current thread
+     * @throws IllegalArgumentException
+     *             if the specified number of nanoseconds is not positive
+     */
+    public static WaitStrategy parking(long parkNanos) {
+        return new ParkingWaitStrategy(parkNanos);
+    }
+
+    /**
+     * A wait strategy that busy spins.
+     */
+    static class SpinningWaitStrategy implements WaitStrategy {
+        /** @see org.coconut.concurrent.WaitStrategy#idle(int) */
+        public void idle(int counter) {}
+    }
+
+    /**
+     * A wait strategy that yields the current thread.
+     */
+    static class YieldingWaitStrategy implements WaitStrategy {
+        /** @see org.coconut.concurrent.WaitStrategy#idle(int) */
+        public void idle(int counter) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A wait strategy that spins, then yields and finally parks.
+     */
+    static class ParkingWaitStrategy implements WaitStrategy {
+
+        /** The number of times to spin before yielding. */
+        static final int SPINS = 100;
+
+        /** The number of times to yield before parking. */
+        static final int YIELDS = SPINS + 10;
+
+        /** The number of nanoseconds to park. */
+        private final long parkNanos;
+
+        ParkingWaitStrategy(long parkNanos) {
+            if (parkNanos <= 0) {
+                throw new IllegalArgumentException("parkNanos must be a positive number, was "
+                        + parkNanos);
+            }
+            this.parkNanos = parkNanos;
+        }
+
+        /** @see org.coconut.concurrent.WaitStrategy#idle(int) */
+        public void idle(int counter) {
+            if (counter < SPINS) {
+                return;
+            } else if (counter < YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.concurrent;
+
+/**
+ * A WaitStrategy decides what a thread should do while it waits for a
+ * lock-free data structure to change state, for example for an element to
+ * become available in an empty queue or for space to become available in a
+ * full queue. Implementations never block indefinitely, the caller is
+ * responsible for rechecking the state of the data structure after each call
+ * to {@link #idle(int)}.
+ * <p>
+ * Default implementations can be obtained from {@link WaitStrategies}.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id: Cache.java,v 1.2 2005/04/27 15:49:16 kasper Exp $
+ */
+public interface WaitStrategy {
+
+    /**
+     * Invoked by a waiting thread every time it fails to make progress.
+     *
+     * @param counter
+     *            the number of times this method has previously been called
+     *            by the current thread for the current wait, starting with 0
+     */
+    void idle(int counter);
+}
@@ -0,0 +1,109 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.concurrent;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of {@link CapacityArrayQueue} and
+ * {@link LockFreeCapacityArrayQueue} with an increasing number of producer and
+ * consumer threads. Run it from the command line, optionally specifying the
+ * number of elements each producer should insert.
+ *
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id: Cache.java,v 1.2 2005/04/27 15:49:16 kasper Exp $
+ */
+public class CapacityQueueBenchmark {
+
+    private static final int CAPACITY = 1024;
+
+    private static final int BATCH = 16;
+
+    public static void main(String[] args) throws Exception {
+        int elements = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < 2; round++) { // first round is warmup
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                report("CapacityArrayQueue", threads, elements, run(
+                        new CapacityArrayQueue<Integer>(CAPACITY), threads, elements, false));
+                report("LockFreeCapacityArrayQueue", threads, elements, run(
+                        new LockFreeCapacityArrayQueue<Integer>(CAPACITY), threads, elements,
+                        false));
+                report("CapacityArrayQueue (bulk)", threads, elements, run(
+                        new CapacityArrayQueue<Integer>(CAPACITY), threads, elements, true));
+                report("LockFreeCapacityArrayQueue (bulk)", threads, elements, run(
+                        new LockFreeCapacityArrayQueue<Integer>(CAPACITY), threads, elements,
+                        true));
+            }
+        }
+    }
+
+    static void report(String name, int threads, int elements, long nanos) {
+        long ops = (long) threads * elements;
+        System.out.println(name + ", " + threads + " producer(s)/consumer(s): "
+                + (ops * 1000000000L / Math.max(1, nanos)) + " ops/s");
+    }
+
+    static long run(final CapacityQueue<Integer> q, int threads, final int elements,
+            final boolean bulk) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads * 2);
+        final AtomicLong remaining = new AtomicLong((long) threads * elements);
+        final Integer element = Integer.valueOf(1);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        ArrayList<Integer> batch = new ArrayList<Integer>(BATCH);
+                        for (int j = 0; j < BATCH; j++) {
+                            batch.add(element);
+                        }
+                        for (int j = 0; j < elements;) {
+                            if (bulk && elements - j >= BATCH) {
+                                q.putAll(batch);
+                                j += BATCH;
+                            } else {
+                                q.put(element);
+                                j++;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        ArrayList<Integer> batch = new ArrayList<Integer>(CAPACITY);
+                        while (remaining.get() > 0) {
+                            if (bulk) {
+                                batch.clear();
+                                int n = q.drainTo(batch, 1, TimeUnit.MILLISECONDS);
+                                remaining.addAndGet(-n);
+                            } else if (q.poll(1, TimeUnit.MILLISECONDS) != null) {
+                                remaining.decrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long time = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - time;
+    }
+}
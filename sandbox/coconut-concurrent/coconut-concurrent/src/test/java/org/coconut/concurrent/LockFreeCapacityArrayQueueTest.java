@@ -0,0 +1,152 @@
+/* Copyright 2004 - 2007 Kasper Nielsen <kasper@codehaus.org> Licensed under
+ * the Apache 2.0 License, see http://coconut.codehaus.org/license.
+ */
+package org.coconut.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * @author <a href="mailto:kasper@codehaus.org">Kasper Nielsen</a>
+ * @version $Id: Cache.java,v 1.2 2005/04/27 15:49:16 kasper Exp $
+ */
+public class LockFreeCapacityArrayQueueTest extends TestCase {
+
+    public void testCapacity() throws InterruptedException {
+        BlockingQueue cq = new LockFreeCapacityArrayQueue(4);
+        Thread t = new Thread(new CapacityArrayQueueTest.TakeMe(cq));
+        t.start();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(cq.offer(i, 10, TimeUnit.SECONDS));
+        }
+        t.join();
+    }
+
+    public void testOfferPoll() {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(3);
+        assertNull(q.poll());
+        assertTrue(q.offer(1));
+        assertTrue(q.offer(2));
+        assertTrue(q.offer(3));
+        assertFalse(q.offer(4));
+        assertEquals(3, q.size());
+        assertEquals(0, q.remainingCapacity());
+        assertEquals(1, q.peek().intValue());
+        assertEquals(1, q.poll().intValue());
+        assertTrue(q.offer(4));
+        assertEquals(Arrays.asList(2, 3, 4), Arrays.asList(q.toArray()));
+        assertEquals(2, q.poll().intValue());
+        assertEquals(3, q.poll().intValue());
+        assertEquals(4, q.poll().intValue());
+        assertNull(q.poll());
+        assertEquals(0, q.size());
+    }
+
+    public void testSetCapacity() {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(1,
+                4, WaitStrategies.spinning());
+        assertTrue(q.offer(1));
+        assertFalse(q.offer(2));
+        q.setCapacity(2);
+        assertEquals(2, q.getCapacity());
+        assertTrue(q.offer(2));
+        assertFalse(q.offer(3));
+        try {
+            q.setCapacity(5);
+            fail("should throw IllegalArgumentException");
+        } catch (IllegalArgumentException ok) {/* ok */}
+    }
+
+    public void testCloseQueue() throws InterruptedException {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(2);
+        assertTrue(q.offer(1));
+        q.closeQueue();
+        assertTrue(q.isTerminated());
+        assertFalse(q.offer(2));
+        assertEquals(1, q.take().intValue());
+        try {
+            q.take();
+            fail("should throw IllegalStateException");
+        } catch (IllegalStateException ok) {/* ok */}
+    }
+
+    public void testOfferAll() {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(4);
+        assertTrue(q.offerAll(Arrays.asList(1, 2, 3)));
+        assertFalse(q.offerAll(Arrays.asList(4, 5)));
+        assertEquals(3, q.size());
+        assertTrue(q.offerAll(Arrays.asList(4)));
+        try {
+            q.offerAll(Arrays.asList(1, null));
+            fail("should throw NullPointerException");
+        } catch (NullPointerException ok) {/* ok */}
+    }
+
+    public void testOfferAllTimeout() throws InterruptedException {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(2);
+        Collection<? extends Integer> rest = q.offerAll(Arrays.asList(1, 2, 3, 4), 1,
+                TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(3, 4), rest);
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(q.toArray()));
+    }
+
+    public void testDrainTo() throws InterruptedException {
+        LockFreeCapacityArrayQueue<Integer> q = new LockFreeCapacityArrayQueue<Integer>(8);
+        List<Integer> l = new ArrayList<Integer>();
+        assertEquals(0, q.drainTo(l, 1, TimeUnit.MILLISECONDS));
+        q.offerAll(Arrays.asList(1, 2, 3, 4, 5));
+        assertEquals(2, q.drainTo(l, 2));
+        assertEquals(Arrays.asList(1, 2), l);
+        assertEquals(3, q.drainTo(l, 1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), l);
+        assertEquals(0, q.size());
+    }
+
+    public void testConcurrentProducersConsumers() throws InterruptedException {
+        final LockFreeCapacityArrayQueue<Long> q = new LockFreeCapacityArrayQueue<Long>(16,
+                16, WaitStrategies.yielding());
+        final int threads = 4;
+        final int count = 10000;
+        final AtomicLong sum = new AtomicLong();
+        Thread[] all = new Thread[threads * 2];
+        for (int i = 0; i < threads; i++) {
+            all[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (long j = 1; j <= count; j++) {
+                            q.put(j);
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            all[threads + i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            sum.addAndGet(q.take());
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+        for (Thread t : all) {
+            t.start();
+        }
+        for (Thread t : all) {
+            t.join();
+        }
+        assertEquals(threads * ((long) count * (count + 1) / 2), sum.get());
+        assertEquals(0, q.size());
+    }
+}